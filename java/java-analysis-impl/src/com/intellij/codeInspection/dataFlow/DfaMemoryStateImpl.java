@@ -51,17 +51,18 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   private final List<EqClass> myEqClasses;
   private final Stack<DfaValue> myStack;
   private final TLongHashSet myDistinctClasses;
-  private final Map<DfaVariableValue,DfaVariableState> myVariableStates;
+  private final THashMap<DfaVariableValue,DfaVariableState> myVariableStates;
   private final Map<DfaVariableValue,DfaVariableState> myDefaultVariableStates; 
-  private final Set<DfaVariableValue> myUnknownVariables;
+  private final THashSet<DfaVariableValue> myUnknownVariables;
   private boolean myEphemeral;
+  private int myCachedHash; // 0 if not computed yet
 
   public DfaMemoryStateImpl(final DfaValueFactory factory) {
     myFactory = factory;
     myDefaultVariableStates = ContainerUtil.newTroveMap();
     myEqClasses = ContainerUtil.newArrayList();
-    myUnknownVariables = ContainerUtil.newTroveSet();
-    myVariableStates = ContainerUtil.newTroveMap();
+    myUnknownVariables = new THashSet<DfaVariableValue>();
+    myVariableStates = new THashMap<DfaVariableValue, DfaVariableState>();
     myDistinctClasses = new TLongHashSet();
     myStack = new Stack<DfaValue>();
   }
@@ -72,14 +73,17 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     myDefaultVariableStates = toCopy.myDefaultVariableStates; // shared between all states
     
     myStack = new Stack<DfaValue>(toCopy.myStack);
-    myDistinctClasses = new TLongHashSet(toCopy.myDistinctClasses.toArray());
-    myUnknownVariables = new THashSet<DfaVariableValue>(toCopy.myUnknownVariables);
+    // cloning copies the hash tables as they are instead of rehashing every element
+    myDistinctClasses = (TLongHashSet)toCopy.myDistinctClasses.clone();
+    //noinspection unchecked
+    myUnknownVariables = (THashSet<DfaVariableValue>)toCopy.myUnknownVariables.clone();
 
     myEqClasses = ContainerUtil.newArrayList(toCopy.myEqClasses);
-    myVariableStates = new THashMap<DfaVariableValue, DfaVariableState>(toCopy.myVariableStates);
+    myVariableStates = toCopy.myVariableStates.clone();
     
     myCachedDistinctClassPairs = toCopy.myCachedDistinctClassPairs;
     myCachedNonTrivialEqClasses = toCopy.myCachedNonTrivialEqClasses;
+    myCachedHash = toCopy.myCachedHash;
   }
 
   public DfaValueFactory getFactory() {
@@ -95,6 +99,8 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     if (obj == this) return true;
     if (!(obj instanceof DfaMemoryStateImpl)) return false;
     DfaMemoryStateImpl that = (DfaMemoryStateImpl)obj;
+    // the cached hash codes reject most of the different states without comparing their relations
+    if (getPartialHashCode(true, true) != that.getPartialHashCode(true, true)) return false;
     return equalsSuperficially(that) && equalsByUnknownVariables(that) && equalsByRelations(that) && equalsByVariableStates(that);
   }
 
@@ -147,6 +153,8 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   }
 
   int getPartialHashCode(boolean unknowns, boolean varStates) {
+    boolean full = unknowns && varStates;
+    if (full && myCachedHash != 0) return myCachedHash;
     int hash = (getNonTrivialEqClasses().hashCode() * 31 +
               getDistinctClassPairs().hashCode()) * 31 +
              myStack.hashCode();
@@ -156,6 +164,10 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     if (unknowns) {
       hash = hash * 31 + myUnknownVariables.hashCode();
     }
+    if (full) {
+      myCachedHash = hash == 0 ? 1 : hash;
+      return myCachedHash;
+    }
     return hash;
   }
 
@@ -199,6 +211,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
 
   @Override
   public DfaValue pop() {
+    myCachedHash = 0;
     return myStack.pop();
   }
 
@@ -209,11 +222,13 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
 
   @Override
   public void push(@NotNull DfaValue value) {
+    myCachedHash = 0;
     myStack.push(value);
   }
 
   @Override
   public void emptyStack() {
+    myCachedHash = 0;
     myStack.clear();
   }
 
@@ -500,6 +515,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   @Override
   public void markEphemeral() {
     myEphemeral = true;
+    myCachedHash = 0;
   }
 
   @Override
@@ -730,11 +746,13 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
       }
       myCachedDistinctClassPairs = null;
       myCachedNonTrivialEqClasses = null;
+      myCachedHash = 0;
     }
     else { // Not Equals
       if (c1Index.equals(c2Index)) return false;
       makeClassesDistinct(c1Index, c2Index);
       myCachedDistinctClassPairs = null;
+      myCachedHash = 0;
     }
 
     return true;
@@ -772,6 +790,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
 
   void setVariableState(DfaVariableValue dfaVar, DfaVariableState state) {
     assert !myUnknownVariables.contains(dfaVar);
+    myCachedHash = 0;
     if (state.equals(myDefaultVariableStates.get(dfaVar))) {
       myVariableStates.remove(dfaVar);
     } else {
@@ -836,6 +855,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
   public void flushVariable(@NotNull DfaVariableValue variable) {
     doFlush(variable, false);
     flushDependencies(variable);
+    myCachedHash = 0;
     myUnknownVariables.remove(variable);
     myUnknownVariables.removeAll(myFactory.getVarFactory().getAllQualifiedBy(variable));
   }
@@ -903,6 +923,7 @@ public class DfaMemoryStateImpl implements DfaMemoryState {
     }
     myCachedNonTrivialEqClasses = null;
     myCachedDistinctClassPairs = null;
+    myCachedHash = 0;
   }
 
   private static boolean mine(int id, DfaValue value) {
@@ -34,15 +34,15 @@ public class SortedIntSet extends TIntArrayList implements Comparable<SortedIntS
 
   @Override
   public void add(int val) {
-    for(int idx = 0; idx < size(); idx++) {
-      int data = get(idx);
-      if (data == val) return;
-      if (data > val) {
-        insert(idx, val);
-        return;
-      }
+    int idx = binarySearch(val);
+    if (idx >= 0) return;
+    idx = -idx - 1;
+    if (idx == size()) {
+      super.add(val);
+    }
+    else {
+      insert(idx, val);
     }
-    super.add(val);
   }
 
   @Override
@@ -53,12 +53,17 @@ public class SortedIntSet extends TIntArrayList implements Comparable<SortedIntS
   }
 
   public void removeValue(int val) {
-    int offset = indexOf(val);
-    if (offset != -1) {
+    int offset = binarySearch(val);
+    if (offset >= 0) {
       remove(offset);
     }
   }
 
+  @Override
+  public boolean contains(int value) {
+    return binarySearch(value) >= 0;
+  }
+
   @Override
   public int compareTo(SortedIntSet t) {
     if (t == this) return 0;
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.codeInsight.daemon.DaemonCodeAnalyzer;
+import com.intellij.codeInsight.daemon.impl.analysis.FileHighlightingSetting;
+import com.intellij.codeInsight.daemon.impl.analysis.HighlightLevelUtil;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.profile.codeInspection.InspectionProfileManager;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import gnu.trove.TIntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class HighlightingCacheTest extends LightCodeInsightFixtureTestCase {
+  private HighlightingCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCache = new HighlightingCache(getProject(), (DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(getProject()));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myFixture.getFile() != null) {
+        FileUtil.delete(myCache.getCacheFile(myFixture.getFile().getVirtualFile()));
+      }
+      myCache.dispose();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testHighlightingIsRestoredForTheSameText() {
+    myFixture.configureByText("A.java", "class A { void foo() { int i = ; } }");
+    Document document = myFixture.getEditor().getDocument();
+    assertFalse(myCache.hasHighlights(document));
+    List<HighlightInfo> errors = myFixture.doHighlighting(HighlightSeverity.ERROR);
+    assertFalse(errors.isEmpty());
+    assertTrue(myCache.hasHighlights(document));
+
+    VirtualFile file = myFixture.getFile().getVirtualFile();
+    byte[] data = myCache.serialize(file, document);
+    assertNotNull(data);
+    myCache.write(file, data);
+
+    TIntObjectHashMap<List<HighlightInfo>> restored = myCache.read(file, myCache.computeKey(document));
+    assertNotNull(restored);
+    List<HighlightInfo> infos = restored.get(Pass.UPDATE_ALL);
+    assertNotNull(infos);
+    HighlightInfo error = errors.get(0);
+    boolean found = false;
+    for (HighlightInfo info : infos) {
+      found |= info.getSeverity() == HighlightSeverity.ERROR &&
+               info.getActualStartOffset() == error.getActualStartOffset() &&
+               error.getDescription().equals(info.getDescription());
+    }
+    assertTrue(found);
+  }
+
+  public void testHighlightingIsNotRestoredForChangedText() {
+    myFixture.configureByText("A.java", "class A { void foo() { int i = ; } }");
+    myFixture.doHighlighting();
+    Document document = myFixture.getEditor().getDocument();
+    VirtualFile file = myFixture.getFile().getVirtualFile();
+    byte[] data = myCache.serialize(file, document);
+    assertNotNull(data);
+    myCache.write(file, data);
+
+    myFixture.type("1");
+    assertNull(myCache.read(file, myCache.computeKey(document)));
+  }
+
+  public void testProfileKeyIsComputedOncePerProfileChange() {
+    byte[] key = myCache.getProfileKey();
+    assertSame(key, myCache.getProfileKey());
+
+    InspectionProfileManager.getInstance().fireProfileChanged(InspectionProjectProfileManager.getInstance(getProject()).getInspectionProfile());
+    byte[] newKey = myCache.getProfileKey();
+    assertNotSame(key, newKey);
+    assertTrue(Arrays.equals(key, newKey));
+  }
+
+  public void testNotRestoredWhenDaemonDoesNotRun() {
+    myFixture.configureByText("A.java", "class A { }");
+    assertTrue(myCache.canRestore(myFixture.getFile()));
+
+    PowerSaveMode.setEnabled(true);
+    try {
+      assertFalse(myCache.canRestore(myFixture.getFile()));
+    }
+    finally {
+      PowerSaveMode.setEnabled(false);
+    }
+
+    HighlightLevelUtil.forceRootHighlighting(myFixture.getFile(), FileHighlightingSetting.SKIP_HIGHLIGHTING);
+    try {
+      assertFalse(myCache.canRestore(myFixture.getFile()));
+    }
+    finally {
+      HighlightLevelUtil.forceRootHighlighting(myFixture.getFile(), FileHighlightingSetting.FORCE_HIGHLIGHTING);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.LocalInspectionTool;
+import com.intellij.codeInspection.LocalInspectionToolSession;
+import com.intellij.codeInspection.ProblemsHolder;
+import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.reference.RefManagerImpl;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiFile;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+
+public class HighlightingStatisticsTest extends LightCodeInsightFixtureTestCase {
+  private static final long BUSY_TIME = 20 * 1000000;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    HighlightingStatistics.clear();
+    HighlightingStatistics.setEnabled(true);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      HighlightingStatistics.setEnabled(false);
+      HighlightingStatistics.clear();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testToolIsRecordedOncePerRun() {
+    myFixture.enableInspections(new BusyInspection());
+    myFixture.configureByText("A.java", "class A { void foo() {} }");
+    myFixture.doHighlighting();
+    assertEquals(1, HighlightingStatistics.getToolRunCount(BusyInspection.SHORT_NAME));
+  }
+
+  public void testBatchFileTimeIncludesToolThreads() {
+    final PsiFile file = myFixture.configureByText("A.java", "class A { void foo() {} }");
+    final LocalInspectionToolWrapper toolWrapper = new LocalInspectionToolWrapper(new BusyInspection());
+    final InspectionManagerEx manager = (InspectionManagerEx)InspectionManager.getInstance(getProject());
+    final GlobalInspectionContextImpl context = manager.createNewGlobalContext(false);
+    toolWrapper.initialize(context);
+    ((RefManagerImpl)context.getRefManager()).inspectionReadActionStarted();
+    final LocalInspectionsPass pass = new LocalInspectionsPass(file, null, 0, file.getTextLength(), TextRange.EMPTY_RANGE, true,
+                                                               HighlightInfoProcessor.getEmpty());
+    ProgressManager.getInstance().executeProcessUnderProgress(new Runnable() {
+      @Override
+      public void run() {
+        pass.doInspectInBatch(context, manager, Collections.singletonList(toolWrapper));
+      }
+    }, new ProgressIndicatorBase());
+
+    assertEquals(1, HighlightingStatistics.getToolRunCount(BusyInspection.SHORT_NAME));
+    if (HighlightingStatistics.getCurrentThreadCpuTime() != 0) {
+      assertTrue(HighlightingStatistics.getFileCpuTime(file.getVirtualFile().getPath()) >= 2 * BUSY_TIME);
+    }
+  }
+
+  public void testReportIsSortedByWallTime() {
+    HighlightingStatistics.recordTool("fast", 1000000, 0);
+    HighlightingStatistics.recordTool("slow", 3000000, 0);
+    HighlightingStatistics.recordTool("fast", 1000000, 0);
+    StringWriter report = new StringWriter();
+    HighlightingStatistics.writeReport(new PrintWriter(report), 10);
+
+    String text = report.toString();
+    assertTrue(text, text.indexOf("slow") < text.indexOf("fast"));
+    assertTrue(text, text.contains("       2        0  fast"));
+  }
+
+  private static void busyWait() {
+    long start = HighlightingStatistics.getCurrentThreadCpuTime();
+    long deadline = System.nanoTime() + 10 * BUSY_TIME;
+    while (HighlightingStatistics.getCurrentThreadCpuTime() - start < BUSY_TIME && System.nanoTime() < deadline) {
+      Thread.yield();
+    }
+  }
+
+  private static class BusyInspection extends LocalInspectionTool {
+    private static final String SHORT_NAME = "BusyInspection";
+
+    @Nls
+    @NotNull
+    @Override
+    public String getGroupDisplayName() {
+      return "Test";
+    }
+
+    @Nls
+    @NotNull
+    @Override
+    public String getDisplayName() {
+      return SHORT_NAME;
+    }
+
+    @NotNull
+    @Override
+    public String getShortName() {
+      return SHORT_NAME;
+    }
+
+    @NotNull
+    @Override
+    public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+      busyWait();
+      return new PsiElementVisitor() {
+      };
+    }
+
+    @Override
+    public void inspectionFinished(@NotNull LocalInspectionToolSession session, @NotNull ProblemsHolder problemsHolder) {
+      busyWait();
+    }
+  }
+}
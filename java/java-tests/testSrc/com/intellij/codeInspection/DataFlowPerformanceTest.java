@@ -0,0 +1,107 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.JavaTestUtil;
+import com.intellij.codeInspection.dataFlow.*;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.TeamCityLogger;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.ThrowableRunnable;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the data flow analysis over the big methods of the "not complex" test data and reports the processed states per second
+ * and the allocated memory per state.
+ */
+public class DataFlowPerformanceTest extends LightCodeInsightFixtureTestCase {
+  private static final String[] FILES = {
+    "BigMethodNotComplex", "BuildRegexpNotComplex", "ManySequentialIfsNotComplex", "ManySequentialInstanceofsNotComplex",
+    "LongDisjunctionsNotComplex", "ManyDisjunctiveFieldAssignmentsInLoopNotComplex", "ManyContinuesNotComplex", "TernaryInWhileNotComplex",
+    "TryCatchInForNotComplex", "NestedTryInWhileNotComplex"
+  };
+
+  public void testBigMethods() throws Throwable {
+    final List<PsiCodeBlock> bodies = new ArrayList<PsiCodeBlock>();
+    for (String name : FILES) {
+      String text = FileUtil.loadFile(new File(JavaTestUtil.getJavaTestDataPath() + "/inspection/dataFlow/fixture/" + name + ".java"));
+      PsiFile file = myFixture.addFileToProject(name + ".java", stripMarkup(text));
+      for (PsiMethod method : PsiTreeUtil.findChildrenOfType(file, PsiMethod.class)) {
+        if (method.getBody() != null) {
+          bodies.add(method.getBody());
+        }
+      }
+    }
+
+    final long[] states = new long[1];
+    final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    final long allocatedBefore = getAllocatedBytes(threadBean);
+    final long start = System.currentTimeMillis();
+    PlatformTestUtil.startPerformanceTest("Data flow analysis of big methods", 10000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        for (PsiCodeBlock body : bodies) {
+          CountingRunner runner = new CountingRunner(body);
+          assertEquals(body.getText(), RunnerResult.OK, runner.analyzeMethod(body, new StandardInstructionVisitor()));
+          states[0] += runner.myStates;
+        }
+      }
+    }).cpuBound().assertTiming();
+    long time = Math.max(1, System.currentTimeMillis() - start);
+    long allocated = getAllocatedBytes(threadBean) - allocatedBefore;
+
+    assertTrue(states[0] > 0);
+    TeamCityLogger.info("Data flow analysis of big methods: " + states[0] + " states processed in " + time + " ms, " +
+                        states[0] * 1000 / time + " states/s" +
+                        (allocatedBefore < 0 ? "" : ", " + allocated / states[0] + " bytes allocated per state"));
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread or -1 if the JVM can't tell it
+   */
+  private static long getAllocatedBytes(ThreadMXBean threadBean) {
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean)threadBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  private static String stripMarkup(String text) {
+    return text.replaceAll("<(warning|weak_warning|error)( descr=\"[^\"]*\")?>", "").replaceAll("</(warning|weak_warning|error)>", "");
+  }
+
+  private static class CountingRunner extends StandardDataFlowRunner {
+    private int myStates;
+
+    CountingRunner(PsiElement block) {
+      super(block);
+    }
+
+    @Override
+    protected DfaInstructionState[] acceptInstruction(InstructionVisitor visitor, DfaInstructionState instructionState) {
+      myStates++;
+      return super.acceptInstruction(visitor, instructionState);
+    }
+  }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.codeInspection.emptyMethod.EmptyMethodInspection;
+import com.intellij.codeInspection.ex.GlobalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.OfflineInspectionResultsCache;
+import com.intellij.codeInspection.redundantCast.RedundantCastInspection;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.testFramework.PsiTestUtil;
+import com.intellij.testFramework.fixtures.JavaCodeInsightFixtureTestCase;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class OfflineInspectionResultsCacheTest extends JavaCodeInsightFixtureTestCase {
+  private static final String LOCAL_OUTPUT = "<problem>local</problem>";
+
+  private File myCacheDir;
+  private VirtualFile myFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheDir = FileUtil.createTempDirectory("inspectionCache", null);
+    myFile = myFixture.addFileToProject("p/A.java", "package p; class A {}").getVirtualFile();
+    myFixture.addFileToProject("p/B.java", "package p; class B { void f() {} }");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myCacheDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testUnchangedFileIsReused() {
+    inspect();
+    assertEquals(Collections.singletonMap(getLocalToolName(), LOCAL_OUTPUT), loadCache().startFile(myFile));
+  }
+
+  public void testChangedFileIsInspected() {
+    inspect();
+    setText(myFile, "package p; class A { int i; }");
+    assertNull(loadCache().startFile(myFile));
+  }
+
+  public void testChangedSignatureInModuleInvalidatesFile() {
+    inspect();
+    setText(myFixture.findFileInTempDir("p/B.java"), "package p; class B { void f() {} int i; }");
+    assertNull(loadCache().startFile(myFile));
+  }
+
+  public void testChangedMethodBodyInModuleKeepsFile() {
+    inspect();
+    setText(myFixture.findFileInTempDir("p/B.java"), "package p; class B { void f() { int i = 0; } }");
+    assertNotNull(loadCache().startFile(myFile));
+  }
+
+  public void testChangedLibraryJarInvalidatesFile() throws IOException {
+    File libDir = FileUtil.createTempDirectory("lib", null);
+    try {
+      File jar = new File(libDir, "lib.jar");
+      createJar(jar, "a");
+      PsiTestUtil.addLibrary(myModule, "lib", libDir.getPath(), jar.getName());
+      inspect();
+      assertNotNull(loadCache().startFile(myFile));
+
+      // the same URL, but a different jar
+      createJar(jar, "abc");
+      assertNull(loadCache().startFile(myFile));
+    }
+    finally {
+      FileUtil.delete(libDir);
+    }
+  }
+
+  public void testOutputOfGlobalToolsIsNotCached() {
+    OfflineInspectionResultsCache cache = loadCache();
+    assertNull(cache.startFile(myFile));
+    cache.recordOutput(new LocalInspectionToolWrapper(new RedundantCastInspection()), LOCAL_OUTPUT);
+    cache.recordOutput(new GlobalInspectionToolWrapper(new EmptyMethodInspection()), "<problem>global</problem>");
+    cache.finishFile(true);
+    cache.save();
+    assertEquals(Collections.singletonMap(getLocalToolName(), LOCAL_OUTPUT), loadCache().startFile(myFile));
+  }
+
+  public void testFailedFileIsNotCached() {
+    OfflineInspectionResultsCache cache = loadCache();
+    assertNull(cache.startFile(myFile));
+    cache.recordOutput(new LocalInspectionToolWrapper(new RedundantCastInspection()), LOCAL_OUTPUT);
+    cache.finishFile(false);
+    cache.save();
+    assertNull(loadCache().startFile(myFile));
+  }
+
+  private void inspect() {
+    OfflineInspectionResultsCache cache = loadCache();
+    Map<String, String> cached = cache.startFile(myFile);
+    if (cached == null) {
+      cache.recordOutput(new LocalInspectionToolWrapper(new RedundantCastInspection()), LOCAL_OUTPUT);
+    }
+    cache.finishFile(true);
+    cache.save();
+    assertEquals(cached == null ? 0 : 1, cache.getHitCount());
+  }
+
+  private OfflineInspectionResultsCache loadCache() {
+    InspectionProfile profile = InspectionProjectProfileManager.getInstance(getProject()).getInspectionProfile();
+    OfflineInspectionResultsCache cache = OfflineInspectionResultsCache.load(getProject(), myCacheDir, profile);
+    assertNotNull(cache);
+    return cache;
+  }
+
+  private static String getLocalToolName() {
+    return new RedundantCastInspection().getShortName();
+  }
+
+  private static void createJar(File jar, String content) throws IOException {
+    ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar));
+    try {
+      out.putNextEntry(new ZipEntry("a.txt"));
+      out.write(content.getBytes());
+      out.closeEntry();
+    }
+    finally {
+      out.close();
+    }
+  }
+
+  private static void setText(final VirtualFile file, final String text) {
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          VfsUtil.saveText(file, text);
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.formatting;
+
+import com.intellij.lang.LanguageFormatting;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.CodeStyleSettings;
+import com.intellij.psi.codeStyle.CodeStyleSettingsManager;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.ThrowableRunnable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Reformats Java and XML files of 30000 lines, entirely and in a small range, and checks how much the formatter allocates
+ * for the whole file.
+ */
+public class LargeFileFormatterPerformanceTest extends LightCodeInsightFixtureTestCase {
+  private static final int LINE_COUNT = 30000;
+
+  public void testJava() throws Throwable {
+    StringBuilder text = new StringBuilder("class Foo {\n");
+    for (int i = 0; i < LINE_COUNT / 4; i++) {
+      text.append("int method").append(i).append("(int a,int b){\nif(a>b){return a+").append(i).append(";}\n")
+        .append("for(int k=0;k<a;k++){b+=k*2;}\nreturn b;}\n");
+    }
+    doTest("Foo.java", text.append("}\n").toString(), 15000, 1000, 20 * 1024);
+  }
+
+  public void testXml() throws Throwable {
+    StringBuilder text = new StringBuilder("<root>\n");
+    for (int i = 0; i < LINE_COUNT / 4; i++) {
+      text.append("<item id=\"").append(i).append("\"   name=\"item").append(i).append("\">\n<value>")
+        .append(i).append("</value>\n<empty/>\n</item>\n");
+    }
+    doTest("foo.xml", text.append("</root>\n").toString(), 15000, 1000, 9 * 1024);
+  }
+
+  private void doTest(String fileName, final String text, int wholeFileMs, int rangeMs, int bytesPerLine) throws Throwable {
+    PsiFile file = myFixture.configureByText(fileName, text);
+    int middle = text.length() / 2;
+
+    checkAllocation(fileName, file, bytesPerLine);
+
+    measure(fileName + ": whole file", wholeFileMs, file, text, new TextRange(0, text.length()));
+    assertFalse(myFixture.getEditor().getDocument().getText().equals(text));
+
+    measure(fileName + ": range", rangeMs, file, text, new TextRange(middle, middle + 200));
+  }
+
+  /**
+   * Runs the formatter over the whole file without modifying it and checks the bytes allocated by the current thread per line
+   * of the file. That includes the blocks built by the formatting model, the wrappers and the white spaces of the formatter.
+   */
+  private void checkAllocation(String fileName, PsiFile file, int bytesPerLine) {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean) || !((com.sun.management.ThreadMXBean)bean).isThreadAllocatedMemorySupported()) {
+      return;
+    }
+    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean)bean;
+    long threadId = Thread.currentThread().getId();
+    CodeStyleSettings settings = CodeStyleSettingsManager.getSettings(getProject());
+
+    long before = allocationBean.getThreadAllocatedBytes(threadId);
+    FormattingModel model = LanguageFormatting.INSTANCE.forContext(file).createModel(file, settings);
+    new FormatProcessor(model.getDocumentModel(), model.getRootBlock(), settings, settings.getIndentOptions(file.getFileType()),
+                        new FormatTextRanges(file.getTextRange(), true), FormattingProgressCallback.EMPTY).formatWithoutRealModifications();
+    long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+    long perLine = allocated / myFixture.getEditor().getDocument().getLineCount();
+    assertTrue(fileName + ": " + perLine + " bytes allocated per line, expected at most " + bytesPerLine, perLine <= bytesPerLine);
+  }
+
+  private void measure(String message, int expectedMs, final PsiFile file, final String text, final TextRange range) throws Throwable {
+    PlatformTestUtil.startPerformanceTest(message, expectedMs, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        new WriteCommandAction.Simple<Object>(getProject()) {
+          @Override
+          protected void run() throws Throwable {
+            Document document = myFixture.getEditor().getDocument();
+            document.setText(text);
+            PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+            CodeStyleManager.getInstance(getProject()).reformatText(file, range.getStartOffset(), range.getEndOffset());
+          }
+        }.execute().throwException();
+      }
+    }).cpuBound().assertTiming();
+  }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.formatter.java;
+
+import com.intellij.codeInsight.actions.AbstractLayoutCodeProcessor;
+import com.intellij.codeInsight.actions.OptimizeImportsProcessor;
+import com.intellij.codeInsight.actions.ReformatCodeProcessor;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.codeStyle.PrecomputedFormatting;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.fixtures.LightCodeInsightFixtureTestCase;
+import com.intellij.util.ThrowableRunnable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares the throughput of reformatting many files one by one and with the formatting computed in parallel,
+ * and checks that both ways produce the same text and that the parallel one applies the precomputed formatting.
+ */
+public class ParallelReformatPerformanceTest extends LightCodeInsightFixtureTestCase {
+  private static final String PARALLEL_KEY = "reformat.files.in.parallel";
+  private static final int FILE_COUNT = 250;
+
+  public void testReformatManyFiles() throws Throwable {
+    doTest(false);
+  }
+
+  public void testReformatAndOptimizeImports() throws Throwable {
+    doTest(true);
+  }
+
+  private void doTest(boolean optimizeImports) throws Throwable {
+    final PsiFile[] files = new PsiFile[FILE_COUNT];
+    for (int i = 0; i < FILE_COUNT; i++) {
+      files[i] = myFixture.addFileToProject("p/Foo" + i + ".java", getUnformattedText(i));
+    }
+
+    boolean wasParallel = Registry.is(PARALLEL_KEY);
+    try {
+      List<String> sequential = reformat(files, false, optimizeImports);
+      List<String> parallel = reformat(files, true, optimizeImports);
+      assertEquals(sequential, parallel);
+      assertFalse(sequential.get(0).equals(getUnformattedText(0)));
+    }
+    finally {
+      Registry.get(PARALLEL_KEY).setValue(wasParallel);
+    }
+  }
+
+  private List<String> reformat(final PsiFile[] files, boolean parallel, final boolean optimizeImports) throws Throwable {
+    Registry.get(PARALLEL_KEY).setValue(parallel);
+    final int[] applied = new int[1];
+    PlatformTestUtil.startPerformanceTest((parallel ? "Parallel" : "Sequential") + " reformat of " + files.length + " files", 30000,
+                                          new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        resetTexts(files);
+        int before = PrecomputedFormatting.getAppliedCount();
+        AbstractLayoutCodeProcessor processor = new ReformatCodeProcessor(getProject(), files, null, false);
+        if (optimizeImports) {
+          // the reformatting runs first, so the file is formatted as prepared
+          processor = new OptimizeImportsProcessor(processor);
+        }
+        processor.run();
+        applied[0] = PrecomputedFormatting.getAppliedCount() - before;
+      }
+    }).cpuBound().assertTiming();
+    assertEquals(parallel ? files.length : 0, applied[0]);
+
+    List<String> texts = new ArrayList<String>();
+    for (PsiFile file : files) {
+      texts.add(file.getText());
+    }
+    return texts;
+  }
+
+  private void resetTexts(final PsiFile[] files) {
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+        for (int i = 0; i < files.length; i++) {
+          Document document = documentManager.getDocument(files[i]);
+          assertNotNull(document);
+          document.setText(getUnformattedText(i));
+        }
+        documentManager.commitAllDocuments();
+      }
+    });
+  }
+
+  private static String getUnformattedText(int i) {
+    StringBuilder text = new StringBuilder("package p;\nimport java.util.*;\npublic class Foo" + i + "{\n");
+    for (int j = 0; j < 40; j++) {
+      text.append("private int field").append(j).append("=").append(j).append(";\n")
+        .append("public List<String> method").append(j).append("(int a,int b){if(a>b){return new ArrayList<String>();}\n")
+        .append("for(int k=0;k<a;k++){b+=k*field").append(j).append(";}\n")
+        .append("return Collections.singletonList(String.valueOf(a+b));}\n");
+    }
+    return text.append("}\n").toString();
+  }
+}
@@ -25,6 +25,10 @@ public interface GlobalOptions {
   String GENERATE_CLASSPATH_INDEX_OPTION = "generate.classpath.index";
   String COMPILE_PARALLEL_OPTION = "compile.parallel";
   String COMPILE_PARALLEL_MAX_THREADS_OPTION = "compile.parallel.max.threads";
+  String COMPILE_PARALLEL_JAVAC_PARTITIONS_OPTION = "compile.parallel.javac.partitions";
+  String RESOURCES_COPY_MAX_THREADS_OPTION = "resources.copy.max.threads";
+  String USE_MODEL_SNAPSHOT_OPTION = "use.model.snapshot";
   String REBUILD_ON_DEPENDENCY_CHANGE_OPTION = "rebuild.on.dependency.change";
   String LOG_DIR_OPTION = "log.dir";
+  String BUILD_TRACE_FILE_OPTION = "build.trace.file";
 }
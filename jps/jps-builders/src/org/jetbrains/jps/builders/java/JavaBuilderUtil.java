@@ -68,6 +68,7 @@ public class JavaBuilderUtil {
                                        ModuleChunk chunk,
                                        Collection<File> filesToCompile,
                                        Collection<File> successfullyCompiled) throws IOException {
+    final BuildTracer.Span span = BuildTracer.start(context, "Dependency analysis", BuildTracer.CATEGORY_TASK, chunk.getName());
     try {
       boolean additionalPassRequired = false;
 
@@ -186,6 +187,7 @@ public class JavaBuilderUtil {
       throw e;
     }
     finally {
+      span.finish();
       context.processMessage(new ProgressMessage("")); // clean progress messages
     }
   }
@@ -2256,6 +2256,56 @@ public class Mappings {
     }
   }
 
+  /**
+   * @return qualified names (in the internal form, e.g. 'java/util/Map$Entry') of classes produced from the given source file
+   * during the last successful compilation
+   */
+  @NotNull
+  public Set<String> getClassNames(@NotNull final File sourceFile) {
+    synchronized (myLock) {
+      final Collection<ClassRepr> classes = mySourceFileToClasses.get(sourceFile);
+      if (classes == null || classes.isEmpty()) {
+        return Collections.emptySet();
+      }
+      final Set<String> result = new HashSet<String>();
+      for (ClassRepr repr : classes) {
+        result.add(myContext.getValue(repr.name));
+      }
+      return result;
+    }
+  }
+
+  /**
+   * @return source files containing classes which used classes from the given source file according to the last successful compilation
+   */
+  @NotNull
+  public Set<File> getDependentSourceFiles(@NotNull final File sourceFile) {
+    synchronized (myLock) {
+      final Collection<ClassRepr> classes = mySourceFileToClasses.get(sourceFile);
+      if (classes == null || classes.isEmpty()) {
+        return Collections.emptySet();
+      }
+      final Set<File> result = new THashSet<File>(FileUtil.FILE_HASHING_STRATEGY);
+      for (ClassRepr repr : classes) {
+        final TIntHashSet dependants = myClassToClassDependency.get(repr.name);
+        if (dependants != null) {
+          dependants.forEach(new TIntProcedure() {
+            @Override
+            public boolean execute(int depClass) {
+              final File depFile = myClassToSourceFile.get(depClass);
+              if (depFile != null) {
+                result.add(depFile);
+              }
+              return true;
+            }
+          });
+        }
+      }
+      result.remove(sourceFile);
+      return result;
+    }
+  }
+
   public void close() {
     synchronized (myLock) {
       myClassToSubclasses.close();
@@ -58,6 +58,8 @@ import static org.jetbrains.jps.api.CmdlineRemoteProto.Message.ControllerMessage
 final class BuildSession implements Runnable, CanceledStatus {
   private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.cmdline.BuildSession");
   private static final String FS_STATE_FILE = "fs_state.dat";
+  private static final String MODEL_SNAPSHOT_FILE = "model_snapshot.dat";
+  private static final boolean USE_MODEL_SNAPSHOT = Boolean.parseBoolean(System.getProperty(GlobalOptions.USE_MODEL_SNAPSHOT_OPTION, "true"));
   private final UUID mySessionId;
   private final Channel myChannel;
   private volatile boolean myCanceled = false;
@@ -93,7 +95,7 @@ final class BuildSession implements Runnable, CanceledStatus {
       builderParams.put(pair.getKey(), pair.getValue());
     }
     myInitialFSDelta = delta;
-    JpsModelLoaderImpl loader = new JpsModelLoaderImpl(myProjectPath, globalOptionsPath, null);
+    JpsModelLoaderImpl loader = new JpsModelLoaderImpl(myProjectPath, globalOptionsPath, null, getModelSnapshotFile(myProjectPath));
     myForceModelLoading = Boolean.parseBoolean(builderParams.get(BuildParametersKeys.FORCE_MODEL_LOADING));
     myBuildRunner = new BuildRunner(loader, filePaths, builderParams);
   }
@@ -229,6 +231,15 @@ final class BuildSession implements Runnable, CanceledStatus {
     }
   }
 
+  @Nullable
+  private static File getModelSnapshotFile(String projectPath) {
+    if (!USE_MODEL_SNAPSHOT) {
+      return null;
+    }
+    final File dataStorageRoot = Utils.getDataStorageRoot(projectPath);
+    return dataStorageRoot != null ? new File(dataStorageRoot, MODEL_SNAPSHOT_FILE) : null;
+  }
+
   private static boolean scopeContainsModulesOnlyForIncrementalMake(List<TargetTypeBuildScope> scopes) {
     TargetTypeRegistry typeRegistry = null;
     for (TargetTypeBuildScope scope : scopes) {
@@ -16,11 +16,14 @@
 package org.jetbrains.jps.cmdline;
 
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.util.ParameterizedRunnable;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.model.JpsModel;
+import org.jetbrains.jps.model.serialization.JpsConfigFileSnapshot;
 import org.jetbrains.jps.model.serialization.JpsSerializationManager;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -31,18 +34,42 @@ public class JpsModelLoaderImpl implements JpsModelLoader {
   private final String myProjectPath;
   private final String myGlobalOptionsPath;
   private final ParameterizedRunnable<JpsModel> myModelInitializer;
+  @Nullable private final File mySnapshotFile;
 
   public JpsModelLoaderImpl(String projectPath, String globalOptionsPath, @Nullable ParameterizedRunnable<JpsModel> initializer) {
+    this(projectPath, globalOptionsPath, initializer, null);
+  }
+
+  /**
+   * @param snapshotFile file where parsed configuration files are cached between build process runs, see {@link JpsConfigFileSnapshot}
+   */
+  public JpsModelLoaderImpl(String projectPath, String globalOptionsPath, @Nullable ParameterizedRunnable<JpsModel> initializer,
+                            @Nullable File snapshotFile) {
     myProjectPath = projectPath;
     myGlobalOptionsPath = globalOptionsPath;
     myModelInitializer = initializer;
+    mySnapshotFile = snapshotFile;
   }
 
   @Override
   public JpsModel loadModel() throws IOException {
     final long start = System.currentTimeMillis();
     LOG.info("Loading model: project path = " + myProjectPath + ", global options path = " + myGlobalOptionsPath);
-    final JpsModel model = JpsSerializationManager.getInstance().loadModel(myProjectPath, myGlobalOptionsPath);
+    final JpsConfigFileSnapshot snapshot = mySnapshotFile != null ? JpsConfigFileSnapshot.load(mySnapshotFile) : null;
+    if (snapshot != null) {
+      LOG.info("Configuration snapshot read in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    final JpsModel model = JpsSerializationManager.getInstance().loadModel(myProjectPath, myGlobalOptionsPath, snapshot);
+    if (snapshot != null) {
+      LOG.info("Configuration files: " + snapshot.getHitCount() + " taken from snapshot, " + snapshot.getMissCount() + " parsed");
+      try {
+        snapshot.save(mySnapshotFile);
+      }
+      catch (IOException e) {
+        LOG.info("Cannot save configuration snapshot: " + e.getMessage());
+        FileUtil.delete(mySnapshotFile);
+      }
+    }
     if (myModelInitializer != null) {
       myModelInitializer.run(model);
     }
@@ -97,7 +97,13 @@ public class BuildOperations {
       };
       //noinspection unchecked
       BuildOutputConsumerImpl outputConsumer = new BuildOutputConsumerImpl(target, context);
-      ((TargetBuilder<R, T>)builder).build(target, holder, outputConsumer, context);
+      final BuildTracer.Span span = BuildTracer.start(context, builder.getPresentableName(), BuildTracer.CATEGORY_BUILDER, target.getPresentableName());
+      try {
+        ((TargetBuilder<R, T>)builder).build(target, holder, outputConsumer, context);
+      }
+      finally {
+        span.finish();
+      }
       outputConsumer.fireFileGeneratedEvent();
       context.checkCanceled();
     }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileSystemUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.builders.BuildRootDescriptor;
+import org.jetbrains.jps.builders.BuildRootIndex;
+import org.jetbrains.jps.builders.java.FilteredResourceRootDescriptor;
+import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
+import org.jetbrains.jps.builders.java.ResourceRootDescriptor;
+import org.jetbrains.jps.incremental.storage.Timestamps;
+import org.jetbrains.jps.service.SharedThreadPool;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Walks a build root on several pooled threads: every directory is listed (through {@link FSCache}) in a separate task, accepted files
+ * are compared with the stored timestamps right away. The FS state isn't touched during the walk, the caller applies collected
+ * dirty files afterwards in one go.
+ * <p/>
+ * All scans share one bounded executor. Only roots of the java and resources targets are scanned this way: the file filters of other
+ * roots come from plugins and aren't known to be thread-safe, so such roots are traversed serially.
+ */
+class BuildRootScanner {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.BuildRootScanner");
+  private static final int MAX_SCAN_THREADS = Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+  private static final long LOG_THRESHOLD_MS = 1000L;
+  private static final BoundedTaskExecutor ourExecutor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), MAX_SCAN_THREADS);
+
+  private final BuildRootIndex myRootIndex;
+  private final BuildRootDescriptor myRoot;
+  private final Timestamps myTimestamps;
+  private final boolean myForceDirty;
+  private final FSCache myFSCache;
+
+  private final Queue<File> myDirtyFiles = new ConcurrentLinkedQueue<File>();
+  private final Queue<File> myAcceptedFiles = new ConcurrentLinkedQueue<File>();
+  private final AtomicInteger myPendingDirs = new AtomicInteger();
+  private final Object myLock = new Object();
+  private volatile Throwable myError;
+
+  BuildRootScanner(@NotNull BuildRootIndex rootIndex,
+                   @NotNull BuildRootDescriptor root,
+                   @NotNull Timestamps timestamps,
+                   boolean forceDirty,
+                   @NotNull FSCache fsCache) {
+    myRootIndex = rootIndex;
+    myRoot = root;
+    myTimestamps = timestamps;
+    myForceDirty = forceDirty;
+    myFSCache = fsCache;
+  }
+
+  static boolean canScanInParallel(@NotNull BuildRootDescriptor root) {
+    final Class<? extends BuildRootDescriptor> rootClass = root.getClass();
+    return rootClass == JavaSourceRootDescriptor.class || rootClass == ResourceRootDescriptor.class ||
+           rootClass == FilteredResourceRootDescriptor.class;
+  }
+
+  /**
+   * @return files which timestamps differ from the stored ones (or all accepted files if dirty state is forced)
+   */
+  @NotNull
+  Collection<File> getDirtyFiles() {
+    return myDirtyFiles;
+  }
+
+  @NotNull
+  Collection<File> getAcceptedFiles() {
+    return myAcceptedFiles;
+  }
+
+  void scan() throws IOException {
+    final long start = System.currentTimeMillis();
+    final File rootFile = myRoot.getRootFile();
+    // make sure the filter is created on this thread, the pooled threads only use it
+    myRootIndex.getRootFilter(myRoot);
+    final File[] children = myFSCache.getChildren(rootFile);
+    if (children == null) {
+      processFile(rootFile);
+      return;
+    }
+    submitDirectory(rootFile, children);
+    try {
+      synchronized (myLock) {
+        while (myPendingDirs.get() > 0) {
+          myLock.wait();
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Scanning of " + rootFile.getPath() + " was interrupted");
+    }
+    final Throwable error = myError;
+    if (error instanceof IOException) {
+      throw (IOException)error;
+    }
+    if (error instanceof RuntimeException) {
+      throw (RuntimeException)error;
+    }
+    if (error instanceof Error) {
+      throw (Error)error;
+    }
+    final long elapsed = System.currentTimeMillis() - start;
+    if (elapsed > LOG_THRESHOLD_MS || LOG.isDebugEnabled()) {
+      LOG.info("Scanned " + rootFile.getPath() + " in " + elapsed + " ms: " + myAcceptedFiles.size() + " files, " + myDirtyFiles.size() + " dirty");
+    }
+  }
+
+  private void submitDirectory(final File dir, final File[] children) {
+    myPendingDirs.incrementAndGet();
+    ourExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          processDirectory(dir, children);
+        }
+        catch (Throwable e) {
+          if (myError == null) {
+            myError = e;
+          }
+        }
+        finally {
+          if (myPendingDirs.decrementAndGet() == 0) {
+            synchronized (myLock) {
+              myLock.notifyAll();
+            }
+          }
+        }
+      }
+    });
+  }
+
+  private void processDirectory(File dir, File[] children) throws IOException {
+    if (children.length == 0 || myError != null || !myRootIndex.isDirectoryAccepted(dir, myRoot)) {
+      return;
+    }
+    for (File child : children) {
+      final File[] grandChildren = myFSCache.getChildren(child);
+      if (grandChildren != null) {
+        submitDirectory(child, grandChildren);
+      }
+      else {
+        processFile(child);
+      }
+    }
+  }
+
+  private void processFile(File file) throws IOException {
+    if (!myRootIndex.isFileAccepted(file, myRoot)) {
+      return;
+    }
+    if (myForceDirty || myTimestamps.getStamp(file, myRoot.getTarget()) != FileSystemUtil.lastModified(file)) {
+      myDirtyFiles.add(file);
+    }
+    myAcceptedFiles.add(file);
+  }
+}
@@ -0,0 +1,229 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.jps.api.GlobalOptions;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Records durations of build phases (targets, builders, waiting for a free builder thread, storage flushes, etc) and writes them
+ * in Chrome trace event format, so the file can be opened in chrome://tracing.
+ * <p/>
+ * Tracing is enabled by specifying the path of the trace file in the {@link GlobalOptions#BUILD_TRACE_FILE_OPTION} system property;
+ * the file is rewritten after every build. The tracer of a build is kept in its {@link CompileContext}. When tracing is disabled
+ * {@link #start} returns a shared no-op span.
+ */
+public class BuildTracer {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.BuildTracer");
+  public static final String CATEGORY_TARGET = "target";
+  public static final String CATEGORY_BUILDER = "builder";
+  public static final String CATEGORY_WAIT = "wait";
+  public static final String CATEGORY_STORAGE = "storage";
+  public static final String CATEGORY_TASK = "task";
+
+  private static final GlobalContextKey<BuildTracer> TRACER_KEY = GlobalContextKey.create("_build_tracer_");
+
+  private static final Span NO_OP_SPAN = new Span() {
+    @Override
+    public void finish() {
+    }
+  };
+
+  private final File myTraceFile;
+  private final long myStartNanos = System.nanoTime();
+  private final Queue<Event> myEvents = new ConcurrentLinkedQueue<Event>();
+  private final Map<Long, String> myThreadNames = Collections.synchronizedMap(new HashMap<Long, String>());
+
+  public interface Span {
+    void finish();
+  }
+
+  private BuildTracer(@NotNull File traceFile) {
+    myTraceFile = traceFile;
+  }
+
+  public static boolean isEnabled(@NotNull CompileContext context) {
+    return TRACER_KEY.get(context) != null;
+  }
+
+  /**
+   * Starts collecting events for the build of the given context if tracing is enabled
+   */
+  static void buildStarted(@NotNull CompileContext context) {
+    final String path = System.getProperty(GlobalOptions.BUILD_TRACE_FILE_OPTION);
+    if (!StringUtil.isEmptyOrSpaces(path)) {
+      TRACER_KEY.set(context, new BuildTracer(new File(path)));
+    }
+  }
+
+  /**
+   * Writes events collected since {@link #buildStarted} to the trace file
+   */
+  static void buildFinished(@NotNull CompileContext context) {
+    final BuildTracer tracer = TRACER_KEY.get(context);
+    TRACER_KEY.set(context, null);
+    if (tracer != null) {
+      final File file = tracer.myTraceFile;
+      try {
+        tracer.writeTo(file);
+        LOG.info("Build trace with " + tracer.myEvents.size() + " events written to " + file.getAbsolutePath());
+      }
+      catch (IOException e) {
+        LOG.info("Cannot write build trace to " + file.getAbsolutePath() + ": " + e.getMessage());
+      }
+    }
+  }
+
+  @NotNull
+  public static Span start(@NotNull CompileContext context, @NotNull String name, @NotNull String category) {
+    return start(context, name, category, null);
+  }
+
+  /**
+   * @param details shown in the 'args' section of the event, e.g. name of the target the builder is running for
+   */
+  @NotNull
+  public static Span start(@NotNull CompileContext context,
+                           @NotNull final String name,
+                           @NotNull final String category,
+                           @Nullable final String details) {
+    final BuildTracer tracer = TRACER_KEY.get(context);
+    if (tracer == null) {
+      return NO_OP_SPAN;
+    }
+    final long start = System.nanoTime();
+    return new Span() {
+      @Override
+      public void finish() {
+        tracer.addEvent(name, category, details, start, System.nanoTime());
+      }
+    };
+  }
+
+  /**
+   * Records an event which started and finished on the current thread at the given {@link System#nanoTime()} moments
+   */
+  public static void record(@NotNull CompileContext context,
+                            @NotNull String name,
+                            @NotNull String category,
+                            @Nullable String details,
+                            long startNanos,
+                            long endNanos) {
+    final BuildTracer tracer = TRACER_KEY.get(context);
+    if (tracer != null) {
+      tracer.addEvent(name, category, details, startNanos, endNanos);
+    }
+  }
+
+  private void addEvent(String name, String category, @Nullable String details, long startNanos, long endNanos) {
+    final Thread thread = Thread.currentThread();
+    final long threadId = thread.getId();
+    if (!myThreadNames.containsKey(threadId)) {
+      myThreadNames.put(threadId, thread.getName());
+    }
+    myEvents.add(new Event(name, category, details, threadId, startNanos, endNanos));
+  }
+
+  private void writeTo(File file) throws IOException {
+    FileUtil.createParentDirs(file);
+    final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[\n");
+      boolean first = true;
+      synchronized (myThreadNames) {
+        for (Map.Entry<Long, String> entry : myThreadNames.entrySet()) {
+          if (!first) {
+            writer.write(",\n");
+          }
+          first = false;
+          writer.write("{\"ph\":\"M\",\"pid\":1,\"tid\":" + entry.getKey() + ",\"name\":\"thread_name\",\"args\":{\"name\":" + quote(entry.getValue()) + "}}");
+        }
+      }
+      for (Event event : myEvents) {
+        if (!first) {
+          writer.write(",\n");
+        }
+        first = false;
+        writer.write("{\"ph\":\"X\",\"pid\":1,\"tid\":" + event.myThreadId +
+                     ",\"name\":" + quote(event.myName) +
+                     ",\"cat\":" + quote(event.myCategory) +
+                     ",\"ts\":" + toMicros(event.myStartNanos - myStartNanos) +
+                     ",\"dur\":" + toMicros(event.myEndNanos - event.myStartNanos));
+        if (event.myDetails != null) {
+          writer.write(",\"args\":{\"details\":" + quote(event.myDetails) + "}");
+        }
+        writer.write("}");
+      }
+      writer.write("\n]}\n");
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  private static long toMicros(long nanos) {
+    return Math.max(0L, nanos / 1000L);
+  }
+
+  private static String quote(String s) {
+    final StringBuilder builder = new StringBuilder(s.length() + 2);
+    builder.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      final char c = s.charAt(i);
+      switch (c) {
+        case '"': builder.append("\\\""); break;
+        case '\\': builder.append("\\\\"); break;
+        case '\n': builder.append("\\n"); break;
+        case '\r': builder.append("\\r"); break;
+        case '\t': builder.append("\\t"); break;
+        default:
+          if (c < 0x20) {
+            builder.append(String.format("\\u%04x", (int)c));
+          }
+          else {
+            builder.append(c);
+          }
+      }
+    }
+    return builder.append('"').toString();
+  }
+
+  private static class Event {
+    private final String myName;
+    private final String myCategory;
+    @Nullable private final String myDetails;
+    private final long myThreadId;
+    private final long myStartNanos;
+    private final long myEndNanos;
+
+    private Event(String name, String category, @Nullable String details, long threadId, long startNanos, long endNanos) {
+      myName = name;
+      myCategory = category;
+      myDetails = details;
+      myThreadId = threadId;
+      myStartNanos = startNanos;
+      myEndNanos = endNanos;
+    }
+  }
+}
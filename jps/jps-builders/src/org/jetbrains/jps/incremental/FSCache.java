@@ -15,11 +15,10 @@
  */
 package org.jetbrains.jps.incremental;
 
-import gnu.trove.THashMap;
+import com.intellij.util.containers.ConcurrentHashMap;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -38,7 +37,7 @@ public class FSCache {
 
   private static final File[] NULL_VALUE = new File[0];
   private static final File[] EMPTY_FILE_ARRAY = new File[0];
-  private final Map<File, File[]> myMap = Collections.synchronizedMap(new THashMap<File, File[]>());
+  private final Map<File, File[]> myMap = new ConcurrentHashMap<File, File[]>();
 
   @Nullable
   public File[] getChildren(File file) {
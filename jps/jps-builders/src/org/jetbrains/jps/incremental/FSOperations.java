@@ -171,7 +171,32 @@ public class FSOperations {
         context.getProjectDescriptor().fsState.clearRecompile(rd);
       }
       final FSCache fsCache = rd.canUseFileCache() ? context.getProjectDescriptor().getFSCache() : FSCache.NO_CACHE;
-      traverseRecursively(context, rd, rd.getRootFile(), timestamps, forceMarkDirty, currentFiles, filter, fsCache);
+      if (filter == null && BuildRootScanner.canScanInParallel(rd)) {
+        scanInParallel(context, rd, timestamps, forceMarkDirty, currentFiles, fsCache);
+      }
+      else {
+        traverseRecursively(context, rd, rd.getRootFile(), timestamps, forceMarkDirty, currentFiles, filter, fsCache);
+      }
+    }
+  }
+
+  private static void scanInParallel(CompileContext context,
+                                     BuildRootDescriptor rd,
+                                     @NotNull Timestamps tsStorage,
+                                     boolean forceDirty,
+                                     @Nullable Set<File> currentFiles,
+                                     @NotNull FSCache fsCache) throws IOException {
+    final ProjectDescriptor pd = context.getProjectDescriptor();
+    final BuildRootScanner scanner = new BuildRootScanner(pd.getBuildRootIndex(), rd, tsStorage, forceDirty, fsCache);
+    scanner.scan();
+    // if it is full project rebuild, all storages are already completely cleared;
+    // so passing null because there is no need to access the storage to clear non-existing data
+    final Timestamps marker = context.isProjectRebuild() ? null : tsStorage;
+    for (File file : scanner.getDirtyFiles()) {
+      pd.fsState.markDirty(context, file, rd, marker, false);
+    }
+    if (currentFiles != null) {
+      currentFiles.addAll(scanner.getAcceptedFiles());
     }
   }
 
@@ -177,10 +177,11 @@ public class IncProjectBuilder {
     });
     
     startTempDirectoryCleanupTask();
-    
+
     CompileContextImpl context = null;
     try {
       context = createContext(scope);
+      BuildTracer.buildStarted(context);
       runBuild(context, forceCleanCaches);
       myProjectDescriptor.dataManager.saveVersion();
       reportRebuiltModules(context);
@@ -235,6 +236,9 @@ public class IncProjectBuilder {
           waitForTask(status, task);
         }
       }
+      if (context != null) {
+        BuildTracer.buildFinished(context);
+      }
     }
   }
 
@@ -337,7 +341,13 @@ public class IncProjectBuilder {
       }
 
       context.processMessage(new ProgressMessage("Running 'before' tasks"));
-      runTasks(context, myBuilderRegistry.getBeforeTasks());
+      final BuildTracer.Span beforeTasksSpan = BuildTracer.start(context, "'before' tasks", BuildTracer.CATEGORY_TASK);
+      try {
+        runTasks(context, myBuilderRegistry.getBeforeTasks());
+      }
+      finally {
+        beforeTasksSpan.finish();
+      }
       TimingLog.LOG.debug("'before' tasks finished");
 
       context.processMessage(new ProgressMessage("Checking sources"));
@@ -345,7 +355,13 @@ public class IncProjectBuilder {
       TimingLog.LOG.debug("Building targets finished");
 
       context.processMessage(new ProgressMessage("Running 'after' tasks"));
-      runTasks(context, myBuilderRegistry.getAfterTasks());
+      final BuildTracer.Span afterTasksSpan = BuildTracer.start(context, "'after' tasks", BuildTracer.CATEGORY_TASK);
+      try {
+        runTasks(context, myBuilderRegistry.getAfterTasks());
+      }
+      finally {
+        afterTasksSpan.finish();
+      }
       TimingLog.LOG.debug("'after' tasks finished");
     }
     finally {
@@ -584,8 +600,14 @@ public class IncProjectBuilder {
           }
           finally {
             context.updateCompilationStartStamp();
-            pd.dataManager.closeSourceToOutputStorages(Collections.singleton(chunk));
-            pd.dataManager.flush(true);
+            final BuildTracer.Span flushSpan = BuildTracer.start(context, "Flushing storages", BuildTracer.CATEGORY_STORAGE, chunk.toString());
+            try {
+              pd.dataManager.closeSourceToOutputStorages(Collections.singleton(chunk));
+              pd.dataManager.flush(true);
+            }
+            finally {
+              flushSpan.finish();
+            }
           }
         }
       }
@@ -720,9 +742,11 @@ public class IncProjectBuilder {
 
     private void queueTask(final BuildChunkTask task) {
       final CompileContext chunkLocalContext = createContextWrapper(myContext);
+      final long queuedAt = System.nanoTime();
       myParallelBuildExecutor.execute(new Runnable() {
         @Override
         public void run() {
+          BuildTracer.record(myContext, "Waiting for builder thread", BuildTracer.CATEGORY_WAIT, task.getChunk().toString(), queuedAt, System.nanoTime());
           try {
             try {
               if (myException.get() == null) {
@@ -731,8 +755,15 @@ public class IncProjectBuilder {
             }
             finally {
               myContext.updateCompilationStartStamp();
-              myProjectDescriptor.dataManager.closeSourceToOutputStorages(Collections.singletonList(task.getChunk()));
-              myProjectDescriptor.dataManager.flush(true);
+              final BuildTracer.Span flushSpan =
+                BuildTracer.start(myContext, "Flushing storages", BuildTracer.CATEGORY_STORAGE, task.getChunk().toString());
+              try {
+                myProjectDescriptor.dataManager.closeSourceToOutputStorages(Collections.singletonList(task.getChunk()));
+                myProjectDescriptor.dataManager.flush(true);
+              }
+              finally {
+                flushSpan.finish();
+              }
             }
           }
           catch (Throwable e) {
@@ -830,12 +861,19 @@ public class IncProjectBuilder {
 
   private void buildTargetsChunk(CompileContext context, final BuildTargetChunk chunk) throws ProjectBuildException {
     boolean doneSomething;
+    final BuildTracer.Span chunkSpan = BuildTracer.start(context, chunk.toString(), BuildTracer.CATEGORY_TARGET);
     try {
       sendBuildingTargetMessages(chunk.getTargets(), BuildingTargetProgressMessage.Event.STARTED);
       Utils.ERRORS_DETECTED_KEY.set(context, Boolean.FALSE);
 
-      for (BuildTarget<?> target : chunk.getTargets()) {
-        BuildOperations.ensureFSStateInitialized(context, target);
+      final BuildTracer.Span scanSpan = BuildTracer.start(context, "Checking sources", BuildTracer.CATEGORY_TASK, chunk.toString());
+      try {
+        for (BuildTarget<?> target : chunk.getTargets()) {
+          BuildOperations.ensureFSStateInitialized(context, target);
+        }
+      }
+      finally {
+        scanSpan.finish();
       }
 
       doneSomething = processDeletedPaths(context, chunk.getTargets());
@@ -888,6 +926,7 @@ public class IncProjectBuilder {
         Utils.REMOVED_SOURCES_KEY.set(context, null);
       }
       sendBuildingTargetMessages(chunk.getTargets(), BuildingTargetProgressMessage.Event.FINISHED);
+      chunkSpan.finish();
     }
   }
 
@@ -1083,7 +1122,14 @@ public class IncProjectBuilder {
 
           for (ModuleLevelBuilder builder : builders) {
             processDeletedPaths(context, chunk.getTargets());
-            final ModuleLevelBuilder.ExitCode buildResult = builder.build(context, chunk, dirtyFilesHolder, outputConsumer);
+            final BuildTracer.Span builderSpan = BuildTracer.start(context, builder.getPresentableName(), BuildTracer.CATEGORY_BUILDER, chunk.getName());
+            final ModuleLevelBuilder.ExitCode buildResult;
+            try {
+              buildResult = builder.build(context, chunk, dirtyFilesHolder, outputConsumer);
+            }
+            finally {
+              builderSpan.finish();
+            }
 
             doneSomething |= (buildResult != ModuleLevelBuilder.ExitCode.NOTHING_DONE);
 
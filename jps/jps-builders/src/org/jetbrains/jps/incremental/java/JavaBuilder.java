@@ -24,6 +24,7 @@ import com.intellij.openapi.util.SystemInfo;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.SystemProperties;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.concurrency.SequentialTaskExecutor;
 import com.intellij.util.io.PersistentEnumeratorBase;
 import gnu.trove.THashMap;
@@ -59,13 +60,17 @@ import org.jetbrains.jps.model.library.sdk.JpsSdk;
 import org.jetbrains.jps.model.module.JpsModule;
 import org.jetbrains.jps.model.module.JpsModuleType;
 import org.jetbrains.jps.service.JpsServiceManager;
+import org.jetbrains.jps.service.SharedThreadPool;
 
 import javax.tools.Diagnostic;
 import javax.tools.JavaFileObject;
 import java.io.*;
 import java.net.ServerSocket;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -373,13 +378,27 @@ public class JavaBuilder extends ModuleLevelBuilder {
     if (LOG.isDebugEnabled()) {
       LOG.debug("Compiling chunk [" + chunk.getName() + "] with options: \"" + StringUtil.join(options, " ") + "\"");
     }
+    final BuildTracer.Span javacSpan = BuildTracer.start(context, "javac", BuildTracer.CATEGORY_BUILDER, chunk.getName());
     try {
       final boolean rc;
       if (USE_EMBEDDED_JAVAC) {
         final boolean useEclipse = useEclipseCompiler(context);
-        rc = JavacMain.compile(
-          options, files, classpath, platformCp, sourcePath, outs, diagnosticSink, classesConsumer, context.getCancelStatus(), useEclipse
-        );
+        final boolean canSplit = !useEclipse && (profile == null || !profile.isEnabled()) && JavaSourcePartitioner.isEnabled();
+        final List<Collection<File>> partitions = canSplit?
+          JavaSourcePartitioner.partition(files, context.getProjectDescriptor().dataManager.getMappings()) :
+          Collections.<Collection<File>>singletonList(files);
+        if (partitions.size() > 1 &&
+            compilePartitions(context, chunk, partitions, options, classpath, platformCp, sourcePath, outs, diagnosticSink, classesConsumer)) {
+          rc = true;
+        }
+        else if (context.getCancelStatus().isCanceled()) {
+          rc = false;
+        }
+        else {
+          rc = JavacMain.compile(
+            options, files, classpath, platformCp, sourcePath, outs, diagnosticSink, classesConsumer, context.getCancelStatus(), useEclipse
+          );
+        }
       }
       else {
         final JavacServerClient client = ensureJavacServerLaunched(context);
@@ -396,10 +415,106 @@ public class JavaBuilder extends ModuleLevelBuilder {
       return rc;
     }
     finally {
-      counter.await();
+      final BuildTracer.Span waitSpan = BuildTracer.start(context, "Waiting for class processing", BuildTracer.CATEGORY_WAIT, chunk.getName());
+      try {
+        counter.await();
+      }
+      finally {
+        waitSpan.finish();
+        javacSpan.finish();
+      }
     }
   }
 
+  /**
+   * Compiles independent groups of files by parallel javac invocations. Diagnostics and generated files of all groups are held back
+   * until every group is compiled without errors and the generated classes confirm that no group depends on another one; only then
+   * they are reported, saved and registered. Otherwise nothing is kept and the caller is expected to compile all files again
+   * in a single invocation.
+   * @return true if all groups were compiled without errors and their outputs were passed to the consumer
+   */
+  private static boolean compilePartitions(final CompileContext context,
+                                           ModuleChunk chunk,
+                                           List<Collection<File>> partitions,
+                                           final List<String> options,
+                                           final Collection<File> classpath,
+                                           final Collection<File> platformCp,
+                                           final Collection<File> sourcePath,
+                                           final Map<File, Set<File>> outs,
+                                           DiagnosticOutputConsumer diagnosticSink,
+                                           final OutputFileConsumer classesConsumer) throws InterruptedException {
+    final BoundedTaskExecutor executor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), partitions.size());
+    final List<BufferingDiagnosticConsumer> consumers = new ArrayList<BufferingDiagnosticConsumer>(partitions.size());
+    final List<List<OutputFileObject>> outputs = new ArrayList<List<OutputFileObject>>(partitions.size());
+    final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(partitions.size());
+    for (int i = 0; i < partitions.size(); i++) {
+      final Collection<File> partition = partitions.get(i);
+      final BufferingDiagnosticConsumer consumer = new BufferingDiagnosticConsumer(diagnosticSink);
+      final List<OutputFileObject> partitionOutputs = Collections.synchronizedList(new ArrayList<OutputFileObject>());
+      outputs.add(partitionOutputs);
+      final String spanDetails = chunk.getName() + " (" + partition.size() + " files)";
+      consumers.add(consumer);
+      futures.add(executor.submit(new Callable<Boolean>() {
+        @Override
+        public Boolean call() throws Exception {
+          final BuildTracer.Span span = BuildTracer.start(context, "javac partition", BuildTracer.CATEGORY_BUILDER, spanDetails);
+          try {
+            return JavacMain.compile(
+              options, partition, classpath, platformCp, sourcePath, outs, consumer, new OutputFileConsumer() {
+                @Override
+                public void save(@NotNull OutputFileObject fileObject) {
+                  partitionOutputs.add(fileObject);
+                }
+              }, context.getCancelStatus(), false
+            );
+          }
+          finally {
+            span.finish();
+          }
+        }
+      }));
+    }
+
+    boolean success = true;
+    for (Future<Boolean> future : futures) {
+      try {
+        success &= future.get().booleanValue();
+      }
+      catch (ExecutionException e) {
+        LOG.info("Compilation of a group of files failed", e.getCause());
+        success = false;
+      }
+    }
+    for (BufferingDiagnosticConsumer consumer : consumers) {
+      success &= !consumer.hasErrors();
+    }
+
+    if (success) {
+      final String dependency = JavaSourcePartitioner.findDependencyBetweenPartitions(
+        partitions, outputs, context.getProjectDescriptor().dataManager.getMappings()
+      );
+      if (dependency != null) {
+        LOG.info("Groups of files from " + chunk.getName() + " turned out to be dependent: " + dependency);
+        success = false;
+      }
+    }
+
+    if (success) {
+      for (BufferingDiagnosticConsumer consumer : consumers) {
+        consumer.flush();
+      }
+      for (List<OutputFileObject> partitionOutputs : outputs) {
+        for (OutputFileObject fileObject : partitionOutputs) {
+          classesConsumer.save(fileObject);
+        }
+      }
+    }
+    else if (!context.getCancelStatus().isCanceled()) {
+      LOG.info("Compilation of independent groups of files from " + chunk.getName() + " failed, compiling all files together");
+    }
+    return success;
+  }
+
   private static boolean useEclipseCompiler(CompileContext context) {
     JpsProject project = context.getProjectDescriptor().getProject();
     final JpsJavaCompilerConfiguration configuration = JpsJavaExtensionService.getInstance().getCompilerConfiguration(project);
@@ -785,6 +900,67 @@ public class JavaBuilder extends ModuleLevelBuilder {
     return map;
   }
 
+  private static class BufferingDiagnosticConsumer implements DiagnosticOutputConsumer {
+    private final DiagnosticOutputConsumer myDelegate;
+    private final List<Object> myMessages = Collections.synchronizedList(new ArrayList<Object>());
+    private volatile boolean myHasErrors;
+
+    private BufferingDiagnosticConsumer(DiagnosticOutputConsumer delegate) {
+      myDelegate = delegate;
+    }
+
+    public boolean hasErrors() {
+      return myHasErrors;
+    }
+
+    public void flush() {
+      synchronized (myMessages) {
+        for (Object message : myMessages) {
+          if (message instanceof String) {
+            myDelegate.outputLineAvailable((String)message);
+          }
+          else if (message instanceof Runnable) {
+            ((Runnable)message).run();
+          }
+          else {
+            //noinspection unchecked
+            myDelegate.report((Diagnostic<? extends JavaFileObject>)message);
+          }
+        }
+        myMessages.clear();
+      }
+    }
+
+    public void outputLineAvailable(String line) {
+      myMessages.add(line);
+    }
+
+    public void registerImports(final String className, final Collection<String> imports, final Collection<String> staticImports) {
+      myMessages.add(new Runnable() {
+        @Override
+        public void run() {
+          myDelegate.registerImports(className, imports, staticImports);
+        }
+      });
+    }
+
+    public void javaFileLoaded(final File file) {
+      myMessages.add(new Runnable() {
+        @Override
+        public void run() {
+          myDelegate.javaFileLoaded(file);
+        }
+      });
+    }
+
+    public void report(Diagnostic<? extends JavaFileObject> diagnostic) {
+      if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+        myHasErrors = true;
+      }
+      myMessages.add(diagnostic);
+    }
+  }
+
   private static class DiagnosticSink implements DiagnosticOutputConsumer {
     private final CompileContext myContext;
     private volatile int myErrorCount = 0;
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.THashMap;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.asm4.ClassReader;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.java.dependencyView.Mappings;
+import org.jetbrains.jps.incremental.BinaryContent;
+import org.jetbrains.jps.javac.OutputFileObject;
+
+import javax.tools.JavaFileObject;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Splits sources of a chunk into groups which don't reference each other, so every group can be compiled by a separate javac
+ * invocation against the classes of other groups produced by the previous build.
+ * <p/>
+ * Two files are put into the same group if the dependency graph from the previous compilation says one of them used a class
+ * from the other, or if a simple name of a class declared in one of them occurs in the text of the other (this covers new files
+ * and newly added references). Files are split only if {@link GlobalOptions#COMPILE_PARALLEL_JAVAC_PARTITIONS_OPTION} is greater than 1.
+ * <p/>
+ * The grouping is only a guess: a file may use a class without naming it, e.g. through the return type of a method of a class which
+ * isn't compiled. So the classes produced for the groups are checked by {@link #findDependencyBetweenPartitions} against the classes
+ * they actually refer to, and are thrown away if some group turns out to depend on another one.
+ */
+class JavaSourcePartitioner {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.java.JavaSourcePartitioner");
+  /**
+   * Splitting small sets of files doesn't pay off: every javac invocation has to load the classpath again
+   */
+  private static final int MIN_PARTITION_SIZE = 50;
+  private static final int CONSTANT_UTF8 = 1;
+
+  private final List<File> myFiles;
+  private final Map<File, Integer> myFileIndices = new THashMap<File, Integer>(FileUtil.FILE_HASHING_STRATEGY);
+  private final int[] myParents;
+
+  private JavaSourcePartitioner(Collection<File> files) {
+    myFiles = new ArrayList<File>(files);
+    myParents = new int[myFiles.size()];
+    for (int i = 0; i < myParents.length; i++) {
+      myParents[i] = i;
+      myFileIndices.put(myFiles.get(i), i);
+    }
+  }
+
+  static boolean isEnabled() {
+    return getMaxPartitions() > 1;
+  }
+
+  private static int getMaxPartitions() {
+    int partitions = 1;
+    try {
+      partitions = Integer.parseInt(System.getProperty(GlobalOptions.COMPILE_PARALLEL_JAVAC_PARTITIONS_OPTION, "1"));
+    }
+    catch (NumberFormatException ignored) {
+    }
+    return Math.max(1, partitions);
+  }
+
+  /**
+   * @return groups of files which can be compiled independently; a single group containing all files if they cannot be split
+   */
+  @NotNull
+  static List<Collection<File>> partition(@NotNull Collection<File> files, @NotNull Mappings mappings) {
+    final int maxPartitions = Math.min(getMaxPartitions(), files.size() / MIN_PARTITION_SIZE);
+    if (maxPartitions < 2) {
+      return Collections.singletonList(files);
+    }
+    final long start = System.currentTimeMillis();
+    final JavaSourcePartitioner partitioner = new JavaSourcePartitioner(files);
+    try {
+      partitioner.addKnownDependencies(mappings);
+      partitioner.addNameReferences(mappings);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot split sources into independent groups: " + e.getMessage());
+      return Collections.singletonList(files);
+    }
+    final List<Collection<File>> result = partitioner.pack(maxPartitions);
+    if (LOG.isDebugEnabled() || result.size() > 1) {
+      LOG.info(files.size() + " files split into " + result.size() + " independent groups in " + (System.currentTimeMillis() - start) + " ms");
+    }
+    return result;
+  }
+
+  /**
+   * Checks the files generated by separate compilation of the partitions against the classes they refer to in their bytecode.
+   * A partition depends on another one if javac generated a class for a source file from another partition (it compiles sources
+   * it needs implicitly), or if a generated class refers to a class declared in a file of another partition.
+   * @return description of the first found dependency, or null if the partitions are independent
+   */
+  @Nullable
+  static String findDependencyBetweenPartitions(@NotNull List<Collection<File>> partitions,
+                                                @NotNull List<? extends Collection<OutputFileObject>> outputs,
+                                                @NotNull Mappings mappings) {
+    final Map<File, Integer> fileToPartition = new THashMap<File, Integer>(FileUtil.FILE_HASHING_STRATEGY);
+    final Map<String, Integer> classToPartition = new HashMap<String, Integer>();
+    for (int i = 0; i < partitions.size(); i++) {
+      for (File file : partitions.get(i)) {
+        fileToPartition.put(file, i);
+        for (String className : mappings.getClassNames(file)) {
+          classToPartition.put(className, i);
+        }
+      }
+    }
+
+    final List<List<ClassReader>> readers = new ArrayList<List<ClassReader>>(outputs.size());
+    for (int i = 0; i < outputs.size(); i++) {
+      final List<ClassReader> partitionReaders = new ArrayList<ClassReader>();
+      readers.add(partitionReaders);
+      for (OutputFileObject output : outputs.get(i)) {
+        final File source = output.getSourceFile();
+        final Integer partition = source != null ? fileToPartition.get(source) : null;
+        if (partition == null || partition.intValue() != i) {
+          return output.getFile().getPath() + " was generated from " + source;
+        }
+        final BinaryContent content = output.getContent();
+        if (output.getKind() == JavaFileObject.Kind.CLASS && content != null) {
+          final ClassReader reader = new ClassReader(content.getBuffer(), content.getOffset(), content.getLength());
+          classToPartition.put(reader.getClassName(), i);
+          partitionReaders.add(reader);
+        }
+      }
+    }
+
+    for (int i = 0; i < readers.size(); i++) {
+      for (ClassReader reader : readers.get(i)) {
+        for (String name : getReferencedNames(reader)) {
+          final Integer partition = classToPartition.get(name);
+          if (partition != null && partition.intValue() != i) {
+            return reader.getClassName() + " refers to " + name;
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return internal names of classes mentioned in the constant pool of the class: in class references as well as in descriptors
+   * and generic signatures
+   */
+  private static Set<String> getReferencedNames(ClassReader reader) {
+    final Set<String> result = new HashSet<String>();
+    for (int i = 1; i < reader.getItemCount(); i++) {
+      final int index = reader.getItem(i);
+      if (index <= 0 || reader.b[index - 1] != CONSTANT_UTF8) {
+        continue;
+      }
+      final String value;
+      try {
+        value = new DataInputStream(new ByteArrayInputStream(reader.b, index, reader.b.length - index)).readUTF();
+      }
+      catch (IOException e) {
+        continue;
+      }
+      result.add(value);
+      final StringTokenizer tokenizer = new StringTokenizer(value, ";<>()[:^*+-.");
+      while (tokenizer.hasMoreTokens()) {
+        final String token = tokenizer.nextToken();
+        if (token.length() > 1 && token.charAt(0) == 'L') {
+          result.add(token.substring(1));
+        }
+      }
+    }
+    return result;
+  }
+
+  private void addKnownDependencies(Mappings mappings) {
+    for (int i = 0; i < myFiles.size(); i++) {
+      for (File dependent : mappings.getDependentSourceFiles(myFiles.get(i))) {
+        final Integer index = myFileIndices.get(dependent);
+        if (index != null) {
+          union(i, index.intValue());
+        }
+      }
+    }
+  }
+
+  private void addNameReferences(Mappings mappings) throws IOException {
+    final Map<String, TIntArrayList> declarations = new HashMap<String, TIntArrayList>();
+    for (int i = 0; i < myFiles.size(); i++) {
+      final File file = myFiles.get(i);
+      addDeclaration(declarations, FileUtil.getNameWithoutExtension(file.getName()), i);
+      for (String className : mappings.getClassNames(file)) {
+        final String shortName = className.substring(className.lastIndexOf('/') + 1);
+        for (String part : shortName.split("\\$")) {
+          addDeclaration(declarations, part, i);
+        }
+      }
+    }
+
+    for (int i = 0; i < myFiles.size(); i++) {
+      // the encoding doesn't matter here: a non-ASCII byte is treated as a part of an identifier, so a mismatch can only add a dependency
+      final byte[] text = FileUtil.loadFileBytes(myFiles.get(i));
+      int identifierStart = -1;
+      for (int pos = 0; pos <= text.length; pos++) {
+        final boolean identifierPart = pos < text.length && isIdentifierPart(text[pos]);
+        if (identifierPart) {
+          if (identifierStart < 0) {
+            identifierStart = pos;
+          }
+        }
+        else if (identifierStart >= 0) {
+          final TIntArrayList declaringFiles = declarations.get(new String(text, identifierStart, pos - identifierStart, "ISO-8859-1"));
+          if (declaringFiles != null) {
+            for (int j = 0; j < declaringFiles.size(); j++) {
+              union(i, declaringFiles.get(j));
+            }
+          }
+          identifierStart = -1;
+        }
+      }
+    }
+  }
+
+  private static void addDeclaration(Map<String, TIntArrayList> declarations, String name, int fileIndex) {
+    if (name.length() == 0 || Character.isDigit(name.charAt(0))) {
+      return; // anonymous and local classes cannot be referenced by name from other files
+    }
+    TIntArrayList files = declarations.get(name);
+    if (files == null) {
+      files = new TIntArrayList(1);
+      declarations.put(name, files);
+    }
+    if (files.isEmpty() || files.get(files.size() - 1) != fileIndex) {
+      files.add(fileIndex);
+    }
+  }
+
+  private static boolean isIdentifierPart(byte b) {
+    return b < 0 || Character.isJavaIdentifierPart((char)b);
+  }
+
+  /**
+   * Distributes connected groups of files between at most {@code maxPartitions} partitions, largest groups first
+   */
+  private List<Collection<File>> pack(int maxPartitions) {
+    final Map<Integer, List<File>> components = new HashMap<Integer, List<File>>();
+    for (int i = 0; i < myFiles.size(); i++) {
+      final Integer root = find(i);
+      List<File> component = components.get(root);
+      if (component == null) {
+        component = new ArrayList<File>();
+        components.put(root, component);
+      }
+      component.add(myFiles.get(i));
+    }
+    if (components.size() < 2) {
+      return Collections.<Collection<File>>singletonList(myFiles);
+    }
+
+    final List<List<File>> sorted = new ArrayList<List<File>>(components.values());
+    Collections.sort(sorted, new Comparator<List<File>>() {
+      @Override
+      public int compare(List<File> o1, List<File> o2) {
+        return o2.size() - o1.size();
+      }
+    });
+    final int partitionCount = Math.min(maxPartitions, sorted.size());
+    final List<List<File>> partitions = new ArrayList<List<File>>(partitionCount);
+    for (int i = 0; i < partitionCount; i++) {
+      partitions.add(new ArrayList<File>());
+    }
+    for (List<File> component : sorted) {
+      List<File> smallest = partitions.get(0);
+      for (List<File> partition : partitions) {
+        if (partition.size() < smallest.size()) {
+          smallest = partition;
+        }
+      }
+      smallest.addAll(component);
+    }
+
+    final List<Collection<File>> result = new ArrayList<Collection<File>>(partitionCount);
+    for (List<File> partition : partitions) {
+      if (partition.size() >= MIN_PARTITION_SIZE || result.isEmpty()) {
+        result.add(partition);
+      }
+      else {
+        // too small to be compiled separately, merge it into the previous one
+        ((List<File>)result.get(result.size() - 1)).addAll(partition);
+      }
+    }
+    return result;
+  }
+
+  private int find(int index) {
+    int root = index;
+    while (myParents[root] != root) {
+      root = myParents[root];
+    }
+    while (myParents[index] != root) {
+      final int next = myParents[index];
+      myParents[index] = root;
+      index = next;
+    }
+    return root;
+  }
+
+  private void union(int index1, int index2) {
+    final int root1 = find(index1);
+    final int root2 = find(index2);
+    if (root1 != root2) {
+      myParents[root1] = root2;
+    }
+  }
+}
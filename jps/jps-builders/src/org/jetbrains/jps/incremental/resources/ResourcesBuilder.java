@@ -18,6 +18,7 @@ package org.jetbrains.jps.incremental.resources;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.jps.builders.BuildOutputConsumer;
 import org.jetbrains.jps.builders.DirtyFilesHolder;
 import org.jetbrains.jps.builders.FileProcessor;
@@ -26,6 +27,7 @@ import org.jetbrains.jps.builders.java.ResourcesTargetType;
 import org.jetbrains.jps.incremental.CompileContext;
 import org.jetbrains.jps.incremental.ProjectBuildException;
 import org.jetbrains.jps.incremental.ResourcesTarget;
+import org.jetbrains.jps.incremental.StopBuildException;
 import org.jetbrains.jps.incremental.TargetBuilder;
 import org.jetbrains.jps.incremental.messages.BuildMessage;
 import org.jetbrains.jps.incremental.messages.CompilerMessage;
@@ -64,6 +66,7 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
     }
 
     try {
+      final ResourcesCopier copier = new ResourcesCopier();
       holder.processDirtyFiles(new FileProcessor<ResourceRootDescriptor, ResourcesTarget>() {
         private final Map<ResourceRootDescriptor, Boolean> mySkippedRoots = new HashMap<ResourceRootDescriptor, Boolean>();
         public boolean apply(ResourcesTarget target, final File file, final ResourceRootDescriptor sourceRoot) throws IOException {
@@ -76,23 +79,47 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
           if (isSkipped.booleanValue()) {
             return true;
           }
-          try {
-            copyResource(context, sourceRoot, file, outputConsumer);
+          final File targetFile = getTargetFile(sourceRoot, file);
+          if (targetFile != null) {
+            copier.add(file, targetFile);
           }
-          catch (IOException e) {
+          return !context.getCancelStatus().isCanceled();
+        }
+      });
+
+      context.checkCanceled();
+
+      if (!copier.isEmpty()) {
+        context.processMessage(new ProgressMessage("Copying resources... [" + target.getModule().getName() + "]"));
+        final boolean completed = copier.copyAll(context.getCancelStatus(), new ResourcesCopier.ResultProcessor() {
+          @Override
+          public boolean fileCopied(File source, File outputFile) {
+            try {
+              outputConsumer.registerOutputFile(outputFile, Collections.singletonList(source.getPath()));
+            }
+            catch (Exception e) {
+              context.processMessage(new CompilerMessage(BUILDER_NAME, e));
+            }
+            return true;
+          }
+
+          @Override
+          public boolean copyFailed(File source, IOException e) {
             LOG.info(e);
             context.processMessage(
               new CompilerMessage(
-                "resources", BuildMessage.Kind.ERROR, e.getMessage(), FileUtil.toSystemIndependentName(file.getPath())
+                "resources", BuildMessage.Kind.ERROR, e.getMessage(), FileUtil.toSystemIndependentName(source.getPath())
               )
             );
             return false;
           }
-          return !context.getCancelStatus().isCanceled();
+        });
+        context.checkCanceled();
+        if (!completed) {
+          // the failure has been reported already
+          throw new StopBuildException();
         }
-      });
-
-      context.checkCanceled();
+      }
 
       context.processMessage(new ProgressMessage(""));
     }
@@ -115,10 +142,11 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
     return true;
   }
 
-  private static void copyResource(CompileContext context, ResourceRootDescriptor rd, File file, BuildOutputConsumer outputConsumer) throws IOException {
+  @Nullable
+  private static File getTargetFile(ResourceRootDescriptor rd, File file) {
     final File outputRoot = rd.getTarget().getOutputDir();
     if (outputRoot == null) {
-      return;
+      return null;
     }
     final String sourceRootPath = FileUtil.toSystemIndependentName(rd.getRootFile().getAbsolutePath());
     final String relativePath = FileUtil.getRelativePath(sourceRootPath, FileUtil.toSystemIndependentName(file.getPath()), '/');
@@ -130,18 +158,7 @@ public class ResourcesBuilder extends TargetBuilder<ResourceRootDescriptor, Reso
       targetPath.append('/').append(prefix.replace('.', '/'));
     }
     targetPath.append('/').append(relativePath);
-
-    context.processMessage(new ProgressMessage("Copying resources... [" + rd.getTarget().getModule().getName() + "]"));
-
-    final String outputPath = targetPath.toString();
-    final File targetFile = new File(outputPath);
-    FileUtil.copyContent(file, targetFile);
-    try {
-      outputConsumer.registerOutputFile(targetFile, Collections.singletonList(file.getPath()));
-    }
-    catch (Exception e) {
-      context.processMessage(new CompilerMessage(BUILDER_NAME, e));
-    }
+    return new File(targetPath.toString());
   }
 
   @NotNull
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.resources;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
+import gnu.trove.THashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.jps.api.CanceledStatus;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.service.SharedThreadPool;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Copies a batch of resource files on a bounded number of pooled threads.
+ * Files are transferred channel-to-channel; a file is not rewritten if the destination already has the same size and content.
+ */
+class ResourcesCopier {
+  private static final Logger LOG = Logger.getInstance("#org.jetbrains.jps.incremental.resources.ResourcesCopier");
+  private static final int MAX_COPY_THREADS;
+  static {
+    int maxThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    try {
+      maxThreads = Integer.parseInt(System.getProperty(GlobalOptions.RESOURCES_COPY_MAX_THREADS_OPTION, Integer.toString(maxThreads)));
+    }
+    catch (NumberFormatException ignored) {
+    }
+    MAX_COPY_THREADS = Math.max(1, maxThreads);
+  }
+  private static final int COMPARE_BUFFER_SIZE = 64 * 1024;
+
+  private final List<CopyTask> myTasks = new ArrayList<CopyTask>();
+
+  public void add(@NotNull File source, @NotNull File target) {
+    myTasks.add(new CopyTask(source, target));
+  }
+
+  public boolean isEmpty() {
+    return myTasks.isEmpty();
+  }
+
+  /**
+   * Copies all queued files. Files with the same destination are copied one after another, in the order they were added.
+   * Results are reported to the processor on the calling thread, in the order the files were added. Once the processor requests
+   * to stop or the build is canceled, files that haven't been started are skipped, but every file that has already been copied
+   * is still reported.
+   * @return false if the processor requested to stop
+   */
+  public boolean copyAll(@NotNull final CanceledStatus cancelStatus, @NotNull ResultProcessor processor) throws InterruptedException {
+    final long start = System.currentTimeMillis();
+    final AtomicBoolean stopped = new AtomicBoolean(false);
+    final BoundedTaskExecutor executor = new BoundedTaskExecutor(SharedThreadPool.getInstance(), MAX_COPY_THREADS);
+    final Map<CopyTask, Future<?>> futures = new HashMap<CopyTask, Future<?>>();
+    for (final List<CopyTask> group : groupByTarget(myTasks)) {
+      final Future<?> future = executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          for (CopyTask task : group) {
+            if (stopped.get() || cancelStatus.isCanceled()) {
+              break;
+            }
+            task.run();
+          }
+        }
+      });
+      for (CopyTask task : group) {
+        futures.put(task, future);
+      }
+    }
+
+    long bytesCopied = 0L;
+    int filesCopied = 0;
+    int filesSkipped = 0;
+    boolean proceed = true;
+    for (CopyTask task : myTasks) {
+      try {
+        futures.get(task).get();
+      }
+      catch (ExecutionException e) {
+        LOG.error(e);
+      }
+      if (task.myState == CopyTask.NOT_STARTED) {
+        continue;
+      }
+      if (task.myState == CopyTask.COPIED) {
+        filesCopied++;
+        bytesCopied += task.myBytes;
+      }
+      else if (task.myState == CopyTask.UP_TO_DATE) {
+        filesSkipped++;
+      }
+      final boolean result = task.myError != null ? processor.copyFailed(task.mySource, task.myError)
+                                                  : processor.fileCopied(task.mySource, task.myTarget);
+      if (!result && proceed) {
+        proceed = false;
+        stopped.set(true);
+      }
+    }
+
+    if (LOG.isDebugEnabled() || myTasks.size() > 1000) {
+      final long elapsed = Math.max(1L, System.currentTimeMillis() - start);
+      LOG.info("Resources: " + filesCopied + " files copied (" + bytesCopied + " bytes, " + (bytesCopied * 1000L / elapsed) + " bytes/sec), " +
+               filesSkipped + " files up-to-date, " + elapsed + " ms, " + MAX_COPY_THREADS + " threads");
+    }
+    return proceed;
+  }
+
+  private static Collection<List<CopyTask>> groupByTarget(List<CopyTask> tasks) {
+    final Map<File, List<CopyTask>> groups = new THashMap<File, List<CopyTask>>(FileUtil.FILE_HASHING_STRATEGY);
+    final List<List<CopyTask>> result = new ArrayList<List<CopyTask>>();
+    for (CopyTask task : tasks) {
+      List<CopyTask> group = groups.get(task.myTarget);
+      if (group == null) {
+        group = new ArrayList<CopyTask>(1);
+        groups.put(task.myTarget, group);
+        result.add(group);
+      }
+      group.add(task);
+    }
+    return result;
+  }
+
+  public interface ResultProcessor {
+    boolean fileCopied(File source, File target);
+
+    boolean copyFailed(File source, IOException e);
+  }
+
+  private static class CopyTask {
+    static final int NOT_STARTED = 0;
+    static final int COPIED = 1;
+    static final int UP_TO_DATE = 2;
+    static final int FAILED = 3;
+
+    final File mySource;
+    final File myTarget;
+    volatile int myState = NOT_STARTED;
+    volatile long myBytes;
+    volatile IOException myError;
+
+    CopyTask(File source, File target) {
+      mySource = source;
+      myTarget = target;
+    }
+
+    void run() {
+      try {
+        myState = perform() ? COPIED : UP_TO_DATE;
+      }
+      catch (IOException e) {
+        myError = e;
+        myState = FAILED;
+      }
+    }
+
+    /**
+     * @return true if the file was copied, false if the target was already up-to-date
+     */
+    boolean perform() throws IOException {
+      final long length = mySource.length();
+      if (myTarget.isFile() && myTarget.length() == length && contentEquals(mySource, myTarget)) {
+        return false;
+      }
+      final FileOutputStream os;
+      try {
+        FileUtil.createParentDirs(myTarget);
+        os = new FileOutputStream(myTarget);
+      }
+      catch (IOException e) {
+        // let FileUtil handle platform-specific cases like write-protected locations on Windows
+        FileUtil.copyContent(mySource, myTarget);
+        myBytes = length;
+        return true;
+      }
+      try {
+        final FileInputStream is = new FileInputStream(mySource);
+        try {
+          myBytes = transfer(is.getChannel(), os.getChannel());
+        }
+        finally {
+          is.close();
+        }
+      }
+      finally {
+        os.close();
+      }
+      return true;
+    }
+  }
+
+  private static long transfer(FileChannel from, FileChannel to) throws IOException {
+    final long size = from.size();
+    long position = 0L;
+    while (position < size) {
+      final long transferred = from.transferTo(position, size - position, to);
+      if (transferred <= 0L) {
+        throw new IOException("Copied " + position + " of " + size + " bytes");
+      }
+      position += transferred;
+    }
+    return position;
+  }
+
+  private static boolean contentEquals(File file1, File file2) throws IOException {
+    final InputStream is1 = new FileInputStream(file1);
+    try {
+      final InputStream is2 = new FileInputStream(file2);
+      try {
+        final byte[] buf1 = new byte[COMPARE_BUFFER_SIZE];
+        final byte[] buf2 = new byte[COMPARE_BUFFER_SIZE];
+        while (true) {
+          final int read1 = readFully(is1, buf1);
+          final int read2 = readFully(is2, buf2);
+          if (read1 != read2) {
+            return false;
+          }
+          if (read1 <= 0) {
+            return true;
+          }
+          if (!rangeEquals(buf1, buf2, read1)) {
+            return false;
+          }
+        }
+      }
+      finally {
+        is2.close();
+      }
+    }
+    finally {
+      is1.close();
+    }
+  }
+
+  private static int readFully(InputStream is, byte[] buffer) throws IOException {
+    int total = 0;
+    while (total < buffer.length) {
+      final int read = is.read(buffer, total, buffer.length - total);
+      if (read < 0) {
+        break;
+      }
+      total += read;
+    }
+    return total;
+  }
+
+  private static boolean rangeEquals(byte[] buf1, byte[] buf2, int length) {
+    for (int i = 0; i < length; i++) {
+      if (buf1[i] != buf2[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -26,6 +26,8 @@ import org.jetbrains.jps.model.module.JpsModuleSourceRoot;
 import org.jetbrains.jps.model.module.JpsTypedModuleSourceRoot;
 import org.jetbrains.jps.util.JpsPathUtil;
 
+import java.io.File;
+
 import static com.intellij.util.io.TestFileSystemItem.fs;
 
 /**
@@ -55,6 +57,30 @@ public class ResourceCopyingTest extends JpsBuildTestCase {
     assertOutput(m, fs().file("A.xml"));
   }
 
+  public void testContentChange() {
+    String file = createFile("src/a.xml", "a");
+    JpsModule m = addModule("m", PathUtil.getParentPath(file));
+    rebuildAll();
+    assertOutput(m, fs().file("a.xml", "a"));
+    change(file, "b");
+    makeAll();
+    assertOutput(m, fs().file("a.xml", "b"));
+    change(file);
+    makeAll();
+    assertOutput(m, fs().file("a.xml", "b"));
+  }
+
+  public void testUnchangedOutputIsNotRewritten() {
+    String file = createFile("src/a.xml", "a");
+    JpsModule m = addModule("m", PathUtil.getParentPath(file));
+    File output = new File(createFile("out/production/m/a.xml", "a"));
+    assertTrue(output.setLastModified(1000000L));
+    long timestamp = output.lastModified();
+    makeAll();
+    assertOutput(m, fs().file("a.xml", "a"));
+    assertEquals(timestamp, output.lastModified());
+  }
+
   public void testPackagePrefix() {
     String file = createFile("src/a.xml");
     JpsModule m = addModule("m", PathUtil.getParentPath(file));
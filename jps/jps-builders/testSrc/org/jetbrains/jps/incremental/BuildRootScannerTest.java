@@ -0,0 +1,123 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.PathUtil;
+import com.intellij.util.ThrowableRunnable;
+import org.jetbrains.jps.builders.BuildRootDescriptor;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.builders.java.JavaModuleBuildTargetType;
+import org.jetbrains.jps.builders.java.JavaSourceRootDescriptor;
+import org.jetbrains.jps.builders.logging.BuildLoggingManager;
+import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.model.module.JpsModule;
+import org.jetbrains.jps.util.JpsPathUtil;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+public class BuildRootScannerTest extends JpsBuildTestCase {
+  public void testDirtyFiles() {
+    Set<File> expected = new HashSet<File>();
+    String first = null;
+    for (int i = 0; i < 5; i++) {
+      for (int j = 0; j < 5; j++) {
+        String path = createFile("src/p" + i + "/q" + j + "/A" + j + ".java", "package p" + i + ".q" + j + "; class A" + j + " {}");
+        expected.add(new File(path));
+        if (first == null) first = path;
+      }
+    }
+    String excluded = createFile("src/excluded/B.java", "package excluded; class B {}");
+    JpsModule m = addModule("m", PathUtil.getParentPath(PathUtil.getParentPath(PathUtil.getParentPath(first))));
+    m.getExcludeRootsList().addUrl(JpsPathUtil.pathToUrl(PathUtil.getParentPath(excluded)));
+
+    BuildRootScanner scanner = scan(m, false);
+    assertEquals(expected, new HashSet<File>(scanner.getAcceptedFiles()));
+    assertEquals(expected, new HashSet<File>(scanner.getDirtyFiles()));
+
+    rebuildAll();
+    scanner = scan(m, false);
+    assertEquals(expected, new HashSet<File>(scanner.getAcceptedFiles()));
+    assertEmpty(scanner.getDirtyFiles());
+
+    change(first);
+    assertEquals(Collections.singleton(new File(first)), new HashSet<File>(scan(m, false).getDirtyFiles()));
+    assertEquals(expected, new HashSet<File>(scan(m, true).getDirtyFiles()));
+  }
+
+  public void testOnlyKnownRootsAreScannedInParallel() {
+    JpsModule m = addModule("m", PathUtil.getParentPath(createFile("src/A.java", "class A {}")));
+    ProjectDescriptor pd = createProjectDescriptor(BuildLoggingManager.DEFAULT);
+    try {
+      JavaSourceRootDescriptor root = assertOneElement(pd.getBuildRootIndex().getTargetRoots(getTarget(m), null));
+      assertTrue(BuildRootScanner.canScanInParallel(root));
+      JavaSourceRootDescriptor pluginRoot = new JavaSourceRootDescriptor(root.getRootFile(), root.getTarget(), false, false, "", Collections.<File>emptySet()) {
+        @Override
+        public FileFilter createFileFilter() {
+          return super.createFileFilter();
+        }
+      };
+      assertFalse(BuildRootScanner.canScanInParallel(pluginRoot));
+    }
+    finally {
+      pd.release();
+    }
+  }
+
+  public void testScanPerformance() throws Exception {
+    File srcRoot = new File(getOrCreateProjectDir(), "src");
+    for (int i = 0; i < 300; i++) {
+      for (int j = 0; j < 10; j++) {
+        File dir = new File(srcRoot, "p" + i + "/q" + j);
+        assertTrue(dir.mkdirs());
+        for (int k = 0; k < 100; k++) {
+          assertTrue(new File(dir, "A" + k + ".java").createNewFile());
+        }
+      }
+    }
+    final JpsModule m = addModule("m", srcRoot.getAbsolutePath());
+    PlatformTestUtil.startPerformanceTest("Scanning 300000 files", 10000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        assertEquals(300000, scan(m, false).getDirtyFiles().size());
+      }
+    }).ioBound().assertTiming();
+  }
+
+  private BuildRootScanner scan(JpsModule module, boolean forceDirty) {
+    ProjectDescriptor pd = createProjectDescriptor(BuildLoggingManager.DEFAULT);
+    try {
+      BuildRootDescriptor root = assertOneElement(pd.getBuildRootIndex().getTargetRoots(getTarget(module), null));
+      BuildRootScanner scanner = new BuildRootScanner(pd.getBuildRootIndex(), root, pd.timestamps.getStorage(), forceDirty, FSCache.NO_CACHE);
+      scanner.scan();
+      return scanner;
+    }
+    catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    finally {
+      pd.release();
+    }
+  }
+
+  private static ModuleBuildTarget getTarget(JpsModule module) {
+    return new ModuleBuildTarget(module, JavaModuleBuildTargetType.PRODUCTION);
+  }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.PathUtil;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.CompileScopeTestBuilder;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+
+import java.io.File;
+
+public class BuildTracerTest extends JpsBuildTestCase {
+  private File myTraceFile;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myTraceFile = new File(FileUtil.createTempDirectory("buildTrace", null), "trace.json");
+    System.setProperty(GlobalOptions.BUILD_TRACE_FILE_OPTION, myTraceFile.getAbsolutePath());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      System.clearProperty(GlobalOptions.BUILD_TRACE_FILE_OPTION);
+      FileUtil.delete(myTraceFile.getParentFile());
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testTraceIsWritten() throws Exception {
+    addModule("m", PathUtil.getParentPath(createFile("src/A.java", "class A {}")));
+    rebuildAll();
+    String trace = FileUtil.loadFile(myTraceFile);
+    assertTrue(trace.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+    for (String name : new String[]{"'before' tasks", "Checking sources", "javac", "Dependency analysis", "Flushing storages", "'after' tasks"}) {
+      assertTrue(name, trace.contains("\"name\":\"" + name + "\""));
+    }
+  }
+
+  public void testTraceIsWrittenForFailedBuild() throws Exception {
+    addModule("m", PathUtil.getParentPath(createFile("src/A.java", "class A { B b; }")));
+    doBuild(CompileScopeTestBuilder.rebuild().all()).assertFailed();
+    String trace = FileUtil.loadFile(myTraceFile);
+    assertTrue(trace.contains("\"name\":\"javac\""));
+    assertTrue(trace.endsWith("]}\n"));
+  }
+
+  public void testNoTraceWhenDisabled() throws Exception {
+    System.clearProperty(GlobalOptions.BUILD_TRACE_FILE_OPTION);
+    addModule("m", PathUtil.getParentPath(createFile("src/A.java", "class A {}")));
+    rebuildAll();
+    assertFalse(myTraceFile.exists());
+  }
+}
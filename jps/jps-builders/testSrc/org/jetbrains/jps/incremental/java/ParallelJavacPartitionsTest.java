@@ -0,0 +1,147 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.java;
+
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.jps.api.GlobalOptions;
+import org.jetbrains.jps.builders.JpsBuildTestCase;
+import org.jetbrains.jps.builders.logging.BuildLoggingManager;
+import org.jetbrains.jps.cmdline.ProjectDescriptor;
+import org.jetbrains.jps.incremental.BinaryContent;
+import org.jetbrains.jps.javac.OutputFileObject;
+import org.jetbrains.jps.model.module.JpsModule;
+
+import javax.tools.JavaFileObject;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.jetbrains.jps.builders.CompileScopeTestBuilder.rebuild;
+
+public class ParallelJavacPartitionsTest extends JpsBuildTestCase {
+  private static final int FILE_COUNT = 60;
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      System.clearProperty(GlobalOptions.COMPILE_PARALLEL_JAVAC_PARTITIONS_OPTION);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testIndependentFiles() {
+    setPartitions(2);
+    for (int i = 0; i < FILE_COUNT; i++) {
+      createFile("src/p/b/B" + i + ".java", "package p.b; public class B" + i + " { int m() { return " + i + "; } }");
+      createFile("src/p/c/C" + i + ".java", "package p.c; public class C" + i + " { int m() { return " + i + "; } }");
+    }
+    JpsModule m = addModule("m", getAbsolutePath("src"));
+    rebuildAll();
+    assertEquals(2 * FILE_COUNT, getOutputClasses(m).size());
+    makeAll().assertUpToDate();
+  }
+
+  public void testErrorInOnePartitionLeavesNoOutputsOfOthers() {
+    for (int i = 0; i < FILE_COUNT; i++) {
+      createFile("src/p/b/B" + i + ".java", "package p.b; public class B" + i + " { int m() { return " + i + "; } }");
+      createFile("src/p/c/C" + i + ".java", "package p.c; public class C" + i + " { int m() { return " + (i == 0 ? "\"\"" : i) + "; } }");
+    }
+    JpsModule m = addModule("m", getAbsolutePath("src"));
+
+    setPartitions(1);
+    doBuild(rebuild().all()).assertFailed();
+    Set<String> expected = getOutputClasses(m);
+
+    setPartitions(2);
+    doBuild(rebuild().all()).assertFailed();
+    assertEquals(expected, getOutputClasses(m));
+  }
+
+  public void testDependencyThroughUncompiledClass() throws IOException {
+    setPartitions(2);
+    createFile("src/p/Util.java", "package p; public class Util { public static p.d.D getD() { return new p.d.D(); } }");
+    String d = createFile("src/p/d/D.java", "package p.d; public class D { public int foo() { return 1; } }");
+    List<String> files = new ArrayList<String>();
+    for (int i = 0; i < FILE_COUNT; i++) {
+      files.add(createFile("src/p/a/A" + i + ".java", "package p.a; public class A" + i + " { int m() { return 0; } }"));
+      files.add(createFile("src/p/d/E" + i + ".java", "package p.d; class E" + i + " { }"));
+    }
+    JpsModule m = addModule("m", getAbsolutePath("src"));
+    rebuildAll();
+
+    // A0 starts using D without naming it, so neither the old dependency graph nor the names link them
+    String a0 = files.get(0);
+    change(a0, "package p.a; public class A0 { String m() { return p.Util.getD().foo(); } }");
+    change(d, "package p.d; public class D { public String foo() { return \"\"; } }");
+    for (String file : files.subList(1, files.size())) {
+      change(file);
+    }
+
+    makeAll().assertSuccessful();
+    makeAll().assertUpToDate();
+
+    ProjectDescriptor pd = createProjectDescriptor(BuildLoggingManager.DEFAULT);
+    try {
+      String a1 = files.get(2);
+      File output = getOutputDir(m);
+      List<Collection<File>> partitions = new ArrayList<Collection<File>>();
+      List<List<OutputFileObject>> outputs = new ArrayList<List<OutputFileObject>>();
+      partitions.add(Collections.singletonList(new File(a1)));
+      outputs.add(Collections.singletonList(createOutput(output, "p/a/A1.class", a1)));
+      partitions.add(Collections.singletonList(new File(d)));
+      outputs.add(Collections.singletonList(createOutput(output, "p/d/D.class", d)));
+      assertNull(JavaSourcePartitioner.findDependencyBetweenPartitions(partitions, outputs, pd.dataManager.getMappings()));
+
+      partitions.set(0, Collections.singletonList(new File(a0)));
+      outputs.set(0, Collections.singletonList(createOutput(output, "p/a/A0.class", a0)));
+      String dependency = JavaSourcePartitioner.findDependencyBetweenPartitions(partitions, outputs, pd.dataManager.getMappings());
+      assertNotNull(dependency);
+      assertTrue(dependency, dependency.contains("p/d/D"));
+
+      // a class compiled implicitly from the other partition's source
+      outputs.set(1, Collections.singletonList(createOutput(output, "p/a/A0.class", a0)));
+      assertNotNull(JavaSourcePartitioner.findDependencyBetweenPartitions(partitions, outputs, pd.dataManager.getMappings()));
+    }
+    finally {
+      pd.release();
+    }
+  }
+
+  private static OutputFileObject createOutput(File outputDir, String relativePath, String sourcePath) throws IOException {
+    File file = new File(outputDir, relativePath);
+    return new OutputFileObject(null, outputDir, relativePath, file, JavaFileObject.Kind.CLASS, null, new File(sourcePath).toURI(),
+                                new BinaryContent(FileUtil.loadFileBytes(file)));
+  }
+
+  private static void setPartitions(int count) {
+    System.setProperty(GlobalOptions.COMPILE_PARALLEL_JAVAC_PARTITIONS_OPTION, String.valueOf(count));
+  }
+
+  private File getOutputDir(JpsModule module) {
+    return new File(getAbsolutePath("out/production/" + module.getName()));
+  }
+
+  private Set<String> getOutputClasses(JpsModule module) {
+    Set<String> result = new HashSet<String>();
+    File outputDir = getOutputDir(module);
+    for (File file : FileUtil.findFilesByMask(java.util.regex.Pattern.compile(".*\\.class"), outputDir)) {
+      result.add(FileUtil.getRelativePath(outputDir, file));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.incremental.resources;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.testFramework.UsefulTestCase;
+import org.jetbrains.jps.api.CanceledStatus;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ResourcesCopierTest extends UsefulTestCase {
+  private File myDir;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDir = FileUtil.createTempDirectory("resourcesCopier", null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDir);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testSameTargetIsCopiedInOrder() throws Exception {
+    ResourcesCopier copier = new ResourcesCopier();
+    File target = new File(myDir, "out/a.xml");
+    List<File> sources = new ArrayList<File>();
+    for (int i = 0; i < 50; i++) {
+      File source = createFile("src" + i + "/a.xml", "content" + i);
+      sources.add(source);
+      copier.add(source, target);
+      copier.add(createFile("src" + i + "/b" + i + ".xml", "b"), new File(myDir, "out/b" + i + ".xml"));
+    }
+    Recorder recorder = new Recorder(true);
+    assertTrue(copier.copyAll(CanceledStatus.NULL, recorder));
+    assertEquals("content49", FileUtil.loadFile(target));
+    assertEquals(100, recorder.myCopied.size());
+    assertEquals(sources.get(0), recorder.myCopied.get(0));
+    assertEmpty(recorder.myFailed);
+  }
+
+  public void testCompletedFilesAreReportedAfterFailure() throws Exception {
+    ResourcesCopier copier = new ResourcesCopier();
+    copier.add(new File(myDir, "src/missing.xml"), new File(myDir, "out/missing.xml"));
+    List<File> targets = new ArrayList<File>();
+    for (int i = 0; i < 100; i++) {
+      File target = new File(myDir, "out/a" + i + ".xml");
+      targets.add(target);
+      copier.add(createFile("src/a" + i + ".xml", "a"), target);
+    }
+    Recorder recorder = new Recorder(false);
+    assertFalse(copier.copyAll(CanceledStatus.NULL, recorder));
+    assertEquals(1, recorder.myFailed.size());
+    List<File> copied = new ArrayList<File>();
+    for (File target : targets) {
+      if (target.exists()) {
+        copied.add(target);
+      }
+    }
+    assertEquals(copied, recorder.myCopiedTargets);
+  }
+
+  public void testUnchangedTargetIsNotRewritten() throws Exception {
+    File source = createFile("src/a.xml", "content");
+    File target = createFile("out/a.xml", "content");
+    long timestamp = 1000000L;
+    assertTrue(target.setLastModified(timestamp));
+    long expected = target.lastModified();
+
+    ResourcesCopier copier = new ResourcesCopier();
+    copier.add(source, target);
+    Recorder recorder = new Recorder(true);
+    assertTrue(copier.copyAll(CanceledStatus.NULL, recorder));
+    assertEquals(expected, target.lastModified());
+    assertEquals(1, recorder.myCopied.size());
+  }
+
+  private File createFile(String relativePath, String content) throws IOException {
+    File file = new File(myDir, relativePath);
+    FileUtil.writeToFile(file, content);
+    return file;
+  }
+
+  private static class Recorder implements ResourcesCopier.ResultProcessor {
+    private final boolean myProceedOnFailure;
+    private final List<File> myCopied = new ArrayList<File>();
+    private final List<File> myCopiedTargets = new ArrayList<File>();
+    private final List<File> myFailed = new ArrayList<File>();
+
+    private Recorder(boolean proceedOnFailure) {
+      myProceedOnFailure = proceedOnFailure;
+    }
+
+    @Override
+    public boolean fileCopied(File source, File target) {
+      myCopied.add(source);
+      myCopiedTargets.add(target);
+      return true;
+    }
+
+    @Override
+    public boolean copyFailed(File source, IOException e) {
+      myFailed.add(source);
+      return myProceedOnFailure;
+    }
+  }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jetbrains.jps.model.serialization;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.containers.ConcurrentHashMap;
+import org.jdom.*;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Binary snapshot of the parsed (not yet macro-expanded) configuration files of a project. A file whose content hash
+ * matches the one recorded in the snapshot is restored from the snapshot instead of being parsed as XML again.
+ * Only files that were requested during the current loading are written back by {@link #save(java.io.File)}.
+ */
+public class JpsConfigFileSnapshot {
+  private static final Logger LOG = Logger.getInstance(JpsConfigFileSnapshot.class);
+  private static final int MAGIC = 0x4A505353;
+  private static final int VERSION = 1;
+
+  private static final byte ELEMENT = 0;
+  private static final byte TEXT = 1;
+  private static final byte CDATA = 2;
+  private static final byte COMMENT = 3;
+  private static final byte END = 4;
+
+  private final Map<String, Entry> myStoredEntries;
+  private final Map<String, Entry> myUsedEntries = new ConcurrentHashMap<String, Entry>();
+  private final AtomicInteger myHits = new AtomicInteger();
+  private final AtomicInteger myMisses = new AtomicInteger();
+
+  private JpsConfigFileSnapshot(Map<String, Entry> storedEntries) {
+    myStoredEntries = storedEntries;
+  }
+
+  @NotNull
+  public static JpsConfigFileSnapshot create() {
+    return new JpsConfigFileSnapshot(Collections.<String, Entry>emptyMap());
+  }
+
+  /**
+   * @return snapshot read from the file or an empty snapshot if the file doesn't exist or cannot be read
+   */
+  @NotNull
+  public static JpsConfigFileSnapshot load(@NotNull File snapshotFile) {
+    if (!snapshotFile.isFile()) {
+      return create();
+    }
+    try {
+      // the snapshot is read into memory so that lengths stored in it can be checked against the remaining input
+      final DataInputStream input = new DataInputStream(new ByteArrayInputStream(FileUtil.loadFileBytes(snapshotFile)));
+      try {
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+          LOG.info("Configuration snapshot " + snapshotFile.getPath() + " has incompatible format and will be rebuilt");
+          return create();
+        }
+        final ElementReader reader = new ElementReader(input);
+        final int count = input.readInt();
+        if (count < 0 || count > input.available()) {
+          throw new IOException("Invalid entry count: " + count);
+        }
+        final Map<String, Entry> entries = new HashMap<String, Entry>(count * 4 / 3 + 1);
+        for (int i = 0; i < count; i++) {
+          final String path = input.readUTF();
+          final byte[] hash = new byte[input.readUnsignedByte()];
+          input.readFully(hash);
+          entries.put(path, new Entry(hash, reader.readElement()));
+        }
+        return new JpsConfigFileSnapshot(entries);
+      }
+      finally {
+        input.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read configuration snapshot " + snapshotFile.getPath() + ": " + e.getMessage());
+      return create();
+    }
+  }
+
+  /**
+   * Writes entries for the files loaded through this snapshot. Does nothing if all of them were restored from the snapshot
+   * and no other files were recorded there.
+   */
+  public void save(@NotNull File snapshotFile) throws IOException {
+    if (myMisses.get() == 0 && myUsedEntries.size() == myStoredEntries.size()) {
+      return;
+    }
+    FileUtil.createParentDirs(snapshotFile);
+    final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(snapshotFile)));
+    try {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+      final ElementWriter writer = new ElementWriter(output);
+      final List<Map.Entry<String, Entry>> entries = new ArrayList<Map.Entry<String, Entry>>(myUsedEntries.entrySet());
+      output.writeInt(entries.size());
+      for (Map.Entry<String, Entry> entry : entries) {
+        output.writeUTF(entry.getKey());
+        final byte[] hash = entry.getValue().myHash;
+        output.writeByte(hash.length);
+        output.write(hash);
+        writer.writeElement(entry.getValue().myRoot);
+      }
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  public int getHitCount() {
+    return myHits.get();
+  }
+
+  public int getMissCount() {
+    return myMisses.get();
+  }
+
+  /**
+   * @return a copy of the root element of the file which may be freely modified by the caller
+   */
+  @NotNull
+  public Element loadRootElement(@NotNull File file) throws IOException, JDOMException {
+    final String path = FileUtil.toSystemIndependentName(file.getAbsolutePath());
+    final byte[] content = FileUtil.loadFileBytes(file);
+    final byte[] hash = computeHash(content);
+
+    Entry entry = myUsedEntries.get(path);
+    if (entry == null || !Arrays.equals(entry.myHash, hash)) {
+      entry = myStoredEntries.get(path);
+    }
+    if (entry != null && Arrays.equals(entry.myHash, hash)) {
+      myHits.incrementAndGet();
+    }
+    else {
+      myMisses.incrementAndGet();
+      final Element root = JDOMUtil.loadDocument(content).getRootElement();
+      if (!isSupported(root)) {
+        return root;
+      }
+      entry = new Entry(hash, root);
+    }
+    myUsedEntries.put(path, entry);
+    return (Element)entry.myRoot.clone();
+  }
+
+  private static byte[] computeHash(byte[] content) {
+    try {
+      return MessageDigest.getInstance("MD5").digest(content);
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Namespaces, processing instructions and entity references aren't used in configuration files, such files are just
+   * parsed every time.
+   */
+  private static boolean isSupported(Element element) {
+    if (element.getNamespace() != Namespace.NO_NAMESPACE || !element.getAdditionalNamespaces().isEmpty()) {
+      return false;
+    }
+    for (Object attribute : element.getAttributes()) {
+      if (((Attribute)attribute).getNamespace() != Namespace.NO_NAMESPACE) {
+        return false;
+      }
+    }
+    for (Object content : element.getContent()) {
+      if (content instanceof Element) {
+        if (!isSupported((Element)content)) {
+          return false;
+        }
+      }
+      else if (!(content instanceof Text) && !(content instanceof Comment)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static class Entry {
+    private final byte[] myHash;
+    private final Element myRoot;
+
+    private Entry(byte[] hash, Element root) {
+      myHash = hash;
+      myRoot = root;
+    }
+  }
+
+  private static class ElementWriter {
+    private final DataOutputStream myOutput;
+    private final Map<String, Integer> myNames = new HashMap<String, Integer>();
+
+    private ElementWriter(DataOutputStream output) {
+      myOutput = output;
+    }
+
+    private void writeElement(Element element) throws IOException {
+      writeName(element.getName());
+      final List attributes = element.getAttributes();
+      myOutput.writeInt(attributes.size());
+      for (Object o : attributes) {
+        final Attribute attribute = (Attribute)o;
+        writeName(attribute.getName());
+        writeString(attribute.getValue());
+      }
+      for (Object content : element.getContent()) {
+        if (content instanceof Element) {
+          myOutput.writeByte(ELEMENT);
+          writeElement((Element)content);
+        }
+        else if (content instanceof Text) {
+          myOutput.writeByte(content instanceof org.jdom.CDATA ? CDATA : TEXT);
+          writeString(((Text)content).getText());
+        }
+        else if (content instanceof Comment) {
+          myOutput.writeByte(COMMENT);
+          writeString(((Comment)content).getText());
+        }
+      }
+      myOutput.writeByte(END);
+    }
+
+    private void writeName(String name) throws IOException {
+      final Integer id = myNames.get(name);
+      if (id != null) {
+        myOutput.writeInt(id.intValue());
+      }
+      else {
+        myOutput.writeInt(-1);
+        myOutput.writeUTF(name);
+        myNames.put(name, myNames.size());
+      }
+    }
+
+    private void writeString(String value) throws IOException {
+      final byte[] bytes = value.getBytes("UTF-8");
+      myOutput.writeInt(bytes.length);
+      myOutput.write(bytes);
+    }
+  }
+
+  private static class ElementReader {
+    private final DataInputStream myInput;
+    private final List<String> myNames = new ArrayList<String>();
+
+    private ElementReader(DataInputStream input) {
+      myInput = input;
+    }
+
+    private Element readElement() throws IOException {
+      final Element element = new Element(readName());
+      final int attributeCount = myInput.readInt();
+      for (int i = 0; i < attributeCount; i++) {
+        element.setAttribute(readName(), readString());
+      }
+      while (true) {
+        final byte kind = myInput.readByte();
+        switch (kind) {
+          case ELEMENT:
+            element.addContent(readElement());
+            break;
+          case TEXT:
+            element.addContent(new Text(readString()));
+            break;
+          case CDATA:
+            element.addContent(new org.jdom.CDATA(readString()));
+            break;
+          case COMMENT:
+            element.addContent(new Comment(readString()));
+            break;
+          case END:
+            return element;
+          default:
+            throw new IOException("Unexpected content kind: " + kind);
+        }
+      }
+    }
+
+    @NotNull
+    private String readName() throws IOException {
+      final int id = myInput.readInt();
+      if (id >= 0) {
+        if (id >= myNames.size()) {
+          throw new IOException("Unknown name id: " + id);
+        }
+        return myNames.get(id);
+      }
+      final String name = myInput.readUTF();
+      myNames.add(name);
+      return name;
+    }
+
+    @NotNull
+    private String readString() throws IOException {
+      final int length = myInput.readInt();
+      if (length < 0 || length > myInput.available()) {
+        throw new IOException("Invalid string length: " + length);
+      }
+      final byte[] bytes = new byte[length];
+      myInput.readFully(bytes);
+      return new String(bytes, "UTF-8");
+    }
+  }
+}
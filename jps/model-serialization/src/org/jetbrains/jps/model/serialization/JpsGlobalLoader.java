@@ -47,16 +47,20 @@ public class JpsGlobalLoader extends JpsLoaderBase {
   public static final String FILE_TYPES_COMPONENT_NAME_KEY = "jps.file.types.component.name";
   private final JpsGlobal myGlobal;
 
-  private JpsGlobalLoader(JpsGlobal global, Map<String, String> pathVariables) {
-    super(new JpsMacroExpander(pathVariables));
+  private JpsGlobalLoader(JpsGlobal global, Map<String, String> pathVariables, @Nullable JpsConfigFileSnapshot snapshot) {
+    super(new JpsMacroExpander(pathVariables), snapshot);
     myGlobal = global;
   }
 
   public static void loadGlobalSettings(JpsGlobal global, String optionsPath) throws IOException {
+    loadGlobalSettings(global, optionsPath, null);
+  }
+
+  public static void loadGlobalSettings(JpsGlobal global, String optionsPath, @Nullable JpsConfigFileSnapshot snapshot) throws IOException {
     File optionsDir = new File(FileUtil.toCanonicalPath(optionsPath));
-    new JpsGlobalLoader(global, Collections.<String, String>emptyMap()).loadGlobalComponents(optionsDir, new PathVariablesSerializer());
+    new JpsGlobalLoader(global, Collections.<String, String>emptyMap(), snapshot).loadGlobalComponents(optionsDir, new PathVariablesSerializer());
     Map<String, String> pathVariables = JpsModelSerializationDataService.computeAllPathVariables(global);
-    new JpsGlobalLoader(global, pathVariables).load(optionsDir);
+    new JpsGlobalLoader(global, pathVariables, snapshot).load(optionsDir);
   }
 
   /**
@@ -35,5 +35,15 @@ public abstract class JpsSerializationManager {
   public abstract JpsModel loadModel(@NotNull String projectPath, @Nullable String optionsPath)
     throws IOException;
 
+  /**
+   * Loads the model like {@link #loadModel(String, String)} but takes parsed configuration files from {@code snapshot} when they weren't
+   * changed since the snapshot was saved
+   */
+  @NotNull
+  public JpsModel loadModel(@NotNull String projectPath, @Nullable String optionsPath, @Nullable JpsConfigFileSnapshot snapshot)
+    throws IOException {
+    return loadModel(projectPath, optionsPath);
+  }
+
   public abstract void saveGlobalSettings(@NotNull JpsGlobal global, @NotNull String optionsPath) throws IOException;
 }
@@ -32,13 +32,20 @@ public class JpsSerializationManagerImpl extends JpsSerializationManager {
   @NotNull
   @Override
   public JpsModel loadModel(@NotNull String projectPath, @Nullable String optionsPath)
+    throws IOException {
+    return loadModel(projectPath, optionsPath, null);
+  }
+
+  @NotNull
+  @Override
+  public JpsModel loadModel(@NotNull String projectPath, @Nullable String optionsPath, @Nullable JpsConfigFileSnapshot snapshot)
     throws IOException {
     JpsModel model = JpsElementFactory.getInstance().createModel();
     if (optionsPath != null) {
-      JpsGlobalLoader.loadGlobalSettings(model.getGlobal(), optionsPath);
+      JpsGlobalLoader.loadGlobalSettings(model.getGlobal(), optionsPath, snapshot);
     }
     Map<String, String> pathVariables = JpsModelSerializationDataService.computeAllPathVariables(model.getGlobal());
-    JpsProjectLoader.loadProject(model.getProject(), pathVariables, projectPath);
+    JpsProjectLoader.loadProject(model.getProject(), pathVariables, projectPath, snapshot);
     return model;
   }
 
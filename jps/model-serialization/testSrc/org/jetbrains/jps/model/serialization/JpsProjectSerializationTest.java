@@ -20,8 +20,10 @@ import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.testFramework.PlatformTestUtil;
 import org.jdom.Element;
 import org.jetbrains.jps.model.JpsDummyElement;
+import org.jetbrains.jps.model.JpsElementFactory;
 import org.jetbrains.jps.model.JpsEncodingConfigurationService;
 import org.jetbrains.jps.model.JpsEncodingProjectConfiguration;
+import org.jetbrains.jps.model.JpsProject;
 import org.jetbrains.jps.model.artifact.JpsArtifactService;
 import org.jetbrains.jps.model.java.*;
 import org.jetbrains.jps.model.library.JpsLibrary;
@@ -31,8 +33,11 @@ import org.jetbrains.jps.model.module.*;
 import org.jetbrains.jps.model.serialization.library.JpsLibraryTableSerializer;
 import org.jetbrains.jps.model.serialization.module.JpsModuleRootModelSerializer;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -81,6 +86,71 @@ public class JpsProjectSerializationTest extends JpsSerializationTestCase {
     assertEquals(getUrl("xxx/output"), JpsJavaExtensionService.getInstance().getOutputUrl(xxx, false));
   }
 
+  public void testLoadProjectWithSnapshot() throws IOException {
+    String path = getTestDataFileAbsolutePath(SAMPLE_PROJECT_PATH);
+    File snapshotFile = FileUtil.createTempFile("model", ".snapshot");
+    try {
+      JpsConfigFileSnapshot snapshot = JpsConfigFileSnapshot.load(snapshotFile);
+      JpsProjectLoader.loadProject(myProject, getPathVariables(), path, snapshot);
+      assertEquals(0, snapshot.getHitCount());
+      snapshot.save(snapshotFile);
+
+      JpsProject project = JpsElementFactory.getInstance().createModel().getProject();
+      JpsConfigFileSnapshot loaded = JpsConfigFileSnapshot.load(snapshotFile);
+      JpsProjectLoader.loadProject(project, getPathVariables(), path, loaded);
+      assertEquals(0, loaded.getMissCount());
+      assertTrue(loaded.getHitCount() > 0);
+      assertEquals(myProject.getName(), project.getName());
+      assertEquals(myProject.getModules().size(), project.getModules().size());
+      for (int i = 0; i < myProject.getModules().size(); i++) {
+        JpsModule expected = myProject.getModules().get(i);
+        JpsModule actual = project.getModules().get(i);
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getSourceRoots().size(), actual.getSourceRoots().size());
+        assertEquals(expected.getDependenciesList().getDependencies().size(), actual.getDependenciesList().getDependencies().size());
+      }
+      assertEquals(myProject.getLibraryCollection().getLibraries().size(), project.getLibraryCollection().getLibraries().size());
+    }
+    finally {
+      FileUtil.delete(snapshotFile);
+    }
+  }
+
+  public void testCorruptedSnapshotIsIgnored() throws IOException {
+    String path = getTestDataFileAbsolutePath(SAMPLE_PROJECT_PATH);
+    File snapshotFile = FileUtil.createTempFile("model", ".snapshot");
+    try {
+      JpsConfigFileSnapshot snapshot = JpsConfigFileSnapshot.load(snapshotFile);
+      JpsProjectLoader.loadProject(myProject, getPathVariables(), path, snapshot);
+      snapshot.save(snapshotFile);
+
+      byte[] header = Arrays.copyOf(FileUtil.loadFileBytes(snapshotFile), 8);
+      DataOutputStream output = new DataOutputStream(new FileOutputStream(snapshotFile));
+      try {
+        output.write(header);
+        output.writeInt(1);
+        output.writeUTF(path);
+        output.writeByte(0);
+        output.writeInt(-1);
+        output.writeUTF("project");
+        output.writeInt(1);
+        output.writeInt(-1);
+        output.writeUTF("version");
+        output.writeInt(Integer.MAX_VALUE);
+      }
+      finally {
+        output.close();
+      }
+
+      JpsConfigFileSnapshot loaded = JpsConfigFileSnapshot.load(snapshotFile);
+      JpsProjectLoader.loadProject(JpsElementFactory.getInstance().createModel().getProject(), getPathVariables(), path, loaded);
+      assertEquals(0, loaded.getHitCount());
+    }
+    finally {
+      FileUtil.delete(snapshotFile);
+    }
+  }
+
   public void testFileBasedProjectNameAndBaseDir() {
     String relativePath = "/jps/model-serialization/testData/run-configurations/run-configurations.ipr";
     String absolutePath = getTestDataFileAbsolutePath(relativePath);
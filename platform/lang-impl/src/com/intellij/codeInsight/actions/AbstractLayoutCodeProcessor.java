@@ -18,6 +18,7 @@ package com.intellij.codeInsight.actions;
 
 import com.intellij.codeInsight.CodeInsightBundle;
 import com.intellij.codeInsight.FileModificationService;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.lang.LanguageFormatting;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
@@ -36,16 +37,21 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ModuleRootManager;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.ui.ex.MessagesEx;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.IncorrectOperationException;
+import com.intellij.util.Processor;
 import com.intellij.util.SequentialModalProgressTask;
 import com.intellij.util.SequentialTask;
+import com.intellij.util.containers.ContainerUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
@@ -53,6 +59,9 @@ import java.util.concurrent.FutureTask;
 
 public abstract class AbstractLayoutCodeProcessor {
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.actions.AbstractLayoutCodeProcessor");
+  private static final int BATCH_SIZE = 100;
+  // the tasks of a batch are run in write actions of about this duration (in milliseconds), rather than one write action per file
+  private static final long WRITE_ACTION_TIME = 100;
 
   protected final Project myProject;
   private final Module myModule;
@@ -183,6 +192,33 @@ public abstract class AbstractLayoutCodeProcessor {
   @NotNull
   protected abstract FutureTask<Boolean> prepareTask(@NotNull PsiFile file, boolean processChangedTextOnly) throws IncorrectOperationException;
 
+  /**
+   * Tells if the processor {@link #prepareInBackground(PsiFile, boolean) prepares} files in the background.
+   * The files are processed in such batches only if this processor or one of the
+   * {@link #myPreviousCodeProcessor previous processors} does.
+   */
+  protected boolean canPrepareInBackground() {
+    return false;
+  }
+
+  /**
+   * Does the part of processing of the given file which needs only read access in advance, so that the task returned
+   * by {@link #prepareTask(PsiFile, boolean)} has less to do in the write action. Called under a read action,
+   * for several files in parallel, if {@link #canPrepareInBackground()} returns true.
+   *
+   * @return whether there's anything prepared that has to be {@link #disposePrepared(PsiFile) disposed}
+   */
+  protected boolean prepareInBackground(@NotNull PsiFile file, boolean processChangedTextOnly) {
+    return false;
+  }
+
+  /**
+   * Releases the data kept by {@link #prepareInBackground(PsiFile, boolean)} if the task hasn't consumed it.
+   * May be called for a file which has been prepared by another processor of the chain only.
+   */
+  protected void disposePrepared(@NotNull PsiFile file) {
+  }
+
   public FutureTask<Boolean> preprocessFile(@NotNull PsiFile file, boolean processChangedTextOnly) throws IncorrectOperationException {
     final FutureTask<Boolean> previousTask = getPreviousProcessorTask(file, processChangedTextOnly);
     final FutureTask<Boolean> currentTask = prepareTask(file, processChangedTextOnly);
@@ -319,6 +355,11 @@ public abstract class AbstractLayoutCodeProcessor {
   private void runProcessFiles(final PsiFile[] files) {
     // let's just ignore read-only files here
 
+    if (isParallelProcessingEnabled(Arrays.asList(files))) {
+      runInBatches(new ArrayList<PsiFile>(Arrays.asList(files)));
+      return;
+    }
+
     final Runnable[] resultRunnable = new Runnable[1];
     runLayoutCodeProcess(
       new Runnable() {
@@ -397,6 +438,11 @@ public abstract class AbstractLayoutCodeProcessor {
       array.addAll(writeables);
     }
 
+    if (isParallelProcessingEnabled(array)) {
+      runInBatches(array);
+      return;
+    }
+
     final Runnable[] resultRunnable = new Runnable[1];
     runLayoutCodeProcess(new Runnable() {
       @Override
@@ -560,6 +606,60 @@ public abstract class AbstractLayoutCodeProcessor {
     }
   }
 
+  private boolean isParallelProcessingEnabled(@NotNull List<PsiFile> files) {
+    return files.size() > 1 && isPreparedInBackground() && Registry.is("reformat.files.in.parallel");
+  }
+
+  private boolean isPreparedInBackground() {
+    for (AbstractLayoutCodeProcessor processor = this; processor != null; processor = processor.myPreviousCodeProcessor) {
+      if (processor.canPrepareInBackground()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * {@link #prepareInBackground(PsiFile, boolean) Prepares} the file by each processor of the chain which can do that.
+   *
+   * @return whether any processor has prepared something
+   */
+  private boolean prepareChainInBackground(@NotNull PsiFile file, boolean processChangedTextOnly) {
+    boolean prepared = false;
+    for (AbstractLayoutCodeProcessor processor = this; processor != null; processor = processor.myPreviousCodeProcessor) {
+      if (processor.canPrepareInBackground()) {
+        prepared |= processor.prepareInBackground(file, processChangedTextOnly);
+      }
+    }
+    return prepared;
+  }
+
+  private void disposeChainPrepared(@NotNull PsiFile file) {
+    for (AbstractLayoutCodeProcessor processor = this; processor != null; processor = processor.myPreviousCodeProcessor) {
+      if (processor.canPrepareInBackground()) {
+        processor.disposePrepared(file);
+      }
+    }
+  }
+
+  /**
+   * Processes the files batch by batch under modal progress: first the files of a batch are
+   * {@link #prepareInBackground(PsiFile, boolean) prepared} in parallel under read actions, then their tasks are run
+   * in the event dispatch thread the same way as {@link ReformatFilesTask} runs them, several files per write action.
+   */
+  private void runInBatches(@NotNull final List<PsiFile> files) {
+    CommandProcessor.getInstance().executeCommand(myProject, new Runnable() {
+      @Override
+      public void run() {
+        CommandProcessor.getInstance().markCurrentCommandAsGlobal(myProject);
+        ProgressManager.getInstance().run(new BatchProgressTask(myProject, myCommandName, files));
+        if (myPostRunnable != null) {
+          ApplicationManager.getApplication().invokeLater(myPostRunnable);
+        }
+      }
+    }, myCommandName, null);
+  }
+
   public void runWithoutProgress() throws IncorrectOperationException {
     final Runnable runnable = preprocessFile(myFile, myProcessChangedTextOnly);
     runnable.run();
@@ -568,13 +668,22 @@ public abstract class AbstractLayoutCodeProcessor {
   private class ReformatFilesTask implements SequentialTask {
 
     private final List<FutureTask<Boolean>> myTasks;
+    private final int                       myTasksNumber;
+    private final int                       myProcessedBefore;
     private final int                       myTotalTasksNumber;
 
     private SequentialModalProgressTask myCompositeTask;
+    private boolean                     myStopped;
 
     ReformatFilesTask(@NotNull List<FutureTask<Boolean>> tasks) {
+      this(tasks, 0, tasks.size());
+    }
+
+    ReformatFilesTask(@NotNull List<FutureTask<Boolean>> tasks, int processedBefore, int totalTasksNumber) {
       myTasks = tasks;
-      myTotalTasksNumber = myTasks.size();
+      myTasksNumber = tasks.size();
+      myProcessedBefore = processedBefore;
+      myTotalTasksNumber = totalTasksNumber;
     }
 
     @Override
@@ -598,23 +707,26 @@ public abstract class AbstractLayoutCodeProcessor {
       task.run();
       try {
         if (!task.get() || task.isCancelled()) {
-          myTasks.clear();
+          stop();
           return true;
         }
       }
       catch (InterruptedException e) {
         LOG.error("Got unexpected exception during formatting", e);
+        stop();
         return true;
       }
       catch (ExecutionException e) {
         LOG.error("Got unexpected exception during formatting", e);
+        stop();
         return true;
       }
       if (myCompositeTask != null) {
         ProgressIndicator indicator = myCompositeTask.getIndicator();
         if (indicator != null) {
-          indicator.setText(myProgressText + (myTotalTasksNumber - myTasks.size()) + "/" + myTotalTasksNumber);
-          indicator.setFraction((double)(myTotalTasksNumber - myTasks.size()) / myTotalTasksNumber);
+          int processed = myProcessedBefore + myTasksNumber - myTasks.size();
+          indicator.setText(myProgressText + processed + "/" + myTotalTasksNumber);
+          indicator.setFraction((double)processed / myTotalTasksNumber);
         }
       }
       return myTasks.isEmpty();
@@ -623,10 +735,115 @@ public abstract class AbstractLayoutCodeProcessor {
     @Override
     public void stop() {
       myTasks.clear();
+      myStopped = true;
+    }
+
+    public boolean isStopped() {
+      return myStopped;
     }
 
     public void setCompositeTask(@Nullable SequentialModalProgressTask compositeTask) {
       myCompositeTask = compositeTask;
     }
   }
+
+  /**
+   * Runs the tasks in write actions, for the tasks which aren't run inside a write action already.
+   * Each write action runs the tasks of several files, for about {@link #WRITE_ACTION_TIME} ms.
+   */
+  private class WriteActionReformatFilesTask extends ReformatFilesTask {
+    WriteActionReformatFilesTask(@NotNull List<FutureTask<Boolean>> tasks, int processedBefore, int totalTasksNumber) {
+      super(tasks, processedBefore, totalTasksNumber);
+    }
+
+    @Override
+    public boolean iteration() {
+      return ApplicationManager.getApplication().runWriteAction(new Computable<Boolean>() {
+        @Override
+        public Boolean compute() {
+          long start = System.currentTimeMillis();
+          boolean done;
+          do {
+            done = WriteActionReformatFilesTask.super.iteration();
+          }
+          while (!done && System.currentTimeMillis() - start < WRITE_ACTION_TIME);
+          return done;
+        }
+      });
+    }
+  }
+
+  private class BatchProgressTask extends SequentialModalProgressTask {
+    private final List<PsiFile> myFiles;
+
+    BatchProgressTask(@NotNull Project project, @NotNull String title, @NotNull List<PsiFile> files) {
+      super(project, title);
+      myFiles = files;
+    }
+
+    @Override
+    public void doRun(@NotNull ProgressIndicator indicator) throws InvocationTargetException, InterruptedException {
+      for (int start = 0; start < myFiles.size(); start += BATCH_SIZE) {
+        List<PsiFile> batch = myFiles.subList(start, Math.min(myFiles.size(), start + BATCH_SIZE));
+        List<PsiFile> prepared = ContainerUtil.createLockFreeCopyOnWriteList();
+        try {
+          List<FutureTask<Boolean>> tasks = prepareBatch(batch, prepared, indicator);
+          if (tasks == null) return;
+
+          ReformatFilesTask task = new WriteActionReformatFilesTask(tasks, start, myFiles.size());
+          task.setCompositeTask(this);
+          setTask(task);
+          super.doRun(indicator);
+          if (task.isStopped()) return;
+        }
+        finally {
+          for (PsiFile file : prepared) {
+            disposeChainPrepared(file);
+          }
+        }
+      }
+    }
+
+    /**
+     * @return the tasks of the files of the batch or null if the processing has been cancelled
+     */
+    @Nullable
+    private List<FutureTask<Boolean>> prepareBatch(@NotNull final List<PsiFile> batch,
+                                                   @NotNull final List<PsiFile> prepared,
+                                                   @NotNull ProgressIndicator indicator) {
+      Processor<PsiFile> preparer = new Processor<PsiFile>() {
+        @Override
+        public boolean process(PsiFile file) {
+          if (file.isValid() && file.isWritable() && prepareChainInBackground(file, myProcessChangedTextOnly)) {
+            prepared.add(file);
+          }
+          return true;
+        }
+      };
+      try {
+        if (!JobLauncher.getInstance().invokeConcurrentlyUnderProgress(batch, indicator, true, false, preparer)) return null;
+      }
+      catch (ProcessCanceledException e) {
+        return null;
+      }
+
+      final List<FutureTask<Boolean>> tasks = new ArrayList<FutureTask<Boolean>>(batch.size());
+      ApplicationManager.getApplication().runReadAction(new Runnable() {
+        @Override
+        public void run() {
+          for (PsiFile file : batch) {
+            if (file.isValid() && file.isWritable()) {
+              try {
+                tasks.add(preprocessFile(file, myProcessChangedTextOnly));
+              }
+              catch (IncorrectOperationException e) {
+                LOG.error(e);
+              }
+            }
+          }
+        }
+      });
+      return tasks;
+    }
+  }
 }
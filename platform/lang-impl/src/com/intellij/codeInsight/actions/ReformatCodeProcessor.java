@@ -25,6 +25,7 @@ import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.impl.source.codeStyle.PrecomputedFormatting;
 import com.intellij.util.IncorrectOperationException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -104,4 +105,22 @@ public class ReformatCodeProcessor extends AbstractLayoutCodeProcessor {
       }
     });
   }
+
+  @Override
+  protected boolean canPrepareInBackground() {
+    return true;
+  }
+
+  @Override
+  protected boolean prepareInBackground(@NotNull PsiFile file, boolean processChangedTextOnly) {
+    // only the whole file formatting is worth preparing
+    if (processChangedTextOnly || !myRanges.isEmpty()) return false;
+    PrecomputedFormatting.prepare(file);
+    return true;
+  }
+
+  @Override
+  protected void disposePrepared(@NotNull PsiFile file) {
+    PrecomputedFormatting.discard(file);
+  }
 }
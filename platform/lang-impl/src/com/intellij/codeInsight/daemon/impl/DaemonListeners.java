@@ -256,6 +256,8 @@ public class DaemonListeners implements Disposable {
     Disposer.register(this, changeHandler);
     psiManager.addPsiTreeChangeListener(changeHandler, changeHandler);
 
+    Disposer.register(this, new HighlightingCache(myProject, daemonCodeAnalyzer));
+
     connection.subscribe(ProjectTopics.PROJECT_ROOTS, new ModuleRootAdapter() {
       @Override
       public void rootsChanged(ModuleRootEvent event) {
@@ -0,0 +1,490 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeHighlighting.Pass;
+import com.intellij.codeInsight.daemon.impl.analysis.HighlightingLevelManager;
+import com.intellij.codeInspection.InspectionProfile;
+import com.intellij.ide.PowerSaveMode;
+import com.intellij.lang.annotation.HighlightSeverity;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.markup.EffectType;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerAdapter;
+import com.intellij.openapi.fileEditor.FileEditorManagerListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.project.ProjectManagerAdapter;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.WriteExternalException;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.registry.Registry;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.profile.Profile;
+import com.intellij.profile.ProfileChangeAdapter;
+import com.intellij.profile.codeInspection.InspectionProfileManager;
+import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.ArrayUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.concurrency.SequentialTaskExecutor;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.IOUtil;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TIntObjectProcedure;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
+
+import java.awt.*;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the highlighting of closed files on disk, so that a file which is opened again shows the results of the last finished
+ * analysis at once. These provisional highlighters belong to the same groups as the highlighters of the passes which created them,
+ * so the passes replace them as usual when they finish.
+ * <p/>
+ * The highlighting is stored when a file is closed, if the analysis of the file has finished, and is used only if neither the text
+ * of the file nor the inspection profile have changed since then, and only if the daemon is going to highlight the file. Quick fixes, gutter icons and file level annotations aren't stored.
+ * The number and the total size of the stored files are limited, the least recently used ones are removed first.
+ */
+class HighlightingCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.HighlightingCache");
+  private static final int VERSION = 1;
+  private static final int MAX_FILES = 1000;
+  private static final long MAX_TOTAL_SIZE = 50 * 1024 * 1024;
+  private static final int MAX_INFOS_PER_FILE = 10000;
+  private static final int[] CACHED_GROUPS = {Pass.UPDATE_ALL, Pass.LOCAL_INSPECTIONS, Pass.WHOLE_FILE_LOCAL_INSPECTIONS, Pass.EXTERNAL_TOOLS};
+  private static final int[] INSPECTION_GROUPS = {Pass.LOCAL_INSPECTIONS, Pass.WHOLE_FILE_LOCAL_INSPECTIONS, Pass.EXTERNAL_TOOLS};
+
+  private final Project myProject;
+  private final DaemonCodeAnalyzerImpl myDaemonCodeAnalyzer;
+  private final File myCacheDir;
+  private final Executor myExecutor = new SequentialTaskExecutor(PooledThreadExecutor.INSTANCE);
+  // the digest of the inspection profile and of the IDE build, accessed in EDT only
+  private Profile myKeyProfile;
+  private byte[] myProfileKey;
+
+  HighlightingCache(@NotNull Project project, @NotNull DaemonCodeAnalyzerImpl daemonCodeAnalyzer) {
+    myProject = project;
+    myDaemonCodeAnalyzer = daemonCodeAnalyzer;
+    myCacheDir = new File(PathManager.getSystemPath(), "highlighting/" + project.getLocationHash());
+
+    project.getMessageBus().connect(this).subscribe(FileEditorManagerListener.FILE_EDITOR_MANAGER, new FileEditorManagerAdapter() {
+      @Override
+      public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        if (isEnabled()) {
+          restore(file);
+        }
+      }
+
+      @Override
+      public void fileClosed(@NotNull FileEditorManager source, @NotNull final VirtualFile file) {
+        if (!isEnabled()) return;
+        final byte[] data = save(file);
+        if (data != null) {
+          myExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+              write(file, data);
+            }
+          });
+        }
+      }
+    });
+    ProfileChangeAdapter profileListener = new ProfileChangeAdapter() {
+      @Override
+      public void profileChanged(Profile profile) {
+        myProfileKey = null;
+      }
+
+      @Override
+      public void profileActivated(@NotNull Profile oldProfile, Profile profile) {
+        myProfileKey = null;
+      }
+    };
+    InspectionProfileManager.getInstance().addProfileChangeListener(profileListener, this);
+    InspectionProjectProfileManager.getInstance(project).addProfilesListener(profileListener, this);
+    ProjectManager.getInstance().addProjectManagerListener(project, new ProjectManagerAdapter() {
+      @Override
+      public void projectClosing(Project project) {
+        if (!isEnabled()) return;
+        for (VirtualFile file : FileEditorManager.getInstance(project).getOpenFiles()) {
+          byte[] data = save(file);
+          if (data != null) {
+            write(file, data);
+          }
+        }
+      }
+    });
+  }
+
+  private static boolean isEnabled() {
+    return Registry.is("daemon.highlighting.cache");
+  }
+
+  @Override
+  public void dispose() {
+  }
+
+  /**
+   * @return the serialized highlighting of the file or null if the analysis of the file hasn't finished
+   */
+  @Nullable
+  private byte[] save(@NotNull VirtualFile file) {
+    Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    PsiFile psiFile = document == null ? null : PsiDocumentManager.getInstance(myProject).getCachedPsiFile(document);
+    if (psiFile == null || !myDaemonCodeAnalyzer.isAllAnalysisFinished(psiFile)) return null;
+    return serialize(file, document);
+  }
+
+  @Nullable
+  byte[] serialize(@NotNull VirtualFile file, @NotNull Document document) {
+    final List<HighlightInfo> infos = new ArrayList<HighlightInfo>();
+    DaemonCodeAnalyzerEx.processHighlights(document, myProject, null, 0, document.getTextLength(), new Processor<HighlightInfo>() {
+      @Override
+      public boolean process(HighlightInfo info) {
+        if (isCached(info)) {
+          infos.add(info);
+        }
+        return infos.size() <= MAX_INFOS_PER_FILE;
+      }
+    });
+    if (infos.size() > MAX_INFOS_PER_FILE) return null;
+
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(VERSION);
+      IOUtil.writeString(file.getUrl(), out);
+      out.write(computeKey(document));
+      out.writeInt(infos.size());
+      for (HighlightInfo info : infos) {
+        writeInfo(out, info);
+      }
+      out.close();
+      return bytes.toByteArray();
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      return null;
+    }
+  }
+
+  private static boolean isCached(@NotNull HighlightInfo info) {
+    return ArrayUtil.indexOf(CACHED_GROUPS, info.getGroup()) >= 0 &&
+           info.highlighter != null && info.highlighter.isValid() &&
+           !info.isFromInjection() && !info.isFileLevelAnnotation() && info.getGutterIconRenderer() == null;
+  }
+
+  /**
+   * @return whether the daemon is going to highlight the file, so that the restored highlighting will be replaced
+   */
+  boolean canRestore(@NotNull PsiFile psiFile) {
+    return !PowerSaveMode.isEnabled() &&
+           myDaemonCodeAnalyzer.isUpdateByTimerEnabled() &&
+           myDaemonCodeAnalyzer.isHighlightingAvailable(psiFile) &&
+           HighlightingLevelManager.getInstance(myProject).shouldHighlight(psiFile);
+  }
+
+  private void restore(@NotNull final VirtualFile file) {
+    final Document document = FileDocumentManager.getInstance().getCachedDocument(file);
+    PsiFile psiFile = document == null ? null : PsiDocumentManager.getInstance(myProject).getCachedPsiFile(document);
+    if (psiFile == null || !canRestore(psiFile)) return;
+    final long stamp = document.getModificationStamp();
+    final byte[] key = computeKey(document);
+    myExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        final TIntObjectHashMap<List<HighlightInfo>> infos = read(file, key);
+        if (infos == null) return;
+        ApplicationManager.getApplication().invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (myProject.isDisposed() || document.getModificationStamp() != stamp || hasHighlights(document)) return;
+            PsiFile psiFile = PsiDocumentManager.getInstance(myProject).getPsiFile(document);
+            if (psiFile == null || !canRestore(psiFile) || myDaemonCodeAnalyzer.isErrorAnalyzingFinished(psiFile)) return;
+            final boolean inspect = HighlightingLevelManager.getInstance(myProject).shouldInspect(psiFile);
+            infos.forEachEntry(new TIntObjectProcedure<List<HighlightInfo>>() {
+              @Override
+              public boolean execute(int group, List<HighlightInfo> groupInfos) {
+                if (!inspect && ArrayUtil.indexOf(INSPECTION_GROUPS, group) >= 0) return true;
+                UpdateHighlightersUtil.setHighlightersToEditor(myProject, document, 0, document.getTextLength(), groupInfos, null, group);
+                return true;
+              }
+            });
+          }
+        }, ModalityState.NON_MODAL);
+      }
+    });
+  }
+
+  /**
+   * @return whether the document already has highlighting of one of the cached groups, which mustn't be overwritten
+   */
+  boolean hasHighlights(@NotNull Document document) {
+    final boolean[] found = {false};
+    DaemonCodeAnalyzerEx.processHighlights(document, myProject, null, 0, document.getTextLength(), new Processor<HighlightInfo>() {
+      @Override
+      public boolean process(HighlightInfo info) {
+        found[0] = ArrayUtil.indexOf(CACHED_GROUPS, info.getGroup()) >= 0;
+        return !found[0];
+      }
+    });
+    return found[0];
+  }
+
+  /**
+   * @return the digest of the text of the document, of the inspection profile and of the IDE build
+   */
+  @NotNull
+  byte[] computeKey(@NotNull Document document) {
+    MessageDigest digest = createDigest();
+    digest.update(document.getText().getBytes(CharsetToolkit.UTF8_CHARSET));
+    digest.update(getProfileKey());
+    return digest.digest();
+  }
+
+  /**
+   * The profile is serialized only when it changes, not each time a file is opened or closed.
+   */
+  @NotNull
+  byte[] getProfileKey() {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    InspectionProfile profile = InspectionProjectProfileManager.getInstance(myProject).getInspectionProfile();
+    if (myProfileKey == null || myKeyProfile != profile) {
+      Element profileElement = new Element("profile");
+      try {
+        profile.writeExternal(profileElement);
+      }
+      catch (WriteExternalException e) {
+        LOG.warn(e);
+      }
+      MessageDigest digest = createDigest();
+      digest.update(JDOMUtil.writeElement(profileElement, "\n").getBytes(CharsetToolkit.UTF8_CHARSET));
+      digest.update(ApplicationInfo.getInstance().getBuild().asString().getBytes(CharsetToolkit.UTF8_CHARSET));
+      myProfileKey = digest.digest();
+      myKeyProfile = profile;
+    }
+    return myProfileKey;
+  }
+
+  @NotNull
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  @NotNull
+  File getCacheFile(@NotNull VirtualFile file) {
+    return new File(myCacheDir, Integer.toHexString(file.getUrl().hashCode()) + ".dat");
+  }
+
+  void write(@NotNull VirtualFile file, @NotNull byte[] data) {
+    File cacheFile = getCacheFile(file);
+    try {
+      FileUtil.writeToFile(cacheFile, data);
+    }
+    catch (IOException e) {
+      LOG.info("Cannot store highlighting of " + file, e);
+      FileUtil.delete(cacheFile);
+      return;
+    }
+    evict();
+  }
+
+  /**
+   * @return the cached highlighting by group or null if there is no highlighting of this version of the file
+   */
+  @Nullable
+  TIntObjectHashMap<List<HighlightInfo>> read(@NotNull VirtualFile file, @NotNull byte[] key) {
+    File cacheFile = getCacheFile(file);
+    if (!cacheFile.exists()) return null;
+    try {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+      try {
+        if (in.readInt() != VERSION || !file.getUrl().equals(IOUtil.readString(in))) return null;
+        byte[] storedKey = new byte[key.length];
+        in.readFully(storedKey);
+        if (!Arrays.equals(key, storedKey)) return null;
+
+        TIntObjectHashMap<List<HighlightInfo>> result = new TIntObjectHashMap<List<HighlightInfo>>();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+          int group = in.readInt();
+          List<HighlightInfo> infos = result.get(group);
+          if (infos == null) {
+            infos = new ArrayList<HighlightInfo>();
+            result.put(group, infos);
+          }
+          infos.add(readInfo(in));
+        }
+        //noinspection ResultOfMethodCallIgnored
+        cacheFile.setLastModified(System.currentTimeMillis());
+        return result;
+      }
+      finally {
+        in.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read highlighting of " + file, e);
+      FileUtil.delete(cacheFile);
+      return null;
+    }
+  }
+
+  /**
+   * Removes the least recently used files until the limits are satisfied.
+   */
+  private void evict() {
+    File[] files = myCacheDir.listFiles();
+    if (files == null) return;
+    long totalSize = 0;
+    for (File file : files) {
+      totalSize += file.length();
+    }
+    if (files.length <= MAX_FILES && totalSize <= MAX_TOTAL_SIZE) return;
+
+    final long[] timestamps = new long[files.length];
+    List<Integer> order = new ArrayList<Integer>(files.length);
+    for (int i = 0; i < files.length; i++) {
+      timestamps[i] = files[i].lastModified();
+      order.add(i);
+    }
+    ContainerUtil.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return timestamps[o1] < timestamps[o2] ? -1 : timestamps[o1] == timestamps[o2] ? 0 : 1;
+      }
+    });
+    int count = files.length;
+    for (int index : order) {
+      if (count <= MAX_FILES && totalSize <= MAX_TOTAL_SIZE) break;
+      totalSize -= files[index].length();
+      count--;
+      FileUtil.delete(files[index]);
+    }
+  }
+
+  private static void writeInfo(@NotNull DataOutput out, @NotNull HighlightInfo info) throws IOException {
+    out.writeInt(info.getGroup());
+    out.writeInt(info.getActualStartOffset());
+    out.writeInt(info.getActualEndOffset());
+    HighlightSeverity severity = info.getSeverity();
+    IOUtil.writeString(severity.myName, out);
+    out.writeInt(severity.myVal);
+    TextAttributesKey typeKey = info.type.getAttributesKey();
+    IOUtil.writeString(typeKey == null ? "" : typeKey.getExternalName(), out);
+    IOUtil.writeString(info.forcedTextAttributesKey == null ? "" : info.forcedTextAttributesKey.getExternalName(), out);
+    writeAttributes(out, info.forcedTextAttributes);
+    writeNullableString(out, info.getDescription());
+    writeNullableString(out, info.getToolTip());
+    out.writeBoolean(info.isAfterEndOfLine());
+    out.writeBoolean(info.needUpdateOnTyping());
+  }
+
+  @NotNull
+  private static HighlightInfo readInfo(@NotNull DataInput in) throws IOException {
+    int start = in.readInt();
+    int end = in.readInt();
+    HighlightSeverity severity = new HighlightSeverity(IOUtil.readString(in), in.readInt());
+    String typeKey = IOUtil.readString(in);
+    String forcedKey = IOUtil.readString(in);
+    TextAttributes forcedAttributes = readAttributes(in);
+    String description = readNullableString(in);
+    String toolTip = readNullableString(in);
+    boolean afterEndOfLine = in.readBoolean();
+    boolean needsUpdateOnTyping = in.readBoolean();
+    HighlightInfoType type = new HighlightInfoType.HighlightInfoTypeImpl(severity, typeKey.isEmpty() ? null : TextAttributesKey.find(typeKey));
+    return new HighlightInfo(forcedAttributes, forcedKey.isEmpty() ? null : TextAttributesKey.find(forcedKey), type, start, end,
+                             description, toolTip, severity, afterEndOfLine, needsUpdateOnTyping, false, 0, null, null);
+  }
+
+  private static void writeAttributes(@NotNull DataOutput out, @Nullable TextAttributes attributes) throws IOException {
+    out.writeBoolean(attributes != null);
+    if (attributes == null) return;
+    writeColor(out, attributes.getForegroundColor());
+    writeColor(out, attributes.getBackgroundColor());
+    writeColor(out, attributes.getEffectColor());
+    writeColor(out, attributes.getErrorStripeColor());
+    EffectType effectType = attributes.getEffectType();
+    out.writeInt(effectType == null ? -1 : effectType.ordinal());
+    out.writeInt(attributes.getFontType());
+  }
+
+  @Nullable
+  private static TextAttributes readAttributes(@NotNull DataInput in) throws IOException {
+    if (!in.readBoolean()) return null;
+    Color foreground = readColor(in);
+    Color background = readColor(in);
+    Color effectColor = readColor(in);
+    Color errorStripeColor = readColor(in);
+    int effectType = in.readInt();
+    int fontType = in.readInt();
+    TextAttributes attributes = new TextAttributes(foreground, background, effectColor,
+                                                   effectType < 0 ? null : EffectType.values()[effectType], fontType);
+    attributes.setErrorStripeColor(errorStripeColor);
+    return attributes;
+  }
+
+  private static void writeColor(@NotNull DataOutput out, @Nullable Color color) throws IOException {
+    out.writeBoolean(color != null);
+    if (color != null) {
+      out.writeInt(color.getRGB());
+    }
+  }
+
+  @Nullable
+  private static Color readColor(@NotNull DataInput in) throws IOException {
+    return in.readBoolean() ? new Color(in.readInt(), true) : null;
+  }
+
+  private static void writeNullableString(@NotNull DataOutput out, @Nullable String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      IOUtil.writeString(s, out);
+    }
+  }
+
+  @Nullable
+  private static String readNullableString(@NotNull DataInput in) throws IOException {
+    return in.readBoolean() ? IOUtil.readString(in) : null;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.util.ConcurrencyUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the time spent by highlighting passes, local inspection tools and files, to find out what makes highlighting slow.
+ * <p/>
+ * Collecting is off by default, it is switched on by the <code>idea.highlighting.statistics</code> system property
+ * or by {@link #setEnabled(boolean)}; when it's off the only overhead is the check of a static flag.
+ * Wall and CPU times are in nanoseconds. The CPU time of a pass is that of the thread running it; the CPU time of a file inspected in batch
+ * is the sum of the CPU times of its local inspection tools, on whichever threads they ran.
+ */
+public class HighlightingStatistics {
+  private static volatile boolean ourEnabled = Boolean.getBoolean("idea.highlighting.statistics");
+  private static final ThreadMXBean ourThreadBean = ManagementFactory.getThreadMXBean();
+
+  private static final ConcurrentMap<String, Counter> ourPasses = ContainerUtil.newConcurrentMap();
+  private static final ConcurrentMap<String, Counter> ourTools = ContainerUtil.newConcurrentMap();
+  private static final ConcurrentMap<String, Counter> ourFiles = ContainerUtil.newConcurrentMap();
+
+  private HighlightingStatistics() {
+  }
+
+  public static boolean isEnabled() {
+    return ourEnabled;
+  }
+
+  public static void setEnabled(boolean enabled) {
+    ourEnabled = enabled;
+  }
+
+  public static void clear() {
+    ourPasses.clear();
+    ourTools.clear();
+    ourFiles.clear();
+  }
+
+  /**
+   * @return the CPU time of the current thread or 0 if it isn't supported
+   */
+  static long getCurrentThreadCpuTime() {
+    return ourThreadBean.isCurrentThreadCpuTimeSupported() ? ourThreadBean.getCurrentThreadCpuTime() : 0;
+  }
+
+  /**
+   * @param canceled whether the pass was canceled, so that its work has to be repeated after the restart
+   */
+  static void recordPass(@NotNull String pass, @NotNull String file, long wall, long cpu, boolean canceled) {
+    getCounter(ourPasses, pass).add(wall, cpu, canceled);
+    getCounter(ourFiles, file).add(wall, cpu, canceled);
+  }
+
+  /**
+   * Records one run of a local inspection tool, both the visiting of the elements and the finishing of the inspection.
+   */
+  static void recordTool(@NotNull String toolShortName, long wall, long cpu) {
+    getCounter(ourTools, toolShortName).add(wall, cpu, false);
+  }
+
+  static void recordFile(@NotNull String file, long wall, long cpu) {
+    getCounter(ourFiles, file).add(wall, cpu, false);
+  }
+
+  @TestOnly
+  static long getToolRunCount(@NotNull String toolShortName) {
+    Counter counter = ourTools.get(toolShortName);
+    return counter == null ? 0 : counter.myRuns.get();
+  }
+
+  @TestOnly
+  static long getFileCpuTime(@NotNull String file) {
+    Counter counter = ourFiles.get(file);
+    return counter == null ? 0 : counter.myCpu.get();
+  }
+
+  @NotNull
+  private static Counter getCounter(@NotNull ConcurrentMap<String, Counter> counters, @NotNull String key) {
+    Counter counter = counters.get(key);
+    return counter != null ? counter : ConcurrencyUtil.cacheOrGet(counters, key, new Counter());
+  }
+
+  /**
+   * Writes the collected times, the slowest passes, tools and files first.
+   *
+   * @param maxFiles the maximum number of files in the report
+   */
+  public static void writeReport(@NotNull PrintWriter writer, int maxFiles) {
+    writeSection(writer, "Passes", ourPasses, Integer.MAX_VALUE);
+    writeSection(writer, "Local inspection tools", ourTools, Integer.MAX_VALUE);
+    writeSection(writer, "Files", ourFiles, maxFiles);
+    writer.flush();
+  }
+
+  private static void writeSection(@NotNull PrintWriter writer, @NonNls @NotNull String title, @NotNull Map<String, Counter> counters, int max) {
+    List<Map.Entry<String, Counter>> entries = new ArrayList<Map.Entry<String, Counter>>(counters.entrySet());
+    Collections.sort(entries, new Comparator<Map.Entry<String, Counter>>() {
+      @Override
+      public int compare(Map.Entry<String, Counter> o1, Map.Entry<String, Counter> o2) {
+        long wall1 = o1.getValue().myWall.get();
+        long wall2 = o2.getValue().myWall.get();
+        return wall1 > wall2 ? -1 : wall1 == wall2 ? o1.getKey().compareTo(o2.getKey()) : 1;
+      }
+    });
+
+    writer.println(title + " (" + entries.size() + ")");
+    writer.println(String.format("%10s %10s %8s %8s  %s", "wall ms", "cpu ms", "runs", "canceled", "name"));
+    for (Map.Entry<String, Counter> entry : entries.subList(0, Math.min(max, entries.size()))) {
+      Counter counter = entry.getValue();
+      writer.println(String.format("%10d %10d %8d %8d  %s", counter.myWall.get() / 1000000, counter.myCpu.get() / 1000000,
+                                   counter.myRuns.get(), counter.myCanceled.get(), entry.getKey()));
+    }
+    writer.println();
+  }
+
+  private static class Counter {
+    private final AtomicLong myRuns = new AtomicLong();
+    private final AtomicLong myCanceled = new AtomicLong();
+    private final AtomicLong myWall = new AtomicLong();
+    private final AtomicLong myCpu = new AtomicLong();
+
+    private void add(long wall, long cpu, boolean canceled) {
+      myRuns.incrementAndGet();
+      if (canceled) myCanceled.incrementAndGet();
+      myWall.addAndGet(wall);
+      myCpu.addAndGet(cpu);
+    }
+  }
+}
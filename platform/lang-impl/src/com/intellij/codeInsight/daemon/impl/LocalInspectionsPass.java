@@ -47,6 +47,7 @@ import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.util.*;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManager;
 import com.intellij.profile.codeInspection.InspectionProjectProfileManagerImpl;
 import com.intellij.profile.codeInspection.SeverityProvider;
@@ -68,6 +69,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author max
@@ -92,6 +94,8 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   private final SeverityRegistrar mySeverityRegistrar;
   private final InspectionProfileWrapper myProfileWrapper;
   private boolean myFailFastOnAcquireReadAction;
+  // the CPU time of the local inspection tools, summed over the threads they run in, when the statistics are collected
+  private final AtomicLong myToolsCpuTime = new AtomicLong();
 
   public LocalInspectionsPass(@NotNull PsiFile file,
                               @Nullable Document document,
@@ -152,7 +156,15 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                @NotNull final InspectionManagerEx iManager,
                                @NotNull final List<LocalInspectionToolWrapper> toolWrappers) {
     final ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
+    boolean collectStatistics = HighlightingStatistics.isEnabled();
+    long startTime = collectStatistics ? System.nanoTime() : 0;
+    myToolsCpuTime.set(0);
     inspect(new ArrayList<LocalInspectionToolWrapper>(toolWrappers), iManager, false, false, false, progress);
+    if (collectStatistics) {
+      VirtualFile virtualFile = myFile.getVirtualFile();
+      HighlightingStatistics.recordFile(virtualFile == null ? myFile.getName() : virtualFile.getPath(), System.nanoTime() - startTime,
+                                        myToolsCpuTime.get());
+    }
     addDescriptorsFromInjectedResults(iManager, context);
     List<InspectionResult> resultList = result.get(myFile);
     if (resultList == null) return;
@@ -355,10 +367,19 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
           }
         }
     };
+    boolean collectStatistics = HighlightingStatistics.isEnabled();
+    long startTime = collectStatistics ? System.nanoTime() : 0;
+    long startCpuTime = collectStatistics ? HighlightingStatistics.getCurrentThreadCpuTime() : 0;
     PsiElementVisitor visitor = InspectionEngine.createVisitorAndAcceptElements(tool, holder, isOnTheFly, session, elements, languages);
+    InspectionContext context = new InspectionContext(toolWrapper, holder, visitor, languages);
+    if (collectStatistics) {
+      // recorded together with the time of the rest elements
+      context.wallTime = System.nanoTime() - startTime;
+      context.cpuTime = HighlightingStatistics.getCurrentThreadCpuTime() - startCpuTime;
+    }
 
     synchronized (init) {
-      init.add(new InspectionContext(toolWrapper, holder, visitor, languages));
+      init.add(context);
     }
     advanceProgress(1);
 
@@ -379,9 +400,17 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
         public boolean process(InspectionContext context) {
           indicator.checkCanceled();
           ApplicationManager.getApplication().assertReadAccessAllowed();
+          boolean collectStatistics = HighlightingStatistics.isEnabled();
+          long startTime = collectStatistics ? System.nanoTime() : 0;
+          long startCpuTime = collectStatistics ? HighlightingStatistics.getCurrentThreadCpuTime() : 0;
           InspectionEngine.acceptElements(elements, context.visitor, context.languageIds);
           advanceProgress(1);
           context.tool.getTool().inspectionFinished(session, context.holder);
+          if (collectStatistics) {
+            long cpuTime = context.cpuTime + HighlightingStatistics.getCurrentThreadCpuTime() - startCpuTime;
+            HighlightingStatistics.recordTool(context.tool.getShortName(), context.wallTime + System.nanoTime() - startTime, cpuTime);
+            myToolsCpuTime.addAndGet(cpuTime);
+          }
 
           if (context.holder.hasResults()) {
             appendDescriptors(myFile, context.holder.getResults(), context.tool);
@@ -800,5 +829,8 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     @NotNull final ProblemsHolder holder;
     @NotNull final PsiElementVisitor visitor;
     @Nullable final Collection<String> languageIds;
+    // the time of visiting the priority elements, set when the statistics are collected
+    long wallTime;
+    long cpuTime;
   }
 }
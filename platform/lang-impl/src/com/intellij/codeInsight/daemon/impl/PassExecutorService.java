@@ -28,6 +28,7 @@ import com.intellij.openapi.application.ex.ApplicationManagerEx;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.progress.ProcessCanceledException;
@@ -39,6 +40,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.Consumer;
 import com.intellij.util.SmartList;
@@ -340,6 +342,9 @@ public abstract class PassExecutorService implements Disposable {
         }
       }
 
+      boolean collectStatistics = HighlightingStatistics.isEnabled();
+      long startTime = collectStatistics ? System.nanoTime() : 0;
+      long startCpuTime = collectStatistics ? HighlightingStatistics.getCurrentThreadCpuTime() : 0;
       ProgressManager.getInstance().executeProcessUnderProgress(new Runnable() {
         @Override
         public void run() {
@@ -381,6 +386,14 @@ public abstract class PassExecutorService implements Disposable {
         }
       }, myUpdateProgress);
 
+      if (collectStatistics) {
+        Document document = myPass.getDocument();
+        VirtualFile file = document == null ? null : FileDocumentManager.getInstance().getFile(document);
+        HighlightingStatistics.recordPass(myPass.getClass().getName(), file == null ? String.valueOf(document) : file.getPath(),
+                                          System.nanoTime() - startTime, HighlightingStatistics.getCurrentThreadCpuTime() - startCpuTime,
+                                          myUpdateProgress.isCanceled());
+      }
+
       log(myUpdateProgress, myPass, "Finished. ");
 
       if (!myUpdateProgress.isCanceled()) {
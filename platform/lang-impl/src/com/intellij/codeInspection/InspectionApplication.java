@@ -17,6 +17,7 @@
 package com.intellij.codeInspection;
 
 import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInsight.daemon.impl.HighlightingStatistics;
 import com.intellij.codeInspection.ex.*;
 import com.intellij.conversion.ConversionListener;
 import com.intellij.conversion.ConversionService;
@@ -44,11 +45,13 @@ import com.intellij.psi.PsiManager;
 import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
 import org.jdom.JDOMException;
 import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.util.*;
 
 /**
@@ -67,6 +70,10 @@ public class InspectionApplication {
   public String myProfilePath = null;
   public boolean myRunWithEditorSettings = false;
   public boolean myRunGlobalToolsOnly = false;
+  public String myCacheDirectory = null;
+  public int myShardCount = 1;
+  public int myShard = -1;
+  public String myTimingsPath = null;
   private Project myProject;
   private int myVerboseLevel = 0;
   public String myOutputFormat = null;
@@ -120,6 +127,7 @@ public class InspectionApplication {
   private void run() {
 
     File tmpDir = null;
+    InspectionShards shards = null;
     try {
       myProjectPath = myProjectPath.replace(File.separatorChar, '/');
       VirtualFile vfsProject = LocalFileSystem.getInstance().findFileByPath(myProjectPath);
@@ -163,19 +171,33 @@ public class InspectionApplication {
       inspectionContext.setExternalProfile((InspectionProfile)inspectionProfile);
       im.setProfile(inspectionProfile.getName());
 
+      final boolean runShards = myShardCount > 1 && myShard < 0;
+      final OfflineInspectionResultsCache resultsCache = myCacheDirectory == null || runShards
+                                                         ? null
+                                                         : OfflineInspectionResultsCache.load(myProject, new File(myCacheDirectory),
+                                                                                              (InspectionProfile)inspectionProfile);
+      inspectionContext.setOfflineResultsCache(resultsCache);
+      HighlightingStatistics.setEnabled(myTimingsPath != null);
+
       final AnalysisScope scope;
-      if (mySourceDirectory == null) {
-        scope = new AnalysisScope(myProject);
-      }
-      else {
+      VirtualFile vfsDir = null;
+      if (mySourceDirectory != null) {
         mySourceDirectory = mySourceDirectory.replace(File.separatorChar, '/');
 
-        VirtualFile vfsDir = LocalFileSystem.getInstance().findFileByPath(mySourceDirectory);
+        vfsDir = LocalFileSystem.getInstance().findFileByPath(mySourceDirectory);
         if (vfsDir == null) {
           logError(InspectionsBundle.message("inspection.application.directory.cannot.be.found", mySourceDirectory));
           printHelp();
         }
-
+      }
+      if (myShard >= 0) {
+        scope = new AnalysisScope(InspectionShards.createScope(myProject, vfsDir, myShard, myShardCount), myProject);
+        inspectionContext.setRunLocalToolsOnly(true);
+      }
+      else if (vfsDir == null) {
+        scope = new AnalysisScope(myProject);
+      }
+      else {
         PsiDirectory psiDirectory = PsiManager.getInstance(myProject).findDirectory(vfsDir);
         scope = new AnalysisScope(psiDirectory);
       }
@@ -210,6 +232,12 @@ public class InspectionApplication {
         }
       }
 
+      if (runShards) {
+        // the children inspect the files with local tools while this process runs global tools for the whole project
+        shards = new InspectionShards(myShardCount);
+        shards.start(myProjectPath, getProfileArgument(), getShardOptions(), resultsDataPath, myCacheDirectory, myTimingsPath);
+      }
+
       final List<File> inspectionsResults = new ArrayList<File>();
       ProgressManager.getInstance().runProcess(new Runnable() {
         @Override
@@ -218,7 +246,17 @@ public class InspectionApplication {
             if (myErrorCodeRequired) System.exit(1);
             return;
           }
-          inspectionContext.launchInspectionsOffline(scope, resultsDataPath, myRunGlobalToolsOnly, inspectionsResults);
+          inspectionContext.launchInspectionsOffline(scope, resultsDataPath, myRunGlobalToolsOnly || runShards, inspectionsResults);
+          if (resultsCache != null) {
+            resultsCache.save();
+            int hits = resultsCache.getHitCount();
+            int total = hits + resultsCache.getMissCount();
+            logMessageLn(1, "\nLocal inspection results reused for " + hits + " of " + total + " files" +
+                            (total == 0 ? "" : " (" + hits * 100 / total + "%)"));
+          }
+          if (myTimingsPath != null) {
+            writeTimings();
+          }
           logMessageLn(1, "\n" +
                           InspectionsBundle.message("inspection.capitalized.done") +
                           "\n");
@@ -258,6 +296,14 @@ public class InspectionApplication {
           logMessageLn(2, text);
         }
       });
+      if (shards != null) {
+        if (!shards.waitFor()) {
+          logError("Inspection of some of the files has failed");
+          if (myErrorCodeRequired) System.exit(1);
+          return;
+        }
+        shards.mergeResults(resultsDataPath, inspectionsResults);
+      }
       final String descriptionsFile = resultsDataPath + File.separatorChar + DESCRIPTIONS + XML_EXTENSION;
       describeInspections(descriptionsFile,
                           myRunWithEditorSettings ? null : inspectionProfile.getName());
@@ -284,6 +330,9 @@ public class InspectionApplication {
       if (myErrorCodeRequired) System.exit(1);
     }
     finally {
+      if (shards != null) {
+        shards.destroy();
+      }
       // delete tmp dir
       if (tmpDir != null) {
         FileUtil.delete(tmpDir);
@@ -291,6 +340,54 @@ public class InspectionApplication {
     }
   }
 
+  private void writeTimings() {
+    try {
+      PrintWriter writer = new PrintWriter(new FileWriter(myTimingsPath));
+      try {
+        HighlightingStatistics.writeReport(writer, 1000);
+      }
+      finally {
+        writer.close();
+      }
+      logMessageLn(1, "\nInspection timings are written to " + myTimingsPath);
+    }
+    catch (IOException e) {
+      logError("Cannot write inspection timings: " + e.getMessage());
+    }
+  }
+
+  @NotNull
+  private String getProfileArgument() {
+    if (myProfileName != null) return myProfileName;
+    if (myProfilePath != null) return myProfilePath;
+    return myStubProfile;
+  }
+
+  /**
+   * @return the options of this run to be passed to the processes inspecting the shards
+   */
+  @NotNull
+  private List<String> getShardOptions() {
+    List<String> options = new ArrayList<String>();
+    if (myProfileName != null) {
+      options.add("-profileName");
+      options.add(myProfileName);
+    }
+    if (myProfilePath != null) {
+      options.add("-profilePath");
+      options.add(myProfilePath);
+    }
+    if (mySourceDirectory != null) {
+      options.add("-d");
+      options.add(mySourceDirectory);
+    }
+    if (myRunWithEditorSettings) {
+      options.add("-e");
+    }
+    options.add("-v0");
+    return options;
+  }
+
   @Nullable
   private Profile loadInspectionProfile() throws IOException, JDOMException {
     Profile inspectionProfile = null;
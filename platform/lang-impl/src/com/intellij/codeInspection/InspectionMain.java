@@ -93,6 +93,32 @@ public class InspectionMain implements ApplicationStarter {
         else if ("-t".equals(arg)) {
           myApplication.myErrorCodeRequired = false;
         }
+        else if ("-cache".equals(arg)) {
+          myApplication.myCacheDirectory = args[++i];
+        }
+        else if ("-timings".equals(arg)) {
+          myApplication.myTimingsPath = args[++i];
+        }
+        else if ("-shards".equals(arg)) {
+          myApplication.myShardCount = Integer.parseInt(args[++i]);
+          if (myApplication.myShardCount < 1) {
+            System.err.println("invalid number of shards: " + args[i]);
+            printHelp();
+          }
+        }
+        else if ("-shard".equals(arg)) {
+          String[] shard = args[++i].split("/");
+          if (shard.length != 2) {
+            System.err.println("invalid shard, <index>/<count> expected: " + args[i]);
+            printHelp();
+          }
+          myApplication.myShard = Integer.parseInt(shard[0]);
+          myApplication.myShardCount = Integer.parseInt(shard[1]);
+          if (myApplication.myShard < 0 || myApplication.myShard >= myApplication.myShardCount) {
+            System.err.println("invalid shard, 0 <= <index> < <count> expected: " + args[i]);
+            printHelp();
+          }
+        }
         else {
           System.err.println("unexpected argument: " + arg);
           printHelp();
@@ -103,6 +129,10 @@ public class InspectionMain implements ApplicationStarter {
       e.printStackTrace();
       printHelp();
     }
+    catch (NumberFormatException e) {
+      e.printStackTrace();
+      printHelp();
+    }
 
     myApplication.myRunGlobalToolsOnly = System.getProperty("idea.no.local.inspections") != null;
   }
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.execution.ExecutionException;
+import com.intellij.execution.configurations.GeneralCommandLine;
+import com.intellij.execution.process.OSProcessHandler;
+import com.intellij.execution.process.ProcessAdapter;
+import com.intellij.execution.process.ProcessEvent;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.DelegatingGlobalSearchScope;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Runs the local inspections of a headless inspection in several child processes, each of them inspects the files of one shard.
+ * <p/>
+ * A file belongs to the shard determined by the hash of its path relative to the project, so every file is inspected
+ * by the same shard from run to run. Each child works with its own system directory (kept between the runs, so the indices are
+ * built only once) and a copy of the configuration of the parent, and writes the raw XML results into a subdirectory
+ * of the output directory. The results are merged into one report per tool when all the children are finished.
+ */
+class InspectionShards {
+  @NonNls private static final String SHARD_DIR_PREFIX = "shard-";
+  @NonNls private static final String[] SKIPPED_VM_OPTIONS = {
+    "-D" + PathManager.PROPERTY_SYSTEM_PATH + "=", "-D" + PathManager.PROPERTY_CONFIG_PATH + "=",
+    "-D" + PathManager.PROPERTY_PLUGINS_PATH + "=", "-D" + PathManager.PROPERTY_LOG_PATH + "=",
+    "-agentlib:jdwp", "-Xrunjdwp", "-Xdebug"
+  };
+
+  private final int myCount;
+  private final List<OSProcessHandler> myProcesses = new CopyOnWriteArrayList<OSProcessHandler>();
+  private final Thread myShutdownHook = new Thread("Inspection shards shutdown") {
+    @Override
+    public void run() {
+      destroyProcesses();
+    }
+  };
+
+  InspectionShards(int count) {
+    myCount = count;
+  }
+
+  /**
+   * @return the scope of the files of the given shard in the whole project or in the given directory
+   */
+  @NotNull
+  static GlobalSearchScope createScope(@NotNull final Project project, @Nullable final VirtualFile directory, final int shard, final int count) {
+    return new DelegatingGlobalSearchScope(GlobalSearchScope.projectScope(project), shard, count) {
+      @Override
+      public boolean contains(@NotNull VirtualFile file) {
+        if (!super.contains(file)) return false;
+        if (directory != null && !VfsUtilCore.isAncestor(directory, file, false)) return false;
+        return getShard(project, file, count) == shard;
+      }
+    };
+  }
+
+  private static int getShard(@NotNull Project project, @NotNull VirtualFile file, int count) {
+    VirtualFile baseDir = project.getBaseDir();
+    String path = baseDir == null ? null : VfsUtilCore.getRelativePath(file, baseDir, '/');
+    return ((path != null ? path : file.getPath()).hashCode() & Integer.MAX_VALUE) % count;
+  }
+
+  /**
+   * Starts the child processes, the options of the inspect command are passed to each of them.
+   *
+   * @param cacheDirectory the directory with the cached results of local inspections, each shard keeps its cache in a subdirectory
+   * @param timingsPath    the file to write the timings of the inspections to, each shard writes its own file with the shard suffix
+   */
+  void start(@NotNull String projectPath,
+             @NotNull String profile,
+             @NotNull List<String> options,
+             @NotNull String outputPath,
+             @Nullable String cacheDirectory,
+             @Nullable String timingsPath) throws ExecutionException, IOException {
+    // the inspect command may end with System.exit() on errors, which doesn't leave a chance to clean up otherwise
+    Runtime.getRuntime().addShutdownHook(myShutdownHook);
+    List<String> vmOptions = getVmOptions();
+    for (int i = 0; i < myCount; i++) {
+      File shardSystemDir = new File(PathManager.getSystemPath(), "inspection-shards/" + i);
+      File shardConfigDir = new File(shardSystemDir, "config");
+      copyConfig(shardConfigDir);
+
+      GeneralCommandLine commandLine = new GeneralCommandLine();
+      commandLine.setExePath(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+      commandLine.addParameters(vmOptions);
+      commandLine.addParameter("-D" + PathManager.PROPERTY_SYSTEM_PATH + "=" + shardSystemDir.getPath());
+      commandLine.addParameter("-D" + PathManager.PROPERTY_CONFIG_PATH + "=" + shardConfigDir.getPath());
+      commandLine.addParameter("-D" + PathManager.PROPERTY_PLUGINS_PATH + "=" + PathManager.getPluginsPath());
+      commandLine.addParameter("-D" + PathManager.PROPERTY_LOG_PATH + "=" + new File(shardSystemDir, "log").getPath());
+      commandLine.addParameter("-classpath");
+      commandLine.addParameter(System.getProperty("java.class.path"));
+      commandLine.addParameter("com.intellij.idea.Main");
+      commandLine.addParameters("inspect", projectPath, profile, getShardOutputPath(outputPath, i));
+      commandLine.addParameters(options);
+      if (cacheDirectory != null) {
+        commandLine.addParameters("-cache", cacheDirectory + File.separator + SHARD_DIR_PREFIX + i);
+      }
+      if (timingsPath != null) {
+        commandLine.addParameters("-timings", timingsPath + "." + SHARD_DIR_PREFIX + i);
+      }
+      commandLine.addParameters("-shard", i + "/" + myCount);
+      commandLine.setRedirectErrorStream(true);
+
+      final String prefix = "[shard " + i + "] ";
+      OSProcessHandler handler = new OSProcessHandler(commandLine.createProcess(), commandLine.getCommandLineString());
+      handler.addProcessListener(new ProcessAdapter() {
+        @Override
+        public void onTextAvailable(ProcessEvent event, Key outputType) {
+          String text = event.getText();
+          if (!text.trim().isEmpty()) {
+            //noinspection UseOfSystemOutOrSystemErr
+            System.out.print(prefix + text);
+          }
+        }
+      });
+      handler.startNotify();
+      myProcesses.add(handler);
+    }
+  }
+
+  /**
+   * @return true if all the children have finished successfully
+   */
+  boolean waitFor() {
+    boolean success = true;
+    for (OSProcessHandler handler : myProcesses) {
+      handler.waitFor();
+      success &= handler.getProcess().exitValue() == 0;
+    }
+    return success;
+  }
+
+  /**
+   * Kills the children which are still running. Must be called when the run is over, whether it has succeeded or not.
+   */
+  void destroy() {
+    destroyProcesses();
+    try {
+      Runtime.getRuntime().removeShutdownHook(myShutdownHook);
+    }
+    catch (IllegalStateException ignored) {
+      // the shutdown is in progress, the hook destroys the processes
+    }
+  }
+
+  private void destroyProcesses() {
+    for (OSProcessHandler handler : myProcesses) {
+      if (!handler.isProcessTerminated()) {
+        handler.destroyProcess();
+      }
+    }
+  }
+
+  /**
+   * Merges the results of the shards with the results already written into the output directory,
+   * the problems in each report are sorted, so that the reports don't depend on the number of shards or on the timing.
+   *
+   * @param inspectionsResults the list of the reports which the merged reports are added to
+   */
+  void mergeResults(@NotNull String outputPath, @NotNull List<File> inspectionsResults) throws IOException, JDOMException {
+    Map<String, List<File>> reports = new TreeMap<String, List<File>>();
+    collectReports(new File(outputPath), reports);
+    for (int i = 0; i < myCount; i++) {
+      collectReports(new File(getShardOutputPath(outputPath, i)), reports);
+    }
+
+    for (Map.Entry<String, List<File>> entry : reports.entrySet()) {
+      Element root = null;
+      List<Element> problems = new ArrayList<Element>();
+      for (File report : entry.getValue()) {
+        Element element = JDOMUtil.loadDocument(report).getRootElement();
+        if (root == null) {
+          root = (Element)element.clone();
+          root.removeContent();
+        }
+        for (Object child : element.getChildren()) {
+          problems.add((Element)child);
+        }
+      }
+      assert root != null;
+      sortProblems(problems);
+      for (Element problem : problems) {
+        root.addContent((Element)problem.clone());
+      }
+
+      File merged = new File(outputPath, entry.getKey());
+      JDOMUtil.writeDocument(new Document(root), merged, "\n");
+      if (!inspectionsResults.contains(merged)) {
+        inspectionsResults.add(merged);
+      }
+    }
+
+    for (int i = 0; i < myCount; i++) {
+      FileUtil.delete(new File(getShardOutputPath(outputPath, i)));
+    }
+  }
+
+  private static void sortProblems(@NotNull List<Element> problems) {
+    final Map<Element, String> keys = new HashMap<Element, String>();
+    for (Element problem : problems) {
+      keys.put(problem, JDOMUtil.writeElement(problem, "\n"));
+    }
+    Collections.sort(problems, new Comparator<Element>() {
+      @Override
+      public int compare(Element o1, Element o2) {
+        return keys.get(o1).compareTo(keys.get(o2));
+      }
+    });
+  }
+
+  private static void collectReports(@NotNull File dir, @NotNull Map<String, List<File>> reports) {
+    File[] files = dir.listFiles();
+    if (files == null) return;
+    for (File file : files) {
+      String name = file.getName();
+      if (file.isFile() && name.endsWith(InspectionApplication.XML_EXTENSION) && !name.startsWith(InspectionApplication.DESCRIPTIONS)) {
+        List<File> list = reports.get(name);
+        if (list == null) {
+          list = new ArrayList<File>();
+          reports.put(name, list);
+        }
+        list.add(file);
+      }
+    }
+  }
+
+  @NotNull
+  private static String getShardOutputPath(@NotNull String outputPath, int shard) {
+    return outputPath + File.separator + SHARD_DIR_PREFIX + shard;
+  }
+
+  private static void copyConfig(@NotNull File shardConfigDir) throws IOException {
+    final File pluginsDir = new File(PathManager.getPluginsPath());
+    FileUtil.delete(shardConfigDir);
+    FileUtil.copyDir(new File(PathManager.getConfigPath()), shardConfigDir, new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return !FileUtil.filesEqual(file, pluginsDir);
+      }
+    });
+  }
+
+  @NotNull
+  private static List<String> getVmOptions() {
+    List<String> result = new ArrayList<String>();
+    for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+      boolean skipped = false;
+      for (String prefix : SKIPPED_VM_OPTIONS) {
+        skipped |= option.startsWith(prefix);
+      }
+      if (!skipped) {
+        result.add(option);
+      }
+    }
+    return result;
+  }
+}
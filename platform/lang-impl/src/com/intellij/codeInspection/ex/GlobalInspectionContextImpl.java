@@ -83,6 +83,8 @@ public class GlobalInspectionContextImpl extends GlobalInspectionContextBase imp
   private Content myContent = null;
 
   private AnalysisUIOptions myUIOptions;
+  private OfflineInspectionResultsCache myOfflineResultsCache;
+  private boolean myRunLocalToolsOnly;
 
   public GlobalInspectionContextImpl(@NotNull Project project, @NotNull NotNullLazyValue<ContentManager> contentManager) {
     super(project);
@@ -234,6 +236,27 @@ public class GlobalInspectionContextImpl extends GlobalInspectionContextBase imp
     }
   }
 
+  /**
+   * Makes {@link #launchInspectionsOffline} reuse the results of local inspections from the cache for the files which haven't changed
+   * and record the results of the inspected files there.
+   */
+  public void setOfflineResultsCache(@Nullable OfflineInspectionResultsCache cache) {
+    myOfflineResultsCache = cache;
+  }
+
+  @Nullable
+  public OfflineInspectionResultsCache getOfflineResultsCache() {
+    return myOfflineResultsCache;
+  }
+
+  /**
+   * Skips global tools, e.g. when they are run by another process for the whole project
+   * while this one inspects a part of the files with local tools.
+   */
+  public void setRunLocalToolsOnly(boolean runLocalToolsOnly) {
+    myRunLocalToolsOnly = runLocalToolsOnly;
+  }
+
   public void ignoreElement(@NotNull InspectionProfileEntry tool, final PsiElement element) {
     final RefElement refElement = getRefManager().getReference(element);
     final Tools tools = myTools.get(tool.getShortName());
@@ -318,7 +341,9 @@ public class GlobalInspectionContextImpl extends GlobalInspectionContextBase imp
     appendPairedInspectionsForUnfairTools(globalTools, globalSimpleTools, localTools);
 
     ((RefManagerImpl)getRefManager()).initializeAnnotators();
-    runGlobalTools(scope, inspectionManager, globalTools);
+    if (!myRunLocalToolsOnly) {
+      runGlobalTools(scope, inspectionManager, globalTools);
+    }
     if (runGlobalToolsOnly) return;
 
     final PsiManager psiManager = PsiManager.getInstance(getProject());
@@ -343,12 +368,21 @@ public class GlobalInspectionContextImpl extends GlobalInspectionContextBase imp
         final FileViewProvider viewProvider = psiManager.findViewProvider(virtualFile);
         final com.intellij.openapi.editor.Document document = viewProvider == null ? null : viewProvider.getDocument();
         if (document == null || virtualFile.getFileType().isBinary()) return; //do not inspect binary files
-        final LocalInspectionsPass pass = new LocalInspectionsPass(file, document, 0,
-                                                                   file.getTextLength(), LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true,
-                                                                   HighlightInfoProcessor.getEmpty());
+        final OfflineInspectionResultsCache resultsCache = myOfflineResultsCache;
+        final Map<String, String> cachedResults = resultsCache == null ? null : resultsCache.startFile(virtualFile);
+        boolean completed = false;
         try {
-          final List<LocalInspectionToolWrapper> lTools = getWrappersFromTools(localTools, file);
-          pass.doInspectInBatch(GlobalInspectionContextImpl.this, inspectionManager, lTools);
+          if (cachedResults != null) {
+            writeCachedResults(cachedResults, map);
+          }
+          else {
+            final LocalInspectionsPass pass = new LocalInspectionsPass(file, document, 0,
+                                                                       file.getTextLength(), LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true,
+                                                                       HighlightInfoProcessor.getEmpty());
+            final List<LocalInspectionToolWrapper> lTools = getWrappersFromTools(localTools, file);
+            pass.doInspectInBatch(GlobalInspectionContextImpl.this, inspectionManager, lTools);
+            completed = true;
+          }
 
           JobLauncher.getInstance().invokeConcurrentlyUnderProgress(globalSimpleTools, myProgressIndicator, false, new Processor<Tools>() {
             @Override
@@ -379,6 +413,9 @@ public class GlobalInspectionContextImpl extends GlobalInspectionContextBase imp
           LOG.error("In file: " + file, e);
         }
         finally {
+          if (resultsCache != null) {
+            resultsCache.finishFile(completed);
+          }
           InjectedLanguageManager.getInstance(getProject()).dropFileCaches(file);
         }
       }
@@ -391,6 +428,16 @@ public class GlobalInspectionContextImpl extends GlobalInspectionContextBase imp
     }
   }
 
+  private void writeCachedResults(@NotNull Map<String, String> cachedResults, @NotNull Map<String, InspectionToolWrapper> localTools) {
+    for (Map.Entry<String, String> entry : cachedResults.entrySet()) {
+      InspectionToolWrapper toolWrapper = localTools.get(entry.getKey());
+      InspectionToolPresentation presentation = toolWrapper == null ? null : getPresentation(toolWrapper);
+      if (presentation instanceof DefaultInspectionToolPresentation) {
+        ((DefaultInspectionToolPresentation)presentation).writeOutput(entry.getValue());
+      }
+    }
+  }
+
   private void runGlobalTools(@NotNull AnalysisScope scope, @NotNull InspectionManagerEx inspectionManager, @NotNull List<Tools> globalTools) {
     final List<InspectionToolWrapper> needRepeatSearchRequest = new ArrayList<InspectionToolWrapper>();
 
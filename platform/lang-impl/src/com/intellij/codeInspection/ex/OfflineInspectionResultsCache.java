@@ -0,0 +1,428 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection.ex;
+
+import com.intellij.codeInspection.InspectionProfile;
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ContentIterator;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.OrderEnumerator;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.WriteExternalException;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import com.intellij.openapi.vfs.VfsUtilCore;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.stubs.ObjectStubTree;
+import com.intellij.psi.stubs.SerializationManagerEx;
+import com.intellij.psi.stubs.StubTreeLoader;
+import com.intellij.util.PathUtil;
+import com.intellij.util.Processor;
+import com.intellij.util.io.IOUtil;
+import gnu.trove.THashMap;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Keeps the results of local inspections of the headless inspection run between the runs, so that only the files
+ * which could have got different results are inspected again.
+ * <p/>
+ * The results of a file are stored as the XML written to the report of each tool and are keyed by the digest of
+ * the file content, the inspection profile, the IDE build and the signatures of the files the file may depend on:
+ * a file is inspected again if it has changed itself, or if the signature of a file in its module or in the modules this module
+ * depends on has changed, or if a library this module depends on has changed. The signature of a file with stubs is its stub tree,
+ * so editing a method body invalidates only the edited file; the signature of any other file is its content.
+ */
+public class OfflineInspectionResultsCache {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.codeInspection.ex.OfflineInspectionResultsCache");
+  private static final int VERSION = 3;
+  private static final String CACHE_FILE = "localInspections.dat";
+
+  private final Project myProject;
+  private final File myCacheFile;
+  private final byte[] myProfileDigest;
+  private final Map<String, CachedResults> myOldResults = new THashMap<String, CachedResults>();
+  private final Map<String, CachedResults> myNewResults = new THashMap<String, CachedResults>();
+  private final Map<Module, byte[]> myModuleSignatureDigests = new THashMap<Module, byte[]>();
+  private final Map<Module, byte[]> myModuleFingerprints = new THashMap<Module, byte[]>();
+  private final Map<String, byte[]> myRootDigests = new THashMap<String, byte[]>();
+  private byte[] myProjectFingerprint;
+
+  private String myCurrentPath;
+  private byte[] myCurrentKey;
+  private Map<String, StringBuilder> myCurrentOutput;
+  private int myHits;
+  private int myMisses;
+
+  private OfflineInspectionResultsCache(@NotNull Project project, @NotNull File cacheDir, @NotNull byte[] profileDigest) {
+    myProject = project;
+    myCacheFile = new File(cacheDir, CACHE_FILE);
+    myProfileDigest = profileDigest;
+  }
+
+  @Nullable
+  public static OfflineInspectionResultsCache load(@NotNull Project project, @NotNull File cacheDir, @NotNull InspectionProfile profile) {
+    OfflineInspectionResultsCache cache;
+    try {
+      Element profileElement = new Element("profile");
+      profile.writeExternal(profileElement);
+      MessageDigest digest = createDigest();
+      digest.update(JDOMUtil.writeElement(profileElement, "\n").getBytes(CharsetToolkit.UTF8_CHARSET));
+      digest.update(ApplicationInfo.getInstance().getBuild().asString().getBytes(CharsetToolkit.UTF8_CHARSET));
+      cache = new OfflineInspectionResultsCache(project, cacheDir, digest.digest());
+    }
+    catch (WriteExternalException e) {
+      LOG.warn("Cannot compute the digest of the inspection profile", e);
+      return null;
+    }
+
+    if (cache.myCacheFile.exists()) {
+      try {
+        cache.read();
+      }
+      catch (IOException e) {
+        LOG.info("Cannot read cached inspection results, all files will be inspected", e);
+        cache.myOldResults.clear();
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Starts processing of the given file.
+   *
+   * @return the cached output of each local tool for this file, or null if the file must be inspected,
+   *         the output written while inspecting it is recorded then and cached by {@link #finishFile(boolean)}
+   */
+  @Nullable
+  public synchronized Map<String, String> startFile(@NotNull VirtualFile file) {
+    myCurrentPath = getRelativePath(file);
+    myCurrentKey = null;
+    myCurrentOutput = null;
+    try {
+      MessageDigest digest = createDigest();
+      digest.update(myProfileDigest);
+      digest.update(myCurrentPath.getBytes(CharsetToolkit.UTF8_CHARSET));
+      digest.update(file.contentsToByteArray());
+      digest.update(getFingerprint(file));
+      myCurrentKey = digest.digest();
+    }
+    catch (IOException e) {
+      LOG.info("Cannot read " + file, e);
+      myMisses++;
+      return null;
+    }
+
+    CachedResults cached = myOldResults.get(myCurrentPath);
+    if (cached != null && Arrays.equals(cached.myKey, myCurrentKey)) {
+      myHits++;
+      myNewResults.put(myCurrentPath, cached);
+      myCurrentKey = null;
+      return cached.myOutput;
+    }
+    myMisses++;
+    myCurrentOutput = new THashMap<String, StringBuilder>();
+    return null;
+  }
+
+  /**
+   * Called for the output of a tool written to the report while the current file is inspected.
+   * Only the output of local tools is cached: the other tools run on every file anyway.
+   */
+  public synchronized void recordOutput(@NotNull InspectionToolWrapper toolWrapper, @NotNull String output) {
+    if (myCurrentOutput == null || !(toolWrapper instanceof LocalInspectionToolWrapper)) return;
+    StringBuilder builder = myCurrentOutput.get(toolWrapper.getShortName());
+    if (builder == null) {
+      builder = new StringBuilder();
+      myCurrentOutput.put(toolWrapper.getShortName(), builder);
+    }
+    builder.append(output);
+  }
+
+  /**
+   * @param completed false if the inspection of the file failed, its results are not cached then
+   */
+  public synchronized void finishFile(boolean completed) {
+    if (completed && myCurrentKey != null && myCurrentOutput != null) {
+      Map<String, String> output = new THashMap<String, String>();
+      for (Map.Entry<String, StringBuilder> entry : myCurrentOutput.entrySet()) {
+        output.put(entry.getKey(), entry.getValue().toString());
+      }
+      myNewResults.put(myCurrentPath, new CachedResults(myCurrentKey, output));
+    }
+    myCurrentPath = null;
+    myCurrentKey = null;
+    myCurrentOutput = null;
+  }
+
+  public synchronized int getHitCount() {
+    return myHits;
+  }
+
+  public synchronized int getMissCount() {
+    return myMisses;
+  }
+
+  /**
+   * Writes the results of the inspected files together with the results of the files which weren't in the scope of this run.
+   */
+  public synchronized void save() {
+    Map<String, CachedResults> results = new TreeMap<String, CachedResults>(myNewResults);
+    String basePath = getBasePath();
+    for (Map.Entry<String, CachedResults> entry : myOldResults.entrySet()) {
+      String path = entry.getKey();
+      if (!results.containsKey(path) && basePath != null && new File(basePath, path).exists()) {
+        results.put(path, entry.getValue());
+      }
+    }
+
+    try {
+      FileUtil.createParentDirs(myCacheFile);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myCacheFile)));
+      try {
+        out.writeInt(VERSION);
+        out.writeInt(results.size());
+        for (Map.Entry<String, CachedResults> entry : results.entrySet()) {
+          CachedResults cached = entry.getValue();
+          IOUtil.writeString(entry.getKey(), out);
+          out.writeInt(cached.myKey.length);
+          out.write(cached.myKey);
+          out.writeInt(cached.myOutput.size());
+          for (Map.Entry<String, String> output : cached.myOutput.entrySet()) {
+            IOUtil.writeString(output.getKey(), out);
+            IOUtil.writeString(output.getValue(), out);
+          }
+        }
+      }
+      finally {
+        out.close();
+      }
+    }
+    catch (IOException e) {
+      LOG.warn("Cannot save inspection results to " + myCacheFile, e);
+      FileUtil.delete(myCacheFile);
+    }
+  }
+
+  private void read() throws IOException {
+    DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(myCacheFile)));
+    try {
+      if (in.readInt() != VERSION) return;
+      int count = in.readInt();
+      for (int i = 0; i < count; i++) {
+        String path = IOUtil.readString(in);
+        byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        int outputCount = in.readInt();
+        Map<String, String> output = new THashMap<String, String>(outputCount);
+        for (int j = 0; j < outputCount; j++) {
+          output.put(IOUtil.readString(in), IOUtil.readString(in));
+        }
+        myOldResults.put(path, new CachedResults(key, output));
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @NotNull
+  private String getRelativePath(@NotNull VirtualFile file) {
+    VirtualFile baseDir = myProject.getBaseDir();
+    String path = baseDir == null ? null : VfsUtilCore.getRelativePath(file, baseDir, '/');
+    return path != null ? path : file.getPath();
+  }
+
+  @Nullable
+  private String getBasePath() {
+    VirtualFile baseDir = myProject.getBaseDir();
+    return baseDir == null ? null : baseDir.getPath();
+  }
+
+  /**
+   * @return the digest of everything the results of local inspections in the given file may depend on besides its own content:
+   *         the signatures of the files of the modules the file's module depends on (including itself) and the library and SDK roots they use
+   */
+  @NotNull
+  private byte[] getFingerprint(@NotNull VirtualFile file) {
+    ProjectFileIndex fileIndex = ProjectRootManager.getInstance(myProject).getFileIndex();
+    Module module = fileIndex.getModuleForFile(file);
+    if (module == null) {
+      if (myProjectFingerprint == null) {
+        MessageDigest digest = createDigest();
+        Module[] modules = ModuleManager.getInstance(myProject).getSortedModules();
+        for (Module each : modules) {
+          digest.update(getModuleSignatureDigest(each));
+        }
+        updateWithRoots(digest, OrderEnumerator.orderEntries(myProject).withoutModuleSourceEntries().classes().getUrls());
+        myProjectFingerprint = digest.digest();
+      }
+      return myProjectFingerprint;
+    }
+
+    byte[] fingerprint = myModuleFingerprints.get(module);
+    if (fingerprint == null) {
+      final MessageDigest digest = createDigest();
+      OrderEnumerator.orderEntries(module).recursively().forEachModule(new Processor<Module>() {
+        @Override
+        public boolean process(Module dependency) {
+          digest.update(dependency.getName().getBytes(CharsetToolkit.UTF8_CHARSET));
+          digest.update(getModuleSignatureDigest(dependency));
+          return true;
+        }
+      });
+      updateWithRoots(digest, OrderEnumerator.orderEntries(module).recursively().withoutModuleSourceEntries().withoutDepModules()
+        .classes().getUrls());
+      fingerprint = digest.digest();
+      myModuleFingerprints.put(module, fingerprint);
+    }
+    return fingerprint;
+  }
+
+  @NotNull
+  private byte[] getModuleSignatureDigest(@NotNull Module module) {
+    byte[] result = myModuleSignatureDigests.get(module);
+    if (result == null) {
+      final VirtualFile baseDir = myProject.getBaseDir();
+      // the order of iteration isn't defined, so the digests of the files are sorted by path
+      final Map<String, byte[]> fileDigests = new TreeMap<String, byte[]>();
+      ModuleRootManager.getInstance(module).getFileIndex().iterateContent(new ContentIterator() {
+        @Override
+        public boolean processFile(VirtualFile fileOrDir) {
+          if (fileOrDir.isDirectory()) return true;
+          String path = baseDir == null ? null : VfsUtilCore.getRelativePath(fileOrDir, baseDir, '/');
+          fileDigests.put(path != null ? path : fileOrDir.getPath(), getSignatureDigest(fileOrDir));
+          return true;
+        }
+      });
+      MessageDigest digest = createDigest();
+      for (Map.Entry<String, byte[]> entry : fileDigests.entrySet()) {
+        digest.update(entry.getKey().getBytes(CharsetToolkit.UTF8_CHARSET));
+        digest.update(entry.getValue());
+      }
+      result = digest.digest();
+      myModuleSignatureDigests.put(module, result);
+    }
+    return result;
+  }
+
+  /**
+   * @return the digest of the stub tree of the file, or of its content if the file has no stubs
+   */
+  @NotNull
+  private byte[] getSignatureDigest(@NotNull final VirtualFile file) {
+    MessageDigest digest = createDigest();
+    ObjectStubTree stubTree = ApplicationManager.getApplication().runReadAction(new Computable<ObjectStubTree>() {
+      @Override
+      public ObjectStubTree compute() {
+        return StubTreeLoader.getInstance().readOrBuild(myProject, file, null);
+      }
+    });
+    if (stubTree != null) {
+      BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+      SerializationManagerEx.getInstanceEx().serialize(stubTree.getRoot(), bytes);
+      digest.update(bytes.getInternalBuffer(), 0, bytes.size());
+      return digest.digest();
+    }
+
+    long length = file.getLength();
+    if (FileUtilRt.isTooLarge(length)) {
+      digest.update(String.valueOf(length).getBytes(CharsetToolkit.UTF8_CHARSET));
+    }
+    else {
+      try {
+        digest.update(file.contentsToByteArray());
+      }
+      catch (IOException e) {
+        digest.update(String.valueOf(file.getTimeStamp()).getBytes(CharsetToolkit.UTF8_CHARSET));
+      }
+    }
+    return digest.digest();
+  }
+
+  private void updateWithRoots(@NotNull MessageDigest digest, @NotNull String[] urls) {
+    for (String url : urls) {
+      digest.update(url.getBytes(CharsetToolkit.UTF8_CHARSET));
+      digest.update(getRootDigest(url));
+    }
+  }
+
+  /**
+   * A jar or a directory of classes may be replaced under the same URL, so library and SDK roots are identified by the time stamps
+   * and the lengths of their files. They are read from the disk rather than from the VFS, which may not have been refreshed yet.
+   */
+  @NotNull
+  private byte[] getRootDigest(@NotNull String url) {
+    byte[] result = myRootDigests.get(url);
+    if (result == null) {
+      File root = new File(PathUtil.toPresentableUrl(url));
+      // the order of listing isn't defined, so the files are sorted by path
+      final Map<String, String> stamps = new TreeMap<String, String>();
+      FileUtil.processFilesRecursively(root, new Processor<File>() {
+        @Override
+        public boolean process(File file) {
+          if (file.isFile()) {
+            stamps.put(file.getPath(), file.lastModified() + ":" + file.length());
+          }
+          return true;
+        }
+      });
+      MessageDigest digest = createDigest();
+      for (Map.Entry<String, String> entry : stamps.entrySet()) {
+        digest.update((entry.getKey() + "=" + entry.getValue() + "\n").getBytes(CharsetToolkit.UTF8_CHARSET));
+      }
+      result = digest.digest();
+      myRootDigests.put(url, result);
+    }
+    return result;
+  }
+
+  @NotNull
+  private static MessageDigest createDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static class CachedResults {
+    private final byte[] myKey;
+    private final Map<String, String> myOutput;
+
+    private CachedResults(@NotNull byte[] key, @NotNull Map<String, String> output) {
+      myKey = key;
+      myOutput = output;
+    }
+  }
+}
@@ -247,9 +247,33 @@ public class DefaultInspectionToolPresentation implements ProblemDescriptionsPro
     exportResults(descriptions, refElement, parentNode);
     final List list = parentNode.getChildren();
 
+    final PathMacroManager pathMacroManager = PathMacroManager.getInstance(getContext().getProject());
+    final CharArrayWriter writer = new CharArrayWriter();
+    try {
+      for (Object o : list) {
+        final Element element = (Element)o;
+        pathMacroManager.collapsePaths(element);
+        JDOMUtil.writeElement(element, writer, "\n");
+      }
+    }
+    catch (IOException e) {
+      LOG.error(e);
+      return;
+    }
+    final String problems = writer.toString();
+    final OfflineInspectionResultsCache cache = getContext().getOfflineResultsCache();
+    if (cache != null) {
+      cache.recordOutput(myToolWrapper, problems);
+    }
+    writeOutput(problems);
+  }
+
+  /**
+   * Appends the exported problems to the report of the tool in the output directory of the offline inspection.
+   */
+  public void writeOutput(@NotNull String problems) {
     @NonNls final String ext = ".xml";
     final String fileName = ourOutputPath + File.separator + myToolWrapper.getShortName() + ext;
-    final PathMacroManager pathMacroManager = PathMacroManager.getInstance(getContext().getProject());
     PrintWriter printWriter = null;
     try {
       new File(ourOutputPath).mkdirs();
@@ -259,11 +283,7 @@ public class DefaultInspectionToolPresentation implements ProblemDescriptionsPro
         writer.append("<").append(InspectionsBundle.message("inspection.problems")).append(" " + GlobalInspectionContextImpl.LOCAL_TOOL_ATTRIBUTE + "=\"")
           .append(Boolean.toString(myToolWrapper instanceof LocalInspectionToolWrapper)).append("\">\n");
       }
-      for (Object o : list) {
-        final Element element = (Element)o;
-        pathMacroManager.collapsePaths(element);
-        JDOMUtil.writeElement(element, writer, "\n");
-      }
+      writer.append(problems);
       printWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fileName, true), "UTF-8")));
       printWriter.append("\n");
       printWriter.append(writer.toString());
@@ -299,7 +299,8 @@ class FormatProcessor {
    * @param state   target state to process
    */
   private void doIterationsSynchronously(@NotNull FormattingStateId state) {
-    while ((myCurrentState.getStateId() == state || state.getPreviousStates().contains(myCurrentState.getStateId()))
+    Set<FormattingStateId> previousStates = state.getPreviousStates();
+    while ((myCurrentState.getStateId() == state || previousStates.contains(myCurrentState.getStateId()))
            && !myCurrentState.isDone())
     {
       myCurrentState.iteration();
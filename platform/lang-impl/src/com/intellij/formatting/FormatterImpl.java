@@ -214,6 +214,35 @@ public class FormatterImpl extends FormatterEx
     execute(task);
   }
 
+  /**
+   * Computes the white space changes of the given model without applying them, so it needs only read access
+   * and can be called in any thread.
+   *
+   * @return the runnable which applies the computed changes to the model, valid while the document isn't changed
+   */
+  @NotNull
+  public Runnable prepareFormatting(@NotNull final FormattingModel model,
+                                    @NotNull CodeStyleSettings settings,
+                                    @NotNull CommonCodeStyleSettings.IndentOptions indentOptions,
+                                    @NotNull FormatTextRanges affectedRanges) {
+    final FormatProcessor processor = new FormatProcessor(
+      model.getDocumentModel(), model.getRootBlock(), settings, indentOptions, affectedRanges, FormattingProgressCallback.EMPTY
+    );
+    processor.formatWithoutRealModifications();
+    return new Runnable() {
+      @Override
+      public void run() {
+        disableFormatting();
+        try {
+          processor.performModifications(model);
+        }
+        finally {
+          enableFormatting();
+        }
+      }
+    };
+  }
+
   /**
    * Execute given sequential formatting task. Two approaches are possible:
    * <pre>
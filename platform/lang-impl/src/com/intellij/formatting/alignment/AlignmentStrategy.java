@@ -17,13 +17,12 @@ package com.intellij.formatting.alignment;
 
 import com.intellij.formatting.Alignment;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
-import static java.util.Arrays.asList;
-
 /** <code>GoF 'Strategy'</code> for {@link Alignment} retrieval. */
 public abstract class AlignmentStrategy {
 
@@ -148,7 +147,8 @@ public abstract class AlignmentStrategy {
    */
   private static class SharedAlignmentStrategy extends AlignmentStrategy {
 
-    private final Set<IElementType> myFilterElementTypes = new HashSet<IElementType>();
+    // there are a few filter types at most, and a strategy is created for every child block, so they are kept in the array as is
+    private final IElementType[] myFilterElementTypes;
 
     private final Alignment myAlignment;
     private final boolean   myIgnoreFilterTypes;
@@ -156,13 +156,13 @@ public abstract class AlignmentStrategy {
     private SharedAlignmentStrategy(Alignment alignment, boolean ignoreFilterTypes, IElementType... disabledElementTypes) {
       myAlignment = alignment;
       myIgnoreFilterTypes = ignoreFilterTypes;
-      myFilterElementTypes.addAll(asList(disabledElementTypes));
+      myFilterElementTypes = disabledElementTypes;
     }
 
     @Override
     @Nullable
     public Alignment getAlignment(@Nullable IElementType parentType, @Nullable IElementType childType) {
-      return (myFilterElementTypes.contains(childType) ^ myIgnoreFilterTypes) ? myAlignment : null;
+      return (ArrayUtil.contains(childType, myFilterElementTypes) ^ myIgnoreFilterTypes) ? myAlignment : null;
     }
   }
 
@@ -54,6 +54,7 @@ import com.intellij.openapi.wm.WindowManager;
 import com.intellij.openapi.wm.ex.WindowManagerEx;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameMatchingIndex;
 import com.intellij.psi.codeStyle.NameUtil;
 import com.intellij.psi.statistics.StatisticsInfo;
 import com.intellij.psi.statistics.StatisticsManager;
@@ -135,6 +136,9 @@ public abstract class ChooseByNameBase {
   private ActionCallback myPostponedOkAction;
 
   private final String[][] myNames = new String[2][];
+  // the index over the names of each checkbox state with the names it was built for, guarded by itself
+  @SuppressWarnings("unchecked")
+  private final Pair<String[], NameMatchingIndex>[] myNamesIndices = new Pair[2];
   private volatile CalcElementsThread myCalcElementsThread;
   private static int VISIBLE_LIST_SIZE_LIMIT = 10;
   private int myListSizeIncreasing = 30;
@@ -171,6 +175,9 @@ public abstract class ChooseByNameBase {
     if (disposedFlag) {
       setNamesSync(true, null);
       setNamesSync(false, null);
+      synchronized (myNamesIndices) {
+        Arrays.fill(myNamesIndices, null);
+      }
     }
   }
 
@@ -832,6 +839,25 @@ public abstract class ChooseByNameBase {
     }
   }
 
+  /**
+   * @return the index over the names loaded by the model; the names are kept between the keystrokes, so the index is built once
+   * for each checkbox state
+   */
+  @NotNull
+  NameMatchingIndex getNamesIndex(@NotNull String[] names) {
+    synchronized (myNamesIndices) {
+      for (Pair<String[], NameMatchingIndex> cached : myNamesIndices) {
+        if (cached != null && cached.first == names) return cached.second;
+      }
+    }
+    NameMatchingIndex index = new NameMatchingIndex(names);
+    int checkboxState = names == getNamesSync(true) ? 1 : 0;
+    synchronized (myNamesIndices) {
+      myNamesIndices[checkboxState] = Pair.create(names, index);
+    }
+    return index;
+  }
+
   @NotNull
   protected Set<Object> filter(@NotNull Set<Object> elements) {
     return elements;
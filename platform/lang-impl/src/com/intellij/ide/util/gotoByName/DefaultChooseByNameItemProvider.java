@@ -323,7 +323,11 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameItemProvider
         return true;
       }
     };
-    if (!JobLauncher.getInstance().invokeConcurrentlyUnderProgress(Arrays.asList(names), indicator, false, true, processor)) {
+    // a custom matcher can match anything, otherwise only the names containing the pattern letters have to be checked
+    List<String> candidates = base.getModel() instanceof CustomMatcherModel
+                              ? Arrays.asList(names)
+                              : base.getNamesIndex(names).getCandidates(pattern);
+    if (!JobLauncher.getInstance().invokeConcurrentlyUnderProgress(candidates, indicator, false, true, processor)) {
       throw new ProcessCanceledException();
     }
   }
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.internal;
+
+import com.intellij.codeInsight.daemon.impl.HighlightingStatistics;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.util.io.FileUtil;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Writes the highlighting times collected since the start (see the <code>idea.highlighting.statistics</code> property) to a temp file.
+ */
+public class DumpHighlightingStatisticsAction extends AnAction implements DumbAware {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.internal.DumpHighlightingStatisticsAction");
+
+  public DumpHighlightingStatisticsAction() {
+    super("Dump Highlighting Statistics");
+  }
+
+  @Override
+  public void actionPerformed(AnActionEvent e) {
+    File file = new File(FileUtil.getTempDirectory(), "highlighting_statistics.txt");
+    try {
+      PrintWriter writer = new PrintWriter(new FileWriter(file));
+      try {
+        HighlightingStatistics.writeReport(writer, 1000);
+      }
+      finally {
+        writer.close();
+      }
+    }
+    catch (IOException ex) {
+      LOG.error(ex);
+      return;
+    }
+    Notifications.Bus.notify(new Notification("Actions", "Highlighting statistics dumped", file.getAbsolutePath(),
+                                              NotificationType.INFORMATION));
+  }
+
+  @Override
+  public void update(AnActionEvent e) {
+    e.getPresentation().setEnabled(HighlightingStatistics.isEnabled());
+  }
+}
@@ -229,6 +229,10 @@ public class FormatterUtil {
   public static boolean containsWhiteSpacesOnly(@Nullable ASTNode node) {
     if (node == null) return false;
 
+    // called for every child when building the blocks, so the tree isn't walked when the node decides by itself
+    if (spacesOnly((TreeElement)node)) return true;
+    if (node instanceof LeafElement) return false;
+
     final boolean[] spacesOnly = {true};
     ((TreeElement)node).acceptTree(new RecursiveTreeElementWalkingVisitor() {
       @Override
@@ -259,7 +263,7 @@ public class FormatterUtil {
       return false;
     }
     Language language = psi.getLanguage();
-    return WhiteSpaceFormattingStrategyFactory.getStrategy(language).containsWhitespacesOnly(node);
+    return WhiteSpaceFormattingStrategyFactory.containsWhitespacesOnly(language, node);
   }
 
   /**
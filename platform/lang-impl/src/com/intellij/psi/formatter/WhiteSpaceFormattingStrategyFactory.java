@@ -15,6 +15,7 @@
  */
 package com.intellij.psi.formatter;
 
+import com.intellij.lang.ASTNode;
 import com.intellij.lang.Language;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
@@ -68,6 +69,23 @@ public class WhiteSpaceFormattingStrategyFactory {
     return result;
   }
 
+  /**
+   * Does the same as <code>getStrategy(language).containsWhitespacesOnly(node)</code> without creating the composite strategy.
+   *
+   * @param language    target language
+   * @param node        node to check
+   * @return            <code>true</code> if one of the white space strategies for the given language treats the node as white space
+   */
+  public static boolean containsWhitespacesOnly(@NotNull Language language, @NotNull ASTNode node) {
+    for (WhiteSpaceFormattingStrategy strategy : SHARED_STRATEGIES) {
+      if (strategy.containsWhitespacesOnly(node)) {
+        return true;
+      }
+    }
+    WhiteSpaceFormattingStrategy strategy = LanguageWhiteSpaceFormattingStrategy.INSTANCE.forLanguage(language);
+    return strategy != null && strategy.containsWhitespacesOnly(node);
+  }
+
   /**
    * @return    collection of all registered white space strategies
    */
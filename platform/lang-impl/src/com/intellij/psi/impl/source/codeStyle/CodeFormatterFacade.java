@@ -224,25 +224,19 @@ public class CodeFormatterFacade {
             return;
           }
 
-          final FormattingModel originalModel = CoreFormatterUtil.buildModel(builder, file, mySettings, FormattingMode.REFORMAT);
-          final FormattingModel model = new DocumentBasedFormattingModel(originalModel.getRootBlock(),
-                                                                         document,
-                                                                         project, mySettings, file.getFileType(), file);
-
-          FormatterEx formatter = FormatterEx.getInstanceEx();
-          if (CodeStyleManager.getInstance(project).isSequentialProcessingAllowed()) {
-            formatter.setProgressTask(new FormattingProgressTask(project, file, document));
-          }
+          if (!PrecomputedFormatting.applyIfUpToDate(file, document, mySettings, ranges)) {
+            final FormattingModel originalModel = CoreFormatterUtil.buildModel(builder, file, mySettings, FormattingMode.REFORMAT);
+            final FormattingModel model = new DocumentBasedFormattingModel(originalModel.getRootBlock(),
+                                                                           document,
+                                                                           project, mySettings, file.getFileType(), file);
+
+            FormatterEx formatter = FormatterEx.getInstanceEx();
+            if (CodeStyleManager.getInstance(project).isSequentialProcessingAllowed()) {
+              formatter.setProgressTask(new FormattingProgressTask(project, file, document));
+            }
 
-          CommonCodeStyleSettings.IndentOptions indentOptions = null;
-          if (builder instanceof FormattingModelBuilderEx) {
-            indentOptions = ((FormattingModelBuilderEx)builder).getIndentOptionsToUse(file, ranges, mySettings);
+            formatter.format(model, mySettings, getIndentOptions(builder, file, ranges, mySettings), ranges);
           }
-          if (indentOptions == null) {
-            indentOptions  = mySettings.getIndentOptions(file.getFileType());
-          }
-
-          formatter.format(model, mySettings, indentOptions, ranges);
           for (FormatTextRanges.FormatTextRange range : textRanges) {
             TextRange textRange = range.getTextRange();
             wrapLongLinesIfNecessary(file, document, textRange.getStartOffset(), textRange.getEndOffset());
@@ -255,6 +249,21 @@ public class CodeFormatterFacade {
     }
   }
 
+  @NotNull
+  static CommonCodeStyleSettings.IndentOptions getIndentOptions(@NotNull FormattingModelBuilder builder,
+                                                                @NotNull PsiFile file,
+                                                                @NotNull FormatTextRanges ranges,
+                                                                @NotNull CodeStyleSettings settings) {
+    CommonCodeStyleSettings.IndentOptions indentOptions = null;
+    if (builder instanceof FormattingModelBuilderEx) {
+      indentOptions = ((FormattingModelBuilderEx)builder).getIndentOptionsToUse(file, ranges, settings);
+    }
+    if (indentOptions == null) {
+      indentOptions  = settings.getIndentOptions(file.getFileType());
+    }
+    return indentOptions;
+  }
+
   private TextRange preprocess(@NotNull final ASTNode node, @NotNull TextRange range) {
     TextRange result = range;
     PsiElement psi = node.getPsi();
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.impl.source.codeStyle;
+
+import com.intellij.formatting.*;
+import com.intellij.injected.editor.DocumentWindow;
+import com.intellij.lang.LanguageFormatting;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.codeStyle.CodeStyleSettings;
+import com.intellij.psi.codeStyle.CodeStyleSettingsManager;
+import com.intellij.psi.formatter.DocumentBasedFormattingModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The white space changes of the whole file formatting, computed in advance under a read action.
+ * <p/>
+ * Building the block model and computing the changes is the most expensive part of formatting and needs no write access,
+ * so the reformatting of many files can do it for a batch of files in parallel. When the file is reformatted later,
+ * {@link CodeFormatterFacade} applies the prepared changes instead of formatting it again, unless the file, its range
+ * or the settings have changed in between (e.g. by the pre-format processors or by the previous processor in the chain).
+ */
+public class PrecomputedFormatting {
+  private static final Key<PrecomputedFormatting> KEY = Key.create("PRECOMPUTED_FORMATTING");
+  private static final AtomicInteger ourAppliedCount = new AtomicInteger();
+
+  private final Document myDocument;
+  private final long myModificationStamp;
+  private final CodeStyleSettings mySettings;
+  private final TextRange myRange;
+  private final Runnable myChangesApplier;
+
+  private PrecomputedFormatting(@NotNull Document document,
+                                @NotNull CodeStyleSettings settings,
+                                @NotNull TextRange range,
+                                @NotNull Runnable changesApplier) {
+    myDocument = document;
+    myModificationStamp = document.getModificationStamp();
+    mySettings = settings;
+    myRange = range;
+    myChangesApplier = changesApplier;
+  }
+
+  /**
+   * Computes the formatting of the whole file and keeps it in the file until it's reformatted or {@link #discard(PsiFile) discarded}.
+   * Must be called under a read action, can be called for different files in parallel.
+   */
+  public static void prepare(@NotNull PsiFile file) {
+    Project project = file.getProject();
+    FormattingModelBuilder builder = LanguageFormatting.INSTANCE.forContext(file);
+    Document document = PsiDocumentManager.getInstance(project).getDocument(file);
+    if (builder == null || document == null || document instanceof DocumentWindow || file.getTextLength() == 0 ||
+        !PsiDocumentManager.getInstance(project).isCommitted(document)) {
+      return;
+    }
+
+    CodeStyleSettings settings = CodeStyleSettingsManager.getSettings(project);
+    TextRange range = file.getTextRange();
+    FormatTextRanges ranges = new FormatTextRanges(range, true);
+    FormattingModel originalModel = CoreFormatterUtil.buildModel(builder, file, settings, FormattingMode.REFORMAT);
+    FormattingModel model = new DocumentBasedFormattingModel(originalModel.getRootBlock(), document, project, settings,
+                                                             file.getFileType(), file);
+    Runnable changesApplier = ((FormatterImpl)FormatterEx.getInstanceEx()).prepareFormatting(
+      model, settings, CodeFormatterFacade.getIndentOptions(builder, file, ranges, settings), ranges);
+    file.putUserData(KEY, new PrecomputedFormatting(document, settings, range, changesApplier));
+  }
+
+  public static void discard(@NotNull PsiFile file) {
+    file.putUserData(KEY, null);
+  }
+
+  /**
+   * Applies the prepared formatting of the file if it's still valid for the given document, settings and ranges.
+   * The prepared formatting is discarded in any case.
+   *
+   * @return whether the formatting has been applied
+   */
+  static boolean applyIfUpToDate(@NotNull PsiFile file,
+                                 @NotNull Document document,
+                                 @NotNull CodeStyleSettings settings,
+                                 @NotNull FormatTextRanges ranges) {
+    PrecomputedFormatting formatting = file.getUserData(KEY);
+    if (formatting == null) return false;
+    discard(file);
+
+    List<FormatTextRanges.FormatTextRange> textRanges = ranges.getRanges();
+    if (formatting.myDocument != document ||
+        formatting.myModificationStamp != document.getModificationStamp() ||
+        formatting.mySettings != settings ||
+        textRanges.size() != 1 ||
+        !formatting.myRange.equals(textRanges.get(0).getTextRange())) {
+      return false;
+    }
+
+    formatting.myChangesApplier.run();
+    ourAppliedCount.incrementAndGet();
+    return true;
+  }
+
+  @TestOnly
+  public static int getAppliedCount() {
+    return ourAppliedCount.get();
+  }
+}
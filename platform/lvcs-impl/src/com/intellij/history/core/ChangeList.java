@@ -35,6 +35,10 @@ public class ChangeList {
 
   private int myChangeSetDepth;
   private ChangeSet myCurrentChangeSet;
+  // change sets which have been ended but aren't written to the storage yet, from the oldest to the newest
+  private final List<ChangeSet> myUnsavedChangeSets = new ArrayList<ChangeSet>();
+  // change sets are written to the storage under this lock only, so that recording of new changes doesn't wait for the storage
+  private final Object myWriteLock = new Object();
 
   private int myIntervalBetweenActivities = 12 * 60 * 60 * 1000; // 12 hours
 
@@ -42,12 +46,16 @@ public class ChangeList {
     myStorage = storage;
   }
 
-  public synchronized void close() {
-    if (!ApplicationManager.getApplication().isUnitTestMode()) {
-      LocalHistoryLog.LOG.assertTrue(myCurrentChangeSet == null || myCurrentChangeSet.isEmpty(),
-                                     "current changes won't be saved: " + myCurrentChangeSet);
+  public void close() {
+    synchronized (myWriteLock) {
+      synchronized (this) {
+        if (!ApplicationManager.getApplication().isUnitTestMode()) {
+          LocalHistoryLog.LOG.assertTrue(myCurrentChangeSet == null || myCurrentChangeSet.isEmpty(),
+                                         "current changes won't be saved: " + myCurrentChangeSet);
+        }
+        myStorage.close();
+      }
     }
-    myStorage.close();
   }
 
   public synchronized long nextId() {
@@ -70,22 +78,30 @@ public class ChangeList {
     myCurrentChangeSet = new ChangeSet(nextId(), Clock.getTime());
   }
 
-  public synchronized boolean forceBeginChangeSet() {
-    boolean split = myChangeSetDepth > 0;
-    if (split) doEndChangeSet(null);
+  public boolean forceBeginChangeSet() {
+    boolean split;
+    synchronized (this) {
+      split = myChangeSetDepth > 0;
+      if (split) doEndChangeSet(null);
 
-    myChangeSetDepth++;
-    doBeginChangeSet();
+      myChangeSetDepth++;
+      doBeginChangeSet();
+    }
+    if (split) writeEndedChangeSets();
     return split;
   }
 
-  public synchronized boolean endChangeSet(String name) {
-    LocalHistoryLog.LOG.assertTrue(myChangeSetDepth > 0, "not balanced 'begin/end-change set' calls");
+  public boolean endChangeSet(String name) {
+    synchronized (this) {
+      LocalHistoryLog.LOG.assertTrue(myChangeSetDepth > 0, "not balanced 'begin/end-change set' calls");
 
-    myChangeSetDepth--;
-    if (myChangeSetDepth > 0) return false;
+      myChangeSetDepth--;
+      if (myChangeSetDepth > 0) return false;
 
-    return doEndChangeSet(name);
+      if (!doEndChangeSet(name)) return false;
+    }
+    writeEndedChangeSets();
+    return true;
   }
 
   private boolean doEndChangeSet(String name) {
@@ -97,12 +113,40 @@ public class ChangeList {
     myCurrentChangeSet.setName(name);
     myCurrentChangeSet.lock();
 
-    myStorage.writeNextSet(myCurrentChangeSet);
+    myUnsavedChangeSets.add(myCurrentChangeSet);
     myCurrentChangeSet = null;
 
     return true;
   }
 
+  private void writeEndedChangeSets() {
+    synchronized (myWriteLock) {
+      while (true) {
+        ChangeSet changeSet;
+        synchronized (this) {
+          if (myUnsavedChangeSets.isEmpty()) return;
+          changeSet = myUnsavedChangeSets.get(0);
+        }
+        myStorage.writeNextSet(changeSet);
+        synchronized (this) {
+          myUnsavedChangeSets.remove(0);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the current change set and the change sets which aren't written to the storage yet, from the newest to the oldest
+   */
+  private synchronized List<ChangeSet> getUnsavedChangeSets() {
+    List<ChangeSet> result = new ArrayList<ChangeSet>(myUnsavedChangeSets.size() + 1);
+    if (myCurrentChangeSet != null) result.add(myCurrentChangeSet);
+    for (int i = myUnsavedChangeSets.size() - 1; i >= 0; i--) {
+      result.add(myUnsavedChangeSets.get(i));
+    }
+    return result;
+  }
+
   @TestOnly
   public List<ChangeSet> getChangesInTests() {
     List<ChangeSet> result = new ArrayList<ChangeSet>();
@@ -113,13 +157,15 @@ public class ChangeList {
   }
 
   // todo synchronization issue: changeset may me modified while being iterated
-  public synchronized Iterable<ChangeSet> iterChanges() {
+  public Iterable<ChangeSet> iterChanges() {
     return new Iterable<ChangeSet>() {
       public Iterator<ChangeSet> iterator() {
         return new Iterator<ChangeSet>() {
           private final TIntHashSet recursionGuard = new TIntHashSet(1000);
+          private final Iterator<ChangeSet> unsaved = getUnsavedChangeSets().iterator();
 
           private ChangeSetHolder currentBlock;
+          private long lastId = Long.MAX_VALUE;
           private ChangeSet next = fetchNext();
 
           public boolean hasNext() {
@@ -132,24 +178,24 @@ public class ChangeList {
             return result;
           }
 
+          // the storage is read without holding the change list lock, so that recording of new changes doesn't wait for the history reader;
+          // change sets written after the iteration has started are skipped: they either have been returned already or are newer than it
           private ChangeSet fetchNext() {
-            if (currentBlock == null) {
-              synchronized (ChangeList.this) {
-                if (myCurrentChangeSet != null) {
-                  currentBlock = new ChangeSetHolder(-1, myCurrentChangeSet);
-                }
-                else {
-                  currentBlock = myStorage.readPrevious(-1, recursionGuard);
-                }
-              }
+            if (unsaved.hasNext()) {
+              ChangeSet result = unsaved.next();
+              lastId = result.getId();
+              return result;
             }
-            else {
-              synchronized (ChangeList.this) {
-                currentBlock = myStorage.readPrevious(currentBlock.id, recursionGuard);
+            while (true) {
+              currentBlock = myStorage.readPrevious(currentBlock == null ? -1 : currentBlock.id, recursionGuard);
+              if (currentBlock == null) return null;
+
+              ChangeSet result = currentBlock.changeSet;
+              if (result.getId() < lastId) {
+                lastId = result.getId();
+                return result;
               }
             }
-            if (currentBlock == null) return null;
-            return currentBlock.changeSet;
           }
 
           public void remove() {
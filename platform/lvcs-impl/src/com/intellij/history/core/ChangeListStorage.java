@@ -21,6 +21,9 @@ import com.intellij.util.Consumer;
 import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Implementations must be thread-safe: change sets are read by the history views concurrently with the recording of new ones.
+ */
 public interface ChangeListStorage {
   void close();
 
@@ -28,14 +28,16 @@ import com.intellij.openapi.application.PathManager;
 import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.newvfs.ManagingFS;
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
+import com.intellij.openapi.util.io.ByteSequence;
 import com.intellij.util.Consumer;
-import com.intellij.util.io.storage.AbstractStorage;
 import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.event.HyperlinkEvent;
 import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
@@ -157,45 +159,74 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     return ++myLastId;
   }
 
+  /**
+   * Only the lookup of the record and copying of its bytes are done under the lock,
+   * the change set is deserialized outside of it, so that browsing the history doesn't hold up recording of new changes.
+   */
   @Nullable
-  public synchronized ChangeSetHolder readPrevious(int id, TIntHashSet recursionGuard) {
-    if (isCompletelyBroken) return null;
-
+  public ChangeSetHolder readPrevious(int id, TIntHashSet recursionGuard) {
+    LocalHistoryStorage storage;
     int prevId = 0;
-    try {
-      prevId = id == -1 ? myStorage.getLastRecord() : doReadPrevSafely(id, recursionGuard);
-      if (prevId == 0) return null;
+    DataInputStream in;
+    synchronized (this) {
+      if (isCompletelyBroken) return null;
+
+      storage = myStorage;
+      try {
+        prevId = id == -1 ? storage.getLastRecord() : doReadPrevSafely(id, recursionGuard);
+        if (prevId == 0) return null;
+
+        in = storage.readStream(prevId);
+      }
+      catch (Throwable e) {
+        handleReadError(storage, prevId, e);
+        return null;
+      }
+    }
 
-      return doReadBlock(prevId);
+    try {
+      return readBlock(prevId, in);
     }
     catch (Throwable e) {
-      String message = null;
-      if (prevId != 0) {
-        try {
-          Pair<Long, Integer> prevOS = myStorage.getOffsetAndSize(prevId);
-          long prevRecordTimestamp = myStorage.getTimestamp(prevId);
-          int lastRecord = myStorage.getLastRecord();
-          Pair<Long, Integer> lastOS = myStorage.getOffsetAndSize(lastRecord);
-          long lastRecordTimestamp = myStorage.getTimestamp(lastRecord);
-
-          message = "invalid record is: " + prevId + " offset: " + prevOS.first + " size: " + prevOS.second
-                    + " (created " + DateFormat.getDateTimeInstance().format(prevRecordTimestamp) + ") "
-                    + "last record is: " + lastRecord + " offset: " + lastOS.first + " size: " + lastOS.second
-                    + " (created " + DateFormat.getDateTimeInstance().format(lastRecordTimestamp) + ")";
-        }
-        catch (Exception e1) {
-          message = "cannot retrieve more debug info: " + e1.getMessage();
-        }
+      synchronized (this) {
+        handleReadError(storage, prevId, e);
       }
-
-      handleError(e, message);
       return null;
     }
   }
 
+  private void handleReadError(LocalHistoryStorage storage, int prevId, Throwable e) {
+    if (storage != myStorage) return; // the storage has already been rebuilt
+
+    String message = null;
+    if (prevId != 0) {
+      try {
+        Pair<Long, Integer> prevOS = myStorage.getOffsetAndSize(prevId);
+        long prevRecordTimestamp = myStorage.getTimestamp(prevId);
+        int lastRecord = myStorage.getLastRecord();
+        Pair<Long, Integer> lastOS = myStorage.getOffsetAndSize(lastRecord);
+        long lastRecordTimestamp = myStorage.getTimestamp(lastRecord);
+
+        message = "invalid record is: " + prevId + " offset: " + prevOS.first + " size: " + prevOS.second
+                  + " (created " + DateFormat.getDateTimeInstance().format(prevRecordTimestamp) + ") "
+                  + "last record is: " + lastRecord + " offset: " + lastOS.first + " size: " + lastOS.second
+                  + " (created " + DateFormat.getDateTimeInstance().format(lastRecordTimestamp) + ")";
+      }
+      catch (Exception e1) {
+        message = "cannot retrieve more debug info: " + e1.getMessage();
+      }
+    }
+
+    handleError(e, message);
+  }
+
   @NotNull
   private ChangeSetHolder doReadBlock(int id) throws IOException {
-    DataInputStream in = myStorage.readStream(id);
+    return readBlock(id, myStorage.readStream(id));
+  }
+
+  @NotNull
+  private static ChangeSetHolder readBlock(int id, DataInputStream in) throws IOException {
     try {
       return new ChangeSetHolder(id, new ChangeSet(in));
     }
@@ -204,22 +235,30 @@ public class ChangeListStorageImpl implements ChangeListStorage {
     }
   }
 
-  public synchronized void writeNextSet(ChangeSet changeSet) {
-    if (isCompletelyBroken) return;
-
+  public void writeNextSet(ChangeSet changeSet) {
+    // the change set is serialized before taking the lock, the storage only copies the bytes
+    BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
     try {
-      AbstractStorage.StorageDataOutput out = myStorage.writeStream(myStorage.createNextRecord(), true);
+      changeSet.write(out);
+      out.close();
+    }
+    catch (IOException e) {
+      LocalHistoryLog.LOG.error("cannot write change set", e);
+      return;
+    }
+
+    synchronized (this) {
+      if (isCompletelyBroken) return;
+
       try {
-        changeSet.write(out);
+        myStorage.writeBytes(myStorage.createNextRecord(), new ByteSequence(bytes.getInternalBuffer(), 0, bytes.size()), true);
+        myStorage.setLastId(myLastId);
+        myStorage.force();
       }
-      finally {
-        out.close();
+      catch (IOException e) {
+        handleError(e, null);
       }
-      myStorage.setLastId(myLastId);
-      myStorage.force();
-    }
-    catch (IOException e) {
-      handleError(e, null);
     }
   }
 
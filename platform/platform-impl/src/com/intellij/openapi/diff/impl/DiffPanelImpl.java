@@ -51,6 +51,8 @@ import com.intellij.openapi.editor.ex.EditorGutterComponentEx;
 import com.intellij.openapi.editor.ex.EditorMarkupModel;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Getter;
@@ -65,6 +67,7 @@ import com.intellij.ui.JBColor;
 import com.intellij.ui.PopupHandler;
 import com.intellij.ui.border.CustomLineBorder;
 import com.intellij.ui.components.JBLabel;
+import com.intellij.util.Consumer;
 import com.intellij.util.LineSeparator;
 import com.intellij.util.containers.CacheOneStepIterator;
 import com.intellij.util.containers.Convertor;
@@ -123,6 +126,7 @@ public class DiffPanelImpl implements DiffPanelEx, ContentChangeListener, TwoSid
   private final boolean myIsHorizontal;
   private final DiffTool myParentTool;
   private CanNotCalculateDiffPanel myNotCalculateDiffPanel;
+  private ProgressIndicator myRediffIndicator;
   private final VisibleAreaListener myVisibleAreaListener;
 
   public DiffPanelImpl(final Window owner,
@@ -321,10 +325,9 @@ public class DiffPanelImpl implements DiffPanelEx, ContentChangeListener, TwoSid
   }
 
   void rediff() {
+    cancelRediff();
     try {
-      if (myNotCalculateDiffPanel != null) {
-        myPanel.removeTopComponent(myNotCalculateDiffPanel);
-      }
+      removeNotCalculateDiffPanel();
       setLineBlocks(myData.updateEditors());
     }
     catch (FilesTooBigForDiffException e) {
@@ -332,6 +335,50 @@ public class DiffPanelImpl implements DiffPanelEx, ContentChangeListener, TwoSid
     }
   }
 
+  /**
+   * Compares the contents on a pooled thread, so that typing in a big file doesn't freeze the UI. The comparison is canceled
+   * by {@link #cancelRediff()} when the contents change again before it is finished.
+   */
+  void rediffInBackground() {
+    cancelRediff();
+    final ProgressIndicator indicator = new EmptyProgressIndicator();
+    myRediffIndicator = indicator;
+    myData.updateEditorsInBackground(indicator, new Consumer<LineBlocks>() {
+      @Override
+      public void consume(LineBlocks lineBlocks) {
+        if (!rediffFinished(indicator)) return;
+        removeNotCalculateDiffPanel();
+        setLineBlocks(lineBlocks);
+      }
+    }, new Runnable() {
+      @Override
+      public void run() {
+        if (!rediffFinished(indicator)) return;
+        removeNotCalculateDiffPanel();
+        setTooBigFileErrorContents();
+      }
+    });
+  }
+
+  void cancelRediff() {
+    if (myRediffIndicator != null) {
+      myRediffIndicator.cancel();
+      myRediffIndicator = null;
+    }
+  }
+
+  private boolean rediffFinished(@NotNull ProgressIndicator indicator) {
+    if (myDisposed || indicator != myRediffIndicator) return false;
+    myRediffIndicator = null;
+    return true;
+  }
+
+  private void removeNotCalculateDiffPanel() {
+    if (myNotCalculateDiffPanel != null) {
+      myPanel.removeTopComponent(myNotCalculateDiffPanel);
+    }
+  }
+
   public void setTooBigFileErrorContents() {
     setLineBlocks(LineBlocks.EMPTY);
     myNotCalculateDiffPanel = new CanNotCalculateDiffPanel();
@@ -402,6 +449,7 @@ public class DiffPanelImpl implements DiffPanelEx, ContentChangeListener, TwoSid
 
   public void dispose() {
     myDisposed = true;
+    cancelRediff();
     myDiffUpdater.dispose();
     Disposer.dispose(myScrollSupport);
     Disposer.dispose(myData);
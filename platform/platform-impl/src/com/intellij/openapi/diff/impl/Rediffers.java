@@ -70,7 +70,7 @@ public class Rediffers {
   }
 
   public void updateNow() {
-    myPanel.rediff();
+    myPanel.rediffInBackground();
     myAlarm.cancelAllRequests();
   }
 
@@ -93,6 +93,7 @@ public class Rediffers {
       int newLines = StringUtil.getLineBreakCount(event.getNewFragment());
       int oldLines = StringUtil.getLineBreakCount(event.getOldFragment());
       if (newLines != oldLines) myPanel.invalidateDiff();
+      myPanel.cancelRediff();
       requestRediff();
     }
 
@@ -26,6 +26,7 @@ import com.intellij.openapi.diff.impl.splitter.LineBlocks;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.editor.LogicalPosition;
 import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.util.BeforeAfter;
@@ -140,6 +141,19 @@ public class FragmentedDiffPanelState extends DiffPanelState {
     return addMarkup(new TextCompareProcessor(myComparisonPolicy, diffPolicy).process(myAppender1.getText(), myAppender2.getText()));
   }
 
+  @Override
+  public void updateEditorsInBackground(@NotNull ProgressIndicator indicator,
+                                        @NotNull Consumer<LineBlocks> onUpdated,
+                                        @NotNull Runnable onTooBig) {
+    // the documents are read-only, so there are no newer edits to cancel the comparison
+    try {
+      onUpdated.consume(updateEditors());
+    }
+    catch (FilesTooBigForDiffException e) {
+      onTooBig.run();
+    }
+  }
+
   private BeforeAfter<Integer> lineStarts(int i) {
     return new BeforeAfter<Integer>(myAppender1.getDocument().getLineStartOffset(myRanges.get(i).getBefore()),
       myAppender2.getDocument().getLineStartOffset(myRanges.get(i).getAfter()));
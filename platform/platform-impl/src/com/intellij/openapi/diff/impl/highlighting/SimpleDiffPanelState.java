@@ -16,7 +16,9 @@
 package com.intellij.openapi.diff.impl.highlighting;
 
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diff.impl.ComparisonPolicy;
 import com.intellij.openapi.diff.impl.ContentChangeListener;
 import com.intellij.openapi.diff.impl.fragments.FragmentHighlighterImpl;
@@ -26,8 +28,12 @@ import com.intellij.openapi.diff.impl.fragments.LineFragment;
 import com.intellij.openapi.diff.impl.processing.DiffPolicy;
 import com.intellij.openapi.diff.impl.processing.TextCompareProcessor;
 import com.intellij.openapi.diff.impl.splitter.LineBlocks;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
+import com.intellij.util.Consumer;
+import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
 import org.jetbrains.annotations.NotNull;
 
@@ -108,6 +114,62 @@ public abstract class SimpleDiffPanelState implements Disposable  {
     return addMarkup(new TextCompareProcessor(myComparisonPolicy, myDiffPolicy).process(myAppender1.getText(), myAppender2.getText()));
   }
 
+  /**
+   * Compares the texts of the editors on a pooled thread and updates the markup in the EDT, unless the indicator gets canceled,
+   * e.g. because the texts have been changed again in the meantime.
+   */
+  public void updateEditorsInBackground(@NotNull final ProgressIndicator indicator,
+                                        @NotNull final Consumer<LineBlocks> onUpdated,
+                                        @NotNull final Runnable onTooBig) {
+    final Application application = ApplicationManager.getApplication();
+    if (myAppender1.getEditor() == null || myAppender2.getEditor() == null) {
+      resetMarkup();
+      onUpdated.consume(LineBlocks.EMPTY);
+      return;
+    }
+
+    final String text1 = myAppender1.getText();
+    final String text2 = myAppender2.getText();
+    final Diff.CancellationChecker checker = new Diff.CancellationChecker() {
+      @Override
+      public void checkCanceled() {
+        indicator.checkCanceled();
+      }
+    };
+    final DiffPolicy diffPolicy =
+      myDiffPolicy == DiffPolicy.LINES_WO_FORMATTING ? new DiffPolicy.LineBlocks(ComparisonPolicy.IGNORE_SPACE, checker) : myDiffPolicy;
+    final TextCompareProcessor processor = new TextCompareProcessor(myComparisonPolicy, diffPolicy, checker);
+    application.executeOnPooledThread(new Runnable() {
+      @Override
+      public void run() {
+        ArrayList<LineFragment> lines;
+        try {
+          lines = processor.process(text1, text2);
+        }
+        catch (FilesTooBigForDiffException e) {
+          lines = null;
+        }
+        catch (ProcessCanceledException e) {
+          return;
+        }
+
+        final ArrayList<LineFragment> finalLines = lines;
+        application.invokeLater(new Runnable() {
+          @Override
+          public void run() {
+            if (indicator.isCanceled()) return;
+            if (finalLines == null) {
+              onTooBig.run();
+              return;
+            }
+            resetMarkup();
+            onUpdated.consume(addMarkup(finalLines));
+          }
+        }, ModalityState.any());
+      }
+    });
+  }
+
   public Project getProject() { return myProject; }
 
   public FragmentList getFragmentList() { return myFragmentList; }
@@ -23,8 +23,10 @@ import com.intellij.openapi.diff.impl.fragments.LineFragment;
 import com.intellij.openapi.diff.impl.highlighting.FragmentSide;
 import com.intellij.openapi.diff.impl.highlighting.LineBlockDivider;
 import com.intellij.openapi.diff.impl.highlighting.Util;
+import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 
@@ -32,10 +34,18 @@ public class TextCompareProcessor {
   private static final Logger LOG = Logger.getInstance("#com.intellij.openapi.diff.impl.processing.Processor");
   private final DiffPolicy myDiffPolicy;
   @NotNull private final ComparisonPolicy myComparisonPolicy;
+  @Nullable private final Diff.CancellationChecker myCancellationChecker;
 
   public TextCompareProcessor(@NotNull ComparisonPolicy comparisonPolicy, final DiffPolicy diffPolicy) {
+    this(comparisonPolicy, diffPolicy, null);
+  }
+
+  public TextCompareProcessor(@NotNull ComparisonPolicy comparisonPolicy,
+                              final DiffPolicy diffPolicy,
+                              @Nullable Diff.CancellationChecker cancellationChecker) {
     myComparisonPolicy = comparisonPolicy;
     myDiffPolicy = diffPolicy;
+    myCancellationChecker = cancellationChecker;
   }
 
   public TextCompareProcessor(ComparisonPolicy comparisonPolicy) {
@@ -48,6 +58,7 @@ public class TextCompareProcessor {
         correctAndNormalize(woFormattingBlocks);
     ArrayList<LineFragment> lineBlocks = new DiffFragmentsProcessor().process(step1lineFragments);
     for (LineFragment lineBlock : lineBlocks) {
+      if (myCancellationChecker != null) myCancellationChecker.checkCanceled();
       if (lineBlock.isOneSide() || lineBlock.isEqual()) continue;
       String subText1 = lineBlock.getText(text1, FragmentSide.SIDE1);
       String subText2 = lineBlock.getText(text2, FragmentSide.SIDE2);
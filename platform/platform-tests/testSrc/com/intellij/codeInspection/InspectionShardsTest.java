@@ -0,0 +1,109 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.codeInspection;
+
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.testFramework.PlatformTestCase;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import org.jdom.Document;
+import org.jdom.Element;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+public class InspectionShardsTest extends LightPlatformCodeInsightFixtureTestCase {
+  private static final int SHARDS = 3;
+
+  public InspectionShardsTest() {
+    PlatformTestCase.initPlatformLangPrefix();
+  }
+
+  public void testEveryFileBelongsToOneShard() {
+    List<VirtualFile> files = new ArrayList<VirtualFile>();
+    for (int i = 0; i < 30; i++) {
+      files.add(myFixture.addFileToProject((i % 2 == 0 ? "a/" : "b/") + "file" + i + ".txt", "").getVirtualFile());
+    }
+    VirtualFile dirA = files.get(0).getParent();
+
+    int[] shardSizes = new int[SHARDS];
+    for (VirtualFile file : files) {
+      int shards = 0;
+      for (int shard = 0; shard < SHARDS; shard++) {
+        if (InspectionShards.createScope(getProject(), null, shard, SHARDS).contains(file)) {
+          shards++;
+          shardSizes[shard]++;
+          assertEquals(file.getParent().equals(dirA), InspectionShards.createScope(getProject(), dirA, shard, SHARDS).contains(file));
+        }
+      }
+      assertEquals(file.getPath(), 1, shards);
+    }
+    for (int size : shardSizes) {
+      assertTrue(size > 0);
+    }
+
+    GlobalSearchScope single = InspectionShards.createScope(getProject(), null, 0, 1);
+    for (VirtualFile file : files) {
+      assertTrue(single.contains(file));
+    }
+  }
+
+  public void testResultsAreMergedAndSorted() throws Exception {
+    File output = FileUtil.createTempDirectory("inspections", null);
+    try {
+      writeReport(new File(output, "Tool.xml"), "b");
+      writeReport(new File(output, "shard-0/Tool.xml"), "c", "a");
+      writeReport(new File(output, "shard-1/Tool.xml"), "d");
+      writeReport(new File(output, "shard-1/Other.xml"), "x");
+      writeReport(new File(output, "shard-2/" + InspectionApplication.DESCRIPTIONS + InspectionApplication.XML_EXTENSION), "y");
+
+      List<File> results = new ArrayList<File>();
+      results.add(new File(output, "Tool.xml"));
+      new InspectionShards(SHARDS).mergeResults(output.getPath(), results);
+
+      assertSameElements(results, new File(output, "Tool.xml"), new File(output, "Other.xml"));
+      assertEquals("abcd", readProblems(new File(output, "Tool.xml")));
+      assertEquals("x", readProblems(new File(output, "Other.xml")));
+      assertFalse(new File(output, InspectionApplication.DESCRIPTIONS + InspectionApplication.XML_EXTENSION).exists());
+      for (int i = 0; i < SHARDS; i++) {
+        assertFalse(new File(output, "shard-" + i).exists());
+      }
+    }
+    finally {
+      FileUtil.delete(output);
+    }
+  }
+
+  private static void writeReport(File file, String... problemFiles) throws Exception {
+    Element root = new Element("problems");
+    for (String problemFile : problemFiles) {
+      root.addContent(new Element("problem").addContent(new Element("file").setText(problemFile)));
+    }
+    FileUtil.createParentDirs(file);
+    JDOMUtil.writeDocument(new Document(root), file, "\n");
+  }
+
+  private static String readProblems(File file) throws Exception {
+    StringBuilder result = new StringBuilder();
+    for (Object problem : JDOMUtil.loadDocument(file).getRootElement().getChildren("problem")) {
+      result.append(((Element)problem).getChildText("file"));
+    }
+    return result.toString();
+  }
+}
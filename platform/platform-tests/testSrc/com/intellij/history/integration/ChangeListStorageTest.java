@@ -0,0 +1,84 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.history.integration;
+
+import com.intellij.history.core.ChangeList;
+import com.intellij.history.core.ChangeListStorageImpl;
+import com.intellij.history.core.changes.ChangeSet;
+import com.intellij.history.core.changes.PutLabelChange;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class ChangeListStorageTest extends IntegrationTestCase {
+  private static final int CHANGE_SETS = 2000;
+
+  private ChangeListStorageImpl myStorage;
+  private ChangeList myChangeList;
+
+  @Override
+  public void setUp() throws Exception {
+    super.setUp();
+    myStorage = new ChangeListStorageImpl(createTempDirectory());
+    myChangeList = new ChangeList(myStorage);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    myStorage.close();
+    super.tearDown();
+  }
+
+  public void testWritingWhileBrowsing() throws Exception {
+    final AtomicBoolean finished = new AtomicBoolean();
+    final AtomicReference<Throwable> readerError = new AtomicReference<Throwable>();
+    Thread reader = new Thread("local history reader") {
+      @Override
+      public void run() {
+        try {
+          while (!finished.get()) {
+            long prevId = Long.MAX_VALUE;
+            for (ChangeSet each : myChangeList.iterChanges()) {
+              assertTrue(each.getId() < prevId);
+              String name = each.getName();
+              assertTrue(name == null /* the current change set */ || name.startsWith("set "));
+              prevId = each.getId();
+            }
+          }
+        }
+        catch (Throwable e) {
+          readerError.set(e);
+        }
+      }
+    };
+    reader.start();
+
+    try {
+      for (int i = 0; i < CHANGE_SETS; i++) {
+        myChangeList.beginChangeSet();
+        myChangeList.addChange(new PutLabelChange(myChangeList.nextId(), "label " + i, "project"));
+        myChangeList.endChangeSet("set " + i);
+      }
+    }
+    finally {
+      finished.set(true);
+      reader.join();
+    }
+
+    if (readerError.get() != null) throw new AssertionError(readerError.get());
+    assertEquals(CHANGE_SETS, myChangeList.getChangesInTests().size());
+  }
+}
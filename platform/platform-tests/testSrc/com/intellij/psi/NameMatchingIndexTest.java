@@ -0,0 +1,92 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi;
+
+import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameMatchingIndex;
+import com.intellij.psi.codeStyle.NameUtil;
+import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.testFramework.UsefulTestCase;
+import com.intellij.util.ThrowableRunnable;
+
+import java.util.*;
+
+public class NameMatchingIndexTest extends UsefulTestCase {
+  private static final String[] WORDS = {
+    "Abstract", "Action", "Base", "Bean", "Cache", "Class", "Component", "Default", "Editor", "Factory", "File", "Handler", "Impl",
+    "Index", "Java", "Manager", "Name", "Project", "Psi", "Reference", "Service", "Stub", "Util", "Virtual", "XML", "2", "_", "$"
+  };
+  private static final String[] PATTERNS = {
+    "", "*", "a", "A", "psi", "PsiMan", "pm", "*man", "*Impl", "FI", "fiu", "vfm", "xml", "XMLF", "jcf", "*2", "2", "_", "_u", "$",
+    "Psi ", "psi man", "*ja*ut", "AbstractActionBeanCacheClass", "zzz"
+  };
+
+  public void testSameMatchesAsMatcher() {
+    List<String> names = generateNames(20000, new Random(42));
+    NameMatchingIndex index = new NameMatchingIndex(names);
+    assertEquals(names.size(), index.size());
+
+    for (String pattern : PATTERNS) {
+      for (NameUtil.MatchingCaseSensitivity sensitivity : NameUtil.MatchingCaseSensitivity.values()) {
+        MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, sensitivity);
+        assertEquals(pattern + " " + sensitivity, filter(names, matcher), filter(index.getCandidates(pattern), matcher));
+      }
+    }
+  }
+
+  public void testCandidatesLatencyOverMillionNames() throws Throwable {
+    final List<String> names = generateNames(1000000, new Random(239));
+    final NameMatchingIndex index = new NameMatchingIndex(names);
+
+    for (String pattern : new String[]{"PsiMan", "*Impl", "xmlfh", "jcf"}) {
+      MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+      assertEquals(pattern, filter(names, matcher), filter(index.getCandidates(pattern), matcher));
+    }
+
+    PlatformTestUtil.startPerformanceTest("Name index queries over a million names", 2000, new ThrowableRunnable() {
+      @Override
+      public void run() throws Throwable {
+        for (String pattern : new String[]{"P", "Ps", "Psi", "PsiM", "PsiMa", "PsiMan", "x", "xm", "xml", "xmlf", "xmlfh"}) {
+          filter(index.getCandidates(pattern), NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE));
+        }
+      }
+    }).cpuBound().assertTiming();
+  }
+
+  private static List<String> generateNames(int count, Random random) {
+    List<String> names = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++) {
+      StringBuilder name = new StringBuilder();
+      int words = 1 + random.nextInt(4);
+      for (int j = 0; j < words; j++) {
+        String word = WORDS[random.nextInt(WORDS.length)];
+        name.append(random.nextInt(10) == 0 ? word.toLowerCase(Locale.US) : word);
+      }
+      names.add(name.toString());
+    }
+    return names;
+  }
+
+  private static Set<String> filter(Collection<String> names, MinusculeMatcher matcher) {
+    Set<String> result = new HashSet<String>();
+    for (String name : names) {
+      if (matcher.matches(name)) {
+        result.add(name);
+      }
+    }
+    return result;
+  }
+}
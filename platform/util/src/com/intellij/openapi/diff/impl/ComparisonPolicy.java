@@ -27,6 +27,7 @@ import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.jetbrains.annotations.Nullable;
 
 public abstract class ComparisonPolicy {
   private final String myName;
@@ -44,10 +45,15 @@ public abstract class ComparisonPolicy {
   }
 
   public DiffFragment[] buildDiffFragmentsFromLines(String[] lines1, String[] lines2) throws FilesTooBigForDiffException {
+    return buildDiffFragmentsFromLines(lines1, lines2, null);
+  }
+
+  public DiffFragment[] buildDiffFragmentsFromLines(String[] lines1, String[] lines2, @Nullable Diff.CancellationChecker checker)
+    throws FilesTooBigForDiffException {
     DiffFragmentBuilder builder = new DiffFragmentBuilder(lines1, lines2);
     Object[] wrappers1 = getLineWrappers(lines1);
     Object[] wrappers2 = getLineWrappers(lines2);
-    Diff.Change change = Diff.buildChanges(wrappers1, wrappers2);
+    Diff.Change change = Diff.buildChanges(wrappers1, wrappers2, checker);
     return builder.buildFragments(change);
   }
 
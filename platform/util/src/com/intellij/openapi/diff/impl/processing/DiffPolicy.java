@@ -18,7 +18,9 @@ package com.intellij.openapi.diff.impl.processing;
 import com.intellij.openapi.diff.LineTokenizer;
 import com.intellij.openapi.diff.ex.DiffFragment;
 import com.intellij.openapi.diff.impl.ComparisonPolicy;
+import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.jetbrains.annotations.Nullable;
 
 public interface DiffPolicy {
   DiffFragment[] buildFragments(String text1, String text2) throws FilesTooBigForDiffException;
@@ -28,16 +30,22 @@ public interface DiffPolicy {
 
   class LineBlocks implements DiffPolicy {
     private final ComparisonPolicy myComparisonPolicy;
+    @Nullable private final Diff.CancellationChecker myCancellationChecker;
 
     public LineBlocks(ComparisonPolicy comparisonPolicy) {
+      this(comparisonPolicy, null);
+    }
+
+    public LineBlocks(ComparisonPolicy comparisonPolicy, @Nullable Diff.CancellationChecker cancellationChecker) {
       myComparisonPolicy = comparisonPolicy;
+      myCancellationChecker = cancellationChecker;
     }
 
     @Override
     public DiffFragment[] buildFragments(String text1, String text2) throws FilesTooBigForDiffException {
       String[] strings1 = new LineTokenizer(text1).execute();
       String[] strings2 = new LineTokenizer(text2).execute();
-      return myComparisonPolicy.buildDiffFragmentsFromLines(strings1, strings2);
+      return myComparisonPolicy.buildDiffFragmentsFromLines(strings1, strings2, myCancellationChecker);
     }
 
   }
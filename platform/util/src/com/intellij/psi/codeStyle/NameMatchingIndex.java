@@ -0,0 +1,157 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.psi.codeStyle;
+
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An index over a fixed set of names which finds the names that can be matched by a {@link MinusculeMatcher} pattern
+ * without running the matcher over all of them.
+ * <p/>
+ * A pattern character can only match the same character in the name, ignoring the case, so a name can't match
+ * unless it contains all the latin letters and digits of the pattern; and a pattern which doesn't start with a wildcard
+ * has to match the first character of the name. The names are grouped by their first character and for every letter and digit
+ * the index keeps the bit set of the names containing it, so a query intersects a few bit sets over one group.
+ * <p/>
+ * The candidates are a superset of the names matched by the pattern: they still have to be checked by the matcher.
+ * The index is immutable and can be queried from several threads.
+ */
+public class NameMatchingIndex {
+  private static final int SLOT_COUNT = 36; // 'a'..'z' and '0'..'9'
+  private static final int OTHER_SLOT = SLOT_COUNT;
+
+  private final String[] myNames;
+  private final int[] myGroupStarts = new int[SLOT_COUNT + 2];
+  private final long[][] myNamesWithChar = new long[SLOT_COUNT][];
+
+  public NameMatchingIndex(@NotNull Collection<String> names) {
+    this(names.toArray(new String[names.size()]));
+  }
+
+  public NameMatchingIndex(@NotNull String[] names) {
+    for (String name : names) {
+      if (name != null) {
+        myGroupStarts[getFirstCharSlot(name) + 1]++;
+      }
+    }
+    for (int i = 1; i < myGroupStarts.length; i++) {
+      myGroupStarts[i] += myGroupStarts[i - 1];
+    }
+
+    // group the names by the first character, keeping their order within a group
+    myNames = new String[myGroupStarts[myGroupStarts.length - 1]];
+    int[] next = myGroupStarts.clone();
+    for (String name : names) {
+      if (name != null) {
+        myNames[next[getFirstCharSlot(name)]++] = name;
+      }
+    }
+
+    int words = (myNames.length + 63) >> 6;
+    for (int i = 0; i < myNames.length; i++) {
+      String name = myNames[i];
+      for (int j = 0; j < name.length(); j++) {
+        int slot = getSlot(name.charAt(j));
+        if (slot == OTHER_SLOT) continue;
+        long[] bits = myNamesWithChar[slot];
+        if (bits == null) {
+          myNamesWithChar[slot] = bits = new long[words];
+        }
+        bits[i >> 6] |= 1L << i;
+      }
+    }
+  }
+
+  public int size() {
+    return myNames.length;
+  }
+
+  /**
+   * Passes to the processor the names which can be matched by the given {@link MinusculeMatcher} pattern, in no particular order.
+   *
+   * @return false if the processor has stopped the processing
+   */
+  public boolean processCandidates(@NotNull String pattern, @NotNull Processor<String> processor) {
+    int from = 0;
+    int to = myNames.length;
+    if (!pattern.isEmpty() && !isWildcard(pattern.charAt(0))) {
+      int slot = getSlot(pattern.charAt(0));
+      if (slot != OTHER_SLOT) {
+        from = myGroupStarts[slot];
+        to = myGroupStarts[slot + 1];
+      }
+    }
+    if (from >= to) return true;
+
+    List<long[]> required = new ArrayList<long[]>();
+    boolean[] seen = new boolean[SLOT_COUNT];
+    for (int i = 0; i < pattern.length(); i++) {
+      int slot = getSlot(pattern.charAt(i));
+      if (slot == OTHER_SLOT || seen[slot]) continue;
+      seen[slot] = true;
+      if (myNamesWithChar[slot] == null) return true;
+      required.add(myNamesWithChar[slot]);
+    }
+
+    for (int word = from >> 6; word <= (to - 1) >> 6; word++) {
+      long bits = -1L;
+      if (word == from >> 6) bits &= -1L << from;
+      if (word == (to - 1) >> 6) bits &= -1L >>> (63 - ((to - 1) & 63));
+      for (int i = 0; i < required.size() && bits != 0; i++) {
+        bits &= required.get(i)[word];
+      }
+      while (bits != 0) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        if (!processor.process(myNames[(word << 6) + bit])) return false;
+        bits &= bits - 1;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  public List<String> getCandidates(@NotNull String pattern) {
+    final List<String> result = new ArrayList<String>();
+    processCandidates(pattern, new Processor<String>() {
+      @Override
+      public boolean process(String name) {
+        result.add(name);
+        return true;
+      }
+    });
+    return result;
+  }
+
+  private static boolean isWildcard(char c) {
+    return c == ' ' || c == '*';
+  }
+
+  private static int getFirstCharSlot(String name) {
+    return name.isEmpty() ? OTHER_SLOT : getSlot(name.charAt(0));
+  }
+
+  private static int getSlot(char c) {
+    if (c >= 'a' && c <= 'z') return c - 'a';
+    if (c >= 'A' && c <= 'Z') return c - 'A';
+    if (c >= '0' && c <= '9') return 26 + c - '0';
+    return OTHER_SLOT;
+  }
+}
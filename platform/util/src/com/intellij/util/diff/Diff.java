@@ -31,15 +31,38 @@ import java.util.ArrayList;
 public class Diff {
   private static final Logger LOG = Logger.getInstance("#com.intellij.util.diff.Diff");
 
+  /**
+   * Inputs with more elements (not counting the common prefix and suffix, and the elements present only in one of the inputs)
+   * are compared by the linear-space {@link MyersLCS} split by the {@link UniqueLCS unique elements}:
+   * the paths stored by {@link IntLCS} would need too much memory for them.
+   */
+  private static final int MAX_INT_LCS_SIZE = 50000;
+
   @Nullable
   public static Change buildChanges(@NotNull CharSequence before, @NotNull CharSequence after) throws FilesTooBigForDiffException {
+    return buildChanges(before, after, null);
+  }
+
+  /**
+   * @param checker is called periodically while comparing big inputs, and may interrupt the comparison by throwing
+   *                {@link com.intellij.openapi.progress.ProcessCanceledException}
+   */
+  @Nullable
+  public static Change buildChanges(@NotNull CharSequence before, @NotNull CharSequence after, @Nullable CancellationChecker checker)
+    throws FilesTooBigForDiffException {
     final String[] strings1 = LineTokenizer.tokenize(before, false);
     final String[] strings2 = LineTokenizer.tokenize(after, false);
-    return buildChanges(strings1, strings2);
+    return buildChanges(strings1, strings2, checker);
   }
 
   @Nullable
   public static <T> Change buildChanges(@NotNull T[] objects1, @NotNull T[] objects2) throws FilesTooBigForDiffException {
+    return buildChanges(objects1, objects2, null);
+  }
+
+  @Nullable
+  public static <T> Change buildChanges(@NotNull T[] objects1, @NotNull T[] objects2, @Nullable CancellationChecker checker)
+    throws FilesTooBigForDiffException {
 
     // Old variant of enumerator worked incorrectly with null values.
     // This check is to ensure that the corrected version does not introduce bugs.
@@ -54,13 +77,42 @@ public class Diff {
     int[] ints2 = enumerator.enumerate(objects2, startShift, endCut);
     Reindexer reindexer = new Reindexer();
     int[][] discarded = reindexer.discardUnique(ints1, ints2);
-    IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
-    intLCS.execute();
     ChangeBuilder builder = new ChangeBuilder(startShift);
-    reindexer.reindex(intLCS.getPaths(), builder);
+
+    if (discarded[0].length + discarded[1].length <= MAX_INT_LCS_SIZE) {
+      try {
+        IntLCS intLCS = new IntLCS(discarded[0], discarded[1]);
+        intLCS.execute();
+        reindexer.reindex(intLCS.getPaths(), builder);
+        return builder.getFirstChange();
+      }
+      catch (FilesTooBigForDiffException e) {
+        LOG.debug("Too many changes for IntLCS, comparing by MyersLCS: " + discarded[0].length + ", " + discarded[1].length);
+      }
+    }
+
+    MyersLCS lcs = buildLinearLCS(discarded[0], discarded[1], checker);
+    reindexer.reindex(lcs.getChanges1(), lcs.getChanges2(), builder);
     return builder.getFirstChange();
   }
 
+  @NotNull
+  private static MyersLCS buildLinearLCS(@NotNull int[] ints1, @NotNull int[] ints2, @Nullable CancellationChecker checker) {
+    MyersLCS lcs = new MyersLCS(ints1, ints2, checker);
+    int[][] anchors = new UniqueLCS(ints1, ints2).execute();
+    int start1 = 0;
+    int start2 = 0;
+    for (int i = 0; i < anchors[0].length; i++) {
+      int anchor1 = anchors[0][i];
+      int anchor2 = anchors[1][i];
+      lcs.execute(start1, anchor1 - start1, start2, anchor2 - start2);
+      start1 = anchor1 + 1;
+      start2 = anchor2 + 1;
+    }
+    lcs.execute(start1, ints1.length - start1, start2, ints2.length - start2);
+    return lcs;
+  }
+
   private static <T> int getStartShift(final T[] o1, final T[] o2) {
     final int size = Math.min(o1.length, o2.length);
     int idx = 0;
@@ -124,6 +176,16 @@ public class Diff {
     return result;
   }
   
+  /**
+   * Allows to cancel a long comparison.
+   */
+  public interface CancellationChecker {
+    /**
+     * @throws com.intellij.openapi.progress.ProcessCanceledException if the comparison should be stopped
+     */
+    void checkCanceled();
+  }
+
   public static class Change {
     // todo remove. Return lists instead.
     /**
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Finds the changed elements of two int sequences by the linear-space variation of the Myers algorithm:
+ * the "middle snake" of the optimal path is found from both ends, and the parts before and after it are processed recursively.
+ * Unlike {@link IntLCS}, it doesn't store the paths, so it needs O(N + M) memory for any input.
+ * <p/>
+ * The time is O((N + M) * D), so for very different inputs the search of the middle snake is stopped after a number of steps
+ * depending on the input size, and the furthest reached point is used instead: the result is a correct, but not minimal diff then.
+ */
+class MyersLCS {
+  private static final int MIN_MAX_COST = 256;
+
+  @NotNull private final int[] myFirst;
+  @NotNull private final int[] mySecond;
+  @NotNull private final BitSet myChanges1;
+  @NotNull private final BitSet myChanges2;
+  @Nullable private final Diff.CancellationChecker myChecker;
+
+  private int[] myForward;
+  private int[] myBackward;
+  private int myMaxCost;
+
+  MyersLCS(@NotNull int[] first, @NotNull int[] second, @Nullable Diff.CancellationChecker checker) {
+    myFirst = first;
+    mySecond = second;
+    myChanges1 = new BitSet(first.length);
+    myChanges2 = new BitSet(second.length);
+    myChecker = checker;
+  }
+
+  public void execute() {
+    execute(0, myFirst.length, 0, mySecond.length);
+  }
+
+  /**
+   * Finds changes in the given ranges, the rest of the sequences is not affected.
+   */
+  public void execute(int start1, int count1, int start2, int count2) {
+    int totalCount = count1 + count2;
+    if (myForward == null || myForward.length < totalCount + 3) {
+      myForward = new int[totalCount + 3];
+      myBackward = new int[totalCount + 3];
+    }
+    myMaxCost = Math.max(MIN_MAX_COST, (int)Math.sqrt(totalCount));
+    doExecute(start1, count1, start2, count2);
+  }
+
+  /**
+   * @return changed elements of the first sequence
+   */
+  @NotNull
+  public BitSet getChanges1() {
+    return myChanges1;
+  }
+
+  /**
+   * @return changed elements of the second sequence
+   */
+  @NotNull
+  public BitSet getChanges2() {
+    return myChanges2;
+  }
+
+  private void doExecute(int start1, int count1, int start2, int count2) {
+    while (count1 > 0 && count2 > 0 && myFirst[start1] == mySecond[start2]) {
+      start1++;
+      start2++;
+      count1--;
+      count2--;
+    }
+    while (count1 > 0 && count2 > 0 && myFirst[start1 + count1 - 1] == mySecond[start2 + count2 - 1]) {
+      count1--;
+      count2--;
+    }
+    if (count1 == 0 || count2 == 0) {
+      myChanges1.set(start1, start1 + count1);
+      myChanges2.set(start2, start2 + count2);
+      return;
+    }
+
+    long split = findSplit(start1, count1, start2, count2);
+    int x = (int)(split >> 32);
+    int y = (int)split;
+    if (split < 0 || (x == 0 && y == 0) || (x == count1 && y == count2)) {
+      myChanges1.set(start1, start1 + count1);
+      myChanges2.set(start2, start2 + count2);
+      return;
+    }
+    doExecute(start1, x, start2, y);
+    doExecute(start1 + x, count1 - x, start2 + y, count2 - y);
+  }
+
+  /**
+   * @return relative coordinates of the end of the middle snake (x in the high half, y in the low half),
+   *         or -1 if the sequences have nothing in common
+   */
+  private long findSplit(int start1, int count1, int start2, int count2) {
+    int maxD = (count1 + count2 + 1) / 2;
+    int offset = maxD;
+    // only the diagonals which can be reached before the search is stopped are used
+    int start = Math.max(0, offset - myMaxCost - 2);
+    int end = Math.min(2 * maxD + 2, offset + myMaxCost + 3);
+    int[] forward = myForward;
+    int[] backward = myBackward;
+    Arrays.fill(forward, start, end, -1);
+    Arrays.fill(backward, start, end, -1);
+    forward[offset + 1] = 0;
+    backward[offset + 1] = 0;
+
+    int delta = count1 - count2;
+    boolean checkForward = (delta & 1) != 0;
+    // diagonals which went outside of the rectangle are skipped
+    int forwardStart = 0;
+    int forwardEnd = 0;
+    int backwardStart = 0;
+    int backwardEnd = 0;
+
+    for (int d = 0; d < maxD; d++) {
+      if (myChecker != null) {
+        myChecker.checkCanceled();
+      }
+      if (d > myMaxCost) {
+        return findFurthestPoint(forward, offset, d, forwardStart, forwardEnd, count1, count2);
+      }
+
+      for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+        int kOffset = offset + k;
+        int x;
+        if (k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])) {
+          x = forward[kOffset + 1];
+        }
+        else {
+          x = forward[kOffset - 1] + 1;
+        }
+        int y = x - k;
+        while (x < count1 && y < count2 && myFirst[start1 + x] == mySecond[start2 + y]) {
+          x++;
+          y++;
+        }
+        forward[kOffset] = x;
+        if (x > count1) {
+          forwardEnd += 2;
+        }
+        else if (y > count2) {
+          forwardStart += 2;
+        }
+        else if (checkForward) {
+          int backwardOffset = offset + delta - k;
+          if (backwardOffset >= start && backwardOffset < end && backward[backwardOffset] != -1) {
+            if (x >= count1 - backward[backwardOffset]) {
+              return ((long)x << 32) | y;
+            }
+          }
+        }
+      }
+
+      for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+        int kOffset = offset + k;
+        int x;
+        if (k == -d || (k != d && backward[kOffset - 1] < backward[kOffset + 1])) {
+          x = backward[kOffset + 1];
+        }
+        else {
+          x = backward[kOffset - 1] + 1;
+        }
+        int y = x - k;
+        while (x < count1 && y < count2 && myFirst[start1 + count1 - x - 1] == mySecond[start2 + count2 - y - 1]) {
+          x++;
+          y++;
+        }
+        backward[kOffset] = x;
+        if (x > count1) {
+          backwardEnd += 2;
+        }
+        else if (y > count2) {
+          backwardStart += 2;
+        }
+        else if (!checkForward) {
+          int forwardOffset = offset + delta - k;
+          if (forwardOffset >= start && forwardOffset < end && forward[forwardOffset] != -1) {
+            int forwardX = forward[forwardOffset];
+            int forwardY = offset + forwardX - forwardOffset;
+            if (forwardX >= count1 - x) {
+              return ((long)forwardX << 32) | forwardY;
+            }
+          }
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the point reached by the forward search which is the furthest from the start
+   */
+  private static long findFurthestPoint(@NotNull int[] forward, int offset, int d, int forwardStart, int forwardEnd,
+                                        int count1, int count2) {
+    int bestX = 0;
+    int bestY = 0;
+    for (int k = -d + 1 + forwardStart; k <= d - 1 - forwardEnd; k += 2) {
+      int x = forward[offset + k];
+      int y = x - k;
+      if (x >= 0 && x <= count1 && y >= 0 && y <= count2 && x + y > bestX + bestY) {
+        bestX = x;
+        bestY = y;
+      }
+    }
+    return ((long)bestX << 32) | bestY;
+  }
+}
@@ -18,6 +18,7 @@ package com.intellij.util.diff;
 import gnu.trove.TIntArrayList;
 
 import java.util.Arrays;
+import java.util.BitSet;
 
 /**
  * @author dyoma
@@ -102,6 +103,27 @@ class Reindexer {
         }
       }
     });
+    buildChanges(changes1, changes2, builder);
+  }
+
+  /**
+   * Passes the changes to the builder, when changed elements of the discarded sequences are known.
+   */
+  public void reindex(BitSet discardedChanges1, BitSet discardedChanges2, LCSBuilder builder) {
+    buildChanges(restoreChanges(discardedChanges1, 0), restoreChanges(discardedChanges2, 1), builder);
+  }
+
+  private boolean[] restoreChanges(BitSet discardedChanges, int array) {
+    boolean[] changes = new boolean[myOriginalLengths[array]];
+    Arrays.fill(changes, true); // discarded elements are changed for sure
+    int[] oldIndecies = myOldIndecies[array];
+    for (int i = 0; i < oldIndecies.length; i++) {
+      changes[oldIndecies[i]] = discardedChanges.get(i);
+    }
+    return changes;
+  }
+
+  private static void buildChanges(boolean[] changes1, boolean[] changes2, LCSBuilder builder) {
     int x = 0;
     int y = 0;
     while (x < changes1.length && y < changes2.length) {
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Finds the longest common subsequence of the elements which occur exactly once in each of the sequences
+ * (the "patience diff" heuristic): such elements are the most reliable anchors to split a huge diff into small independent parts.
+ * <p/>
+ * The elements are expected to be small non-negative numbers, e.g. produced by {@link com.intellij.util.containers.Enumerator}.
+ */
+class UniqueLCS {
+  @NotNull private final int[] myFirst;
+  @NotNull private final int[] mySecond;
+
+  UniqueLCS(@NotNull int[] first, @NotNull int[] second) {
+    myFirst = first;
+    mySecond = second;
+  }
+
+  /**
+   * @return positions of the matched elements in the first (<code>[0]</code>) and in the second (<code>[1]</code>) sequence,
+   *         increasing in both sequences
+   */
+  @NotNull
+  public int[][] execute() {
+    int maxValue = 0;
+    for (int value : myFirst) maxValue = Math.max(maxValue, value);
+    for (int value : mySecond) maxValue = Math.max(maxValue, value);
+
+    // position of the element in the second sequence if it is unique there, -1 if it is absent, -2 if it is not unique
+    int[] positions2 = new int[maxValue + 1];
+    Arrays.fill(positions2, -1);
+    for (int i = 0; i < mySecond.length; i++) {
+      int value = mySecond[i];
+      positions2[value] = positions2[value] == -1 ? i : -2;
+    }
+    int[] counts1 = new int[maxValue + 1];
+    for (int value : myFirst) {
+      counts1[value]++;
+    }
+
+    // the longest increasing subsequence of positions in the second sequence, by patience sorting:
+    // tails[l] is the index (in the first sequence) of the smallest tail of an increasing subsequence of length l + 1
+    int[] tails = new int[Math.min(myFirst.length, mySecond.length) + 1];
+    int[] previous = new int[myFirst.length];
+    int length = 0;
+    for (int i = 0; i < myFirst.length; i++) {
+      int value = myFirst[i];
+      int position = positions2[value];
+      if (position < 0 || counts1[value] != 1) continue;
+
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (positions2[myFirst[tails[middle]]] < position) {
+          low = middle + 1;
+        }
+        else {
+          high = middle;
+        }
+      }
+      tails[low] = i;
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      if (low == length) length++;
+    }
+
+    int[][] result = new int[2][length];
+    int index = length > 0 ? tails[length - 1] : -1;
+    for (int l = length - 1; l >= 0; l--) {
+      result[0][l] = index;
+      result[1][l] = positions2[myFirst[index]];
+      index = previous[index];
+    }
+    return result;
+  }
+}
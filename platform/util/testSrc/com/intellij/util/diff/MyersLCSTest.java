@@ -0,0 +1,142 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.util.diff;
+
+import com.intellij.openapi.progress.ProcessCanceledException;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+
+public class MyersLCSTest extends TestCase {
+  public void testSameAsIntLCS() throws FilesTooBigForDiffException {
+    Random random = new Random(0);
+    for (int i = 0; i < 1000; i++) {
+      int[] first = randomSequence(random, random.nextInt(30), 5);
+      int[] second = randomSequence(random, random.nextInt(30), 5);
+      int expected = new IntLCS(first, second).execute();
+
+      MyersLCS lcs = new MyersLCS(first, second, null);
+      lcs.execute();
+      assertEquals(expected, lcs.getChanges1().cardinality() + lcs.getChanges2().cardinality());
+      checkUnchanged(first, second, lcs.getChanges1(), lcs.getChanges2());
+    }
+  }
+
+  public void testTooExpensiveDiffIsCorrect() {
+    int count = 30000;
+    int[] first = new int[count];
+    int[] second = new int[count];
+    for (int i = 0; i < count; i++) {
+      first[i] = i % 100;
+      second[i] = (count - i) % 97;
+    }
+    MyersLCS lcs = new MyersLCS(first, second, null);
+    lcs.execute();
+    checkUnchanged(first, second, lcs.getChanges1(), lcs.getChanges2());
+  }
+
+  public void testUniqueLCS() {
+    int[][] matched = new UniqueLCS(new int[]{1, 2, 3, 4, 2, 5}, new int[]{3, 1, 4, 6, 5, 2}).execute();
+    assertEquals(3, matched[0].length); // 3, 4, 5
+    assertEquals(2, matched[0][0]);
+    assertEquals(0, matched[1][0]);
+    assertEquals(5, matched[0][2]);
+    assertEquals(4, matched[1][2]);
+  }
+
+  public void testHugeInput() throws FilesTooBigForDiffException {
+    Random random = new Random(0);
+    List<String> first = new ArrayList<String>();
+    List<String> second = new ArrayList<String>();
+    for (int i = 0; i < 200000; i++) {
+      String line = "line " + random.nextInt(50000);
+      first.add(line);
+      int edit = random.nextInt(100);
+      if (edit == 0) {
+        second.add("inserted " + i);
+        second.add(line);
+      }
+      else if (edit != 1) {
+        second.add(edit == 2 ? "changed " + i : line);
+      }
+    }
+    String[] before = first.toArray(new String[first.size()]);
+    String[] after = second.toArray(new String[second.size()]);
+    Diff.Change change = Diff.buildChanges(before, after);
+    checkChanges(before, after, change);
+  }
+
+  public void testCancellation() throws FilesTooBigForDiffException {
+    Random random = new Random(0);
+    String[] first = new String[100000];
+    String[] second = new String[100000];
+    for (int i = 0; i < first.length; i++) {
+      first[i] = String.valueOf(random.nextInt(10));
+      second[i] = String.valueOf(random.nextInt(10));
+    }
+    try {
+      Diff.buildChanges(first, second, new Diff.CancellationChecker() {
+        @Override
+        public void checkCanceled() {
+          throw new ProcessCanceledException();
+        }
+      });
+      fail("Comparison should be canceled");
+    }
+    catch (ProcessCanceledException ignored) {
+    }
+  }
+
+  private static int[] randomSequence(Random random, int length, int alphabetSize) {
+    int[] sequence = new int[length];
+    for (int i = 0; i < length; i++) {
+      sequence[i] = random.nextInt(alphabetSize);
+    }
+    return sequence;
+  }
+
+  private static void checkUnchanged(int[] first, int[] second, BitSet changes1, BitSet changes2) {
+    int x = changes1.nextClearBit(0);
+    int y = changes2.nextClearBit(0);
+    while (x < first.length && y < second.length) {
+      assertEquals(first[x], second[y]);
+      x = changes1.nextClearBit(x + 1);
+      y = changes2.nextClearBit(y + 1);
+    }
+    assertTrue(x >= first.length && y >= second.length);
+  }
+
+  private static void checkChanges(Object[] before, Object[] after, Diff.Change change) {
+    int x = 0;
+    int y = 0;
+    while (change != null) {
+      assertEquals(change.line0 - x, change.line1 - y);
+      for (; x < change.line0; x++, y++) {
+        assertEquals(before[x], after[y]);
+      }
+      x += change.deleted;
+      y += change.inserted;
+      change = change.link;
+    }
+    assertEquals(before.length - x, after.length - y);
+    for (; x < before.length; x++, y++) {
+      assertEquals(before[x], after[y]);
+    }
+  }
+}
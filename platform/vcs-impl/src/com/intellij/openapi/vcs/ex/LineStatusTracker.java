@@ -17,6 +17,7 @@ package com.intellij.openapi.vcs.ex;
 
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.command.undo.UndoConstants;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -28,7 +29,9 @@ import com.intellij.openapi.editor.markup.*;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
@@ -38,15 +41,15 @@ import com.intellij.openapi.vcs.changes.VcsDirtyScopeManager;
 import com.intellij.openapi.vcs.history.VcsRevisionNumber;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.ui.EditorNotificationPanel;
+import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import javax.swing.*;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 
 /**
  * @author irengrig
@@ -78,6 +81,8 @@ public class LineStatusTracker {
   private FileEditorManager myFileEditorManager;
   private final VirtualFile myVirtualFile;
   private boolean myReleased = false;
+  // the comparison of the whole documents running on a pooled thread, it is canceled when the documents change again
+  @Nullable private ProgressIndicator myRangesIndicator;
 
   private LineStatusTracker(final Document document, final Document upToDateDocument, final Project project, final VirtualFile virtualFile) {
     myVirtualFile = virtualFile;
@@ -135,26 +140,85 @@ public class LineStatusTracker {
     }
   }
 
+  /**
+   * Compares the whole documents on a pooled thread, the ranges are installed on the EDT when the comparison finishes.
+   * Until then there are no ranges, and changes of the document restart the comparison instead of updating the ranges.
+   */
   private void reinstallRanges() {
     myApplication.assertReadAccessAllowed();
 
     synchronized (myLock) {
       removeAnathema();
       removeHighlightersFromMarkupModel();
-      try {
-        myRanges = new RangesBuilder(myDocument, myUpToDateDocument).getRanges();
-      }
-      catch (FilesTooBigForDiffException e) {
-        myRanges.clear();
+      cancelRangesCalculation();
+
+      final ProgressIndicator indicator = new EmptyProgressIndicator();
+      myRangesIndicator = indicator;
+      final List<String> lines = new DocumentWrapper(myDocument).getLines();
+      final List<String> uLines = new DocumentWrapper(myUpToDateDocument).getLines();
+      myApplication.executeOnPooledThread(new Runnable() {
+        @Override
+        public void run() {
+          List<Range> ranges;
+          try {
+            ranges = new RangesBuilder(lines, uLines, 0, 0, new Diff.CancellationChecker() {
+              @Override
+              public void checkCanceled() {
+                indicator.checkCanceled();
+              }
+            }).getRanges();
+          }
+          catch (FilesTooBigForDiffException e) {
+            ranges = null;
+          }
+          catch (ProcessCanceledException e) {
+            return;
+          }
+          final List<Range> finalRanges = ranges;
+          myApplication.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+              installRanges(indicator, finalRanges);
+            }
+          }, ModalityState.any());
+        }
+      });
+    }
+  }
+
+  /**
+   * @param ranges the result of the comparison started with the given indicator, or null if the documents are too big to compare
+   */
+  private void installRanges(@NotNull ProgressIndicator indicator, @Nullable List<Range> ranges) {
+    synchronized (myLock) {
+      if (myReleased || indicator != myRangesIndicator || indicator.isCanceled()) return;
+      myRangesIndicator = null;
+
+      if (ranges == null) {
         installAnathema();
         return;
       }
+      myRanges = new ArrayList<Range>(ranges);
       for (final Range range : myRanges) {
         range.setHighlighter(createHighlighter(range));
       }
     }
   }
 
+  private void cancelRangesCalculation() {
+    if (myRangesIndicator != null) {
+      myRangesIndicator.cancel();
+      myRangesIndicator = null;
+    }
+  }
+
+  @TestOnly
+  boolean isCalculatingRanges() {
+    synchronized (myLock) {
+      return myRangesIndicator != null;
+    }
+  }
+
   private void removeAnathema() {
     if (! myAnathemaThrown) return;
     myAnathemaThrown = false;
@@ -205,6 +269,7 @@ public class LineStatusTracker {
       if (myDocumentListener != null) {
         myDocument.removeDocumentListener(myDocumentListener);
       }
+      cancelRangesCalculation();
       removeAnathema();
       removeHighlightersFromMarkupModel();
       myReleased = true;
@@ -237,6 +302,7 @@ public class LineStatusTracker {
       if (myReleased) return;
 
       myBulkUpdate = true;
+      cancelRangesCalculation();
       removeAnathema();
       removeHighlightersFromMarkupModel();
     }
@@ -278,6 +344,7 @@ public class LineStatusTracker {
       myUpToDateDocument.setReadOnly(false);
       myUpToDateDocument.setText("");
       myUpToDateDocument.setReadOnly(true);
+      cancelRangesCalculation();
       removeAnathema();
       removeHighlightersFromMarkupModel();
       myBaseLoaded = BaseLoadState.LOADING;
@@ -298,7 +365,7 @@ public class LineStatusTracker {
 
       synchronized (myLock) {
         if (myReleased) return;
-        if (myBulkUpdate || myAnathemaThrown || BaseLoadState.LOADED != myBaseLoaded) return;
+        if (myBulkUpdate || myAnathemaThrown || BaseLoadState.LOADED != myBaseLoaded || myRangesIndicator != null) return;
         try {
           myFirstChangedLine = myDocument.getLineNumber(e.getOffset());
           myLastChangedLine = myDocument.getLineNumber(e.getOffset() + e.getOldLength());
@@ -338,12 +405,8 @@ public class LineStatusTracker {
 
     @Nullable
     private Range getLastRangeBeforeLine(int line) {
-      Range result = null;
-      for (Range range : myRanges) {
-        if (range.isAfter(line)) return result;
-        result = range;
-      }
-      return result;
+      int index = getFirstRangeAfterLine(myRanges, line) - 1;
+      return index >= 0 ? myRanges.get(index) : null;
     }
 
     @Override
@@ -353,43 +416,40 @@ public class LineStatusTracker {
       synchronized (myLock) {
         if (myReleased) return;
         if (myBulkUpdate || myAnathemaThrown || BaseLoadState.LOADED != myBaseLoaded) return;
+        if (myRangesIndicator != null) {
+          // the ranges are being calculated for the previous text
+          reinstallRanges();
+          return;
+        }
         try {
 
           int line = myDocument.getLineNumber(e.getOffset() + e.getNewLength());
           int linesAfterChange = line - myDocument.getLineNumber(e.getOffset());
           int linesShift = linesAfterChange - myLinesBeforeChange;
 
-          List<Range> rangesAfterChange = getRangesAfter(myRanges, myLastChangedLine);
-          List<Range> rangesBeforeChange = getRangesBefore(myRanges, myFirstChangedLine);
-
-          List<Range> changedRanges = getChangedRanges(myFirstChangedLine, myLastChangedLine);
-
-          int newSize = rangesBeforeChange.size() + changedRanges.size() + rangesAfterChange.size();
-          if (myRanges.size() != newSize) {
-            LOG.info("Ranges: " + myRanges + "; first changed line: " + myFirstChangedLine + "; last changed line: " + myLastChangedLine);
-            LOG.assertTrue(false);
-          }
-
+          // the ranges are sorted and don't overlap, so the ones touched by the change form a sublist
+          int firstChanged = getFirstRangeEndingFrom(myRanges, myFirstChangedLine);
+          int firstAfter = Math.max(firstChanged, getFirstRangeStartingAfter(myRanges, myLastChangedLine));
 
           myLastChangedLine += linesShift;
 
-
           List<Range> newChangedRanges = getNewChangedRanges();
 
-          shiftRanges(rangesAfterChange, linesShift);
+          for (int i = firstAfter; i < myRanges.size(); i++) {
+            myRanges.get(i).shift(linesShift);
+          }
 
+          List<Range> changedRanges = myRanges.subList(firstChanged, firstAfter);
           if (!changedRanges.equals(newChangedRanges)) {
-            replaceRanges(changedRanges, newChangedRanges);
-
-            myRanges = new ArrayList<Range>();
-
-            myRanges.addAll(rangesBeforeChange);
-            myRanges.addAll(newChangedRanges);
-            myRanges.addAll(rangesAfterChange);
-
-            myRanges = mergeRanges(myRanges);
-
-            for (Range range : myRanges) {
+            removeHighlighters(changedRanges);
+            changedRanges.clear();
+            changedRanges.addAll(newChangedRanges);
+
+            // the rest of the ranges was merged before, so only the new ones and their neighbours can be merged now
+            int from = Math.max(firstChanged - 1, 0);
+            int to = mergeRanges(from, Math.min(firstChanged + newChangedRanges.size(), myRanges.size() - 1));
+            for (int i = from; i <= to; i++) {
+              Range range = myRanges.get(i);
               if (!range.hasHighlighter()) range.setHighlighter(createHighlighter(range));
             }
 
@@ -410,7 +470,9 @@ public class LineStatusTracker {
               });
             }
           }
-        } catch (ProcessCanceledException ignore) {
+        } catch (ProcessCanceledException e1) {
+          // the ranges may be inconsistent with the document now
+          reinstallRanges();
         } catch (FilesTooBigForDiffException e1) {
           installAnathema();
           removeHighlightersFromMarkupModel();
@@ -425,13 +487,16 @@ public class LineStatusTracker {
       return new RangesBuilder(lines, uLines, myFirstChangedLine, myUpToDateFirstLine).getRanges();
     }
 
-    private List<Range> mergeRanges(List<Range> ranges) {
-      ArrayList<Range> result = new ArrayList<Range>();
-      Iterator<Range> iterator = ranges.iterator();
-      if (!iterator.hasNext()) return result;
-      Range prev = iterator.next();
-      while (iterator.hasNext()) {
-        Range range = iterator.next();
+    /**
+     * Merges adjacent ranges among <code>myRanges[from..to]</code>.
+     *
+     * @return the index of the last of these ranges after merging
+     */
+    private int mergeRanges(int from, int to) {
+      int i = from;
+      while (i < to) {
+        Range prev = myRanges.get(i);
+        Range range = myRanges.get(i + 1);
         if (prev.canBeMergedWith(range)) {
           if (range.getHighlighter() != null) {
             range.getHighlighter().dispose();
@@ -439,52 +504,35 @@ public class LineStatusTracker {
           if (prev.getHighlighter() != null) {
             prev.getHighlighter().dispose();
           }
-          prev = prev.mergeWith(range);
+          myRanges.set(i, prev.mergeWith(range));
+          myRanges.remove(i + 1);
+          to--;
         }
         else {
-          result.add(prev);
-          prev = range;
+          i++;
         }
       }
-      result.add(prev);
-      return result;
+      return to;
     }
 
-    private void replaceRanges(List<Range> rangesInChange, List<Range> newRangesInChange) {
-      for (Range range : rangesInChange) {
+    private void removeHighlighters(List<Range> ranges) {
+      for (Range range : ranges) {
         range.getHighlighter().dispose();
         range.setHighlighter(null);
       }
-      for (Range range : newRangesInChange) {
-        range.setHighlighter(createHighlighter(range));
-      }
     }
-
-    private void shiftRanges(List<Range> rangesAfterChange, int shift) {
-      for (final Range aRangesAfterChange : rangesAfterChange) {
-        aRangesAfterChange.shift(shift);
-      }
-    }
-
-  }
-
-  private List<Range> getChangedRanges(int from, int to) {
-    return getChangedRanges(myRanges, from, to);
   }
 
   public static List<Range> getChangedRanges(List<Range> ranges, int from, int to) {
-    ArrayList<Range> result = new ArrayList<Range>();
-    for (Range range : ranges) {
-      if (range.getOffset1() <= to && range.getOffset2() >= from) result.add(range);
-//      if (range.getOffset1() > to) break;
-    }
-    return result;
+    int start = getFirstRangeEndingFrom(ranges, from);
+    int end = Math.max(start, getFirstRangeStartingAfter(ranges, to));
+    return new ArrayList<Range>(ranges.subList(start, end));
   }
 
   @Nullable
   Range getNextRange(final Range range) {
     synchronized (myLock) {
-      final int index = myRanges.indexOf(range);
+      final int index = indexOf(range);
       if (index == myRanges.size() - 1) return null;
       return myRanges.get(index + 1);
     }
@@ -493,12 +541,21 @@ public class LineStatusTracker {
   @Nullable
   Range getPrevRange(final Range range) {
     synchronized (myLock) {
-      final int index = myRanges.indexOf(range);
+      final int index = indexOf(range);
       if (index <= 0) return null;
       return myRanges.get(index - 1);
     }
   }
 
+  private int indexOf(final Range range) {
+    for (int i = getFirstRangeStartingFrom(myRanges, range.getOffset1()); i < myRanges.size(); i++) {
+      Range candidate = myRanges.get(i);
+      if (candidate == range) return i;
+      if (candidate.getOffset1() > range.getOffset1()) break;
+    }
+    return myRanges.indexOf(range);
+  }
+
   @Nullable
   public Range getNextRange(final int line) {
     synchronized (myLock) {
@@ -507,13 +564,8 @@ public class LineStatusTracker {
         return getNextRange(currentRange);
       }
 
-      for (final Range range : myRanges) {
-        if (line > range.getOffset1() || line > range.getOffset2()) {
-          continue;
-        }
-        return range;
-      }
-      return null;
+      int index = getFirstRangeStartingFrom(myRanges, line);
+      return index < myRanges.size() ? myRanges.get(index) : null;
     }
   }
 
@@ -525,50 +577,90 @@ public class LineStatusTracker {
         return getPrevRange(currentRange);
       }
 
-      for (ListIterator<Range> iterator = myRanges.listIterator(myRanges.size()); iterator.hasPrevious();) {
-        final Range range = iterator.previous();
-        if (range.getOffset1() > line) {
-          continue;
-        }
-        return range;
-      }
-      return null;
+      int index = getFirstRangeStartingAfter(myRanges, line) - 1;
+      return index >= 0 ? myRanges.get(index) : null;
     }
   }
 
   public static List<Range> getRangesBefore(List<Range> ranges, int line) {
-    ArrayList<Range> result = new ArrayList<Range>();
-
-    for (Range range : ranges) {
-      if (range.getOffset2() < line) result.add(range);
-      //if (range.getOffset2() > line) break;
-    }
-    return result;
+    return new ArrayList<Range>(ranges.subList(0, getFirstRangeEndingFrom(ranges, line)));
   }
 
   public static List<Range> getRangesAfter(List<Range> ranges, int line) {
-    ArrayList<Range> result = new ArrayList<Range>();
-    for (Range range : ranges) {
-      if (range.getOffset1() > line) result.add(range);
-    }
-    return result;
+    return new ArrayList<Range>(ranges.subList(getFirstRangeStartingAfter(ranges, line), ranges.size()));
   }
 
   @Nullable
   public Range getRangeForLine(final int line) {
     synchronized (myLock) {
-      for (final Range range : myRanges) {
+      for (int i = getFirstRangeEndingFrom(myRanges, line); i < myRanges.size(); i++) {
+        final Range range = myRanges.get(i);
         if (range.getType() == Range.DELETED && line == range.getOffset1()) {
           return range;
         }
         else if (line >= range.getOffset1() && line < range.getOffset2()) {
           return range;
         }
+        if (range.getOffset1() > line) break;
       }
       return null;
     }
   }
 
+  /*
+   * The ranges are sorted and don't overlap, so both their start and end lines don't decrease along the list,
+   * and the lookups below are binary searches.
+   */
+
+  private static int getFirstRangeEndingFrom(List<Range> ranges, int line) {
+    int low = 0;
+    int high = ranges.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (ranges.get(middle).getOffset2() < line) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static int getFirstRangeStartingFrom(List<Range> ranges, int line) {
+    return getFirstRangeStartingAfter(ranges, line - 1);
+  }
+
+  private static int getFirstRangeStartingAfter(List<Range> ranges, int line) {
+    int low = 0;
+    int high = ranges.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (ranges.get(middle).getOffset1() <= line) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private static int getFirstRangeAfterLine(List<Range> ranges, int line) {
+    int low = 0;
+    int high = ranges.size();
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (!ranges.get(middle).isAfter(line)) {
+        low = middle + 1;
+      }
+      else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
   public void rollbackChanges(final Range range) {
     myApplication.assertWriteAccessAllowed();
 
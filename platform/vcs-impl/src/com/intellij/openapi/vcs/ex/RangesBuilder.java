@@ -19,8 +19,9 @@ import com.intellij.openapi.editor.Document;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.diff.Diff;
 import com.intellij.util.diff.FilesTooBigForDiffException;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -35,9 +36,14 @@ public class RangesBuilder {
   }
 
   public RangesBuilder(List<String> current, List<String> upToDate, int shift, int uShift) throws FilesTooBigForDiffException {
-    myRanges = new LinkedList<Range>();
+    this(current, upToDate, shift, uShift, null);
+  }
+
+  public RangesBuilder(List<String> current, List<String> upToDate, int shift, int uShift, @Nullable Diff.CancellationChecker checker)
+    throws FilesTooBigForDiffException {
+    myRanges = new ArrayList<Range>();
 
-    Diff.Change ch = Diff.buildChanges(ArrayUtil.toStringArray(upToDate), ArrayUtil.toStringArray(current));
+    Diff.Change ch = Diff.buildChanges(ArrayUtil.toStringArray(upToDate), ArrayUtil.toStringArray(current), checker);
 
 
     while (ch != null) {
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.openapi.vcs.ex;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.vcs.history.VcsRevisionNumber;
+import com.intellij.testFramework.LightPlatformTestCase;
+import com.intellij.util.TimeoutUtil;
+import com.intellij.util.ui.UIUtil;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that the ranges updated on document changes are the same as the ones built by comparing the whole documents.
+ * The base has 20 lines, the document initially differs from it in lines 5 and 12.
+ */
+public class LineStatusTrackerTest extends LightPlatformTestCase {
+  private Document myDocument;
+  private LineStatusTracker myTracker;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    StringBuilder base = new StringBuilder();
+    StringBuilder text = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      base.append("line").append(i).append('\n');
+      text.append(i == 5 || i == 12 ? "changed" + i : "line" + i).append('\n');
+    }
+    myDocument = EditorFactory.getInstance().createDocument(text.toString());
+    myTracker = LineStatusTracker.createOn(null, myDocument, getProject());
+    myTracker.initialize(base.toString(), new LineStatusTracker.RevisionPack(0, VcsRevisionNumber.NULL));
+    waitForRanges();
+    assertRanges(new Range(5, 6, 5, 6, Range.MODIFIED), new Range(12, 13, 12, 13, Range.MODIFIED));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myTracker.release();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testEditWhileComparingRestartsComparison() {
+    myTracker.finishBulkUpdate();
+    assertTrue(myTracker.isCalculatingRanges());
+    replaceLines(8, 9, "changed8\n");
+    waitForRanges();
+    assertRanges(new Range(5, 6, 5, 6, Range.MODIFIED), new Range(8, 9, 8, 9, Range.MODIFIED), new Range(12, 13, 12, 13, Range.MODIFIED));
+  }
+
+  public void testInsertBeforeRanges() {
+    replaceLines(1, 1, "new\n");
+    assertRanges(new Range(1, 2, 1, 1, Range.INSERTED),
+                 new Range(6, 7, 5, 6, Range.MODIFIED),
+                 new Range(13, 14, 12, 13, Range.MODIFIED));
+  }
+
+  public void testDeleteBeforeRanges() {
+    replaceLines(1, 3, "");
+    assertRanges(new Range(1, 1, 1, 3, Range.DELETED),
+                 new Range(3, 4, 5, 6, Range.MODIFIED),
+                 new Range(10, 11, 12, 13, Range.MODIFIED));
+  }
+
+  public void testEditInsideRange() {
+    replaceLines(5, 6, "changed again\nand again\n");
+    assertRanges(new Range(5, 7, 5, 6, Range.MODIFIED), new Range(13, 14, 12, 13, Range.MODIFIED));
+  }
+
+  public void testRevertRange() {
+    replaceLines(5, 6, "line5\n");
+    assertRanges(new Range(12, 13, 12, 13, Range.MODIFIED));
+  }
+
+  public void testEditAcrossRanges() {
+    replaceLines(4, 14, "joined\n");
+    assertRanges(new Range(4, 5, 4, 14, Range.MODIFIED));
+  }
+
+  public void testEditAfterRanges() {
+    replaceLines(18, 19, "changed18\n");
+    assertRanges(new Range(5, 6, 5, 6, Range.MODIFIED),
+                 new Range(12, 13, 12, 13, Range.MODIFIED),
+                 new Range(18, 19, 18, 19, Range.MODIFIED));
+  }
+
+  public void testAppendAtEnd() {
+    replaceLines(20, 20, "last\n");
+    assertRanges(new Range(5, 6, 5, 6, Range.MODIFIED),
+                 new Range(12, 13, 12, 13, Range.MODIFIED),
+                 new Range(20, 21, 20, 20, Range.INSERTED));
+  }
+
+  public void testMergeWithPreviousNeighbour() {
+    replaceLines(6, 7, "changed6\n");
+    assertRanges(new Range(5, 7, 5, 7, Range.MODIFIED), new Range(12, 13, 12, 13, Range.MODIFIED));
+  }
+
+  public void testMergeWithNextNeighbour() {
+    replaceLines(11, 12, "changed11\n");
+    assertRanges(new Range(5, 6, 5, 6, Range.MODIFIED), new Range(11, 13, 11, 13, Range.MODIFIED));
+  }
+
+  public void testMergeBothNeighbours() {
+    replaceLines(6, 12, "");
+    assertRanges(new Range(5, 7, 5, 13, Range.MODIFIED));
+  }
+
+  public void testSequenceOfEdits() {
+    replaceLines(0, 0, "first\n");
+    replaceLines(7, 8, "changed6\n");
+    replaceLines(10, 10, "inserted\n");
+    replaceLines(15, 17, "");
+    replaceLines(1, 2, "line0\nline0 again\n");
+    checkAgainstFullComparison();
+  }
+
+  public void testChangedRangesLookup() {
+    List<Range> ranges = Arrays.asList(new Range(2, 4, 2, 3, Range.MODIFIED),
+                                       new Range(6, 6, 5, 7, Range.DELETED),
+                                       new Range(9, 10, 10, 10, Range.INSERTED));
+    assertEquals(ranges.subList(0, 1), LineStatusTracker.getChangedRanges(ranges, 0, 3));
+    assertEquals(ranges.subList(0, 2), LineStatusTracker.getChangedRanges(ranges, 4, 6));
+    assertEquals(ranges.subList(1, 3), LineStatusTracker.getChangedRanges(ranges, 6, 9));
+    assertEmpty(LineStatusTracker.getChangedRanges(ranges, 7, 8));
+    assertEmpty(LineStatusTracker.getChangedRanges(ranges, 11, 20));
+
+    assertEmpty(LineStatusTracker.getRangesBefore(ranges, 4));
+    assertEquals(ranges.subList(0, 1), LineStatusTracker.getRangesBefore(ranges, 5));
+    assertEquals(ranges.subList(0, 2), LineStatusTracker.getRangesBefore(ranges, 7));
+    assertEquals(ranges.subList(1, 3), LineStatusTracker.getRangesAfter(ranges, 5));
+    assertEquals(ranges.subList(2, 3), LineStatusTracker.getRangesAfter(ranges, 6));
+    assertEmpty(LineStatusTracker.getRangesAfter(ranges, 9));
+  }
+
+  private void replaceLines(final int line1, final int line2, final String text) {
+    ApplicationManager.getApplication().runWriteAction(new Runnable() {
+      @Override
+      public void run() {
+        int start = line1 < myDocument.getLineCount() ? myDocument.getLineStartOffset(line1) : myDocument.getTextLength();
+        int end = line2 < myDocument.getLineCount() ? myDocument.getLineStartOffset(line2) : myDocument.getTextLength();
+        myDocument.replaceString(start, end, text);
+      }
+    });
+  }
+
+  private void waitForRanges() {
+    while (myTracker.isCalculatingRanges()) {
+      UIUtil.dispatchAllInvocationEvents();
+      TimeoutUtil.sleep(1);
+    }
+  }
+
+  private void assertRanges(Range... expected) {
+    assertEquals(Arrays.asList(expected), myTracker.getRanges());
+    checkAgainstFullComparison();
+  }
+
+  private void checkAgainstFullComparison() {
+    List<Range> ranges = myTracker.getRanges();
+    try {
+      assertEquals(new RangesBuilder(myDocument, myTracker.getUpToDateDocument()).getRanges(), ranges);
+    }
+    catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+    for (Range range : ranges) {
+      assertTrue(range.toString(), range.hasHighlighter());
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link VcsLogRefManager} which tells which references are branches containing commits.
+ * <p/>
+ * Implementing it is optional: if the reference manager of a VCS doesn't implement it,
+ * every reference of a {@link VcsRefType#isBranch() branch type} is considered to be such a branch.
+ */
+public interface VcsLogContainingBranchesRefManager extends VcsLogRefManager {
+
+  /**
+   * Tells if the reference is a branch which can contain commits, i.e. it may be reported by
+   * {@link VcsLogProvider#getContainingBranches(com.intellij.openapi.vfs.VirtualFile, Hash)}.
+   * References which just point to the current state, like HEAD, are not such branches, although their type may be a branch type.
+   */
+  boolean isContainingBranch(@NotNull VcsRef ref);
+
+}
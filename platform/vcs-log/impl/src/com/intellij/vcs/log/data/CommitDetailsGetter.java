@@ -27,4 +27,10 @@ public class CommitDetailsGetter extends DataGetter<VcsFullCommitDetails> {
     return logProvider.readFullDetails(root, hashes);
   }
 
+  @Override
+  public void saveInCache(List<? extends VcsFullCommitDetails> details) {
+    super.saveInCache(details);
+    myDataHolder.indexDetails(details);
+  }
+
 }
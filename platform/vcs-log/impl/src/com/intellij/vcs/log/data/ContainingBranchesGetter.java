@@ -18,22 +18,32 @@ package com.intellij.vcs.log.data;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Condition;
 import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.ThrowableConsumer;
 import com.intellij.util.containers.SLRUMap;
+import com.intellij.vcs.log.GraphCommit;
 import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.VcsLogContainingBranchesRefManager;
+import com.intellij.vcs.log.VcsLogProvider;
+import com.intellij.vcs.log.VcsLogRefManager;
+import com.intellij.vcs.log.VcsRef;
 import com.intellij.vcs.log.util.SequentialLimitedLifoExecutor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Provides capabilities to asynchronously calculate "contained in branches" information.
+ * <p/>
+ * When the whole log is loaded, the information is taken from the {@link ContainingBranchesIndex} built from the commit graph,
+ * and updated on each refresh; the VCS is asked only for commits which are not in the index.
  */
 public class ContainingBranchesGetter {
 
@@ -42,7 +52,22 @@ public class ContainingBranchesGetter {
   @NotNull private final SequentialLimitedLifoExecutor<Task> myTaskExecutor;
   @NotNull private final VcsLogDataHolder myDataHolder;
   @NotNull private volatile SLRUMap<Hash, List<String>> myCache = createCache();
+  @Nullable private volatile ContainingBranchesIndex myIndex;
   @Nullable private Runnable myLoadingFinishedListener; // access only from EDT
+  @NotNull private final Condition<VcsRef> myContainingBranchCondition = new Condition<VcsRef>() {
+    @Override
+    public boolean value(VcsRef ref) {
+      VcsLogProvider provider = myDataHolder.getLogProvider(ref.getRoot());
+      if (provider == null) {
+        return false;
+      }
+      VcsLogRefManager refManager = provider.getReferenceManager();
+      if (refManager instanceof VcsLogContainingBranchesRefManager) {
+        return ((VcsLogContainingBranchesRefManager)refManager).isContainingBranch(ref);
+      }
+      return ref.getType().isBranch();
+    }
+  };
 
   ContainingBranchesGetter(@NotNull VcsLogDataHolder disposable, @NotNull Disposable parentDisposable) {
     myDataHolder = disposable;
@@ -75,6 +100,56 @@ public class ContainingBranchesGetter {
     });
   }
 
+  void clearIndex() {
+    myIndex = null;
+  }
+
+  /**
+   * Builds the index of containing branches for the given logs and refs. Should be called in the background.
+   */
+  void buildIndex(@NotNull Collection<? extends List<? extends GraphCommit>> logs, @NotNull Collection<VcsRef> refs) {
+    clearIndex();
+    long start = System.currentTimeMillis();
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(logs, refs, myContainingBranchCondition);
+    LOG.debug("Containing branches index for " + index.getCommitCount() + " commits (" + index.getDistinctSetCount() +
+              " distinct sets of branches) built in " + (System.currentTimeMillis() - start) + " ms");
+    setIndex(index);
+  }
+
+  /**
+   * Updates the index of containing branches after a refresh. Should be called in the background.
+   *
+   * @param newCommits commits which may be not known to the index yet, e.g. the recent commits read during the refresh.
+   * @param refs       all refs after the refresh.
+   * @return false if there is no index to update, or it should better be built again.
+   */
+  boolean updateIndex(@NotNull Collection<? extends List<? extends GraphCommit>> newCommits, @NotNull Collection<VcsRef> refs) {
+    ContainingBranchesIndex oldIndex = myIndex;
+    if (oldIndex == null) {
+      return false;
+    }
+    long start = System.currentTimeMillis();
+    ContainingBranchesIndex index = oldIndex.update(newCommits, refs, myContainingBranchCondition);
+    if (index == null) {
+      return false;
+    }
+    LOG.debug("Containing branches index updated in " + (System.currentTimeMillis() - start) + " ms");
+    if (index != oldIndex) {
+      setIndex(index);
+    }
+    return true;
+  }
+
+  private void setIndex(@NotNull ContainingBranchesIndex index) {
+    myIndex = index;
+    ApplicationManager.getApplication().invokeLater(new Runnable() {
+      @Override
+      public void run() {
+        notifyListener();
+      }
+    });
+  }
+
   /**
    * This task will be executed each time the calculating process completes.
    */
@@ -96,6 +171,13 @@ public class ContainingBranchesGetter {
    */
   @Nullable
   public List<String> requestContainingBranches(@NotNull VirtualFile root, @NotNull Hash hash) {
+    ContainingBranchesIndex index = myIndex;
+    if (index != null) {
+      List<String> branches = index.getContainingBranches(myDataHolder.putHash(hash));
+      if (branches != null) {
+        return branches;
+      }
+    }
     List<String> refs = myCache.get(hash);
     if (refs == null) {
       myTaskExecutor.queue(new Task(root, hash, myCache));
@@ -0,0 +1,458 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.util.Trinity;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.vcs.log.GraphCommit;
+import com.intellij.vcs.log.VcsRef;
+import com.intellij.vcs.log.VcsRefType;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Answers which branches contain a commit using the commit graph, without asking the VCS.
+ * <p/>
+ * Each commit gets the set of branches it is reachable from, as a bit set over branch ordinals: the sets are propagated from
+ * branch heads to parents in the topological order. Almost all commits share a few distinct sets
+ * (e.g. everything below the fork point of all branches is contained in all of them), so the sets are interned, and
+ * only the id of its set is stored per commit. Together with the parents of the commit, the index takes about 20 bytes per commit.
+ * <p/>
+ * The index is immutable. When the log is refreshed, {@link #update(Collection, Collection, Condition) update} makes a new index
+ * from the new commits and refs, visiting only the commits which get into new branches: when a branch moves forward, only the
+ * commits between its old and new heads. Removed branches just keep their ordinals, which are not reported anymore.
+ * Commits not present in the logs are unknown to the index.
+ */
+public class ContainingBranchesIndex {
+
+  private static final int EMPTY_SET = 0;
+
+  @NotNull private final VcsRef[] myBranches; // by ordinal, null for the branches which were removed
+  private final int myRemovedBranchCount;
+  @NotNull private final SetInterner mySets;
+  // commit index in the high half, position of the commit in the low half, sorted by the commit index
+  @NotNull private final long[] myCommitPositions;
+  @NotNull private final int[] myCommitSets; // by position
+  // parents of the commit at position i are myParents[myParentStarts[i]] .. myParents[myParentStarts[i + 1] - 1]
+  @NotNull private final int[] myParentStarts;
+  @NotNull private final int[] myParents;
+
+  private ContainingBranchesIndex(@NotNull VcsRef[] branches,
+                                  int removedBranchCount,
+                                  @NotNull SetInterner sets,
+                                  @NotNull long[] commitPositions,
+                                  @NotNull int[] commitSets,
+                                  @NotNull int[] parentStarts,
+                                  @NotNull int[] parents) {
+    myBranches = branches;
+    myRemovedBranchCount = removedBranchCount;
+    mySets = sets;
+    myCommitPositions = commitPositions;
+    myCommitSets = commitSets;
+    myParentStarts = parentStarts;
+    myParents = parents;
+  }
+
+  @NotNull
+  public static ContainingBranchesIndex build(@NotNull Collection<? extends List<? extends GraphCommit>> logs,
+                                              @NotNull Collection<VcsRef> refs,
+                                              @NotNull Condition<VcsRef> isContainingBranch) {
+    List<VcsRef> branches = ContainerUtil.filter(refs, isContainingBranch);
+
+    int commitCount = 0;
+    for (List<? extends GraphCommit> log : logs) {
+      commitCount += log.size();
+    }
+    long[] commitPositions = new long[commitCount];
+    TIntIntHashMap positions = new TIntIntHashMap(commitCount);
+    int position = 0;
+    for (List<? extends GraphCommit> log : logs) {
+      for (GraphCommit commit : log) {
+        commitPositions[position] = ((long)commit.getIndex() << 32) | position;
+        positions.put(commit.getIndex(), position);
+        position++;
+      }
+    }
+    Arrays.sort(commitPositions);
+
+    // parents of all commits (only those present in the logs) in a single array, and the number of children of each commit
+    int[] parentStarts = new int[commitCount + 1];
+    int[] childCounts = new int[commitCount];
+    int[] parents = new int[commitCount];
+    int edgeCount = 0;
+    position = 0;
+    for (List<? extends GraphCommit> log : logs) {
+      for (GraphCommit commit : log) {
+        parentStarts[position] = edgeCount;
+        for (int parentIndex : commit.getParentIndices()) {
+          if (positions.containsKey(parentIndex)) {
+            int parent = positions.get(parentIndex);
+            if (edgeCount == parents.length) {
+              parents = Arrays.copyOf(parents, parents.length * 3 / 2 + 1);
+            }
+            parents[edgeCount++] = parent;
+            childCounts[parent]++;
+          }
+        }
+        position++;
+      }
+    }
+    parentStarts[commitCount] = edgeCount;
+
+    SetInterner interner = new SetInterner();
+    int[] commitSets = new int[commitCount];
+    for (int i = 0; i < branches.size(); i++) {
+      int head = branches.get(i).getCommitIndex();
+      if (positions.containsKey(head)) {
+        int headPosition = positions.get(head);
+        commitSets[headPosition] = interner.union(commitSets[headPosition], interner.singleton(i));
+      }
+    }
+
+    // a commit is processed when all its children are, so its set is complete and can be passed to the parents
+    int[] queue = new int[commitCount];
+    int queueEnd = 0;
+    for (int i = 0; i < commitCount; i++) {
+      if (childCounts[i] == 0) {
+        queue[queueEnd++] = i;
+      }
+    }
+    for (int queueStart = 0; queueStart < queueEnd; queueStart++) {
+      int commit = queue[queueStart];
+      for (int edge = parentStarts[commit]; edge < parentStarts[commit + 1]; edge++) {
+        int parent = parents[edge];
+        commitSets[parent] = interner.union(commitSets[parent], commitSets[commit]);
+        if (--childCounts[parent] == 0) {
+          queue[queueEnd++] = parent;
+        }
+      }
+    }
+
+    return new ContainingBranchesIndex(branches.toArray(new VcsRef[branches.size()]), 0, interner, commitPositions, commitSets,
+                                       parentStarts, Arrays.copyOf(parents, edgeCount));
+  }
+
+  /**
+   * Makes the index for the refreshed log.
+   *
+   * @param newCommits commits which appeared in the logs since this index was built (commits already known to the index are skipped,
+   *                   so it is fine to pass e.g. all recent commits).
+   * @param refs       all refs of the refreshed logs.
+   * @return the new index, or null if so many branches were removed since the index was built, that it is better to rebuild it.
+   */
+  @Nullable
+  public ContainingBranchesIndex update(@NotNull Collection<? extends List<? extends GraphCommit>> newCommits,
+                                        @NotNull Collection<VcsRef> refs,
+                                        @NotNull Condition<VcsRef> isContainingBranch) {
+    int oldCommitCount = myCommitSets.length;
+    TIntIntHashMap addedPositions = new TIntIntHashMap();
+    List<GraphCommit> addedCommits = ContainerUtil.newArrayList();
+    int addedEdgeCount = 0;
+    for (List<? extends GraphCommit> log : newCommits) {
+      for (GraphCommit commit : log) {
+        if (findPosition(commit.getIndex()) < 0 && !addedPositions.containsKey(commit.getIndex())) {
+          addedPositions.put(commit.getIndex(), oldCommitCount + addedCommits.size());
+          addedCommits.add(commit);
+          addedEdgeCount += commit.getParentIndices().length;
+        }
+      }
+    }
+
+    long[] commitPositions = myCommitPositions;
+    int[] commitSets = myCommitSets;
+    int[] parentStarts = myParentStarts;
+    int[] parents = myParents;
+    if (!addedCommits.isEmpty()) {
+      int commitCount = oldCommitCount + addedCommits.size();
+      long[] addedCommitPositions = new long[addedCommits.size()];
+      commitSets = Arrays.copyOf(myCommitSets, commitCount);
+      parentStarts = Arrays.copyOf(myParentStarts, commitCount + 1);
+      parents = new int[myParents.length + addedEdgeCount];
+      System.arraycopy(myParents, 0, parents, 0, myParents.length);
+      int edgeCount = myParents.length;
+      for (int i = 0; i < addedCommits.size(); i++) {
+        GraphCommit commit = addedCommits.get(i);
+        int position = oldCommitCount + i;
+        addedCommitPositions[i] = ((long)commit.getIndex() << 32) | position;
+        parentStarts[position] = edgeCount;
+        for (int parentIndex : commit.getParentIndices()) {
+          int parent = addedPositions.containsKey(parentIndex) ? addedPositions.get(parentIndex) : findPosition(parentIndex);
+          if (parent >= 0) {
+            parents[edgeCount++] = parent;
+          }
+        }
+      }
+      parentStarts[commitCount] = edgeCount;
+      parents = Arrays.copyOf(parents, edgeCount);
+      Arrays.sort(addedCommitPositions);
+      commitPositions = merge(myCommitPositions, addedCommitPositions);
+    }
+
+    Map<Trinity<VirtualFile, String, VcsRefType>, Integer> oldOrdinals = ContainerUtil.newHashMap();
+    for (int i = 0; i < myBranches.length; i++) {
+      if (myBranches[i] != null) {
+        oldOrdinals.put(key(myBranches[i]), i);
+      }
+    }
+    List<VcsRef> branches = ContainerUtil.newArrayList(myBranches);
+    int removedBranchCount = myRemovedBranchCount;
+    SetInterner sets = new SetInterner(mySets);
+    // the sets of this index must not be changed: they may be being read
+    Updater updater = new Updater(commitPositions, commitSets, commitSets != myCommitSets, parentStarts, parents, sets);
+    for (VcsRef ref : refs) {
+      if (!isContainingBranch.value(ref)) {
+        continue;
+      }
+      Integer ordinal = oldOrdinals.remove(key(ref));
+      if (ordinal != null) {
+        int oldHead = myBranches[ordinal].getCommitIndex();
+        if (oldHead == ref.getCommitIndex()) {
+          continue;
+        }
+        branches.set(ordinal, ref);
+        if (updater.addBranch(ordinal, ref.getCommitIndex(), oldHead)) {
+          continue;
+        }
+        // not moved forward: commits below the old head may be not contained anymore, so the branch gets a new ordinal
+        branches.set(ordinal, null);
+        removedBranchCount++;
+      }
+      branches.add(ref);
+      updater.addBranch(branches.size() - 1, ref.getCommitIndex(), -1);
+    }
+    for (Integer ordinal : oldOrdinals.values()) {
+      branches.set(ordinal, null);
+      removedBranchCount++;
+    }
+
+    if (removedBranchCount > branches.size() - removedBranchCount) {
+      return null;
+    }
+    if (addedCommits.isEmpty() && removedBranchCount == myRemovedBranchCount && branches.equals(Arrays.asList(myBranches))) {
+      return this;
+    }
+    return new ContainingBranchesIndex(branches.toArray(new VcsRef[branches.size()]), removedBranchCount, sets, commitPositions,
+                                       updater.getCommitSets(), parentStarts, parents);
+  }
+
+  /**
+   * Returns the alphabetically sorted list of branches containing the specified commit,
+   * or null if the commit is not known to the index.
+   */
+  @Nullable
+  public List<String> getContainingBranches(int commitIndex) {
+    int position = findPosition(commitIndex);
+    if (position < 0) {
+      return null;
+    }
+    BitSet set = mySets.get(myCommitSets[position]);
+    List<String> branches = new ArrayList<String>(set.cardinality());
+    for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+      if (myBranches[i] != null) {
+        branches.add(myBranches[i].getName());
+      }
+    }
+    Collections.sort(branches);
+    for (int i = branches.size() - 1; i > 0; i--) {
+      if (branches.get(i).equals(branches.get(i - 1))) { // same branch name in several roots
+        branches.remove(i);
+      }
+    }
+    return branches;
+  }
+
+  int getCommitCount() {
+    return myCommitSets.length;
+  }
+
+  int getDistinctSetCount() {
+    return mySets.size();
+  }
+
+  private int findPosition(int commitIndex) {
+    return findPosition(myCommitPositions, commitIndex);
+  }
+
+  private static int findPosition(@NotNull long[] commitPositions, int commitIndex) {
+    int low = 0;
+    int high = commitPositions.length - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int middleIndex = (int)(commitPositions[middle] >> 32);
+      if (middleIndex < commitIndex) {
+        low = middle + 1;
+      }
+      else if (middleIndex > commitIndex) {
+        high = middle - 1;
+      }
+      else {
+        return (int)commitPositions[middle];
+      }
+    }
+    return -1;
+  }
+
+  @NotNull
+  private static long[] merge(@NotNull long[] sorted1, @NotNull long[] sorted2) {
+    long[] result = new long[sorted1.length + sorted2.length];
+    int i1 = 0;
+    int i2 = 0;
+    for (int i = 0; i < result.length; i++) {
+      result[i] = i2 == sorted2.length || i1 < sorted1.length && sorted1[i1] < sorted2[i2] ? sorted1[i1++] : sorted2[i2++];
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Trinity<VirtualFile, String, VcsRefType> key(@NotNull VcsRef ref) {
+    return Trinity.create(ref.getRoot(), ref.getName(), ref.getType());
+  }
+
+  /**
+   * Adds branches to the sets of the commits they contain.
+   */
+  private static class Updater {
+    @NotNull private final long[] myCommitPositions;
+    @NotNull private int[] myCommitSets;
+    private boolean myCommitSetsCopied;
+    @NotNull private final int[] myParentStarts;
+    @NotNull private final int[] myParents;
+    @NotNull private final SetInterner mySets;
+    @NotNull private final TIntArrayList myStack = new TIntArrayList();
+
+    Updater(@NotNull long[] commitPositions, @NotNull int[] commitSets, boolean commitSetsCopied,
+            @NotNull int[] parentStarts, @NotNull int[] parents, @NotNull SetInterner sets) {
+      myCommitPositions = commitPositions;
+      myCommitSets = commitSets;
+      myCommitSetsCopied = commitSetsCopied;
+      myParentStarts = parentStarts;
+      myParents = parents;
+      mySets = sets;
+    }
+
+    /**
+     * Adds the branch to the commits reachable from its head which don't contain it yet.
+     * <p/>
+     * The commits containing a branch are always closed under taking parents, so the walk stops at the commits which already
+     * contain the branch: if the branch has moved forward, it stops at its old head and below, without visiting the older history.
+     *
+     * @param oldHead the index of the commit the branch pointed to before, or -1 if it is a new branch.
+     * @return true if the old head is reachable from the new one, i.e. the branch has moved forward.
+     */
+    boolean addBranch(int ordinal, int head, int oldHead) {
+      int headPosition = findPosition(myCommitPositions, head);
+      int oldHeadPosition = oldHead < 0 ? -1 : findPosition(myCommitPositions, oldHead);
+      boolean oldHeadReached = false;
+      if (headPosition >= 0) {
+        myStack.add(headPosition);
+      }
+      int singleton = EMPTY_SET;
+      while (!myStack.isEmpty()) {
+        int commit = myStack.remove(myStack.size() - 1);
+        if (mySets.get(myCommitSets[commit]).get(ordinal)) {
+          oldHeadReached |= commit == oldHeadPosition;
+          continue;
+        }
+        if (singleton == EMPTY_SET) {
+          singleton = mySets.singleton(ordinal);
+        }
+        if (!myCommitSetsCopied) {
+          myCommitSets = myCommitSets.clone();
+          myCommitSetsCopied = true;
+        }
+        myCommitSets[commit] = mySets.union(myCommitSets[commit], singleton);
+        for (int edge = myParentStarts[commit]; edge < myParentStarts[commit + 1]; edge++) {
+          myStack.add(myParents[edge]);
+        }
+      }
+      return oldHeadReached;
+    }
+
+    @NotNull
+    int[] getCommitSets() {
+      return myCommitSets;
+    }
+  }
+
+  private static class SetInterner {
+    @NotNull private final List<BitSet> mySets;
+    @NotNull private final Map<BitSet, Integer> mySetIds;
+    @NotNull private final TLongIntHashMap myUnions;
+
+    SetInterner() {
+      mySets = ContainerUtil.newArrayList();
+      mySetIds = ContainerUtil.newHashMap();
+      myUnions = new TLongIntHashMap();
+      intern(new BitSet());
+    }
+
+    SetInterner(@NotNull SetInterner interner) {
+      mySets = ContainerUtil.newArrayList(interner.mySets);
+      mySetIds = ContainerUtil.newHashMap(interner.mySetIds);
+      myUnions = (TLongIntHashMap)interner.myUnions.clone();
+    }
+
+    @NotNull
+    BitSet get(int setId) {
+      return mySets.get(setId);
+    }
+
+    int size() {
+      return mySets.size();
+    }
+
+    int singleton(int bit) {
+      BitSet set = new BitSet();
+      set.set(bit);
+      return intern(set);
+    }
+
+    int union(int setId1, int setId2) {
+      if (setId1 == setId2 || setId2 == EMPTY_SET) {
+        return setId1;
+      }
+      if (setId1 == EMPTY_SET) {
+        return setId2;
+      }
+      long key = setId1 < setId2 ? ((long)setId1 << 32) | setId2 : ((long)setId2 << 32) | setId1;
+      if (myUnions.containsKey(key)) {
+        return myUnions.get(key);
+      }
+      BitSet union = (BitSet)mySets.get(setId1).clone();
+      union.or(mySets.get(setId2));
+      int unionId = intern(union);
+      myUnions.put(key, unionId);
+      return unionId;
+    }
+
+    private int intern(@NotNull BitSet set) {
+      Integer id = mySetIds.get(set);
+      if (id == null) {
+        id = mySets.size();
+        mySets.add(set);
+        mySetIds.put(set, id);
+      }
+      return id;
+    }
+  }
+}
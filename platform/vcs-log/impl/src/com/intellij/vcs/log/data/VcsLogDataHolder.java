@@ -131,6 +131,12 @@ public class VcsLogDataHolder implements Disposable {
    */
   @NotNull private final Map<Hash, VcsFullCommitDetails> myTopCommitsDetailsCache = ContainerUtil.newConcurrentMap();
 
+  /**
+   * Messages, authors and times of all commits which details have ever been loaded, to quickly find candidates for details filters.
+   * It is not cleared on refresh: commit indices are stable, and details of a commit never change.
+   */
+  @NotNull private final VcsLogDetailsIndex myDetailsIndex = new VcsLogDetailsIndex();
+
   /**
    * Checks if "load more commit details" process is already in progress to avoid scheduling multiple similar processes.
    */
@@ -255,6 +261,7 @@ public class VcsLogDataHolder implements Disposable {
 
     myFullLogShowing = false;
     myTopCommitsDetailsCache.clear();
+    myContainingBranchesGetter.clearIndex(); // it is built again when the whole log is loaded
     myLoadMoreInProgress.set(false);
 
     if (myEntireLogLoadWaiter != null) {
@@ -289,6 +296,7 @@ public class VcsLogDataHolder implements Disposable {
           // keep existing data pack: we don't want to rebuild the graph,
           // we just make the whole log structure available for our cunning refresh procedure of if user requests the whole graph
           myLogData = new LogData(logs, refs, myLogData.getTopCommits(), existingDataPack, true);
+          buildContainingBranchesIndex();
         }
         finally {
           myEntireLogLoadWaiter.countDown();
@@ -297,7 +305,7 @@ public class VcsLogDataHolder implements Disposable {
     }, "Loading log structure...");
   }
 
-  private List<CompactCommit> compactHashes(List<TimedVcsCommit> commits) {
+  private List<CompactCommit> compactHashes(List<? extends TimedVcsCommit> commits) {
     return ContainerUtil.map(commits, new Function<TimedVcsCommit, CompactCommit>() {
       @Override
       public CompactCommit fun(final TimedVcsCommit commit) {
@@ -352,7 +360,7 @@ public class VcsLogDataHolder implements Disposable {
     }, "Building full log...");
   }
 
-  private List<? extends GraphCommit> convertToGraphCommits(List<TimedVcsCommit> log) {
+  private List<? extends GraphCommit> convertToGraphCommits(List<? extends TimedVcsCommit> log) {
     return compactHashes(log);
   }
 
@@ -371,7 +379,9 @@ public class VcsLogDataHolder implements Disposable {
 
     Map<VirtualFile, List<? extends TimedVcsCommit>> logsToBuild = ContainerUtil.newHashMap();
     Map<VirtualFile, Collection<VcsRef>> refsByRoot = ContainerUtil.newHashMap();
+    List<List<? extends GraphCommit>> recentCommits = ContainerUtil.newArrayList();
     int topCommitCount = myLogData.getTopCommitsCount();
+    boolean refsChanged = false;
 
     for (Map.Entry<VirtualFile, RecentCommitsInfo> entry : collectInfoFromVcs(false, mySettings.getRecentCommitsCount())) {
       VirtualFile root = entry.getKey();
@@ -382,6 +392,7 @@ public class VcsLogDataHolder implements Disposable {
                                                                               info.firstBlockCommits, info.newRefs);
       if (!Comparing.haveEqualElements(oldRefs, info.newRefs)) {
         myContainingBranchesGetter.clearCache();
+        refsChanged = true;
       }
       List<TimedVcsCommit> refreshedLog = joinResult.getFirst();
       int newCommitsCount = joinResult.getSecond();
@@ -391,6 +402,7 @@ public class VcsLogDataHolder implements Disposable {
 
       logsToBuild.put(root, refreshedLog);
       refsByRoot.put(root, info.newRefs);
+      recentCommits.add(convertToGraphCommits(info.firstBlockCommits));
     }
 
     List<TimedVcsCommit> compoundLog = myMultiRepoJoiner.join(logsToBuild.values());
@@ -403,6 +415,12 @@ public class VcsLogDataHolder implements Disposable {
     myLogData = new LogData(logsToBuild, refsByRoot, topPartOfTheLog, dataPack, true);
 
     handleOnSuccessInEdt(onSuccess, dataPack);
+    if (refsChanged) {
+      // reachability of commits changes only if refs change: new commits are always pointed by some new ref
+      if (!myContainingBranchesGetter.updateIndex(recentCommits, collectAllRefs(refsByRoot))) {
+        buildContainingBranchesIndex();
+      }
+    }
   }
 
   /**
@@ -449,6 +467,18 @@ public class VcsLogDataHolder implements Disposable {
     handleOnSuccessInEdt(onSuccess, dataPack);
   }
 
+  private void buildContainingBranchesIndex() {
+    LogData logData = myLogData;
+    if (logData == null || !logData.isFullLogReady()) {
+      return;
+    }
+    List<List<? extends GraphCommit>> logs = ContainerUtil.newArrayList();
+    for (List<? extends TimedVcsCommit> log : logData.getLogs().values()) {
+      logs.add(convertToGraphCommits(log));
+    }
+    myContainingBranchesGetter.buildIndex(logs, logData.getAllRefs());
+  }
+
   private Set<Map.Entry<VirtualFile, RecentCommitsInfo>> collectInfoFromVcs(boolean ordered, int commitsCount) throws VcsException {
     Map<VirtualFile, RecentCommitsInfo> infoByRoot = ContainerUtil.newHashMap();
     for (Map.Entry<VirtualFile, VcsLogProvider> entry : myLogProviders.entrySet()) {
@@ -596,6 +626,20 @@ public class VcsLogDataHolder implements Disposable {
     for (VcsFullCommitDetails detail : firstBlockDetails) {
       myTopCommitsDetailsCache.put(detail.getHash(), detail);
     }
+    indexDetails(firstBlockDetails);
+  }
+
+  void indexDetails(@NotNull List<? extends VcsFullCommitDetails> details) {
+    for (VcsFullCommitDetails detail : details) {
+      if (!(detail instanceof LoadingDetails)) {
+        myDetailsIndex.index(putHash(detail.getHash()), detail);
+      }
+    }
+  }
+
+  @NotNull
+  VcsLogDetailsIndex getDetailsIndex() {
+    return myDetailsIndex;
   }
 
   private List<TimedVcsCommit> getCommitsFromDetails(List<? extends VcsFullCommitDetails> firstBlockDetails) {
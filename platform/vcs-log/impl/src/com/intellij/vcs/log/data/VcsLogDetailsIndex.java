@@ -0,0 +1,216 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.vcs.log.VcsFullCommitDetails;
+import com.intellij.vcs.log.VcsUser;
+import com.intellij.vcs.log.ui.filter.VcsLogTextFilter;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntIterator;
+import gnu.trove.TIntLongHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * In-memory index of the details of commits which have been loaded from the VCS: words of commit messages, authors (per root)
+ * and commit times. It is filled incrementally as details are loaded, and allows to select commits matching
+ * {@link VcsLogTextFilter text}, {@link VcsLogUserFilter user} and {@link VcsLogDateFilter date} filters without reading the details.
+ * <p/>
+ * The index gives candidates: a commit not returned by {@link #getCandidates(Collection)} doesn't match the filters for sure,
+ * while returned commits (e.g. containing all words of a multi-word text filter, but not as a phrase) should be checked by the filters.
+ * Commits are identified by their indices in the {@link VcsLogHashMap}.
+ */
+class VcsLogDetailsIndex {
+
+  private final TIntHashSet myIndexedCommits = new TIntHashSet();
+  private final Map<String, TIntArrayList> myCommitsByWord = ContainerUtil.newHashMap();
+  private final Map<VirtualFile, Map<VcsUser, TIntArrayList>> myCommitsByAuthor = ContainerUtil.newHashMap();
+  private final TIntLongHashMap myTimes = new TIntLongHashMap();
+
+  public void index(int commitIndex, @NotNull VcsFullCommitDetails details) {
+    index(commitIndex, details.getRoot(), details.getAuthor(), details.getFullMessage(), details.getTime());
+  }
+
+  public synchronized void index(int commitIndex, @NotNull VirtualFile root, @NotNull VcsUser author, @NotNull String message, long time) {
+    if (!myIndexedCommits.add(commitIndex)) {
+      return;
+    }
+    for (String word : splitWords(message)) {
+      TIntArrayList commits = myCommitsByWord.get(word);
+      if (commits == null) {
+        commits = new TIntArrayList(1);
+        myCommitsByWord.put(word, commits);
+      }
+      commits.add(commitIndex);
+    }
+
+    Map<VcsUser, TIntArrayList> authors = myCommitsByAuthor.get(root);
+    if (authors == null) {
+      authors = ContainerUtil.newHashMap();
+      myCommitsByAuthor.put(root, authors);
+    }
+    TIntArrayList commits = authors.get(author);
+    if (commits == null) {
+      commits = new TIntArrayList();
+      authors.put(author, commits);
+    }
+    commits.add(commitIndex);
+
+    myTimes.put(commitIndex, time);
+  }
+
+  public synchronized boolean isIndexed(int commitIndex) {
+    return myIndexedCommits.contains(commitIndex);
+  }
+
+  public synchronized int getIndexedCount() {
+    return myIndexedCommits.size();
+  }
+
+  /**
+   * @return indexed commits which may match all given filters,
+   *         or null if none of the filters can be checked by the index (then all indexed commits are candidates).
+   */
+  @Nullable
+  public synchronized TIntHashSet getCandidates(@NotNull Collection<? extends VcsLogDetailsFilter> filters) {
+    TIntHashSet result = null;
+    for (VcsLogDetailsFilter filter : filters) {
+      TIntHashSet candidates = getCandidates(filter);
+      if (candidates != null) {
+        result = result == null ? candidates : intersect(result, candidates);
+      }
+    }
+    return result;
+  }
+
+  @Nullable
+  private TIntHashSet getCandidates(@NotNull VcsLogDetailsFilter filter) {
+    if (filter instanceof VcsLogTextFilter) {
+      return getTextCandidates(((VcsLogTextFilter)filter).getText());
+    }
+    if (filter instanceof VcsLogUserFilter) {
+      return getUserCandidates((VcsLogUserFilter)filter);
+    }
+    if (filter instanceof VcsLogDateFilter) {
+      return getDateCandidates((VcsLogDateFilter)filter);
+    }
+    return null;
+  }
+
+  /**
+   * Every word of the text is a part of a word of a matching message (the first and the last words of the text may be
+   * cut from the longer words of the message), so a commit containing the text contains all its words as parts of its words.
+   */
+  @Nullable
+  private TIntHashSet getTextCandidates(@NotNull String text) {
+    Collection<String> queryWords = splitWords(text);
+    if (queryWords.isEmpty()) {
+      return null;
+    }
+    TIntHashSet result = null;
+    for (String queryWord : queryWords) {
+      TIntHashSet commits = new TIntHashSet();
+      for (Map.Entry<String, TIntArrayList> entry : myCommitsByWord.entrySet()) {
+        if (entry.getKey().contains(queryWord)) {
+          addAll(commits, entry.getValue());
+        }
+      }
+      result = result == null ? commits : intersect(result, commits);
+    }
+    return result;
+  }
+
+  @NotNull
+  private TIntHashSet getUserCandidates(@NotNull VcsLogUserFilter filter) {
+    TIntHashSet result = new TIntHashSet();
+    for (Map.Entry<VirtualFile, Map<VcsUser, TIntArrayList>> rootEntry : myCommitsByAuthor.entrySet()) {
+      for (Map.Entry<VcsUser, TIntArrayList> entry : rootEntry.getValue().entrySet()) {
+        if (filter.matches(rootEntry.getKey(), entry.getKey())) {
+          addAll(result, entry.getValue());
+        }
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private TIntHashSet getDateCandidates(@NotNull VcsLogDateFilter filter) {
+    Date after = filter.getAfter();
+    Date before = filter.getBefore();
+    long min = after == null ? Long.MIN_VALUE : after.getTime() + 1;
+    long max = before == null ? Long.MAX_VALUE : before.getTime() - 1;
+    TIntHashSet result = new TIntHashSet();
+    int[] commits = myTimes.keys();
+    for (int commit : commits) {
+      long time = myTimes.get(commit);
+      if (time >= min && time <= max) {
+        result.add(commit);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return distinct lower-cased words (sequences of letters, digits and underscores) of the text
+   */
+  @NotNull
+  static Collection<String> splitWords(@NotNull String text) {
+    Collection<String> words = ContainerUtil.newLinkedHashSet();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean wordPart = i < text.length() && isWordPart(text.charAt(i));
+      if (wordPart && start < 0) {
+        start = i;
+      }
+      else if (!wordPart && start >= 0) {
+        words.add(text.substring(start, i).toLowerCase());
+        start = -1;
+      }
+    }
+    return words;
+  }
+
+  private static boolean isWordPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_';
+  }
+
+  private static void addAll(@NotNull TIntHashSet set, @NotNull TIntArrayList list) {
+    for (int i = 0; i < list.size(); i++) {
+      set.add(list.getQuick(i));
+    }
+  }
+
+  @NotNull
+  private static TIntHashSet intersect(@NotNull TIntHashSet set1, @NotNull TIntHashSet set2) {
+    TIntHashSet smaller = set1.size() <= set2.size() ? set1 : set2;
+    TIntHashSet larger = smaller == set1 ? set2 : set1;
+    TIntHashSet result = new TIntHashSet(smaller.size());
+    for (TIntIterator iterator = smaller.iterator(); iterator.hasNext(); ) {
+      int value = iterator.next();
+      if (larger.contains(value)) {
+        result.add(value);
+      }
+    }
+    return result;
+  }
+}
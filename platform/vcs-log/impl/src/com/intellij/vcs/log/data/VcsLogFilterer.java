@@ -2,11 +2,11 @@ package com.intellij.vcs.log.data;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.util.Condition;
-import com.intellij.openapi.util.Ref;
 import com.intellij.util.Consumer;
 import com.intellij.util.Function;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.ui.UIUtil;
+import com.intellij.vcs.log.Hash;
 import com.intellij.vcs.log.VcsFullCommitDetails;
 import com.intellij.vcs.log.VcsLogFilter;
 import com.intellij.vcs.log.graph.elements.Node;
@@ -15,8 +15,8 @@ import com.intellij.vcs.log.ui.VcsLogUI;
 import com.intellij.vcs.log.ui.tables.AbstractVcsLogTableModel;
 import com.intellij.vcs.log.ui.tables.GraphTableModel;
 import com.intellij.vcs.log.ui.tables.NoGraphTableModel;
+import gnu.trove.TIntHashSet;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
 import java.util.List;
@@ -120,26 +120,55 @@ public class VcsLogFilterer {
   }
 
   private List<VcsFullCommitDetails> filterByDetails(final GraphModel graphModel, final List<VcsLogDetailsFilter> detailsFilters) {
-    List<VcsFullCommitDetails> result = ContainerUtil.newArrayList();
+    VcsLogDetailsIndex index = myLogDataHolder.getDetailsIndex();
+    TIntHashSet candidates = index.getCandidates(detailsFilters);
     int topCommits = myLogDataHolder.getSettings().getRecentCommitsCount();
-    for (int i = 0; i < topCommits && i < graphModel.getGraph().getNodeRows().size(); i++) {
+
+    // Details of the recent commits should be available, older commits are checked while their details have been loaded once,
+    // and the index allows to skip those of them which don't match the filters without looking for their details.
+    final List<Hash> candidateHashes = ContainerUtil.newArrayList();
+    for (int i = 0; i < graphModel.getGraph().getNodeRows().size(); i++) {
       Node node = graphModel.getGraph().getCommitNodeInRow(i);
       if (node == null) {
         // there can be nodes which contain no commits (IDEA-115442, branch filter case)
         continue;
       }
-      final VcsFullCommitDetails details = getDetailsFromCache(node);
-      if (details == null) {
-        // Details for recent commits should be available in the cache.
-        // However if they are not there for some reason, we stop filtering.
-        // If we continue, if this commit without details matches filters,
-        // if details of an older commit are found in the cache, and if this older commit matches the filter,
-        // then we will return the list which incorrectly misses some matching commit in the middle.
-        // => Instead we rather will return a smaller list: this is not a problem,
-        // because the VCS will be requested for filtered details if there are not enough of them.
-        LOG.debug("No details found for a recent commit " + myLogDataHolder.getHash(node.getCommitIndex()));
+      int commitIndex = node.getCommitIndex();
+      boolean indexed = index.isIndexed(commitIndex);
+      if (i >= topCommits && !indexed) {
         break;
       }
+      if (indexed && candidates != null && !candidates.contains(commitIndex)) {
+        continue;
+      }
+      candidateHashes.add(myLogDataHolder.getHash(commitIndex));
+    }
+
+    final List<VcsFullCommitDetails> candidateDetails = ContainerUtil.newArrayList();
+    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
+      @Override
+      public void run() {
+        for (Hash hash : candidateHashes) {
+          VcsFullCommitDetails details = myLogDataHolder.getCommitDetailsGetter().getCommitDataIfAvailable(hash);
+          if (details == null || details instanceof LoadingDetails) {
+            // Details for recent commits should be available in the cache, but older ones may be already evicted from it.
+            // If they are not there, we stop filtering.
+            // If we continue, if this commit without details matches filters,
+            // if details of an older commit are found in the cache, and if this older commit matches the filter,
+            // then we will return the list which incorrectly misses some matching commit in the middle.
+            // => Instead we rather will return a smaller list: this is not a problem,
+            // because the VCS will be requested for filtered details if there are not enough of them.
+            LOG.debug("No details found for commit " + hash);
+            break;
+          }
+          candidateDetails.add(details);
+        }
+      }
+    });
+
+    List<VcsFullCommitDetails> result = ContainerUtil.newArrayList();
+    for (final VcsFullCommitDetails details : candidateDetails) {
+      // the index only excludes commits which don't match for sure
       boolean allFiltersMatch = !ContainerUtil.exists(detailsFilters, new Condition<VcsLogDetailsFilter>() {
         @Override
         public boolean value(VcsLogDetailsFilter filter) {
@@ -153,16 +182,4 @@ public class VcsLogFilterer {
     return result;
   }
 
-  @Nullable
-  private VcsFullCommitDetails getDetailsFromCache(@NotNull final Node node) {
-    final Ref<VcsFullCommitDetails> ref = Ref.create();
-    UIUtil.invokeAndWaitIfNeeded(new Runnable() {
-      @Override
-      public void run() {
-        ref.set(myLogDataHolder.getCommitDetailsGetter().getCommitData(node));
-      }
-    });
-    return ref.get();
-  }
-
 }
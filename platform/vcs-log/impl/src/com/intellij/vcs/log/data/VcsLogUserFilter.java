@@ -24,9 +24,9 @@ public abstract class VcsLogUserFilter implements VcsLogDetailsFilter {
     }
 
     @Override
-    public boolean matches(@NotNull VcsFullCommitDetails detail) {
-      return detail.getAuthor().getName().toLowerCase().contains(myUser.toLowerCase()) ||
-             detail.getAuthor().getEmail().toLowerCase().contains(myUser.toLowerCase());
+    public boolean matches(@NotNull VirtualFile root, @NotNull VcsUser author) {
+      return author.getName().toLowerCase().contains(myUser.toLowerCase()) ||
+             author.getEmail().toLowerCase().contains(myUser.toLowerCase());
     }
 
     @NotNull
@@ -49,9 +49,9 @@ public abstract class VcsLogUserFilter implements VcsLogDetailsFilter {
     }
 
     @Override
-    public boolean matches(@NotNull VcsFullCommitDetails details) {
-      VcsUser meInThisRoot = myMeData.get(details.getRoot());
-      return meInThisRoot != null && meInThisRoot.equals(details.getAuthor());
+    public boolean matches(@NotNull VirtualFile root, @NotNull VcsUser author) {
+      VcsUser meInThisRoot = myMeData.get(root);
+      return meInThisRoot != null && meInThisRoot.equals(author);
     }
 
     @NotNull
@@ -61,6 +61,16 @@ public abstract class VcsLogUserFilter implements VcsLogDetailsFilter {
     }
   }
 
+  @Override
+  public boolean matches(@NotNull VcsFullCommitDetails details) {
+    return matches(details.getRoot(), details.getAuthor());
+  }
+
+  /**
+   * Checks if the given author of a commit made in the given root matches the filter.
+   */
+  public abstract boolean matches(@NotNull VirtualFile root, @NotNull VcsUser author);
+
   /**
    * Returns the user name selected in the filter for the given root.
    * If it is a name-as-text filter, of course, values don't differ per root. The difference appears if the special "me" filter is used.
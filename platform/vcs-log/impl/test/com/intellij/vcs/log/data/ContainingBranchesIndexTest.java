@@ -0,0 +1,248 @@
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.util.Condition;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.impl.StubVirtualFile;
+import com.intellij.util.NotNullFunction;
+import com.intellij.vcs.log.*;
+import com.intellij.vcs.log.impl.VcsRefImpl;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class ContainingBranchesIndexTest {
+
+  private static final NotNullFunction<Hash, Integer> INDEX_GETTER = new NotNullFunction<Hash, Integer>() {
+    @NotNull
+    @Override
+    public Integer fun(Hash hash) {
+      return Integer.parseInt(hash.asString());
+    }
+  };
+
+  private static final Condition<VcsRef> BRANCH_TYPE = new Condition<VcsRef>() {
+    @Override
+    public boolean value(VcsRef ref) {
+      return ref.getType().isBranch();
+    }
+  };
+
+  private static final VirtualFile ROOT = new StubVirtualFile();
+  private static final VcsRefType BRANCH = new TestRefType(true);
+  private static final VcsRefType TAG = new TestRefType(false);
+
+  //  6 master        5 feature
+  //  | \             |
+  //  4  \            |
+  //  |   3 --------- +
+  //  2  /
+  //  | /
+  //  1
+  @Test
+  public void branchesArePropagatedToParents() {
+    List<GraphCommit> log = asList(commit(6, 4, 3), commit(5, 3), commit(4, 2), commit(3, 1), commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log),
+                                                                  asList(branch("master", "6"), branch("feature", "5"), tag("v1", "4")), BRANCH_TYPE);
+    assertEquals(asList("master"), index.getContainingBranches(6));
+    assertEquals(asList("feature"), index.getContainingBranches(5));
+    assertEquals(asList("master"), index.getContainingBranches(4));
+    assertEquals(asList("feature", "master"), index.getContainingBranches(3));
+    assertEquals(asList("master"), index.getContainingBranches(2));
+    assertEquals(asList("feature", "master"), index.getContainingBranches(1));
+    assertNull(index.getContainingBranches(7));
+  }
+
+  @Test
+  public void orderOfCommitsDoesNotMatter() {
+    List<GraphCommit> log = asList(commit(1), commit(3, 2), commit(2, 1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log), asList(branch("master", "3")), BRANCH_TYPE);
+    assertEquals(asList("master"), index.getContainingBranches(1));
+  }
+
+  @Test
+  public void commitsNotReachableFromBranches() {
+    List<GraphCommit> log = asList(commit(3, 1), commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log), asList(branch("master", "2")), BRANCH_TYPE);
+    assertEquals(Collections.<String>emptyList(), index.getContainingBranches(3));
+    assertEquals(asList("master"), index.getContainingBranches(1));
+  }
+
+  @Test
+  public void setsAreShared() {
+    List<GraphCommit> log = asList(commit(5, 4), commit(4, 3), commit(3, 2), commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log),
+                                                                  asList(branch("master", "5"), branch("release", "3")), BRANCH_TYPE);
+    assertEquals(asList("master", "release"), index.getContainingBranches(1));
+    assertEquals(5, index.getCommitCount());
+    assertEquals(4, index.getDistinctSetCount()); // empty, {master}, {release}, {master, release}
+  }
+
+  @Test
+  public void sameBranchNameInSeveralRoots() {
+    List<GraphCommit> log1 = asList(commit(2, 1), commit(1));
+    List<GraphCommit> log2 = asList(commit(12, 11), commit(11));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(asList(log1, log2),
+                                                                  asList(branch("master", "2"), branch("master", "12"),
+                                                                         branch("feature", "11")), BRANCH_TYPE);
+    assertEquals(asList("master"), index.getContainingBranches(1));
+    assertEquals(asList("feature", "master"), index.getContainingBranches(11));
+  }
+
+  //  4 master
+  //  |
+  //  3
+  //  |
+  //  2 master (before)
+  //  |
+  //  1 feature
+  @Test
+  public void branchMovedForward() {
+    List<GraphCommit> log = asList(commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log),
+                                                                  asList(branch("master", "2"), branch("feature", "1")), BRANCH_TYPE);
+    ContainingBranchesIndex updated = index.update(Collections.singletonList(asList(commit(4, 3), commit(3, 2), commit(2, 1))),
+                                                   asList(branch("master", "4"), branch("feature", "1")), BRANCH_TYPE);
+    assertNotNull(updated);
+    assertEquals(4, updated.getCommitCount());
+    assertEquals(asList("master"), updated.getContainingBranches(4));
+    assertEquals(asList("master"), updated.getContainingBranches(3));
+    assertEquals(asList("master"), updated.getContainingBranches(2));
+    assertEquals(asList("feature", "master"), updated.getContainingBranches(1));
+    assertEquals(asList("master"), index.getContainingBranches(2)); // the old index is not changed
+    assertNull(index.getContainingBranches(4));
+  }
+
+  //  3 master (before)
+  //  |
+  //  2 master
+  //  |
+  //  1
+  @Test
+  public void branchMovedBack() {
+    List<GraphCommit> log = asList(commit(3, 2), commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log),
+                                                                  asList(branch("master", "3"), branch("feature", "1")), BRANCH_TYPE);
+    ContainingBranchesIndex updated = index.update(Collections.<List<GraphCommit>>emptyList(),
+                                                   asList(branch("master", "2"), branch("feature", "1")), BRANCH_TYPE);
+    assertNotNull(updated);
+    assertEquals(Collections.<String>emptyList(), updated.getContainingBranches(3));
+    assertEquals(asList("master"), updated.getContainingBranches(2));
+    assertEquals(asList("feature", "master"), updated.getContainingBranches(1));
+  }
+
+  @Test
+  public void branchesAddedAndRemoved() {
+    List<GraphCommit> log = asList(commit(3, 2), commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log),
+                                                                  asList(branch("master", "3"), branch("release", "2"),
+                                                                         tag("v1", "1")), BRANCH_TYPE);
+    ContainingBranchesIndex updated = index.update(Collections.<List<GraphCommit>>emptyList(),
+                                                   asList(branch("master", "3"), branch("feature", "1"), tag("v1", "1")),
+                                                   BRANCH_TYPE);
+    assertNotNull(updated);
+    assertEquals(asList("master"), updated.getContainingBranches(2));
+    assertEquals(asList("feature", "master"), updated.getContainingBranches(1));
+  }
+
+  @Test
+  public void nothingChanged() {
+    List<GraphCommit> log = asList(commit(2, 1), commit(1));
+    List<VcsRef> refs = asList(branch("master", "2"), tag("v1", "1"));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log), refs, BRANCH_TYPE);
+    assertSame(index, index.update(Collections.singletonList(log), refs, BRANCH_TYPE));
+  }
+
+  @Test
+  public void rebuildIsRequestedWhenMostBranchesAreRemoved() {
+    List<GraphCommit> log = asList(commit(3, 2), commit(2, 1), commit(1));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log),
+                                                                  asList(branch("master", "3"), branch("a", "2"), branch("b", "1")),
+                                                                  BRANCH_TYPE);
+    assertNull(index.update(Collections.<List<GraphCommit>>emptyList(), asList(branch("master", "3")), BRANCH_TYPE));
+  }
+
+  @Test
+  public void updatedIndexIsTheSameAsBuilt() {
+    Random random = new Random(42);
+    List<GraphCommit> log = new ArrayList<GraphCommit>();
+    List<VcsRef> refs = new ArrayList<VcsRef>();
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log), refs, BRANCH_TYPE);
+    for (int refresh = 0; refresh < 50; refresh++) {
+      List<GraphCommit> newCommits = new ArrayList<GraphCommit>();
+      for (int i = 0; i < 20; i++) {
+        int commitIndex = log.size() + 1;
+        GraphCommit commit = log.isEmpty() ? commit(commitIndex) :
+                             random.nextInt(5) == 0 ? commit(commitIndex, randomCommit(random, log), randomCommit(random, log)) :
+                             commit(commitIndex, randomCommit(random, log));
+        log.add(commit);
+        newCommits.add(commit);
+      }
+      refs = new ArrayList<VcsRef>();
+      for (int i = 0; i < 10; i++) {
+        if (random.nextInt(4) != 0) {
+          refs.add(branch("branch" + i, String.valueOf(randomCommit(random, log))));
+        }
+      }
+      ContainingBranchesIndex updated = index.update(Collections.singletonList(newCommits), refs, BRANCH_TYPE);
+      ContainingBranchesIndex built = ContainingBranchesIndex.build(Collections.singletonList(log), refs, BRANCH_TYPE);
+      index = updated == null ? built : updated;
+      for (GraphCommit commit : log) {
+        assertEquals(built.getContainingBranches(commit.getIndex()), index.getContainingBranches(commit.getIndex()));
+      }
+    }
+  }
+
+  private static int randomCommit(Random random, List<GraphCommit> log) {
+    // mostly recent commits, as branches usually are
+    return log.size() - random.nextInt(Math.min(log.size(), random.nextBoolean() ? 10 : log.size()));
+  }
+
+  private static GraphCommit commit(final int index, final int... parents) {
+    return new GraphCommit() {
+      @Override
+      public int getIndex() {
+        return index;
+      }
+
+      @Override
+      public int[] getParentIndices() {
+        return parents;
+      }
+    };
+  }
+
+  private static VcsRef branch(String name, String hash) {
+    return new VcsRefImpl(INDEX_GETTER, new SimpleHash(hash), name, BRANCH, ROOT);
+  }
+
+  private static VcsRef tag(String name, String hash) {
+    return new VcsRefImpl(INDEX_GETTER, new SimpleHash(hash), name, TAG, ROOT);
+  }
+
+  private static class TestRefType implements VcsRefType {
+    private final boolean myBranch;
+
+    TestRefType(boolean branch) {
+      myBranch = branch;
+    }
+
+    @Override
+    public boolean isBranch() {
+      return myBranch;
+    }
+
+    @NotNull
+    @Override
+    public Color getBackgroundColor() {
+      return Color.WHITE;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package com.intellij.vcs.log.data;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.newvfs.impl.StubVirtualFile;
+import com.intellij.vcs.log.VcsUser;
+import com.intellij.vcs.log.impl.VcsUserImpl;
+import com.intellij.vcs.log.ui.filter.VcsLogTextFilter;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.*;
+
+public class VcsLogDetailsIndexTest {
+
+  private final VirtualFile myRoot1 = new StubVirtualFile();
+  private final VirtualFile myRoot2 = new StubVirtualFile();
+  private final VcsUser myJohn = new VcsUserImpl("John Smith", "john@example.com");
+  private final VcsUser myBob = new VcsUserImpl("Bob", "bob@example.com");
+
+  private VcsLogDetailsIndex myIndex;
+
+  @Before
+  public void setUp() {
+    myIndex = new VcsLogDetailsIndex();
+    myIndex.index(0, myRoot1, myJohn, "Fix NPE in the VcsLogFilterer", 1000);
+    myIndex.index(1, myRoot1, myBob, "IDEA-115442 branch filter: don't fail on empty nodes", 2000);
+    myIndex.index(2, myRoot2, myJohn, "Merge branch 'master'\n\nConflicts:\n  build.xml", 3000);
+    myIndex.index(3, myRoot2, myBob, "fix typo", 4000);
+  }
+
+  @Test
+  public void wordsAreSplitAndLowerCased() {
+    assertEquals(asList("idea", "115442", "don", "t", "my_var"), asList(VcsLogDetailsIndex.splitWords("IDEA-115442 don't my_var").toArray()));
+  }
+
+  @Test
+  public void textFilterMatchesPartsOfWords() {
+    assertCandidates(text("fix"), 0, 3);
+    assertCandidates(text("LogFilt"), 0);
+    assertCandidates(text("115442"), 1);
+    assertCandidates(text("nothing"));
+  }
+
+  @Test
+  public void textFilterRequiresAllWords() {
+    assertCandidates(text("fix npe"), 0);
+    assertCandidates(text("branch"), 1, 2);
+    assertCandidates(text("branch 'master'"), 2);
+  }
+
+  @Test
+  public void textWithoutWordsDoesNotFilter() {
+    assertNull(myIndex.getCandidates(Collections.singletonList(text(" : "))));
+  }
+
+  @Test
+  public void userFilterByName() {
+    assertCandidates(new VcsLogUserFilter.ByName("smith"), 0, 2);
+    assertCandidates(new VcsLogUserFilter.ByName("bob@"), 1, 3);
+  }
+
+  @Test
+  public void userFilterMeDependsOnRoot() {
+    Map<VirtualFile, VcsUser> me = new HashMap<VirtualFile, VcsUser>();
+    me.put(myRoot1, myJohn);
+    me.put(myRoot2, myBob);
+    assertCandidates(new VcsLogUserFilter.Me(me), 0, 3);
+  }
+
+  @Test
+  public void dateFilterExcludesBounds() {
+    assertCandidates(new VcsLogDateFilter(new Date(1000), new Date(4000)), 1, 2);
+    assertCandidates(new VcsLogDateFilter(null, new Date(2500)), 0, 1);
+  }
+
+  @Test
+  public void filtersAreIntersected() {
+    assertCandidates(asList(text("fix"), new VcsLogUserFilter.ByName("bob")), 3);
+    assertCandidates(asList(new VcsLogUserFilter.ByName("john"), new VcsLogDateFilter(new Date(2000), null)), 2);
+  }
+
+  @Test
+  public void commitIsIndexedOnce() {
+    myIndex.index(3, myRoot2, myBob, "something else", 4000);
+    assertTrue(myIndex.isIndexed(3));
+    assertFalse(myIndex.isIndexed(4));
+    assertEquals(4, myIndex.getIndexedCount());
+    assertCandidates(text("else"));
+  }
+
+  private static VcsLogTextFilter text(String text) {
+    return new VcsLogTextFilter(text);
+  }
+
+  private void assertCandidates(@NotNull VcsLogDetailsFilter filter, int... expected) {
+    assertCandidates(Collections.singletonList(filter), expected);
+  }
+
+  private void assertCandidates(@NotNull List<? extends VcsLogDetailsFilter> filters, int... expected) {
+    TIntHashSet candidates = myIndex.getCandidates(filters);
+    assertNotNull(candidates);
+    int[] actual = candidates.toArray();
+    Arrays.sort(actual);
+    assertArrayEquals(expected, actual);
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.commands;
+
+import com.intellij.execution.process.ProcessOutputTypes;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vcs.VcsException;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Consumer;
+import git4idea.i18n.GitBundle;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The handler which passes stdout to the consumer in chunks as soon as they are read from the process instead of accumulating it,
+ * so large outputs (like 'git log' of the whole repository) can be processed while the command is still running.
+ * Stderr is accumulated to report errors.
+ * <p/>
+ * If the consumer throws an exception, the process is destroyed, the rest of the output is ignored,
+ * and the exception is reported by {@link #run()} or may be retrieved via {@link #getOutputProcessingError()}.
+ */
+public class GitStreamingHandler extends GitTextHandler {
+  @NotNull private final Consumer<String> myStdoutConsumer;
+  private final StringBuilder myStderr = new StringBuilder();
+  @Nullable private volatile RuntimeException myOutputProcessingError;
+
+  public GitStreamingHandler(@NotNull Project project, @NotNull VirtualFile root, @NotNull GitCommand command,
+                             @NotNull Consumer<String> stdoutConsumer) {
+    super(project, root, command);
+    myStdoutConsumer = stdoutConsumer;
+  }
+
+  /**
+   * Add listener which is notified when the process terminates or fails to start
+   *
+   * @param listener a listener to add
+   */
+  public void addHandlerListener(@NotNull GitHandlerListener listener) {
+    addListener(listener);
+  }
+
+  @Override
+  protected void processTerminated(int exitCode) {
+    if (myVcs != null && !isStderrSuppressed() && myStderr.length() > 0) {
+      myVcs.showErrorMessages(myStderr.toString());
+    }
+  }
+
+  @Override
+  protected void onTextAvailable(String text, Key outputType) {
+    if (ProcessOutputTypes.STDOUT == outputType) {
+      if (myOutputProcessingError != null) {
+        return;
+      }
+      try {
+        myStdoutConsumer.consume(text);
+      }
+      catch (RuntimeException e) {
+        myOutputProcessingError = e;
+        destroyProcess();
+      }
+    }
+    else if (ProcessOutputTypes.STDERR == outputType) {
+      myStderr.append(text);
+    }
+  }
+
+  /**
+   * @return the exception thrown by the stdout consumer, if any
+   */
+  @Nullable
+  public RuntimeException getOutputProcessingError() {
+    return myOutputProcessingError;
+  }
+
+  @NotNull
+  public String getStderr() {
+    return myStderr.toString();
+  }
+
+  /**
+   * Executes the command in the current thread and waits until the whole output is passed to the consumer.
+   *
+   * @throws VcsException if the process failed to start, exited with an error or its output couldn't be processed.
+   */
+  public void run() throws VcsException {
+    if (isRemote()) {
+      throw new IllegalStateException("Commands that require remote access could not be run using this method");
+    }
+    final VcsException[] ex = new VcsException[1];
+    addListener(new GitHandlerListener() {
+      public void processTerminated(final int exitCode) {
+        if (myOutputProcessingError == null && exitCode != 0 && !isIgnoredErrorCode(exitCode)) {
+          String msg = getStderr();
+          if (msg.length() == 0) {
+            msg = GitBundle.message("git.error.exit", exitCode);
+          }
+          ex[0] = new VcsException(msg);
+        }
+      }
+
+      public void startFailed(final Throwable exception) {
+        ex[0] = new VcsException("Process failed to start (" + myCommandLine.getCommandLineString() + "): " + exception.toString(), exception);
+      }
+    });
+    runInCurrentThread(null);
+    RuntimeException error = myOutputProcessingError;
+    if (error != null) {
+      throw new VcsException(error);
+    }
+    if (ex[0] != null) {
+      throw ex[0];
+    }
+  }
+}
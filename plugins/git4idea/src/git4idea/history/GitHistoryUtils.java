@@ -60,7 +60,6 @@ import java.io.*;
 import java.nio.charset.Charset;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static git4idea.history.GitLogParser.GitLogOption.*;
@@ -316,7 +315,7 @@ public class GitHistoryUtils {
     final AtomicReference<String> firstCommit = new AtomicReference<String>("HEAD");
     final AtomicReference<String> firstCommitParent = new AtomicReference<String>("HEAD");
     final AtomicReference<FilePath> currentPath = new AtomicReference<FilePath>(filePath);
-    final AtomicReference<GitLineHandler> logHandler = new AtomicReference<GitLineHandler>();
+    final AtomicReference<GitStreamingHandler> logHandler = new AtomicReference<GitStreamingHandler>();
     final AtomicBoolean skipFurtherOutput = new AtomicBoolean();
 
     final Consumer<GitLogRecord> resultAdapter = new Consumer<GitLogRecord>() {
@@ -374,19 +373,12 @@ public class GitHistoryUtils {
 
     final AtomicBoolean criticalFailure = new AtomicBoolean();
     while (currentPath.get() != null && firstCommitParent.get() != null) {
-      logHandler.set(getLogHandler(project, finalRoot, logParser, currentPath.get(), firstCommitParent.get(), parameters));
-      final MyTokenAccumulator accumulator = new MyTokenAccumulator(logParser);
+      // records are passed to the consumer as soon as they are read, while git is still running
+      final GitLogRecordCollector collector = new GitLogRecordCollector(logParser, resultAdapter);
+      logHandler.set(getLogHandler(project, finalRoot, logParser, currentPath.get(), firstCommitParent.get(), collector, parameters));
       final Semaphore semaphore = new Semaphore();
 
-      logHandler.get().addLineListener(new GitLineHandlerAdapter() {
-        @Override
-        public void onLineAvailable(String line, Key outputType) {
-          final GitLogRecord record = accumulator.acceptLine(line);
-          if (record != null) {
-            resultAdapter.consume(record);
-          }
-        }
-
+      logHandler.get().addHandlerListener(new GitHandlerListener() {
         @Override
         public void startFailed(Throwable exception) {
           //noinspection ThrowableInstanceNeverThrown
@@ -401,11 +393,11 @@ public class GitHistoryUtils {
         @Override
         public void processTerminated(int exitCode) {
           try {
-            super.processTerminated(exitCode);
-            final GitLogRecord record = accumulator.processLast();
-            if (record != null) {
-              resultAdapter.consume(record);
+            RuntimeException error = logHandler.get().getOutputProcessingError();
+            if (error != null) {
+              throw error;
             }
+            collector.finish();
           } 
           catch (Throwable t) {
             LOG.error(t);
@@ -439,8 +431,9 @@ public class GitHistoryUtils {
 
   }
 
-  private static GitLineHandler getLogHandler(Project project, VirtualFile root, GitLogParser parser, FilePath path, String lastCommit, String... parameters) {
-    final GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
+  private static GitStreamingHandler getLogHandler(Project project, VirtualFile root, GitLogParser parser, FilePath path, String lastCommit,
+                                                   Consumer<String> outputConsumer, String... parameters) {
+    final GitStreamingHandler h = new GitStreamingHandler(project, root, GitCommand.LOG, outputConsumer);
     h.setStdoutSuppressed(true);
     h.addParameters("--name-status", parser.getPretty(), "--encoding=UTF-8", lastCommit);
     if (parameters != null && parameters.length > 0) {
@@ -480,22 +473,15 @@ public class GitHistoryUtils {
   }
 
   public static List<? extends VcsShortCommitDetails> readAllMiniDetails(final Project project, final VirtualFile root) throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
     GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NONE, HASH, PARENTS, AUTHOR_NAME,
                                            AUTHOR_EMAIL, AUTHOR_TIME, SUBJECT);
-    h.setStdoutSuppressed(true);
-    h.addParameters(parser.getPretty(), "--encoding=UTF-8");
-    h.addParameters("HEAD", "--branches", "--remotes", "--tags");
-    h.addParameters("--full-history", "--sparse");
-    h.endOptions();
-
-    String output = h.run();
+    List<String> parameters = ContainerUtil.newArrayList(parser.getPretty(), "--encoding=UTF-8");
+    parameters.addAll(Arrays.asList("HEAD", "--branches", "--remotes", "--tags"));
+    parameters.addAll(Arrays.asList("--full-history", "--sparse"));
 
-    List<GitLogRecord> records = parser.parse(output);
-
-    return ContainerUtil.mapNotNull(records, new Function<GitLogRecord, VcsShortCommitDetails>() {
+    return loadRecords(project, root, GitCommand.LOG, parser, parameters, true, new RecordConverter<VcsShortCommitDetails>() {
       @Override
-      public VcsShortCommitDetails fun(GitLogRecord record) {
+      public VcsShortCommitDetails convert(@NotNull GitLogRecord record) {
         List<Hash> parents = new SmartList<Hash>();
         for (String parent : record.getParentsHashes()) {
           parents.add(HashImpl.build(parent));
@@ -508,21 +494,16 @@ public class GitHistoryUtils {
   }
 
   public static List<? extends VcsShortCommitDetails> readMiniDetails(final Project project, final VirtualFile root, List<String> hashes) throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
     GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NONE, HASH, PARENTS, AUTHOR_NAME,
                                            AUTHOR_EMAIL, COMMIT_TIME, SUBJECT);
-    h.setStdoutSuppressed(true);
     // git show can show either -p, or --name-status, or --name-only, but we need nothing, just details => using git log --no-walk
-    h.addParameters("--no-walk");
-    h.addParameters(parser.getPretty(), "--encoding=UTF-8");
-    h.addParameters(new ArrayList<String>(hashes));
-
-    String output = h.run();
-    List<GitLogRecord> records = parser.parse(output);
+    List<String> parameters = ContainerUtil.newArrayList("--no-walk");
+    parameters.addAll(Arrays.asList(parser.getPretty(), "--encoding=UTF-8"));
+    parameters.addAll(hashes);
 
-    return ContainerUtil.map(records, new Function<GitLogRecord, VcsShortCommitDetails>() {
+    return loadRecords(project, root, GitCommand.LOG, parser, parameters, false, new RecordConverter<VcsShortCommitDetails>() {
       @Override
-      public VcsShortCommitDetails fun(GitLogRecord record) {
+      public VcsShortCommitDetails convert(@NotNull GitLogRecord record) {
         List<Hash> parents = new SmartList<Hash>();
         for (String parent : record.getParentsHashes()) {
           parents.add(HashImpl.build(parent));
@@ -537,88 +518,67 @@ public class GitHistoryUtils {
   public static List<TimedVcsCommit> readAllHashes(@NotNull final Project project,
                                                    @NotNull VirtualFile root,
                                                    @NotNull final Consumer<VcsUser> userRegistry) throws VcsException {
-    final int COMMIT_BUFFER = 1000;
-
-    GitLineHandler h = new GitLineHandler(project, root, GitCommand.LOG);
-    final GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NONE, HASH, PARENTS, COMMIT_TIME,
-                                                 AUTHOR_NAME, AUTHOR_EMAIL);
-    h.setStdoutSuppressed(true);
-    h.addParameters(parser.getPretty(), "--encoding=UTF-8");
-    h.addParameters("HEAD", "--branches", "--remotes", "--tags");
-    h.addParameters("--full-history", "--sparse");
-    h.addParameters("--date-order");
-    h.endOptions();
-
-    final List<TimedVcsCommit> commits = ContainerUtil.newArrayList();
-
-    final StringBuilder record = new StringBuilder();
-    final AtomicInteger records = new AtomicInteger();
-    final Ref<VcsException> ex = new Ref<VcsException>();
-    h.addLineListener(new GitLineHandlerListener() {
+    GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.NONE, HASH, PARENTS, COMMIT_TIME,
+                                           AUTHOR_NAME, AUTHOR_EMAIL);
+    List<String> parameters = ContainerUtil.newArrayList(parser.getPretty(), "--encoding=UTF-8");
+    parameters.addAll(Arrays.asList("HEAD", "--branches", "--remotes", "--tags"));
+    parameters.addAll(Arrays.asList("--full-history", "--sparse"));
+    parameters.add("--date-order");
+
+    return loadRecords(project, root, GitCommand.LOG, parser, parameters, true, new RecordConverter<TimedVcsCommit>() {
       @Override
-      public void onLineAvailable(String line, Key outputType) {
-        try {
-          int recordEnd = line.indexOf(GitLogParser.RECORD_END);
-          String afterParseRemainder;
-          if (recordEnd == line.length() - 1) { // ends with
-            record.append(line);
-            afterParseRemainder = "";
-          }
-          else if (recordEnd == -1) { // record doesn't end on this line => just appending, no parsing
-            record.append(line);
-            afterParseRemainder = null;
-          }
-          else { // record ends in the middle of this line
-            record.append(line.substring(0, recordEnd + 1));
-            afterParseRemainder = line.substring(recordEnd + 1);
-          }
-          if (afterParseRemainder != null && records.incrementAndGet() > COMMIT_BUFFER) { // null means can't parse now
-            commits.addAll(parseCommit(project, parser, record, userRegistry));
-            record.setLength(0);
-            record.append(afterParseRemainder);
-          }
-        }
-        catch (Exception e) {
-          ex.set(new VcsException(e));
-        }
+      public TimedVcsCommit convert(@NotNull GitLogRecord record) {
+        TimedVcsCommit commit = GitHistoryUtils.convert(project, record);
+        userRegistry.consume(vcsObjectsFactory(project).createUser(record.getAuthorName(), record.getAuthorEmail()));
+        return commit;
       }
+    });
+  }
 
+  private interface RecordConverter<T> {
+    @Nullable
+    T convert(@NotNull GitLogRecord record) throws VcsException;
+  }
+
+  /**
+   * Runs the command and converts 'git log' records as soon as they are read from the process,
+   * so neither the whole output nor the list of parsed records is held in memory.
+   *
+   * @return converted records except nulls, in the order of the output.
+   */
+  @NotNull
+  private static <T> List<T> loadRecords(@NotNull Project project, @NotNull VirtualFile root, @NotNull GitCommand command,
+                                         @NotNull GitLogParser parser, @NotNull List<String> parameters, boolean endOptions,
+                                         @NotNull final RecordConverter<T> converter) throws VcsException {
+    final List<T> result = ContainerUtil.newArrayList();
+    final Ref<VcsException> conversionError = Ref.create();
+    GitLogRecordCollector collector = new GitLogRecordCollector(parser, new Consumer<GitLogRecord>() {
       @Override
-      public void processTerminated(int exitCode) {
+      public void consume(GitLogRecord record) {
+        if (!conversionError.isNull()) {
+          return;
+        }
         try {
-          commits.addAll(parseCommit(project, parser, record, userRegistry));
+          ContainerUtil.addIfNotNull(converter.convert(record), result);
         }
-        catch (Exception e) {
-          ex.set(new VcsException(e));
+        catch (VcsException e) {
+          conversionError.set(e);
         }
       }
-
-      @Override
-      public void startFailed(Throwable exception) {
-        ex.set(new VcsException(exception));
-      }
     });
-    h.runInCurrentThread(null);
-    if (!ex.isNull()) {
-      throw ex.get();
-    }
-    return commits;
-  }
 
-  private static List<TimedVcsCommit> parseCommit(final Project project, GitLogParser parser, StringBuilder record,
-                                                  final Consumer<VcsUser> userRegistry) {
-    List<GitLogRecord> rec = parser.parse(record.toString());
-    return ContainerUtil.mapNotNull(rec, new Function<GitLogRecord, TimedVcsCommit>() {
-      @Override
-      public TimedVcsCommit fun(GitLogRecord record) {
-        if (record == null) {
-          return null;
-        }
-        TimedVcsCommit commit = convert(project, record);
-        userRegistry.consume(vcsObjectsFactory(project).createUser(record.getAuthorName(), record.getAuthorEmail()));
-        return commit;
-      }
-    });
+    GitStreamingHandler h = new GitStreamingHandler(project, root, command, collector);
+    h.setStdoutSuppressed(true);
+    h.addParameters(parameters);
+    if (endOptions) {
+      h.endOptions();
+    }
+    h.run();
+    collector.finish();
+    if (!conversionError.isNull()) {
+      throw conversionError.get();
+    }
+    return result;
   }
 
   @NotNull
@@ -638,45 +598,6 @@ public class GitHistoryUtils {
     return ServiceManager.getService(project, VcsLogObjectsFactory.class);
   }
 
-  private static class MyTokenAccumulator {
-    private final StringBuilder myBuffer = new StringBuilder();
-
-    private boolean myNotStarted = true;
-    private GitLogParser myParser;
-
-    public MyTokenAccumulator(GitLogParser parser) {
-      myParser = parser;
-    }
-
-    @Nullable
-    public GitLogRecord acceptLine(String s) {
-      final boolean lineEnd = s.startsWith(GitLogParser.RECORD_START);
-      if (lineEnd && (!myNotStarted)) {
-        final String line = myBuffer.toString();
-        myBuffer.setLength(0);
-        myBuffer.append(s.substring(GitLogParser.RECORD_START.length()));
-
-        return processResult(line);
-      }
-      else {
-        myBuffer.append(lineEnd ? s.substring(GitLogParser.RECORD_START.length()) : s);
-        myBuffer.append("\n");
-      }
-      myNotStarted = false;
-
-      return null;
-    }
-
-    public GitLogRecord processLast() {
-      return processResult(myBuffer.toString());
-    }
-
-    private GitLogRecord processResult(final String line) {
-      return myParser.parseOneRecord(line);
-    }
-
-  }
-
   /**
    * Get history for the file
    *
@@ -753,22 +674,15 @@ public class GitHistoryUtils {
   @NotNull
   public static List<GitCommit> history(@NotNull final Project project, @NotNull final VirtualFile root, String... parameters)
                                         throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
     GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.STATUS, HASH, COMMIT_TIME, AUTHOR_NAME, AUTHOR_TIME,
                                            AUTHOR_EMAIL, COMMITTER_NAME, COMMITTER_EMAIL, PARENTS, SUBJECT, BODY, RAW_BODY);
-    h.setStdoutSuppressed(true);
-    h.addParameters(parameters);
-    h.addParameters("--name-status", parser.getPretty(), "--encoding=UTF-8");
-    h.addParameters("--full-history", "--sparse");
-    h.endOptions();
-
-    String output = h.run();
-
-    List<GitLogRecord> records = parser.parse(output);
+    List<String> allParameters = ContainerUtil.newArrayList(parameters);
+    allParameters.addAll(Arrays.asList("--name-status", parser.getPretty(), "--encoding=UTF-8"));
+    allParameters.addAll(Arrays.asList("--full-history", "--sparse"));
 
-    return ContainerUtil.mapNotNull(records, new Function<GitLogRecord, GitCommit>() {
+    return loadRecords(project, root, GitCommand.LOG, parser, allParameters, true, new RecordConverter<GitCommit>() {
       @Override
-      public GitCommit fun(GitLogRecord record) {
+      public GitCommit convert(@NotNull GitLogRecord record) {
         try {
           return createCommit(project, root, record);
         }
@@ -1043,39 +957,30 @@ public class GitHistoryUtils {
   @NotNull
   public static List<GitCommit> commitsDetails(@NotNull Project project, @NotNull VirtualFile root,
                                                @NotNull final Collection<String> hashes) throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.SHOW);
-    GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.STATUS,
-                                           HASH, HASH, COMMIT_TIME, AUTHOR_NAME, AUTHOR_TIME, AUTHOR_EMAIL, COMMITTER_NAME,
-                                           COMMITTER_EMAIL, PARENTS, REF_NAMES, SUBJECT, BODY, RAW_BODY);
-    h.setStdoutSuppressed(true);
-    h.addParameters("--name-status", "-M", parser.getPretty(), "--encoding=UTF-8");
-    h.addParameters(new ArrayList<String>(hashes));
-
-    String output = h.run();
-    final List<GitCommit> rc = new ArrayList<GitCommit>();
-    for (GitLogRecord record : parser.parse(output)) {
-      rc.add(createCommit(project, root, record));
-    }
-    return rc;
+    return loadDetails(project, root, GitCommand.SHOW, new ArrayList<String>(hashes));
   }
 
   @NotNull
   public static List<GitCommit> getAllDetails(@NotNull Project project, @NotNull VirtualFile root,
                                               @NotNull List<String> parameters) throws VcsException {
-    GitSimpleHandler h = new GitSimpleHandler(project, root, GitCommand.LOG);
+    return loadDetails(project, root, GitCommand.LOG, parameters);
+  }
+
+  @NotNull
+  private static List<GitCommit> loadDetails(@NotNull final Project project, @NotNull final VirtualFile root, @NotNull GitCommand command,
+                                             @NotNull List<String> parameters) throws VcsException {
     GitLogParser parser = new GitLogParser(project, GitLogParser.NameStatus.STATUS,
                                            HASH, HASH, COMMIT_TIME, AUTHOR_NAME, AUTHOR_TIME, AUTHOR_EMAIL, COMMITTER_NAME,
                                            COMMITTER_EMAIL, PARENTS, REF_NAMES, SUBJECT, BODY, RAW_BODY);
-    h.setStdoutSuppressed(true);
-    h.addParameters("--name-status", "-M", parser.getPretty(), "--encoding=UTF-8");
-    h.addParameters(parameters);
+    List<String> allParameters = ContainerUtil.newArrayList("--name-status", "-M", parser.getPretty(), "--encoding=UTF-8");
+    allParameters.addAll(parameters);
 
-    String output = h.run();
-    final List<GitCommit> rc = new ArrayList<GitCommit>();
-    for (GitLogRecord record : parser.parse(output)) {
-      rc.add(createCommit(project, root, record));
-    }
-    return rc;
+    return loadRecords(project, root, command, parser, allParameters, false, new RecordConverter<GitCommit>() {
+      @Override
+      public GitCommit convert(@NotNull GitLogRecord record) throws VcsException {
+        return createCommit(project, root, record);
+      }
+    });
   }
 
   public static long getAuthorTime(Project project, FilePath path, final String commitsId) throws VcsException {
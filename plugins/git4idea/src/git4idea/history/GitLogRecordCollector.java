@@ -0,0 +1,81 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.history;
+
+import com.intellij.util.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Incrementally splits the 'git log' output into records as it arrives in chunks of arbitrary size,
+ * and passes each record parsed by {@link GitLogParser#parseOneRecord(String)} to the consumer.
+ * <p/>
+ * A record is complete when the start of the next one arrives (the changed paths follow the end of the commit information),
+ * so only the current record is kept in memory. Call {@link #finish()} after the whole output is passed to get the last record.
+ */
+class GitLogRecordCollector implements Consumer<String> {
+  // don't hold the buffer grown by a huge commit message for the rest of the output
+  private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+  @NotNull private final GitLogParser myParser;
+  @NotNull private final Consumer<GitLogRecord> myRecordConsumer;
+  @NotNull private StringBuilder myRecord = new StringBuilder();
+
+  GitLogRecordCollector(@NotNull GitLogParser parser, @NotNull Consumer<GitLogRecord> recordConsumer) {
+    myParser = parser;
+    myRecordConsumer = recordConsumer;
+  }
+
+  @Override
+  public void consume(@NotNull String text) {
+    int start = 0;
+    int recordStart;
+    while ((recordStart = text.indexOf(GitLogParser.RECORD_START, start)) >= 0) {
+      myRecord.append(text, start, recordStart);
+      flushRecord();
+      start = recordStart + GitLogParser.RECORD_START.length();
+    }
+    myRecord.append(text, start, text.length());
+  }
+
+  public void finish() {
+    flushRecord();
+  }
+
+  private void flushRecord() {
+    if (!isBlank(myRecord)) {
+      GitLogRecord record = myParser.parseOneRecord(myRecord.toString());
+      if (record != null) {
+        myRecordConsumer.consume(record);
+      }
+    }
+    if (myRecord.capacity() > MAX_RETAINED_BUFFER_SIZE) {
+      myRecord = new StringBuilder();
+    }
+    else {
+      myRecord.setLength(0);
+    }
+  }
+
+  // the same as String.trim().isEmpty()
+  private static boolean isBlank(@NotNull CharSequence text) {
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) > ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+}
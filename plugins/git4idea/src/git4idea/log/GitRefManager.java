@@ -7,7 +7,7 @@ import com.intellij.ui.JBColor;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.MultiMap;
 import com.intellij.vcs.log.RefGroup;
-import com.intellij.vcs.log.VcsLogRefManager;
+import com.intellij.vcs.log.VcsLogContainingBranchesRefManager;
 import com.intellij.vcs.log.VcsRef;
 import com.intellij.vcs.log.VcsRefType;
 import com.intellij.vcs.log.impl.SingletonRefGroup;
@@ -28,7 +28,7 @@ import java.util.List;
 /**
  * @author Kirill Likhodedov
  */
-public class GitRefManager implements VcsLogRefManager {
+public class GitRefManager implements VcsLogContainingBranchesRefManager {
 
   private static final Color HEAD_COLOR = new JBColor(new Color(0xf1ef9e), new Color(113, 111, 64));
   private static final Color LOCAL_BRANCH_COLOR = new JBColor(new Color(0x75eec7), new Color(0x0D6D4F));
@@ -182,6 +182,11 @@ public class GitRefManager implements VcsLogRefManager {
     return result;
   }
 
+  @Override
+  public boolean isContainingBranch(@NotNull VcsRef ref) {
+    return ref.getType() == LOCAL_BRANCH || ref.getType() == REMOTE_BRANCH;
+  }
+
   @Nullable
   private static <T extends GitBranch> T findBranchByName(final VcsRef ref, Collection<T> branches) {
     return ContainerUtil.find(branches, new Condition<T>() {
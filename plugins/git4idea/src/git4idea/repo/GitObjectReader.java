@@ -0,0 +1,454 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads objects from the Git object store ({@code .git/objects}) directly, without running Git.
+ * Loose objects and pack files (including delta-compressed objects) are supported, as well as
+ * alternate object stores listed in {@code objects/info/alternates}.
+ * <p/>
+ * The reader never writes to the repository, and it is thread-safe.
+ * The list of pack files is re-read when an object is not found, so objects packed after the reader was created are found too.
+ * <p/>
+ * An object which can't be read is reported as {@code null}, and the caller is expected to fall back to calling Git then:
+ * the reader is an optimization, Git remains the reference implementation.
+ *
+ * @see GitPackFile
+ */
+public class GitObjectReader {
+
+  private static final Logger LOG = Logger.getInstance(GitObjectReader.class);
+
+  public static final int OBJ_COMMIT = 1;
+  public static final int OBJ_TREE = 2;
+  public static final int OBJ_BLOB = 3;
+  public static final int OBJ_TAG = 4;
+  static final int OBJ_OFS_DELTA = 6;
+  static final int OBJ_REF_DELTA = 7;
+
+  private static final String[] TYPE_NAMES = {null, "commit", "tree", "blob", "tag"};
+  private static final int HASH_LENGTH = 20;
+  private static final int MAX_ALTERNATES_DEPTH = 5;
+  private static final int MAX_TAG_DEPTH = 10;
+  private static final long DELTA_BASE_CACHE_SIZE = 16 * 1024 * 1024;
+
+  @NotNull private final List<File> myObjectDirs; // .git/objects and its alternates
+  @NotNull private final Object myPacksLock = new Object();
+  @NotNull private volatile List<GitPackFile> myPacks = Collections.emptyList();
+  private long myPacksTimestamp = -1; // guarded by myPacksLock
+  @NotNull private final DeltaBaseCache myDeltaBaseCache = new DeltaBaseCache(DELTA_BASE_CACHE_SIZE);
+
+  public GitObjectReader(@NotNull File gitDir) {
+    myObjectDirs = new ArrayList<File>();
+    collectObjectDirs(new File(gitDir, "objects"), 0);
+  }
+
+  private void collectObjectDirs(@NotNull File objectsDir, int depth) {
+    if (myObjectDirs.contains(objectsDir)) {
+      return;
+    }
+    myObjectDirs.add(objectsDir);
+    File alternates = new File(new File(objectsDir, "info"), "alternates");
+    if (depth >= MAX_ALTERNATES_DEPTH || !alternates.exists()) {
+      return;
+    }
+    try {
+      for (String line : StringUtil.splitByLines(FileUtil.loadFile(alternates))) {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) {
+          continue;
+        }
+        File alternate = new File(line);
+        collectObjectDirs(alternate.isAbsolute() ? alternate : new File(objectsDir, line), depth + 1);
+      }
+    }
+    catch (IOException e) {
+      LOG.info("Couldn't read " + alternates, e);
+    }
+  }
+
+  public static boolean isFullHash(@Nullable String hash) {
+    if (hash == null || hash.length() != HASH_LENGTH * 2) {
+      return false;
+    }
+    for (int i = 0; i < hash.length(); i++) {
+      if (Character.digit(hash.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the object with the given full hash, or null if it is not found in the object store
+   * @throws IOException if the object store can't be read or has an unsupported format
+   */
+  @Nullable
+  public RawObject readObject(@NotNull String hash) throws IOException {
+    if (!isFullHash(hash)) {
+      throw new IllegalArgumentException("Not a full hash: " + hash);
+    }
+    return readObject(parseHash(hash));
+  }
+
+  @Nullable
+  RawObject readObject(@NotNull byte[] hash) throws IOException {
+    RawObject object = readPackedObject(myPacks, hash);
+    if (object == null) {
+      object = readLooseObject(hash);
+    }
+    if (object == null) {
+      List<GitPackFile> packs = rescanPacks();
+      if (packs != null) {
+        object = readPackedObject(packs, hash);
+      }
+    }
+    return object;
+  }
+
+  /**
+   * Reads the content of the file in the given commit.
+   *
+   * @param commitHash   full hash of the commit (or of an annotated tag pointing to a commit)
+   * @param relativePath path of the file relative to the repository root, separated by '/'
+   * @return the content of the file, or null if the file or any object on the way to it can't be found
+   */
+  @Nullable
+  public byte[] readFileContent(@NotNull String commitHash, @NotNull String relativePath) throws IOException {
+    String treeHash = readTreeHash(commitHash);
+    if (treeHash == null) {
+      return null;
+    }
+    byte[] hash = parseHash(treeHash);
+    for (String name : StringUtil.split(relativePath, "/")) {
+      RawObject tree = readObject(hash);
+      if (tree == null || tree.getType() != OBJ_TREE) {
+        return null;
+      }
+      hash = findTreeEntry(tree.getContent(), name.getBytes(CharsetToolkit.UTF8_CHARSET));
+      if (hash == null) {
+        return null;
+      }
+    }
+    RawObject blob = readObject(hash);
+    return blob != null && blob.getType() == OBJ_BLOB ? blob.getContent() : null;
+  }
+
+  /**
+   * Reads the hash of the root tree of the given commit. Annotated tags are peeled down to the commit they point to.
+   *
+   * @return the hash of the tree, or null if the commit is not found in the object store
+   */
+  @Nullable
+  private String readTreeHash(@NotNull String hash) throws IOException {
+    RawObject object = readObject(hash);
+    for (int depth = 0; object != null && object.getType() == OBJ_TAG && depth < MAX_TAG_DEPTH; depth++) {
+      String target = getHeader(object.getContent(), "object");
+      object = target != null && isFullHash(target) ? readObject(target) : null;
+    }
+    if (object == null || object.getType() != OBJ_COMMIT) {
+      return null;
+    }
+    String tree = getHeader(object.getContent(), "tree");
+    if (tree == null || !isFullHash(tree)) {
+      throw new IOException("Invalid commit object " + hash + ": no tree");
+    }
+    return tree;
+  }
+
+  @Nullable
+  private RawObject readPackedObject(@NotNull List<GitPackFile> packs, @NotNull byte[] hash) throws IOException {
+    for (GitPackFile pack : packs) {
+      long offset = pack.findOffset(hash);
+      if (offset >= 0) {
+        return pack.read(offset, this);
+      }
+    }
+    return null;
+  }
+
+  @Nullable
+  private RawObject readLooseObject(@NotNull byte[] hash) throws IOException {
+    String name = toHex(hash);
+    for (File objectsDir : myObjectDirs) {
+      File file = new File(new File(objectsDir, name.substring(0, 2)), name.substring(2));
+      if (!file.isFile()) {
+        continue;
+      }
+      byte[] data = FileUtil.loadBytes(new InflaterInputStream(new ByteArrayInputStream(FileUtil.loadFileBytes(file))));
+      // "<type> <size>\0<content>"
+      int space = indexOf(data, (byte)' ', 0);
+      int zero = indexOf(data, (byte)0, 0);
+      if (space < 0 || zero < space) {
+        throw new IOException("Invalid object header in " + file);
+      }
+      int type = Arrays.asList(TYPE_NAMES).indexOf(new String(data, 0, space, CharsetToolkit.UTF8_CHARSET));
+      if (type <= 0) {
+        throw new IOException("Unknown object type in " + file);
+      }
+      return new RawObject(type, Arrays.copyOfRange(data, zero + 1, data.length));
+    }
+    return null;
+  }
+
+  /**
+   * Re-reads the list of pack files if the pack directories have changed since the last scan.
+   *
+   * @return the new list of packs, or null if nothing has changed
+   */
+  @Nullable
+  private List<GitPackFile> rescanPacks() {
+    synchronized (myPacksLock) {
+      long timestamp = 0;
+      for (File objectsDir : myObjectDirs) {
+        timestamp = 31 * timestamp + new File(objectsDir, "pack").lastModified();
+      }
+      if (timestamp == myPacksTimestamp) {
+        return null;
+      }
+      myPacksTimestamp = timestamp;
+
+      Map<File, GitPackFile> oldPacks = new HashMap<File, GitPackFile>();
+      for (GitPackFile pack : myPacks) {
+        oldPacks.put(pack.getFile(), pack);
+      }
+      List<GitPackFile> packs = new ArrayList<GitPackFile>();
+      for (File objectsDir : myObjectDirs) {
+        File[] files = new File(objectsDir, "pack").listFiles();
+        if (files == null) {
+          continue;
+        }
+        for (File file : files) {
+          String name = file.getName();
+          if (!name.startsWith("pack-") || !name.endsWith(".pack")) {
+            continue;
+          }
+          GitPackFile pack = oldPacks.get(file);
+          if (pack == null) {
+            File index = new File(file.getParentFile(), name.substring(0, name.length() - ".pack".length()) + ".idx");
+            if (!index.isFile()) { // the pack is being written
+              continue;
+            }
+            try {
+              pack = new GitPackFile(file, index);
+            }
+            catch (IOException e) {
+              LOG.info("Couldn't open " + file, e);
+              continue;
+            }
+          }
+          packs.add(pack);
+        }
+      }
+      // newer packs contain recently used objects more probably
+      Collections.sort(packs, new Comparator<GitPackFile>() {
+        @Override
+        public int compare(GitPackFile pack1, GitPackFile pack2) {
+          long modified1 = pack1.getFile().lastModified();
+          long modified2 = pack2.getFile().lastModified();
+          return modified1 > modified2 ? -1 : modified1 < modified2 ? 1 : 0;
+        }
+      });
+      myDeltaBaseCache.retain(packs);
+      myPacks = packs;
+      return packs;
+    }
+  }
+
+  @Nullable
+  RawObject getCachedDeltaBase(@NotNull GitPackFile pack, long offset) {
+    return myDeltaBaseCache.get(pack, offset);
+  }
+
+  void cacheDeltaBase(@NotNull GitPackFile pack, long offset, @NotNull RawObject object) {
+    myDeltaBaseCache.put(pack, offset, object);
+  }
+
+  /**
+   * Tree entries are "&lt;mode&gt; &lt;name&gt;\0&lt;20 bytes of hash&gt;".
+   */
+  @Nullable
+  private static byte[] findTreeEntry(@NotNull byte[] tree, @NotNull byte[] name) throws IOException {
+    int i = 0;
+    while (i < tree.length) {
+      int nameStart = indexOf(tree, (byte)' ', i) + 1;
+      int nameEnd = indexOf(tree, (byte)0, nameStart);
+      if (nameStart <= 0 || nameEnd < 0 || nameEnd + 1 + HASH_LENGTH > tree.length) {
+        throw new IOException("Invalid tree object");
+      }
+      if (nameEnd - nameStart == name.length && regionMatches(tree, nameStart, name)) {
+        return Arrays.copyOfRange(tree, nameEnd + 1, nameEnd + 1 + HASH_LENGTH);
+      }
+      i = nameEnd + 1 + HASH_LENGTH;
+    }
+    return null;
+  }
+
+  private static boolean regionMatches(@NotNull byte[] data, int start, @NotNull byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if (data[start + i] != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(@NotNull byte[] data, byte b, int from) {
+    for (int i = from; i < data.length; i++) {
+      if (data[i] == b) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the value of the given header of a commit or a tag object (the headers are followed by an empty line and the message)
+   */
+  @Nullable
+  private static String getHeader(@NotNull byte[] content, @NotNull String name) {
+    String text = new String(content, CharsetToolkit.UTF8_CHARSET);
+    int headersEnd = text.indexOf("\n\n");
+    for (String line : StringUtil.splitByLines(headersEnd < 0 ? text : text.substring(0, headersEnd))) {
+      if (line.startsWith(name + " ")) {
+        return line.substring(name.length() + 1);
+      }
+    }
+    return null;
+  }
+
+  @NotNull
+  private static byte[] parseHash(@NotNull String hash) {
+    byte[] bytes = new byte[HASH_LENGTH];
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      bytes[i] = (byte)((Character.digit(hash.charAt(2 * i), 16) << 4) | Character.digit(hash.charAt(2 * i + 1), 16));
+    }
+    return bytes;
+  }
+
+  @NotNull
+  private static String toHex(@NotNull byte[] hash) {
+    StringBuilder sb = new StringBuilder(hash.length * 2);
+    for (byte b : hash) {
+      sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * An object of the object store: its type ({@link #OBJ_COMMIT}, {@link #OBJ_TREE}, {@link #OBJ_BLOB} or {@link #OBJ_TAG})
+   * and uncompressed content.
+   */
+  public static class RawObject {
+    private final int myType;
+    @NotNull private final byte[] myContent;
+
+    RawObject(int type, @NotNull byte[] content) {
+      myType = type;
+      myContent = content;
+    }
+
+    public int getType() {
+      return myType;
+    }
+
+    @NotNull
+    public byte[] getContent() {
+      return myContent;
+    }
+  }
+
+  /**
+   * LRU cache of reconstructed delta bases, limited by the total size of their content.
+   * Delta chains of different objects usually share bases, so they are resolved by applying a few deltas only.
+   */
+  private static class DeltaBaseCache {
+    private final long myMaxSize;
+    private long mySize;
+    @NotNull private final LinkedHashMap<Key, RawObject> myCache = new LinkedHashMap<Key, RawObject>(16, 0.75f, true);
+
+    DeltaBaseCache(long maxSize) {
+      myMaxSize = maxSize;
+    }
+
+    @Nullable
+    synchronized RawObject get(@NotNull GitPackFile pack, long offset) {
+      return myCache.get(new Key(pack, offset));
+    }
+
+    synchronized void put(@NotNull GitPackFile pack, long offset, @NotNull RawObject object) {
+      if (object.getContent().length > myMaxSize / 4) {
+        return;
+      }
+      RawObject previous = myCache.put(new Key(pack, offset), object);
+      if (previous != null) {
+        mySize -= previous.getContent().length;
+      }
+      mySize += object.getContent().length;
+      for (Iterator<RawObject> iterator = myCache.values().iterator(); mySize > myMaxSize && iterator.hasNext(); ) {
+        mySize -= iterator.next().getContent().length;
+        iterator.remove();
+      }
+    }
+
+    synchronized void retain(@NotNull Collection<GitPackFile> packs) {
+      Set<GitPackFile> retained = new HashSet<GitPackFile>(packs);
+      for (Iterator<Map.Entry<Key, RawObject>> iterator = myCache.entrySet().iterator(); iterator.hasNext(); ) {
+        Map.Entry<Key, RawObject> entry = iterator.next();
+        if (!retained.contains(entry.getKey().myPack)) {
+          mySize -= entry.getValue().getContent().length;
+          iterator.remove();
+        }
+      }
+    }
+
+    private static class Key {
+      @NotNull private final GitPackFile myPack;
+      private final long myOffset;
+
+      Key(@NotNull GitPackFile pack, long offset) {
+        myPack = pack;
+        myOffset = offset;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Key)) return false;
+        Key key = (Key)o;
+        return myOffset == key.myOffset && myPack == key.myPack;
+      }
+
+      @Override
+      public int hashCode() {
+        return 31 * System.identityHashCode(myPack) + (int)(myOffset ^ (myOffset >>> 32));
+      }
+    }
+  }
+}
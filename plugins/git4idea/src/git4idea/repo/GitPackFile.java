@@ -0,0 +1,395 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A pack file ({@code .git/objects/pack/pack-*.pack}) together with its index ({@code pack-*.idx}).
+ * <p/>
+ * The index (both version 1 and 2 are supported) is used to find the offset of an object in the pack by binary search.
+ * Objects are read from the pack and delta chains are resolved down to the base object.
+ * <p/>
+ * Files are memory-mapped, except on Windows, where a mapped file can't be deleted until the mapping is garbage collected,
+ * which would break {@code git gc}: there the index is read into memory, and the pack is opened for each read.
+ * Packs larger than 2Gb are never mapped.
+ */
+class GitPackFile {
+
+  private static final int IDX_V2_SIGNATURE = 0xff744f63; // "\377tOc"
+  private static final int FANOUT_SIZE = 256 * 4;
+  private static final int HASH_LENGTH = 20;
+  private static final int MAX_HEADER_LENGTH = 32; // type and size, plus delta base hash or offset
+  private static final int READ_CHUNK = 8192;
+
+  @NotNull private final File myPackFile;
+  @NotNull private final ByteBuffer myIndex;
+  @Nullable private final ByteBuffer myPack; // null if the pack is not mapped
+  private final boolean myIndexV2;
+  private final int myObjectCount;
+
+  GitPackFile(@NotNull File packFile, @NotNull File indexFile) throws IOException {
+    myPackFile = packFile;
+    boolean map = !SystemInfo.isWindows;
+    myIndex = map ? map(indexFile) : ByteBuffer.wrap(FileUtil.loadFileBytes(indexFile));
+    myPack = map && packFile.length() <= Integer.MAX_VALUE ? map(packFile) : null;
+
+    myIndexV2 = myIndex.getInt(0) == IDX_V2_SIGNATURE;
+    if (myIndexV2 && myIndex.getInt(4) != 2) {
+      throw new IOException("Unsupported pack index version " + myIndex.getInt(4) + " in " + indexFile);
+    }
+    myObjectCount = getFanout(255);
+  }
+
+  @NotNull
+  private static ByteBuffer map(@NotNull File file) throws IOException {
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = randomAccessFile.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    finally {
+      randomAccessFile.close(); // the mapping stays valid
+    }
+  }
+
+  @NotNull
+  File getFile() {
+    return myPackFile;
+  }
+
+  /**
+   * @return offset of the object in the pack, or -1 if the object is not in this pack
+   */
+  long findOffset(@NotNull byte[] hash) {
+    int firstByte = hash[0] & 0xff;
+    int low = firstByte == 0 ? 0 : getFanout(firstByte - 1);
+    int high = getFanout(firstByte) - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int cmp = compareHash(middle, hash);
+      if (cmp < 0) {
+        low = middle + 1;
+      }
+      else if (cmp > 0) {
+        high = middle - 1;
+      }
+      else {
+        return getOffset(middle);
+      }
+    }
+    return -1;
+  }
+
+  private int getFanout(int firstByte) {
+    return myIndex.getInt((myIndexV2 ? 8 : 0) + firstByte * 4);
+  }
+
+  private int compareHash(int position, @NotNull byte[] hash) {
+    int start = myIndexV2 ? 8 + FANOUT_SIZE + position * HASH_LENGTH : FANOUT_SIZE + position * (HASH_LENGTH + 4) + 4;
+    for (int i = 0; i < HASH_LENGTH; i++) {
+      int cmp = (myIndex.get(start + i) & 0xff) - (hash[i] & 0xff);
+      if (cmp != 0) {
+        return cmp;
+      }
+    }
+    return 0;
+  }
+
+  private long getOffset(int position) {
+    if (!myIndexV2) {
+      return myIndex.getInt(FANOUT_SIZE + position * (HASH_LENGTH + 4)) & 0xffffffffL;
+    }
+    int offsetsStart = 8 + FANOUT_SIZE + myObjectCount * (HASH_LENGTH + 4);
+    int offset = myIndex.getInt(offsetsStart + position * 4);
+    if (offset >= 0) {
+      return offset;
+    }
+    // the most significant bit is set: the rest is an index in the table of 8-byte offsets
+    return myIndex.getLong(offsetsStart + myObjectCount * 4 + (offset & 0x7fffffff) * 8);
+  }
+
+  /**
+   * Reads the object at the given offset, resolving the delta chain if the object is stored as a delta.
+   * Reconstructed bases of the chain are put into the delta base cache of the reader.
+   */
+  @Nullable
+  GitObjectReader.RawObject read(long offset, @NotNull GitObjectReader reader) throws IOException {
+    RandomAccessFile file = myPack == null ? new RandomAccessFile(myPackFile, "r") : null;
+    try {
+      List<byte[]> deltas = new ArrayList<byte[]>();
+      List<Long> deltaOffsets = new ArrayList<Long>();
+      GitObjectReader.RawObject base;
+      long position = offset;
+      while (true) {
+        base = deltas.isEmpty() ? null : reader.getCachedDeltaBase(this, position);
+        if (base != null) {
+          break;
+        }
+        Header header = readHeader(file, position);
+        if (header.type == GitObjectReader.OBJ_OFS_DELTA || header.type == GitObjectReader.OBJ_REF_DELTA) {
+          deltas.add(inflate(file, header.dataStart, header.size));
+          deltaOffsets.add(position);
+          if (header.type == GitObjectReader.OBJ_OFS_DELTA) {
+            position = header.baseOffset;
+          }
+          else {
+            position = findOffset(header.baseHash);
+            if (position < 0) { // the base is outside of this pack (a "thin" pack)
+              base = reader.readObject(header.baseHash);
+              if (base == null) {
+                return null;
+              }
+              break;
+            }
+          }
+        }
+        else {
+          base = new GitObjectReader.RawObject(header.type, inflate(file, header.dataStart, header.size));
+          if (!deltas.isEmpty()) {
+            reader.cacheDeltaBase(this, position, base);
+          }
+          break;
+        }
+      }
+
+      for (int i = deltas.size() - 1; i >= 0; i--) {
+        base = new GitObjectReader.RawObject(base.getType(), applyDelta(base.getContent(), deltas.get(i)));
+        if (i > 0) {
+          reader.cacheDeltaBase(this, deltaOffsets.get(i), base);
+        }
+      }
+      return base;
+    }
+    finally {
+      if (file != null) {
+        file.close();
+      }
+    }
+  }
+
+  @NotNull
+  private Header readHeader(@Nullable RandomAccessFile file, long position) throws IOException {
+    byte[] buffer = new byte[MAX_HEADER_LENGTH];
+    int length = read(file, position, buffer, 0, buffer.length);
+    if (length <= 0) {
+      throw new IOException("Invalid object offset " + position + " in " + myPackFile);
+    }
+
+    int i = 0;
+    int c = buffer[i++] & 0xff;
+    int type = (c >> 4) & 7;
+    long size = c & 15;
+    int shift = 4;
+    while ((c & 0x80) != 0) {
+      checkHeaderLength(i, length);
+      c = buffer[i++] & 0xff;
+      size += (long)(c & 0x7f) << shift;
+      shift += 7;
+    }
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Object is too large: " + size + " bytes at offset " + position + " in " + myPackFile);
+    }
+
+    Header header = new Header(type, (int)size);
+    if (type == GitObjectReader.OBJ_OFS_DELTA) {
+      checkHeaderLength(i, length);
+      c = buffer[i++] & 0xff;
+      long baseDistance = c & 0x7f;
+      while ((c & 0x80) != 0) {
+        checkHeaderLength(i, length);
+        c = buffer[i++] & 0xff;
+        baseDistance = ((baseDistance + 1) << 7) | (c & 0x7f);
+      }
+      header.baseOffset = position - baseDistance;
+    }
+    else if (type == GitObjectReader.OBJ_REF_DELTA) {
+      checkHeaderLength(i + HASH_LENGTH - 1, length);
+      header.baseHash = new byte[HASH_LENGTH];
+      System.arraycopy(buffer, i, header.baseHash, 0, HASH_LENGTH);
+      i += HASH_LENGTH;
+    }
+    else if (type < GitObjectReader.OBJ_COMMIT || type > GitObjectReader.OBJ_TAG) {
+      throw new IOException("Unknown object type " + type + " at offset " + position + " in " + myPackFile);
+    }
+    header.dataStart = position + i;
+    return header;
+  }
+
+  private void checkHeaderLength(int index, int length) throws IOException {
+    if (index >= length) {
+      throw new IOException("Invalid object header in " + myPackFile);
+    }
+  }
+
+  @NotNull
+  private byte[] inflate(@Nullable RandomAccessFile file, long position, int size) throws IOException {
+    byte[] result = new byte[size];
+    byte[] input = new byte[Math.min(READ_CHUNK, size + 64)];
+    Inflater inflater = new Inflater();
+    try {
+      int inflated = 0;
+      while (inflated < size) {
+        if (inflater.finished()) {
+          break;
+        }
+        if (inflater.needsInput()) {
+          int read = read(file, position, input, 0, input.length);
+          if (read <= 0) {
+            throw new IOException("Unexpected end of " + myPackFile);
+          }
+          position += read;
+          inflater.setInput(input, 0, read);
+        }
+        int count = inflater.inflate(result, inflated, size - inflated);
+        inflated += count;
+        if (count == 0 && inflater.needsDictionary()) {
+          throw new IOException("Invalid compressed data in " + myPackFile);
+        }
+      }
+      if (inflated != size) {
+        throw new IOException("Invalid object size in " + myPackFile + ": expected " + size + ", actual " + inflated);
+      }
+      return result;
+    }
+    catch (DataFormatException e) {
+      throw new IOException("Invalid compressed data in " + myPackFile + ": " + e.getMessage());
+    }
+    finally {
+      inflater.end();
+    }
+  }
+
+  private int read(@Nullable RandomAccessFile file, long position, @NotNull byte[] buffer, int offset, int length) throws IOException {
+    if (myPack != null) {
+      int available = (int)Math.min(length, myPack.capacity() - position);
+      if (available <= 0) {
+        return -1;
+      }
+      ByteBuffer pack = myPack.duplicate();
+      pack.position((int)position);
+      pack.get(buffer, offset, available);
+      return available;
+    }
+    assert file != null;
+    file.seek(position);
+    return file.read(buffer, offset, length);
+  }
+
+  @NotNull
+  static byte[] applyDelta(@NotNull byte[] base, @NotNull byte[] delta) throws IOException {
+    int[] position = new int[1];
+    long baseSize = readDeltaSize(delta, position);
+    long resultSize = readDeltaSize(delta, position);
+    if (baseSize != base.length || resultSize > Integer.MAX_VALUE) {
+      throw new IOException("Invalid delta: base size " + baseSize + ", actual " + base.length);
+    }
+
+    byte[] result = new byte[(int)resultSize];
+    int resultPosition = 0;
+    int i = position[0];
+    while (i < delta.length) {
+      int command = delta[i++] & 0xff;
+      if ((command & 0x80) != 0) { // copy from the base
+        if (i + Integer.bitCount(command & 0x7f) > delta.length) {
+          throw new IOException("Invalid delta: truncated copy command");
+        }
+        long copyOffset = 0;
+        int copySize = 0;
+        for (int bit = 0; bit < 4; bit++) {
+          if ((command & (1 << bit)) != 0) {
+            copyOffset |= (long)(delta[i++] & 0xff) << (bit * 8);
+          }
+        }
+        for (int bit = 0; bit < 3; bit++) {
+          if ((command & (0x10 << bit)) != 0) {
+            copySize |= (delta[i++] & 0xff) << (bit * 8);
+          }
+        }
+        if (copySize == 0) {
+          copySize = 0x10000;
+        }
+        if (copyOffset + copySize > base.length || resultPosition + copySize > result.length) {
+          throw new IOException("Invalid delta: copy out of bounds");
+        }
+        System.arraycopy(base, (int)copyOffset, result, resultPosition, copySize);
+        resultPosition += copySize;
+      }
+      else if (command != 0) { // insert the next bytes of the delta
+        if (i + command > delta.length || resultPosition + command > result.length) {
+          throw new IOException("Invalid delta: insert out of bounds");
+        }
+        System.arraycopy(delta, i, result, resultPosition, command);
+        i += command;
+        resultPosition += command;
+      }
+      else {
+        throw new IOException("Invalid delta command");
+      }
+    }
+    if (resultPosition != result.length) {
+      throw new IOException("Invalid delta: result size " + result.length + ", actual " + resultPosition);
+    }
+    return result;
+  }
+
+  private static long readDeltaSize(@NotNull byte[] delta, @NotNull int[] position) throws IOException {
+    long size = 0;
+    int shift = 0;
+    int c;
+    do {
+      if (position[0] >= delta.length) {
+        throw new IOException("Invalid delta header");
+      }
+      c = delta[position[0]++] & 0xff;
+      size |= (long)(c & 0x7f) << shift;
+      shift += 7;
+    }
+    while ((c & 0x80) != 0);
+    return size;
+  }
+
+  private static class Header {
+    private final int type;
+    private final int size;
+    private long dataStart;
+    private long baseOffset;
+    @Nullable private byte[] baseHash;
+
+    Header(int type, int size) {
+      this.type = type;
+      this.size = size;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return myPackFile.getPath();
+  }
+}
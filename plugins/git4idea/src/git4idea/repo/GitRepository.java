@@ -68,6 +68,12 @@ public interface GitRepository extends Repository {
   @NotNull
   GitUntrackedFilesHolder getUntrackedFilesHolder();
 
+  /**
+   * Returns the reader of the object store of this repository, which reads the contents of files in commits without calling Git.
+   */
+  @NotNull
+  GitObjectReader getObjectReader();
+
 
   @NotNull
   GitRepoInfo getInfo();
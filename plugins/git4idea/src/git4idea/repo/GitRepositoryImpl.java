@@ -38,6 +38,7 @@ public class GitRepositoryImpl extends RepositoryImpl implements GitRepository,
 
   @NotNull private final GitPlatformFacade myPlatformFacade;
   @NotNull private final GitRepositoryReader myReader;
+  @NotNull private final GitObjectReader myObjectReader;
   @NotNull private final VirtualFile myGitDir;
   @Nullable private final GitUntrackedFilesHolder myUntrackedFilesHolder;
 
@@ -56,6 +57,7 @@ public class GitRepositoryImpl extends RepositoryImpl implements GitRepository,
     myGitDir = GitUtil.findGitDir(rootDir);
     assert myGitDir != null : ".git directory wasn't found under " + rootDir.getPresentableUrl();
     myReader = new GitRepositoryReader(VfsUtilCore.virtualToIoFile(myGitDir));
+    myObjectReader = new GitObjectReader(VfsUtilCore.virtualToIoFile(myGitDir));
     if (!light) {
       myUntrackedFilesHolder = new GitUntrackedFilesHolder(this);
       Disposer.register(this, myUntrackedFilesHolder);
@@ -111,6 +113,12 @@ public class GitRepositoryImpl extends RepositoryImpl implements GitRepository,
     return myUntrackedFilesHolder;
   }
 
+  @NotNull
+  @Override
+  public GitObjectReader getObjectReader() {
+    return myObjectReader;
+  }
+
   @Override
   @NotNull
   public GitRepoInfo getInfo() {
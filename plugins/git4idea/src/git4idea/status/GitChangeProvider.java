@@ -17,14 +17,18 @@ package git4idea.status;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vcs.*;
 import com.intellij.openapi.vcs.changes.*;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.PairProcessor;
+import com.intellij.util.concurrency.BoundedTaskExecutor;
 import com.intellij.util.containers.Convertor;
 import git4idea.GitContentRevision;
 import git4idea.GitRevisionNumber;
@@ -35,8 +39,13 @@ import git4idea.commands.Git;
 import git4idea.config.GitVersion;
 import git4idea.config.GitVersionSpecialty;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.ide.PooledThreadExecutor;
 
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Git repository change provider
@@ -44,6 +53,8 @@ import java.util.*;
 public class GitChangeProvider implements ChangeProvider {
 
   private static final Logger PROFILE_LOG = Logger.getInstance("#GitStatus");
+  // each root is mostly waiting for its git process
+  private static final int MAX_PARALLEL_ROOTS = Math.max(4, Runtime.getRuntime().availableProcessors());
 
   @NotNull private final Project myProject;
   @NotNull private final Git myGit;
@@ -79,13 +90,8 @@ public class GitChangeProvider implements ChangeProvider {
     try {
       final MyNonChangedHolder holder = new MyNonChangedHolder(myProject, dirtyScope.getDirtyFilesNoExpand(), addGate,
                                                                myFileDocumentManager, myVcsManager);
-      for (VirtualFile root : roots) {
-        debug("checking root: " + root.getPath());
-        GitChangesCollector collector = isNewGitChangeProviderAvailable()
-                                        ? GitNewChangesCollector.collect(myProject, myGit, myChangeListManager, myVcsManager,
-                                                                         vcs, dirtyScope, root)
-                                        : GitOldChangesCollector.collect(myProject, myChangeListManager, myVcsManager,
-                                                                         vcs, dirtyScope, root);
+      // the roots are independent, so they are queried concurrently, and the results are passed to the builder together
+      for (GitChangesCollector collector : collectChanges(roots, vcs, dirtyScope, progress)) {
         final Collection<Change> changes = collector.getChanges();
         holder.changed(changes);
         for (Change file : changes) {
@@ -96,8 +102,8 @@ public class GitChangeProvider implements ChangeProvider {
           builder.processUnversionedFile(f);
           holder.unversioned(f);
         }
-        holder.feedBuilder(builder);
       }
+      holder.feedBuilder(builder);
     }
     catch (VcsException e) {
       PROFILE_LOG.info(e);
@@ -106,6 +112,95 @@ public class GitChangeProvider implements ChangeProvider {
     }
   }
 
+  /**
+   * Collects changes in the given roots, several roots at a time.
+   * @return collectors in the order of roots
+   */
+  @NotNull
+  private List<GitChangesCollector> collectChanges(@NotNull Collection<VirtualFile> roots, @NotNull final GitVcs vcs,
+                                                   @NotNull final VcsDirtyScope dirtyScope,
+                                                   @Nullable final ProgressIndicator progress) throws VcsException {
+    final boolean newCollector = isNewGitChangeProviderAvailable();
+    List<GitChangesCollector> collectors = new ArrayList<GitChangesCollector>(roots.size());
+    if (roots.size() == 1) {
+      collectors.add(collect(roots.iterator().next(), vcs, dirtyScope, newCollector));
+      return collectors;
+    }
+
+    BoundedTaskExecutor executor = new BoundedTaskExecutor(PooledThreadExecutor.INSTANCE, MAX_PARALLEL_ROOTS);
+    List<Future<GitChangesCollector>> results = new ArrayList<Future<GitChangesCollector>>(roots.size());
+    for (final VirtualFile root : roots) {
+      results.add(executor.submit(new Callable<GitChangesCollector>() {
+        @Override
+        public GitChangesCollector call() throws Exception {
+          final Ref<GitChangesCollector> collector = Ref.create();
+          final Ref<VcsException> exception = Ref.create();
+          // git handlers check cancellation of the progress of the current thread
+          ProgressManager.getInstance().executeProcessUnderProgress(new Runnable() {
+            @Override
+            public void run() {
+              if (progress != null) {
+                progress.checkCanceled();
+              }
+              try {
+                collector.set(collect(root, vcs, dirtyScope, newCollector));
+              }
+              catch (VcsException e) {
+                exception.set(e);
+              }
+            }
+          }, progress);
+          if (!exception.isNull()) {
+            throw exception.get();
+          }
+          return collector.get();
+        }
+      }));
+    }
+
+    try {
+      for (Future<GitChangesCollector> result : results) {
+        collectors.add(result.get());
+      }
+    }
+    catch (InterruptedException e) {
+      throw new ProcessCanceledException();
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof VcsException) {
+        throw (VcsException)cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new VcsException(cause);
+    }
+    finally {
+      for (Future<GitChangesCollector> result : results) {
+        result.cancel(false);
+      }
+    }
+    return collectors;
+  }
+
+  @NotNull
+  private GitChangesCollector collect(@NotNull VirtualFile root, @NotNull GitVcs vcs, @NotNull VcsDirtyScope dirtyScope,
+                                      boolean newCollector) throws VcsException {
+    debug("checking root: " + root.getPath());
+    long start = System.currentTimeMillis();
+    GitChangesCollector collector = newCollector
+                                    ? GitNewChangesCollector.collect(myProject, myGit, myChangeListManager, myVcsManager,
+                                                                     vcs, dirtyScope, root)
+                                    : GitOldChangesCollector.collect(myProject, myChangeListManager, myVcsManager,
+                                                                     vcs, dirtyScope, root);
+    debug("collected changes in root " + root.getPath() + " in " + (System.currentTimeMillis() - start) + " ms");
+    return collector;
+  }
+
   public static void appendNestedVcsRootsToDirt(final VcsDirtyScope dirtyScope, GitVcs vcs, final ProjectLevelVcsManager vcsManager) {
     final Set<FilePath> recursivelyDirtyDirectories = dirtyScope.getRecursivelyDirtyDirectories();
     if (recursivelyDirtyDirectories.isEmpty()) {
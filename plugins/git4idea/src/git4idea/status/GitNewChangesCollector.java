@@ -144,10 +144,12 @@ class GitNewChangesCollector extends GitChangesCollector {
   private void parseOutput(@NotNull String output, @NotNull GitHandler handler) throws VcsException {
     VcsRevisionNumber head = getHead();
 
-    final String[] split = output.split("\u0000");
-
-    for (int pos = 0; pos < split.length; pos++) {
-      String line = split[pos];
+    // entries are separated by NUL: they are read one by one instead of splitting the whole output, which may be huge
+    int pos = 0;
+    while (pos < output.length()) {
+      int end = nextEntryEnd(output, pos);
+      String line = output.substring(pos, end);
+      pos = end + 1;
       if (StringUtil.isEmptyOrSpaces(line)) { // skip empty lines if any (e.g. the whole output may be empty on a clean working tree).
         continue;
       }
@@ -187,8 +189,7 @@ class GitNewChangesCollector extends GitChangesCollector {
           break;
 
         case 'C':
-          //noinspection AssignmentToForLoopParameter
-          pos += 1;  // read the "from" filepath which is separated also by NUL character.
+          pos = nextEntryEnd(output, pos) + 1;  // read the "from" filepath which is separated also by NUL character.
           // NB: no "break" here!
           // we treat "Copy" as "Added", but we still have to read the old path not to break the format parsing.
         case 'A':
@@ -227,9 +228,13 @@ class GitNewChangesCollector extends GitChangesCollector {
           break;
 
         case 'R':
-          //noinspection AssignmentToForLoopParameter
-          pos += 1;  // read the "from" filepath which is separated also by NUL character.
-          String oldFilename = split[pos];
+          // read the "from" filepath which is separated also by NUL character.
+          if (pos >= output.length()) {
+            throwGFE("The original file name of the renamed file is missing.", handler, output, line, xStatus, yStatus);
+          }
+          int oldFilenameEnd = nextEntryEnd(output, pos);
+          String oldFilename = output.substring(pos, oldFilenameEnd);
+          pos = oldFilenameEnd + 1;
 
           if (yStatus == 'D') {
             reportDeleted(filepath, head);
@@ -264,6 +269,11 @@ class GitNewChangesCollector extends GitChangesCollector {
     }
   }
 
+  private static int nextEntryEnd(@NotNull String output, int start) {
+    int end = output.indexOf('\u0000', start);
+    return end < 0 ? output.length() : end;
+  }
+
   @NotNull
   private VcsRevisionNumber getHead() throws VcsException {
     if (myRepository != null) {
@@ -22,6 +22,7 @@ import com.intellij.openapi.vcs.VcsException;
 import com.intellij.openapi.vcs.changes.Change;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.testFramework.LightVirtualFile;
+import com.intellij.util.Consumer;
 import com.intellij.util.containers.ContainerUtil;
 import git4idea.GitUtil;
 import git4idea.test.GitTest;
@@ -146,6 +147,26 @@ public class GitLogParserTest extends GitTest {
     assertAllRecords(actualRecords, expectedRecords, nameStatusOption);
   }
 
+  @Test
+  public void parseAllInChunks() throws VcsException {
+    myParser = new GitLogParser(myProject, NameStatus.STATUS, GIT_LOG_OPTIONS);
+    String output = prepareOutputForAllRecords(GitTestLogRecord.NameStatusOption.STATUS);
+    for (int chunkSize : new int[]{1, 7, 64, output.length()}) {
+      final List<GitLogRecord> actualRecords = new ArrayList<GitLogRecord>();
+      GitLogRecordCollector collector = new GitLogRecordCollector(myParser, new Consumer<GitLogRecord>() {
+        @Override
+        public void consume(GitLogRecord record) {
+          actualRecords.add(record);
+        }
+      });
+      for (int start = 0; start < output.length(); start += chunkSize) {
+        collector.consume(output.substring(start, Math.min(start + chunkSize, output.length())));
+      }
+      collector.finish();
+      assertAllRecords(actualRecords, ALL_RECORDS, GitTestLogRecord.NameStatusOption.STATUS);
+    }
+  }
+
   @Test
   public void parseOneRecordWithoutNameStatus() throws VcsException {
     myParser = new GitLogParser(myProject, GIT_LOG_OPTIONS);
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.log;
+
+import com.intellij.mock.MockVirtualFile;
+import com.intellij.openapi.util.Condition;
+import com.intellij.testFramework.UsefulTestCase;
+import com.intellij.util.NotNullFunction;
+import com.intellij.vcs.log.GraphCommit;
+import com.intellij.vcs.log.Hash;
+import com.intellij.vcs.log.VcsRef;
+import com.intellij.vcs.log.VcsRefType;
+import com.intellij.vcs.log.data.ContainingBranchesIndex;
+import com.intellij.vcs.log.impl.HashImpl;
+import com.intellij.vcs.log.impl.VcsRefImpl;
+import git4idea.test.GitTestRepositoryManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+
+public class GitContainingBranchesTest extends UsefulTestCase {
+  private static final MockVirtualFile ROOT = new MockVirtualFile("root");
+
+  //  3 HEAD, master, v1
+  //  |
+  //  2 origin/master
+  //  |
+  //  1
+  public void testHeadAndTagsAreNotContainingBranches() {
+    final GitRefManager refManager = new GitRefManager(new GitTestRepositoryManager());
+    List<GraphCommit> log = asList(commit(3, 2), commit(2, 1), commit(1));
+    List<VcsRef> refs = asList(ref("3", "HEAD", GitRefManager.HEAD), ref("3", "master", GitRefManager.LOCAL_BRANCH),
+                               ref("3", "v1", GitRefManager.TAG), ref("2", "origin/master", GitRefManager.REMOTE_BRANCH));
+    ContainingBranchesIndex index = ContainingBranchesIndex.build(Collections.singletonList(log), refs, new Condition<VcsRef>() {
+      @Override
+      public boolean value(VcsRef ref) {
+        return refManager.isContainingBranch(ref);
+      }
+    });
+
+    assertEquals(asList("master"), index.getContainingBranches(3));
+    assertEquals(asList("master", "origin/master"), index.getContainingBranches(2));
+    assertEquals(asList("master", "origin/master"), index.getContainingBranches(1));
+  }
+
+  private static GraphCommit commit(final int index, final int... parents) {
+    return new GraphCommit() {
+      @Override
+      public int getIndex() {
+        return index;
+      }
+
+      @Override
+      public int[] getParentIndices() {
+        return parents;
+      }
+    };
+  }
+
+  private static VcsRef ref(String hash, String name, VcsRefType type) {
+    return new VcsRefImpl(new NotNullFunction<Hash, Integer>() {
+      @NotNull
+      @Override
+      public Integer fun(Hash hash) {
+        return Integer.parseInt(hash.asString());
+      }
+    }, HashImpl.build(hash), name, type, ROOT);
+  }
+}
@@ -230,6 +230,12 @@ public class GitLogRefSorterTest extends UsefulTestCase {
       throw new UnsupportedOperationException();
     }
 
+    @NotNull
+    @Override
+    public GitObjectReader getObjectReader() {
+      throw new UnsupportedOperationException();
+    }
+
     @NotNull
     @Override
     public GitRepoInfo getInfo() {
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2000-2013 JetBrains s.r.o.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package git4idea.repo;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.CharsetToolkit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.intellij.openapi.vcs.Executor.cd;
+import static git4idea.test.GitExecutor.git;
+import static org.junit.Assert.*;
+
+/**
+ * Compares objects read by {@link GitObjectReader} with the output of Git for loose and packed repositories.
+ */
+public class GitObjectReaderTest {
+
+  private static final int COMMITS = 30;
+
+  private File myRoot;
+  private GitObjectReader myReader;
+  private List<String> myCommits;
+
+  @Before
+  public void setUp() throws IOException {
+    myRoot = FileUtil.createTempDirectory("git-object-reader", null);
+    cd(myRoot.getPath());
+    git("init");
+    git("config user.name John");
+    git("config user.email john@example.com");
+    myCommits = new ArrayList<String>();
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < COMMITS; i++) {
+      content.append("line ").append(i).append('\n');
+      FileUtil.writeToFile(new File(myRoot, "file.txt"), content.toString());
+      FileUtil.writeToFile(new File(myRoot, "dir/sub/nested.txt"), "nested " + i + "\n" + content);
+      git("add .");
+      git("commit -m 'commit " + i + "'");
+      myCommits.add(git("rev-parse HEAD"));
+    }
+    myReader = new GitObjectReader(new File(myRoot, ".git"));
+  }
+
+  @After
+  public void tearDown() {
+    FileUtil.delete(myRoot);
+  }
+
+  @Test
+  public void looseObjects() throws IOException {
+    checkContents();
+  }
+
+  @Test
+  public void packedObjects() throws IOException {
+    checkContents(); // the reader should notice that the loose objects have been packed
+    git("repack -a -d -f --depth=50 --window=50");
+    git("prune-packed");
+    assertTrue("No loose objects expected", git("count-objects").startsWith("0 objects"));
+    checkContents();
+  }
+
+  @Test
+  public void annotatedTagIsPeeled() throws IOException {
+    git("tag -a -m message v1 " + myCommits.get(3));
+    byte[] content = myReader.readFileContent(git("rev-parse v1"), "file.txt");
+    assertNotNull(content);
+    assertEquals(git("show v1:file.txt"), toString(content));
+  }
+
+  @Test
+  public void missingFile() throws IOException {
+    assertNull(myReader.readFileContent(myCommits.get(0), "unknown.txt"));
+    assertNull(myReader.readFileContent(myCommits.get(0), "dir/unknown/nested.txt"));
+    assertNull(myReader.readFileContent(StringUtil.repeat("0", 40), "file.txt"));
+  }
+
+  @Test
+  public void corruptedDeltaIsReported() throws IOException {
+    byte[] base = "abc".getBytes();
+    assertEquals("abcd", new String(GitPackFile.applyDelta(base, new byte[]{3, 4, (byte)0x91, 0, 3, 1, 'd'})));
+    assertInvalidDelta(base, new byte[]{3, 3, (byte)0x91, 0}); // the copy command misses its size byte
+    assertInvalidDelta(base, new byte[]{3, 3, (byte)0x91, 1, 3}); // copies past the end of the base
+    assertInvalidDelta(base, new byte[]{3, 3, 3, 'x', 'y'}); // inserts more bytes than the delta has
+    assertInvalidDelta(base, new byte[]{3, 2, 3, 'x', 'y', 'z'}); // inserts more bytes than the result has
+    assertInvalidDelta(base, new byte[]{4, 3, 3, 'x', 'y', 'z'}); // wrong base size
+    assertInvalidDelta(base, new byte[]{3, (byte)0x83}); // truncated header
+  }
+
+  private static void assertInvalidDelta(byte[] base, byte[] delta) {
+    try {
+      GitPackFile.applyDelta(base, delta);
+      fail("IOException expected");
+    }
+    catch (IOException expected) {
+    }
+  }
+
+  private void checkContents() throws IOException {
+    for (String commit : myCommits) {
+      for (String path : new String[]{"file.txt", "dir/sub/nested.txt"}) {
+        byte[] content = myReader.readFileContent(commit, path);
+        assertNotNull("Content of " + path + " not found in " + commit, content);
+        assertEquals(git("show " + commit + ":" + path), toString(content));
+      }
+    }
+  }
+
+  private static String toString(byte[] content) {
+    return new String(content, CharsetToolkit.UTF8_CHARSET).trim();
+  }
+}
@@ -19,7 +19,7 @@ import com.intellij.ui.JBColor;
 import com.intellij.util.Function;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.vcs.log.RefGroup;
-import com.intellij.vcs.log.VcsLogRefManager;
+import com.intellij.vcs.log.VcsLogContainingBranchesRefManager;
 import com.intellij.vcs.log.VcsRef;
 import com.intellij.vcs.log.VcsRefType;
 import com.intellij.vcs.log.impl.SingletonRefGroup;
@@ -32,7 +32,7 @@ import java.util.List;
 /**
  * @author Nadya Zabrodina
  */
-public class HgRefManager implements VcsLogRefManager {
+public class HgRefManager implements VcsLogContainingBranchesRefManager {
 
   private static final Color HEAD_COLOR = new JBColor(new Color(0xf1ef9e), new Color(113, 111, 64));
   private static final Color BRANCH_COLOR = new JBColor(new Color(0x75eec7), new Color(0x0D6D4F));
@@ -113,6 +113,11 @@ public class HgRefManager implements VcsLogRefManager {
     });
   }
 
+  @Override
+  public boolean isContainingBranch(@NotNull VcsRef ref) {
+    return ref.getType() == BRANCH || ref.getType() == BOOKMARK;
+  }
+
   private static class SimpleRefType implements VcsRefType {
     private final boolean myIsBranch;
     @NotNull private final Color myColor;